@@ -0,0 +1,91 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Picks the next command by weight. Most requests reuse the recorded ids and keywords so they are served from the
+// cache once warm, the unique share asks for ids and keywords nobody asked for before and goes to USDA.
+public class CommandMix {
+    public static final int BATCH_SIZE = 8;
+    private static final int FIRST_UNIQUE_ID = 900_000_000;
+    private final List<Type> types = new ArrayList<>();
+    private final List<Integer> cumulativeWeights = new ArrayList<>();
+    private final int totalWeight;
+    private final double uniqueRatio;
+    private final List<Integer> reportIds;
+    private final List<String> keywords;
+    private final List<String> barcodes;
+    private final AtomicInteger nextUnique = new AtomicInteger(FIRST_UNIQUE_ID);
+
+    public record Request(Type type, String line) {
+    }
+
+    public CommandMix(Map<Type, Integer> weights, double uniqueRatio, PayloadCatalog catalog) {
+        int total = 0;
+        for (Map.Entry<Type, Integer> entry : weights.entrySet()) {
+            if (entry.getValue() > 0) {
+                total += entry.getValue();
+                types.add(entry.getKey());
+                cumulativeWeights.add(total);
+            }
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one command should have a positive weight");
+        }
+        this.totalWeight = total;
+        this.uniqueRatio = uniqueRatio;
+        this.reportIds = catalog.reportIds();
+        this.keywords = catalog.keywords();
+        this.barcodes = catalog.barcodes();
+        if ((types.contains(Type.GET_FOOD_BY_BARCODE) || types.contains(Type.GET_FOOD_BY_BARCODE_BATCH))
+            && barcodes.isEmpty()) {
+            throw new IllegalArgumentException("No recorded payload contains a barcode");
+        }
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private String reportId(boolean unique, Random random) {
+        return unique ? String.valueOf(nextUnique.getAndIncrement()) : String.valueOf(pick(reportIds, random));
+    }
+
+    // The unique share applies to every item of a report batch on its own
+    private String batch(Type type, Random random) {
+        StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            arguments.append(' ');
+            if (type == Type.GET_FOOD_REPORT_BATCH) {
+                arguments.append(reportId(random.nextDouble() < uniqueRatio, random));
+            } else {
+                arguments.append("--code=").append(pick(barcodes, random));
+            }
+        }
+        return arguments.toString();
+    }
+
+    public Request next(Random random) {
+        int roll = random.nextInt(totalWeight);
+        int index = 0;
+        while (roll >= cumulativeWeights.get(index)) {
+            index++;
+        }
+        Type type = types.get(index);
+        boolean unique = random.nextDouble() < uniqueRatio;
+        String arguments = switch (type) {
+            case GET_FOOD -> unique ? pick(keywords, random) + " " + nextUnique.getAndIncrement()
+                : pick(keywords, random);
+            case GET_FOOD_REPORT -> reportId(unique, random);
+            case GET_FOOD_BY_BARCODE -> "--code=" + pick(barcodes, random);
+            case GET_FOOD_REPORT_BATCH, GET_FOOD_BY_BARCODE_BATCH -> batch(type, random);
+            case STATS -> "";
+        };
+        return new Request(type, (type.getValue() + " " + arguments).strip());
+    }
+}
@@ -0,0 +1,117 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.server.FoodAnalyzerServer;
+import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerConfig;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit.TokenBucketRateLimiter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// The stub USDA server and a FoodAnalyzerServer in front of it, with an empty cache in a temporary directory.
+// The server's own rate limiter is left open so the stub decides when USDA throttles.
+public class EmbeddedServer implements Closeable {
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(10);
+    private static final long STARTUP_POLL_MILLIS = 20;
+    private final StubUsdaServer usda;
+    private final Path cacheRoot;
+    private final Cache cache;
+    private final FoodAnalyzerServer server;
+    private final int port;
+
+    private EmbeddedServer(StubUsdaServer usda, Path cacheRoot, Cache cache, FoodAnalyzerServer server, int port) {
+        this.usda = usda;
+        this.cacheRoot = cacheRoot;
+        this.cache = cache;
+        this.server = server;
+        this.port = port;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitListening(int port) throws IOException {
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (true) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), port).close();
+                return;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("Embedded server did not start on port " + port, e);
+                }
+            }
+            try {
+                Thread.sleep(STARTUP_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the embedded server", e);
+            }
+        }
+    }
+
+    public static EmbeddedServer start(LoadConfig config, PayloadCatalog catalog) throws IOException {
+        StubUsdaServer usda = StubUsdaServer.builder(catalog)
+            .setLatency(config.usdaLatency())
+            .setJitter(config.usdaJitter())
+            .setErrorRate(config.usdaErrorRate())
+            .setThrottleRate(config.usdaThrottleRate())
+            .build();
+        usda.start();
+
+        Path cacheRoot = Files.createTempDirectory("loadgen-cache");
+        int port = freePort();
+        ServerConfig serverConfig = ServerConfig.builder()
+            .setPort(port)
+            .setMode(config.serverMode())
+            .build();
+        Cache cache = Cache.withStore(FoodAnalyzerServer.withWriteBehind(new FileCacheStore(cacheRoot), serverConfig));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("loadgen-key", HttpClient.newHttpClient(), cache)
+            .setBaseUri(usda.baseUri())
+            .setRateLimiter(new TokenBucketRateLimiter(Integer.MAX_VALUE, Duration.ofSeconds(1)))
+            .build();
+        FoodAnalyzerServer server = new FoodAnalyzerServer(retriever, serverConfig);
+        Thread.ofPlatform().daemon().name("embedded-server").start(server::start);
+        awaitListening(port);
+        return new EmbeddedServer(usda, cacheRoot, cache, server, port);
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public StubUsdaServer usda() {
+        return usda;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+        usda.close();
+        cache.close();
+        try (Stream<Path> files = Files.walk(cacheRoot)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerMode;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class LoadConfig {
+    private final String host;
+    private final int port;
+    private final ServerMode serverMode;
+    private final LoopMode loopMode;
+    private final int connections;
+    private final double rate;
+    private final Duration duration;
+    private final Duration warmup;
+    private final Map<Type, Integer> mix;
+    private final double uniqueRatio;
+    private final Duration usdaLatency;
+    private final Duration usdaJitter;
+    private final double usdaErrorRate;
+    private final double usdaThrottleRate;
+
+    public LoadConfig(LoadConfigBuilder builder) {
+        this.host = builder.host;
+        this.port = builder.port;
+        this.serverMode = builder.serverMode;
+        this.loopMode = builder.loopMode;
+        this.connections = builder.connections;
+        this.rate = builder.rate;
+        this.duration = builder.duration;
+        this.warmup = builder.warmup;
+        this.mix = Map.copyOf(builder.mix);
+        this.uniqueRatio = builder.uniqueRatio;
+        this.usdaLatency = builder.usdaLatency;
+        this.usdaJitter = builder.usdaJitter;
+        this.usdaErrorRate = builder.usdaErrorRate;
+        this.usdaThrottleRate = builder.usdaThrottleRate;
+    }
+
+    public static LoadConfigBuilder builder() {
+        return new LoadConfigBuilder();
+    }
+
+    // Without a host the server and the USDA stub are started in this process
+    public boolean embedded() {
+        return host == null;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public ServerMode serverMode() {
+        return serverMode;
+    }
+
+    public LoopMode loopMode() {
+        return loopMode;
+    }
+
+    public int connections() {
+        return connections;
+    }
+
+    // Requests per second over all connections, zero lets a closed loop run as fast as the server answers
+    public double rate() {
+        return rate;
+    }
+
+    public Duration duration() {
+        return duration;
+    }
+
+    public Duration warmup() {
+        return warmup;
+    }
+
+    public Map<Type, Integer> mix() {
+        return mix;
+    }
+
+    // Share of get-food and get-food-report requests that use keywords or ids nobody asked for before
+    public double uniqueRatio() {
+        return uniqueRatio;
+    }
+
+    public Duration usdaLatency() {
+        return usdaLatency;
+    }
+
+    public Duration usdaJitter() {
+        return usdaJitter;
+    }
+
+    public double usdaErrorRate() {
+        return usdaErrorRate;
+    }
+
+    public double usdaThrottleRate() {
+        return usdaThrottleRate;
+    }
+
+    public static class LoadConfigBuilder {
+        private String host;
+        private int port = 5000;
+        private ServerMode serverMode = ServerMode.BLOCKING;
+        private LoopMode loopMode = LoopMode.CLOSED;
+        private int connections = 16;
+        private double rate;
+        private Duration duration = Duration.ofSeconds(30);
+        private Duration warmup = Duration.ofSeconds(5);
+        private final Map<Type, Integer> mix = new EnumMap<>(Map.of(Type.GET_FOOD, 4, Type.GET_FOOD_REPORT, 5,
+            Type.GET_FOOD_BY_BARCODE, 1));
+        private double uniqueRatio = 0.1;
+        private Duration usdaLatency = Duration.ofMillis(150);
+        private Duration usdaJitter = Duration.ofMillis(100);
+        private double usdaErrorRate = 0.01;
+        private double usdaThrottleRate;
+
+        public LoadConfigBuilder setTarget(String host, int port) {
+            this.host = host;
+            this.port = port;
+            return this;
+        }
+
+        public LoadConfigBuilder setServerMode(ServerMode serverMode) {
+            this.serverMode = serverMode;
+            return this;
+        }
+
+        public LoadConfigBuilder setLoopMode(LoopMode loopMode) {
+            this.loopMode = loopMode;
+            return this;
+        }
+
+        public LoadConfigBuilder setConnections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        public LoadConfigBuilder setRate(double rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public LoadConfigBuilder setDuration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public LoadConfigBuilder setWarmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public LoadConfigBuilder setMix(Map<Type, Integer> mix) {
+            this.mix.clear();
+            this.mix.putAll(mix);
+            return this;
+        }
+
+        public LoadConfigBuilder setUniqueRatio(double uniqueRatio) {
+            this.uniqueRatio = uniqueRatio;
+            return this;
+        }
+
+        public LoadConfigBuilder setUsdaLatency(Duration usdaLatency) {
+            this.usdaLatency = usdaLatency;
+            return this;
+        }
+
+        public LoadConfigBuilder setUsdaJitter(Duration usdaJitter) {
+            this.usdaJitter = usdaJitter;
+            return this;
+        }
+
+        public LoadConfigBuilder setUsdaErrorRate(double usdaErrorRate) {
+            this.usdaErrorRate = usdaErrorRate;
+            return this;
+        }
+
+        public LoadConfigBuilder setUsdaThrottleRate(double usdaThrottleRate) {
+            this.usdaThrottleRate = usdaThrottleRate;
+            return this;
+        }
+
+        public LoadConfig build() {
+            if (serverMode == null || loopMode == null || duration == null || warmup == null) {
+                throw new IllegalArgumentException("Server mode, loop mode, duration and warmup cannot be null");
+            }
+            if (connections <= 0) {
+                throw new IllegalArgumentException("Connections should be positive");
+            }
+            if (rate < 0 || (loopMode == LoopMode.OPEN && rate == 0)) {
+                throw new IllegalArgumentException("An open loop needs a positive rate");
+            }
+            if (duration.isZero() || duration.isNegative() || warmup.isNegative()) {
+                throw new IllegalArgumentException("Duration should be positive and warmup cannot be negative");
+            }
+            if (mix.values().stream().anyMatch(weight -> weight < 0)
+                || mix.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+                throw new IllegalArgumentException("Mix weights cannot be negative and at least one should be set");
+            }
+            if (uniqueRatio < 0 || uniqueRatio > 1) {
+                throw new IllegalArgumentException("Unique ratio should be between 0 and 1");
+            }
+            return new LoadConfig(this);
+        }
+    }
+}
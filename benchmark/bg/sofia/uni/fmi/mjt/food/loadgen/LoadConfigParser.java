@@ -0,0 +1,104 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerMode;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class LoadConfigParser {
+    private static final String TARGET_PREFIX = "--target=";
+    private static final String SERVER_MODE_PREFIX = "--server-mode=";
+    private static final String LOOP_PREFIX = "--loop=";
+    private static final String CONNECTIONS_PREFIX = "--connections=";
+    private static final String RATE_PREFIX = "--rate=";
+    private static final String DURATION_PREFIX = "--duration=";
+    private static final String WARMUP_PREFIX = "--warmup=";
+    private static final String MIX_PREFIX = "--mix=";
+    private static final String UNIQUE_PREFIX = "--unique=";
+    private static final String USDA_LATENCY_PREFIX = "--usda-latency=";
+    private static final String USDA_JITTER_PREFIX = "--usda-jitter=";
+    private static final String USDA_ERRORS_PREFIX = "--usda-errors=";
+    private static final String USDA_THROTTLE_PREFIX = "--usda-throttle=";
+    private static final Map<String, Type> MIX_NAMES = Map.of("food", Type.GET_FOOD, "report", Type.GET_FOOD_REPORT,
+        "barcode", Type.GET_FOOD_BY_BARCODE, "report-batch", Type.GET_FOOD_REPORT_BATCH,
+        "barcode-batch", Type.GET_FOOD_BY_BARCODE_BATCH);
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " should be a valid integer: " + value, e);
+        }
+    }
+
+    private static double parseDouble(String value, String name) {
+        try {
+            return Double.parseDouble(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " should be a valid number: " + value, e);
+        }
+    }
+
+    // food:4,report:5,barcode:1
+    private static Map<Type, Integer> parseMix(String value) {
+        Map<Type, Integer> mix = new EnumMap<>(Type.class);
+        for (String part : value.split(",")) {
+            String[] entry = part.split(":");
+            Type type = entry.length == 2 ? MIX_NAMES.get(entry[0].strip()) : null;
+            if (type == null) {
+                throw new IllegalArgumentException("Mix should look like food:4,report:5,barcode:1 but was " + value);
+            }
+            mix.put(type, parseInt(entry[1], "Mix weight"));
+        }
+        return mix;
+    }
+
+    private static void parseTarget(LoadConfig.LoadConfigBuilder builder, String value) {
+        int separator = value.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Target should look like host:port but was " + value);
+        }
+        builder.setTarget(value.substring(0, separator), parseInt(value.substring(separator + 1), "Target port"));
+    }
+
+    public static LoadConfig parse(String... args) {
+        LoadConfig.LoadConfigBuilder builder = LoadConfig.builder();
+        for (String arg : args) {
+            if (arg.startsWith(TARGET_PREFIX)) {
+                parseTarget(builder, arg.substring(TARGET_PREFIX.length()));
+            } else if (arg.startsWith(SERVER_MODE_PREFIX)) {
+                builder.setServerMode(ServerMode.fromValue(arg.substring(SERVER_MODE_PREFIX.length())));
+            } else if (arg.startsWith(LOOP_PREFIX)) {
+                builder.setLoopMode(LoopMode.fromValue(arg.substring(LOOP_PREFIX.length())));
+            } else if (arg.startsWith(CONNECTIONS_PREFIX)) {
+                builder.setConnections(parseInt(arg.substring(CONNECTIONS_PREFIX.length()), "Connections"));
+            } else if (arg.startsWith(RATE_PREFIX)) {
+                builder.setRate(parseDouble(arg.substring(RATE_PREFIX.length()), "Rate"));
+            } else if (arg.startsWith(DURATION_PREFIX)) {
+                builder.setDuration(Duration.ofSeconds(parseInt(arg.substring(DURATION_PREFIX.length()), "Duration")));
+            } else if (arg.startsWith(WARMUP_PREFIX)) {
+                builder.setWarmup(Duration.ofSeconds(parseInt(arg.substring(WARMUP_PREFIX.length()), "Warmup")));
+            } else if (arg.startsWith(MIX_PREFIX)) {
+                builder.setMix(parseMix(arg.substring(MIX_PREFIX.length())));
+            } else if (arg.startsWith(UNIQUE_PREFIX)) {
+                builder.setUniqueRatio(parseDouble(arg.substring(UNIQUE_PREFIX.length()), "Unique ratio"));
+            } else if (arg.startsWith(USDA_LATENCY_PREFIX)) {
+                builder.setUsdaLatency(
+                    Duration.ofMillis(parseInt(arg.substring(USDA_LATENCY_PREFIX.length()), "USDA latency")));
+            } else if (arg.startsWith(USDA_JITTER_PREFIX)) {
+                builder.setUsdaJitter(
+                    Duration.ofMillis(parseInt(arg.substring(USDA_JITTER_PREFIX.length()), "USDA jitter")));
+            } else if (arg.startsWith(USDA_ERRORS_PREFIX)) {
+                builder.setUsdaErrorRate(parseDouble(arg.substring(USDA_ERRORS_PREFIX.length()), "USDA error rate"));
+            } else if (arg.startsWith(USDA_THROTTLE_PREFIX)) {
+                builder.setUsdaThrottleRate(
+                    parseDouble(arg.substring(USDA_THROTTLE_PREFIX.length()), "USDA throttle rate"));
+            } else {
+                throw new IllegalArgumentException("Unknown load generator argument: " + arg);
+            }
+        }
+        return builder.build();
+    }
+}
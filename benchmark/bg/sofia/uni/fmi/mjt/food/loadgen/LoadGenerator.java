@@ -0,0 +1,223 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.server.RequestProcessor;
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Drives the server over N connections and reports latency percentiles per command.
+// Every request has an intended send time taken from the schedule, and the response time is measured from it
+// instead of from the moment the request was actually written. When the server stalls, the requests that should
+// have been sent meanwhile are charged for the wait, which hides coordinated omission from the results.
+// The service time (written to answered) is reported next to it, the gap between the two is the queueing delay.
+//
+// Run from the project root, for example:
+//   LoadGenerator --loop=open --rate=500 --connections=32 --duration=30 --server-mode=virtual
+//   LoadGenerator --loop=closed --connections=8 --target=localhost:5000 --mix=food:1,report:1,barcode:0
+public class LoadGenerator {
+    private static final String EXIT_COMMAND = "exit";
+    private static final List<String> ERROR_PREFIXES = List.of("Error while", "Too many requests", "Invalid command",
+        "The food database is unavailable");
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+    private static final double MICROS_IN_MILLI = 1_000.0;
+    private final LoadConfig config;
+    private final CommandMix mix;
+    private final String host;
+    private final int port;
+    private final Map<Type, Results> results = new EnumMap<>(Type.class);
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder failedConnections = new LongAdder();
+    private long startNanos;
+    private long measureFromNanos;
+    private long endNanos;
+
+    private enum Outcome {
+        OK, ERROR, BUSY
+    }
+
+    private static class Results {
+        private final LatencyHistogram response = new LatencyHistogram();
+        private final LatencyHistogram service = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder busy = new LongAdder();
+    }
+
+    public LoadGenerator(LoadConfig config, CommandMix mix, String host, int port) {
+        this.config = config;
+        this.mix = mix;
+        this.host = host;
+        this.port = port;
+        for (Type type : config.mix().keySet()) {
+            results.put(type, new Results());
+        }
+    }
+
+    public void run() throws InterruptedException {
+        startNanos = System.nanoTime();
+        measureFromNanos = startNanos + config.warmup().toNanos();
+        endNanos = measureFromNanos + config.duration().toNanos();
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < config.connections(); i++) {
+            workers.add(Thread.ofVirtual().name("loadgen-" + i).start(this::runConnection));
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // Zero means the request is sent as soon as the previous answer arrives
+    private long intendedTime(long connectionRequests) {
+        if (config.rate() == 0) {
+            return 0;
+        }
+        if (config.loopMode() == LoopMode.OPEN) {
+            return startNanos + (long) (sequence.getAndIncrement() * NANOS_IN_SECOND / config.rate());
+        }
+        double perConnectionRate = config.rate() / config.connections();
+        return startNanos + (long) (connectionRequests * NANOS_IN_SECOND / perConnectionRate);
+    }
+
+    private void runConnection() {
+        Random random = ThreadLocalRandom.current();
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                StandardCharsets.UTF_8));
+            long sent = 0;
+            while (true) {
+                long intended = intendedTime(sent++);
+                if (intended == 0) {
+                    intended = System.nanoTime();
+                }
+                if (intended >= endNanos) {
+                    break;
+                }
+                sleepUntil(intended);
+                CommandMix.Request request = mix.next(random);
+                long writtenAt = System.nanoTime();
+                out.write((request.line() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Outcome outcome = readResponse(in);
+                long doneAt = System.nanoTime();
+                if (intended >= measureFromNanos) {
+                    Results typeResults = results.get(request.type());
+                    typeResults.response.record(doneAt - intended);
+                    typeResults.service.record(doneAt - writtenAt);
+                    switch (outcome) {
+                        case ERROR -> typeResults.errors.increment();
+                        case BUSY -> typeResults.busy.increment();
+                        case OK -> {
+                        }
+                    }
+                }
+            }
+            out.write((EXIT_COMMAND + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            failedConnections.increment();
+            System.err.println("Connection failed: " + e.getMessage());
+        }
+    }
+
+    private static void sleepUntil(long nanos) {
+        long remaining;
+        while ((remaining = nanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static Outcome readResponse(BufferedReader in) throws IOException {
+        Outcome outcome = Outcome.OK;
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.equals(RequestProcessor.END_MARKER)) {
+                return outcome;
+            }
+            if (line.startsWith(RequestProcessor.BUSY_PREFIX)) {
+                outcome = Outcome.BUSY;
+            }
+            for (String prefix : ERROR_PREFIXES) {
+                if (line.startsWith(prefix)) {
+                    outcome = Outcome.ERROR;
+                }
+            }
+        }
+        throw new IOException("Server closed the connection");
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%9.2f", micros / MICROS_IN_MILLI);
+    }
+
+    private static String percentiles(String name, LatencyHistogram histogram) {
+        StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "  %-9s", name));
+        for (double percentile : PERCENTILES) {
+            line.append(millis(histogram.percentileMicros(percentile)));
+        }
+        return line.append(millis(histogram.percentileMicros(100))).toString();
+    }
+
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        long total = 0;
+        long errors = 0;
+        long busy = 0;
+        lines.add(String.format(Locale.ROOT, "%-11s%9s%9s%9s%9s%9s  (ms)", "", "p50", "p90", "p99", "p99.9",
+            "max"));
+        for (Map.Entry<Type, Results> entry : results.entrySet()) {
+            Results typeResults = entry.getValue();
+            total += typeResults.response.count();
+            errors += typeResults.errors.sum();
+            busy += typeResults.busy.sum();
+            lines.add(entry.getKey().getValue() + " count=" + typeResults.response.count()
+                + " errors=" + typeResults.errors.sum() + " busy=" + typeResults.busy.sum());
+            lines.add(percentiles("response", typeResults.response));
+            lines.add(percentiles("service", typeResults.service));
+        }
+        double seconds = config.duration().toNanos() / NANOS_IN_SECOND;
+        lines.add(String.format(Locale.ROOT,
+            "requests=%d errors=%d busy=%d throughput=%.1f/s target=%s failed-connections=%d", total, errors, busy,
+            total / seconds, config.rate() == 0 ? "unbounded" : config.rate() + "/s", failedConnections.sum()));
+        return lines;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadConfig config = LoadConfigParser.parse(args);
+        PayloadCatalog catalog = PayloadCatalog.load();
+        CommandMix mix = new CommandMix(config.mix(), config.uniqueRatio(), catalog);
+        System.out.println(config.loopMode().getValue() + " loop, " + config.connections() + " connections, "
+            + config.warmup().toSeconds() + "s warmup, " + config.duration().toSeconds() + "s measured");
+        if (!config.embedded()) {
+            LoadGenerator generator = new LoadGenerator(config, mix, config.host(), config.port());
+            generator.run();
+            generator.report().forEach(System.out::println);
+            return;
+        }
+        try (EmbeddedServer server = EmbeddedServer.start(config, catalog)) {
+            LoadGenerator generator = new LoadGenerator(config, mix, "localhost", server.port());
+            generator.run();
+            generator.report().forEach(System.out::println);
+            StubUsdaServer usda = server.usda();
+            System.out.println("usda requests=" + usda.requests() + " injected-errors=" + usda.injectedErrors()
+                + " injected-throttles=" + usda.injectedThrottles());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+public enum LoopMode {
+    // Requests are scheduled at a fixed rate no matter how fast the server answers
+    OPEN("open"),
+    // Every connection sends its next request only after the previous answer
+    CLOSED("closed");
+    private final String value;
+
+    LoopMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static LoopMode fromValue(String value) {
+        for (LoopMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown loop mode: " + value);
+    }
+}
@@ -0,0 +1,118 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+// Recorded USDA answers: the reports and searches the server has cached under cache/ and the payloads in
+// benchmark/resources/usda. Searches are keyed by their lower case keywords joined with underscores.
+public class PayloadCatalog {
+    private static final Path CACHE_ROOT = Path.of("cache");
+    private static final Path USDA_PAYLOADS = Path.of("benchmark", "resources", "usda");
+    private static final String JSON_SUFFIX = ".json";
+    private static final String REPORT_PREFIX = "food-";
+    private static final String SEARCH_PREFIX = "foods-search-";
+    private final Map<Integer, String> reports;
+    private final Map<String, String> searches;
+    private final List<String> barcodes;
+    private final String templateReport;
+    private final String defaultSearch;
+
+    PayloadCatalog(Map<Integer, String> reports, Map<String, String> searches) {
+        if (reports.isEmpty() || searches.isEmpty()) {
+            throw new IllegalArgumentException("At least one report and one search payload are needed");
+        }
+        this.reports = Map.copyOf(reports);
+        this.searches = Map.copyOf(searches);
+        this.templateReport = reports.values().iterator().next();
+        this.defaultSearch = searches.values().stream()
+            .max((first, second) -> Integer.compare(first.length(), second.length()))
+            .orElseThrow();
+        Set<String> found = new LinkedHashSet<>();
+        for (String search : searches.values()) {
+            for (JsonElement food : JsonParser.parseString(search).getAsJsonObject().getAsJsonArray("foods")) {
+                JsonElement barcode = food.getAsJsonObject().get("gtinUpc");
+                if (barcode != null && !barcode.isJsonNull()) {
+                    found.add(barcode.getAsString());
+                }
+            }
+        }
+        this.barcodes = List.copyOf(found);
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.length() - JSON_SUFFIX.length());
+    }
+
+    private static List<Path> jsonFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(JSON_SUFFIX)).sorted().toList();
+        }
+    }
+
+    // Run from the project root
+    public static PayloadCatalog load() throws IOException {
+        Map<Integer, String> reports = new LinkedHashMap<>();
+        Map<String, String> searches = new LinkedHashMap<>();
+        for (Path file : jsonFiles(CACHE_ROOT.resolve("reports"))) {
+            reports.put(Integer.parseInt(baseName(file)), Files.readString(file));
+        }
+        for (Path file : jsonFiles(CACHE_ROOT.resolve("keywords"))) {
+            searches.put(baseName(file).toLowerCase(), Files.readString(file));
+        }
+        for (Path file : jsonFiles(USDA_PAYLOADS)) {
+            String name = baseName(file);
+            if (name.startsWith(SEARCH_PREFIX)) {
+                searches.put(name.substring(SEARCH_PREFIX.length()), Files.readString(file));
+            } else if (name.startsWith(REPORT_PREFIX)) {
+                int id = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+                reports.put(id, Files.readString(file));
+            }
+        }
+        return new PayloadCatalog(reports, searches);
+    }
+
+    public List<Integer> reportIds() {
+        return new ArrayList<>(reports.keySet());
+    }
+
+    // Keywords as a client would type them
+    public List<String> keywords() {
+        return searches.keySet().stream().map(key -> key.replace("_", " ")).toList();
+    }
+
+    public List<String> barcodes() {
+        return barcodes;
+    }
+
+    // Ids that were never recorded get a recorded report with their own id, like a real USDA miss would
+    public String report(int id) {
+        String recorded = reports.get(id);
+        if (recorded != null) {
+            return recorded;
+        }
+        JsonObject report = JsonParser.parseString(templateReport).getAsJsonObject();
+        report.addProperty("fdcId", id);
+        return report.toString();
+    }
+
+    // Unknown keywords get the biggest recorded search page
+    public String search(String keywords) {
+        return searches.getOrDefault(keywords.toLowerCase().replace(" ", "_"), defaultSearch);
+    }
+}
@@ -0,0 +1,208 @@
+package bg.sofia.uni.fmi.mjt.food.loadgen;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Local stand-in for the USDA FoodData Central endpoints the retriever calls, answering with recorded payloads.
+// Every answer waits latency plus a random part of jitter, a share of the requests fails with 500 or 429.
+public class StubUsdaServer implements Closeable {
+    public static final String BASE_PATH = "/fdc/v1/";
+    private static final int OK_CODE = 200;
+    private static final int SERVER_ERROR_CODE = 500;
+    private static final int TOO_MANY_REQUESTS_CODE = 429;
+    private static final String RETRY_AFTER_SECONDS = "1";
+    private static final String QUERY_PARAMETER = "query=";
+    private static final String FDC_IDS_PARAMETER = "fdcIds=";
+    private final PayloadCatalog catalog;
+    private final Duration latency;
+    private final Duration jitter;
+    private final double errorRate;
+    private final double throttleRate;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder injectedThrottles = new LongAdder();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private HttpServer server;
+
+    private StubUsdaServer(StubBuilder builder) {
+        this.catalog = builder.catalog;
+        this.latency = builder.latency;
+        this.jitter = builder.jitter;
+        this.errorRate = builder.errorRate;
+        this.throttleRate = builder.throttleRate;
+    }
+
+    public static StubBuilder builder(PayloadCatalog catalog) {
+        return new StubBuilder(catalog);
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(BASE_PATH + "food/", exchange -> answer(exchange, this::report));
+        server.createContext(BASE_PATH + "foods", exchange -> answer(exchange, this::reports));
+        server.createContext(BASE_PATH + "foods/search", exchange -> answer(exchange, this::search));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String baseUri() {
+        return "http://localhost:" + server.getAddress().getPort() + BASE_PATH;
+    }
+
+    public long requests() {
+        return requests.sum();
+    }
+
+    public long injectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    public long injectedThrottles() {
+        return injectedThrottles.sum();
+    }
+
+    private static String parameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return "";
+        }
+        return Arrays.stream(query.split("&"))
+            .filter(parameter -> parameter.startsWith(name))
+            .map(parameter -> URLDecoder.decode(parameter.substring(name.length()), StandardCharsets.UTF_8))
+            .findFirst().orElse("");
+    }
+
+    private String report(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        return catalog.report(Integer.parseInt(path.substring(path.lastIndexOf('/') + 1)));
+    }
+
+    private String reports(HttpExchange exchange) {
+        return Arrays.stream(parameter(exchange, FDC_IDS_PARAMETER).split(","))
+            .map(id -> catalog.report(Integer.parseInt(id.strip())))
+            .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    private String search(HttpExchange exchange) {
+        return catalog.search(parameter(exchange, QUERY_PARAMETER));
+    }
+
+    private void sleep() {
+        long nanos = latency.toNanos();
+        if (!jitter.isZero()) {
+            nanos += ThreadLocalRandom.current().nextLong(jitter.toNanos());
+        }
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(Duration.ofNanos(nanos));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Payload {
+        String create(HttpExchange exchange);
+    }
+
+    private void answer(HttpExchange exchange, Payload payload) throws IOException {
+        requests.increment();
+        sleep();
+        try (exchange) {
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < throttleRate) {
+                injectedThrottles.increment();
+                exchange.getResponseHeaders().add("Retry-After", RETRY_AFTER_SECONDS);
+                exchange.sendResponseHeaders(TOO_MANY_REQUESTS_CODE, -1);
+                return;
+            }
+            if (roll < throttleRate + errorRate) {
+                injectedErrors.increment();
+                exchange.sendResponseHeaders(SERVER_ERROR_CODE, -1);
+                return;
+            }
+            byte[] body;
+            try {
+                body = payload.create(exchange).getBytes(StandardCharsets.UTF_8);
+            } catch (NumberFormatException e) {
+                exchange.sendResponseHeaders(SERVER_ERROR_CODE, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(OK_CODE, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        executor.shutdownNow();
+    }
+
+    public static class StubBuilder {
+        private final PayloadCatalog catalog;
+        private Duration latency = Duration.ZERO;
+        private Duration jitter = Duration.ZERO;
+        private double errorRate;
+        private double throttleRate;
+
+        private StubBuilder(PayloadCatalog catalog) {
+            Validator.validateNotNull(catalog, "Payload catalog cannot be null");
+            this.catalog = catalog;
+        }
+
+        public StubBuilder setLatency(Duration latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        public StubBuilder setJitter(Duration jitter) {
+            this.jitter = jitter;
+            return this;
+        }
+
+        public StubBuilder setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        public StubBuilder setThrottleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        public StubUsdaServer build() {
+            Validator.validateNotNull(latency, "Latency cannot be null");
+            Validator.validateNotNull(jitter, "Jitter cannot be null");
+            if (latency.isNegative() || jitter.isNegative()) {
+                throw new IllegalArgumentException("Latency and jitter cannot be negative");
+            }
+            if (errorRate < 0 || throttleRate < 0 || errorRate + throttleRate > 1) {
+                throw new IllegalArgumentException("Error and throttle rates should be between 0 and 1");
+            }
+            return new StubUsdaServer(this);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the JMH benchmarks whose name matches the first argument (all by default) with the GC profiler, so every
+// result has the throughput next to gc.alloc.rate.norm (bytes allocated per operation).
+// Any other JMH option can be passed by running org.openjdk.jmh.Main directly.
+public class BenchmarkRunner {
+    private static final String ALL_BENCHMARKS = "bg\\.sofia\\.uni\\.fmi\\.mjt\\.food\\..*Benchmark";
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : ALL_BENCHMARKS)
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
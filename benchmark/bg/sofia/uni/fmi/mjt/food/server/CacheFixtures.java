@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// The JSON the server has cached in the project's cache directory, so the benchmarks run on real USDA data.
+// Benchmarks are started from the project root.
+public class CacheFixtures {
+    public static final Path CACHE_ROOT = Path.of("cache");
+    private static final String JSON_SUFFIX = ".json";
+
+    private static Map<String, String> load(String namespace) {
+        Map<String, String> fixtures = new LinkedHashMap<>();
+        try (Stream<Path> files = Files.list(CACHE_ROOT.resolve(namespace))) {
+            for (Path file : files.sorted().toList()) {
+                String name = file.getFileName().toString();
+                fixtures.put(name.substring(0, name.length() - JSON_SUFFIX.length()), Files.readString(file));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Run the benchmarks from the project root, " + CACHE_ROOT
+                + " was not found", e);
+        }
+        return fixtures;
+    }
+
+    // Report JSON by FDC id
+    public static Map<String, String> reports() {
+        return load("reports");
+    }
+
+    // Search responses by keywords, spaces are stored as underscores
+    public static Map<String, String> keywords() {
+        return load("keywords");
+    }
+
+    public static Map<String, String> barcodes() {
+        return load("barcodes");
+    }
+
+    public static void deleteRecursively(Path root) throws IOException {
+        if (!Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheNamespace;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// One request/response round trip through ClientRequestHandler over a loopback socket, every benchmark thread
+// keeps its own connection. "cached" serves the project's cache fixtures, "upstream" misses every cache tier and
+// goes to a StubHttpClient that answers at once, so the numbers show the cost of the server itself.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class ClientRequestHandlerBenchmark {
+    private static final String REPORT_ID = "2494378";
+    private static final String KEYWORDS = "cola";
+    private static final int UPSTREAM_ID_RANGE = 1_000_000;
+    @Param({"cached", "upstream"})
+    private String source;
+    private Path cacheRoot;
+    private Cache cache;
+    private ServerSocket serverSocket;
+    private ExecutorService handlers;
+
+    // Keeps nothing, so every lookup after the memory tier misses
+    private static class EmptyStore implements CacheStore {
+        @Override
+        public void write(CacheNamespace namespace, String key, String value) {
+        }
+
+        @Override
+        public String read(CacheNamespace namespace, String key) {
+            return null;
+        }
+
+        @Override
+        public List<String> keys(CacheNamespace namespace) {
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Connection {
+        private Socket socket;
+        private PrintWriter out;
+        private BufferedReader in;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void connect(ClientRequestHandlerBenchmark server) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), server.serverSocket.getLocalPort());
+            socket.setTcpNoDelay(true);
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            next = ThreadLocalRandom.current().nextInt(UPSTREAM_ID_RANGE);
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            out.println(ClientRequestHandler.EXIT_COMMAND);
+            socket.close();
+        }
+
+        int nextId() {
+            next = (next + 1) % UPSTREAM_ID_RANGE;
+            return next;
+        }
+
+        int roundTrip(String command) throws IOException {
+            out.println(command);
+            int lines = 0;
+            String line;
+            while ((line = in.readLine()) != null && !line.equals(RequestProcessor.END_MARKER)) {
+                lines++;
+            }
+            return lines;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException {
+        Map<String, String> reports = CacheFixtures.reports();
+        Map<String, String> searches = CacheFixtures.keywords();
+        HttpClient client = new StubHttpClient(reports.get(REPORT_ID), searches.get(KEYWORDS));
+        FoodDataRetriever.RetrieverBuilder builder;
+        if (source.equals("cached")) {
+            cacheRoot = Files.createTempDirectory("handler-benchmark");
+            cache = Cache.withStore(new FileCacheStore(cacheRoot));
+            cache.saveReport(Integer.parseInt(REPORT_ID), reports.get(REPORT_ID));
+            cache.saveByKeywords(KEYWORDS, searches.get(KEYWORDS));
+            builder = FoodDataRetriever.builder("benchmark-key", client, cache);
+        } else {
+            cache = Cache.withStore(new EmptyStore());
+            builder = FoodDataRetriever.builder("benchmark-key", client, cache).setMemoryCacheCapacity(1);
+        }
+        builder.setRateLimiter(new TokenBucketRateLimiter(Integer.MAX_VALUE, Duration.ofSeconds(1)));
+        RequestProcessor processor = new RequestProcessor(builder.build());
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        handlers = Executors.newVirtualThreadPerTaskExecutor();
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    handlers.execute(new ClientRequestHandler(serverSocket.accept(), processor));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }, "benchmark-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        serverSocket.close();
+        handlers.shutdownNow();
+        cache.close();
+        if (cacheRoot != null) {
+            CacheFixtures.deleteRecursively(cacheRoot);
+        }
+    }
+
+    @Benchmark
+    public int getFoodReport(Connection connection) throws IOException {
+        int id = source.equals("cached") ? Integer.parseInt(REPORT_ID) : connection.nextId();
+        return connection.roundTrip("get-food-report " + id);
+    }
+
+    @Benchmark
+    public int getFood(Connection connection) throws IOException {
+        String keywords = source.equals("cached") ? KEYWORDS : KEYWORDS + " " + connection.nextId();
+        return connection.roundTrip("get-food " + keywords);
+    }
+}
@@ -0,0 +1,133 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerConfig;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerMode;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.http.HttpClient;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Run from the project root so that Cache.getInstance() serves the recorded reports from cache/reports.
+// Every client connects first, then all of them send the same cache-hit command concurrently.
+// Clients and server share the process, so the open files limit should exceed twice the connection count;
+// the connection counts can be overridden with program arguments, e.g. "1000 10000".
+public class ServerModeBenchmark {
+    private static final int[] DEFAULT_CONNECTION_COUNTS = {1_000, 10_000};
+    private static final int REQUESTS_PER_CONNECTION = 3;
+    private static final int BASE_PORT = 5100;
+    private static final String REQUEST = "get-food-report 1457700";
+    private static final long RUN_TIMEOUT_MINUTES = 10;
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double P50 = 0.50;
+    private static final double P99 = 0.99;
+
+    private static void runClient(int port, CountDownLatch connected, CountDownLatch go,
+                                  AtomicLongArray latencies, int offset, AtomicInteger errors) {
+        try (Socket socket = new Socket("localhost", port);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            connected.countDown();
+            go.await();
+            for (int i = 0; i < REQUESTS_PER_CONNECTION; i++) {
+                long start = System.nanoTime();
+                out.println(REQUEST);
+                String line;
+                while ((line = in.readLine()) != null && !line.equals(RequestProcessor.END_MARKER)) {
+                    // the body is not validated, only the END marker is awaited
+                }
+                latencies.set(offset + i, System.nanoTime() - start);
+            }
+            out.println("exit");
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            connected.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitUntilListening(int port) throws InterruptedException {
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / NANOS_IN_MILLI;
+    }
+
+    private static void run(ServerMode mode, int connections, int port, FoodDataRetriever retriever)
+        throws InterruptedException {
+        ServerConfig config = ServerConfig.builder().setMode(mode).setPort(port).build();
+        FoodAnalyzerServer server = new FoodAnalyzerServer(retriever, config);
+        Thread serverThread = new Thread(server::start, "benchmark-server-" + mode.getValue());
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitUntilListening(port);
+
+        AtomicLongArray latencies = new AtomicLongArray(connections * REQUESTS_PER_CONNECTION);
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch connected = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        long elapsed;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < connections; i++) {
+                int offset = i * REQUESTS_PER_CONNECTION;
+                clients.execute(() -> runClient(port, connected, go, latencies, offset, errors));
+            }
+            connected.await();
+            long start = System.nanoTime();
+            go.countDown();
+            clients.shutdown();
+            if (!clients.awaitTermination(RUN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                System.err.println("Run did not finish in time: " + mode.getValue() + " " + connections);
+            }
+            elapsed = System.nanoTime() - start;
+        } finally {
+            server.stop();
+        }
+
+        long[] sorted = new long[latencies.length()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = latencies.get(i);
+        }
+        Arrays.sort(sorted);
+        double seconds = elapsed / (NANOS_IN_MILLI * 1000);
+        System.out.printf("%-9s connections=%-6d throughput=%10.1f req/s p50=%8.2f ms p99=%9.2f ms max=%9.2f ms "
+                + "errors=%d%n", mode.getValue(), connections, sorted.length / seconds,
+            percentile(sorted, P50), percentile(sorted, P99), sorted[sorted.length - 1] / NANOS_IN_MILLI,
+            errors.get());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        FoodDataRetriever retriever = new FoodDataRetriever("benchmark", HttpClient.newHttpClient(),
+            Cache.getInstance());
+        int[] connectionCounts = args.length == 0
+            ? DEFAULT_CONNECTION_COUNTS
+            : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        int port = BASE_PORT;
+        for (ServerMode mode : new ServerMode[] {ServerMode.BLOCKING, ServerMode.VIRTUAL_THREADS}) {
+            for (int connections : connectionCounts) {
+                run(mode, connections, port++, retriever);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import bg.sofia.uni.fmi.mjt.food.server.CacheFixtures;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.LogStructuredCacheStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Cache.load* on both stores, filled with a copy of the project's cache directory in a temp directory.
+// Every invocation reads the next key, so all fixtures are read in turn.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+    @Param({"files", "log"})
+    private String store;
+    private Path root;
+    private Cache cache;
+    private int[] reportIds;
+    private String[] keywords;
+    private String[] barcodes;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("cache-benchmark");
+        CacheStore cacheStore = store.equals("log") ? new LogStructuredCacheStore(root) : new FileCacheStore(root);
+        cache = Cache.withStore(cacheStore);
+        Map<String, String> reports = CacheFixtures.reports();
+        for (Map.Entry<String, String> report : reports.entrySet()) {
+            cache.saveReport(Integer.parseInt(report.getKey()), report.getValue());
+        }
+        Map<String, String> searches = CacheFixtures.keywords();
+        for (Map.Entry<String, String> search : searches.entrySet()) {
+            cache.saveByKeywords(search.getKey().replace("_", " "), search.getValue());
+        }
+        Map<String, String> foods = CacheFixtures.barcodes();
+        for (Map.Entry<String, String> food : foods.entrySet()) {
+            cache.saveByBarcode(food.getKey(), food.getValue());
+        }
+        reportIds = reports.keySet().stream().mapToInt(Integer::parseInt).toArray();
+        keywords = searches.keySet().stream().map(key -> key.replace("_", " ")).toArray(String[]::new);
+        barcodes = List.copyOf(foods.keySet()).toArray(String[]::new);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        cache.close();
+        CacheFixtures.deleteRecursively(root);
+    }
+
+    private int nextIndex(int length) {
+        next = next + 1 == Integer.MAX_VALUE ? 0 : next + 1;
+        return next % length;
+    }
+
+    @Benchmark
+    public String loadReport() throws IOException {
+        return cache.loadReport(reportIds[nextIndex(reportIds.length)]);
+    }
+
+    @Benchmark
+    public String loadByKeywords() throws IOException {
+        return cache.loadByKeywords(keywords[nextIndex(keywords.length)]);
+    }
+
+    @Benchmark
+    public String loadBarcode() throws IOException {
+        return cache.loadBarcode(barcodes[nextIndex(barcodes.length)]);
+    }
+
+    @Benchmark
+    public String loadMissing() throws IOException {
+        return cache.loadReport(-1 - nextIndex(reportIds.length));
+    }
+}
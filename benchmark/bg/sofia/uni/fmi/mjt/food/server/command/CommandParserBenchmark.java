@@ -0,0 +1,33 @@
+package bg.sofia.uni.fmi.mjt.food.server.command;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.InvalidClientMessageException;
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Command;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+    @Param({"get-food beef noodle soup", "get-food-report 415269", "get-food-by-barcode --code=009800146130",
+        "stats"})
+    private String line;
+
+    @Benchmark
+    public Command parse() throws InvalidClientMessageException {
+        return CommandParser.parse(line);
+    }
+}
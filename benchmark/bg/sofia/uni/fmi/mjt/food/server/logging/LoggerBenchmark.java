@@ -0,0 +1,132 @@
+package bg.sofia.uni.fmi.mjt.food.server.logging;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Run from the project root. Compares the previous logger (format on the caller, Files.writeString under a lock
+// for every entry) with the ring buffer logger. "callers" is the time until every request thread returned from
+// log(), "on disk" also waits until the writer appended everything.
+public class LoggerBenchmark {
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+    private static final int ENTRIES_PER_THREAD = 20_000;
+    private static final int EXCEPTION_EVERY = 10;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+    private static final Path LOG_DIR = Path.of("logs");
+
+    @FunctionalInterface
+    private interface Log {
+        void log(String message, Throwable throwable, String additionalInfo);
+    }
+
+    // The logger as it was before the ring buffer
+    private static class FileWriteLogger {
+        private final Path logFile;
+        private final Lock lock = new ReentrantLock();
+
+        FileWriteLogger(Path logFile) {
+            this.logFile = logFile;
+        }
+
+        void log(String message, Throwable throwable, String additionalInfo) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("--").append(LocalDateTime.now()).append("--").append(System.lineSeparator())
+                .append(message).append(System.lineSeparator());
+            if (additionalInfo != null && !additionalInfo.isBlank()) {
+                sb.append("Additional Info: ").append(additionalInfo).append(System.lineSeparator());
+            }
+            if (throwable != null) {
+                StringWriter stringWriter = new StringWriter();
+                throwable.printStackTrace(new PrintWriter(stringWriter));
+                sb.append(stringWriter).append(System.lineSeparator());
+            }
+            sb.append(System.lineSeparator());
+            lock.lock();
+            try {
+                Files.writeString(logFile, sb.toString(), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                System.err.println("Error while logging" + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static long produce(int threads, Log log) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        Exception failure = new IOException("Connection reset by peer");
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < ENTRIES_PER_THREAD; i++) {
+                    Throwable throwable = i % EXCEPTION_EVERY == 0 ? failure : null;
+                    log.log("Error while handling client request " + i, throwable, "client-" + thread);
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        return System.nanoTime() - begin;
+    }
+
+    private static void measureFileWrite(int threads) throws Exception {
+        Path file = LOG_DIR.resolve("benchmark-file-write.txt");
+        Files.deleteIfExists(file);
+        FileWriteLogger logger = new FileWriteLogger(file);
+        long elapsed = produce(threads, logger::log);
+        report("Files.writeString", threads, elapsed, elapsed, 0);
+        Files.deleteIfExists(file);
+    }
+
+    private static void measureRingBuffer(int threads, OverflowPolicy policy) throws Exception {
+        String fileName = "benchmark-ring-buffer.txt";
+        Path file = LOG_DIR.resolve(fileName);
+        Files.deleteIfExists(file);
+        Logger logger = Logger.builder(fileName).setOverflowPolicy(policy).setMaxFileBytes(Long.MAX_VALUE).build();
+        long begin = System.nanoTime();
+        long callers = produce(threads, logger::log);
+        logger.flush();
+        long onDisk = System.nanoTime() - begin;
+        logger.close();
+        report("ring buffer / " + policy.getValue(), threads, callers, onDisk, logger.droppedCount());
+        Files.deleteIfExists(file);
+    }
+
+    private static void report(String name, int threads, long callers, long onDisk, long dropped) {
+        long entries = (long) threads * ENTRIES_PER_THREAD;
+        System.out.printf("%-24s threads=%2d  callers %10.0f entries/s  on disk %10.0f entries/s  dropped=%d%n",
+            name, threads, entries * NANOS_IN_SECOND / callers, entries * NANOS_IN_SECOND / onDisk, dropped);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Files.createDirectories(LOG_DIR);
+        // Warm up both paths once
+        measureFileWrite(1);
+        measureRingBuffer(1, OverflowPolicy.BLOCK);
+        System.out.println("---");
+        for (int threads : THREAD_COUNTS) {
+            measureFileWrite(threads);
+            measureRingBuffer(threads, OverflowPolicy.BLOCK);
+            measureRingBuffer(threads, OverflowPolicy.DROP);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.CacheFixtures;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// The Gson work FoodDataRetriever does: cached JSON strings are read with fromJson, USDA bodies are streamed
+// from an InputStream. The reflective Gson is the baseline before the hand-written adapters.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GsonDeserializationBenchmark {
+    private static final String REPORT_ID = "2708942";
+    private static final String KEYWORDS = "pepsi";
+    private final Gson reflectiveGson = new Gson();
+    private final Gson retrieverGson = FoodJson.create();
+    private String reportJson;
+    private String searchJson;
+    private byte[] reportBytes;
+    private byte[] searchBytes;
+    private FoodReport report;
+
+    @Setup
+    public void setUp() {
+        reportJson = CacheFixtures.reports().get(REPORT_ID);
+        searchJson = CacheFixtures.keywords().get(KEYWORDS);
+        reportBytes = reportJson.getBytes(StandardCharsets.UTF_8);
+        searchBytes = searchJson.getBytes(StandardCharsets.UTF_8);
+        report = retrieverGson.fromJson(reportJson, FoodReport.class);
+    }
+
+    @Benchmark
+    public FoodReport reportFromCacheReflective() {
+        return reflectiveGson.fromJson(reportJson, FoodReport.class);
+    }
+
+    @Benchmark
+    public FoodReport reportFromCache() {
+        return retrieverGson.fromJson(reportJson, FoodReport.class);
+    }
+
+    @Benchmark
+    public FoodReport reportFromBody() throws IOException {
+        return FoodJson.read(retrieverGson, new ByteArrayInputStream(reportBytes), FoodReport.class);
+    }
+
+    @Benchmark
+    public SearchResponse searchFromCacheReflective() {
+        return reflectiveGson.fromJson(searchJson, SearchResponse.class);
+    }
+
+    @Benchmark
+    public SearchResponse searchFromCache() {
+        return retrieverGson.fromJson(searchJson, SearchResponse.class);
+    }
+
+    @Benchmark
+    public SearchResponse searchFromBody() throws IOException {
+        return FoodJson.read(retrieverGson, new ByteArrayInputStream(searchBytes), SearchResponse.class);
+    }
+
+    @Benchmark
+    public String reportToCacheJson() {
+        return retrieverGson.toJson(report);
+    }
+}
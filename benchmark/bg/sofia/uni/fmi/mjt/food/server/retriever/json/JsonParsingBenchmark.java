@@ -0,0 +1,91 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Run from the project root, the payloads in benchmark/resources/usda follow the USDA FoodData Central responses.
+// Compares the old path (whole body as String, reflective Gson, toJson for the cache, filterNutrients afterwards)
+// with the streaming adapters reading straight from the body InputStream.
+public class JsonParsingBenchmark {
+    private static final Path PAYLOADS = Path.of("benchmark", "resources", "usda");
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 5_000;
+    private static final double NANOS_IN_MICRO = 1_000.0;
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final Gson REFLECTIVE_GSON = new Gson();
+    private static final Gson ADAPTER_GSON = FoodJson.create();
+    private static Object sink;
+
+    @FunctionalInterface
+    private interface Parse {
+        Object run(byte[] payload) throws IOException;
+    }
+
+    private static Object bufferedReport(byte[] payload) {
+        String body = new String(payload, StandardCharsets.UTF_8);
+        FoodReport report = REFLECTIVE_GSON.fromJson(body, FoodReport.class);
+        String cached = REFLECTIVE_GSON.toJson(report);
+        report.filterNutrients();
+        return cached.length() > 0 ? report : null;
+    }
+
+    private static Object streamingReport(byte[] payload) throws IOException {
+        FoodReport report = FoodJson.read(ADAPTER_GSON, new ByteArrayInputStream(payload), FoodReport.class);
+        String cached = ADAPTER_GSON.toJson(report);
+        return cached.length() > 0 ? report : null;
+    }
+
+    private static Object bufferedSearch(byte[] payload) {
+        String body = new String(payload, StandardCharsets.UTF_8);
+        SearchResponse response = REFLECTIVE_GSON.fromJson(body, SearchResponse.class);
+        String cached = REFLECTIVE_GSON.toJson(response);
+        return cached.length() > 0 ? response : null;
+    }
+
+    private static Object streamingSearch(byte[] payload) throws IOException {
+        SearchResponse response = FoodJson.read(ADAPTER_GSON, new ByteArrayInputStream(payload), SearchResponse.class);
+        String cached = ADAPTER_GSON.toJson(response);
+        return cached.length() > 0 ? response : null;
+    }
+
+    private static void measure(String name, byte[] payload, Parse parse) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink = parse.run(payload);
+        }
+        long threadId = Thread.currentThread().threadId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sink = parse.run(payload);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        System.out.printf("%-30s payload=%7d B  %9.1f us/op  %10d B allocated/op%n", name, payload.length,
+            elapsed / NANOS_IN_MICRO / MEASURED_ITERATIONS, allocated / MEASURED_ITERATIONS);
+    }
+
+    public static void main(String[] args) throws IOException {
+        byte[] branded = Files.readAllBytes(PAYLOADS.resolve("food-branded-2494378.json"));
+        byte[] foundation = Files.readAllBytes(PAYLOADS.resolve("food-foundation-746782.json"));
+        byte[] search = Files.readAllBytes(PAYLOADS.resolve("foods-search-cola.json"));
+
+        measure("branded report / buffered", branded, JsonParsingBenchmark::bufferedReport);
+        measure("branded report / streaming", branded, JsonParsingBenchmark::streamingReport);
+        measure("foundation report / buffered", foundation, JsonParsingBenchmark::bufferedReport);
+        measure("foundation report / streaming", foundation, JsonParsingBenchmark::streamingReport);
+        measure("search page / buffered", search, JsonParsingBenchmark::bufferedSearch);
+        measure("search page / streaming", search, JsonParsingBenchmark::streamingSearch);
+        if (sink == null) {
+            System.out.println("no result");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.model;
+
+import bg.sofia.uni.fmi.mjt.food.server.CacheFixtures;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Every invocation filters a fresh report built from the parsed fixture, copy() alone is the baseline
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FoodReportBenchmark {
+    @Param({"2708942", "415269"})
+    private String id;
+    private FoodReport template;
+
+    @Setup
+    public void setUp() {
+        template = new Gson().fromJson(CacheFixtures.reports().get(id), FoodReport.class);
+    }
+
+    private FoodReport copyTemplate() {
+        return new FoodReport(template.fdcId(), template.description(), template.ingredients(), template.gtinUpc(),
+            template.foodNutrients());
+    }
+
+    @Benchmark
+    public FoodReport copy() {
+        return copyTemplate();
+    }
+
+    @Benchmark
+    public FoodReport filterNutrients() {
+        FoodReport report = copyTemplate();
+        report.filterNutrients();
+        return report;
+    }
+
+    @Benchmark
+    public String render() {
+        return template.toString();
+    }
+}
@@ -18,6 +18,7 @@ public class FoodAnalyzerClient {
     private static final String SERVER_HOST = "localhost";
     private static final String EXIT_MESSAGE = "exit";
     private static final String END_MARKER = "END";
+    private static final String BUSY_PREFIX = "BUSY retry-after=";
     private static final Logger LOGGER = Logger.getInstance();
 
     private static void readResponse(BufferedReader reader) throws IOException {
@@ -27,6 +28,11 @@ public class FoodAnalyzerClient {
             if (response.equals(END_MARKER)) {
                 break;
             }
+            if (response.startsWith(BUSY_PREFIX)) {
+                System.out.println("Server is busy, try again in " + response.substring(BUSY_PREFIX.length())
+                    + " ms");
+                continue;
+            }
             System.out.println(response);
         }
     }
@@ -57,6 +63,11 @@ public class FoodAnalyzerClient {
         }
     }
 
+    // For programs that keep several commands in flight instead of waiting for each answer
+    public static PipelinedFoodClient connectPipelined() throws IOException {
+        return new PipelinedFoodClient(SERVER_HOST, SERVER_PORT);
+    }
+
     public static void start() {
         try (Socket client = new Socket(SERVER_HOST, SERVER_PORT);
              PrintWriter writer = new PrintWriter(client.getOutputStream(), true);
@@ -0,0 +1,145 @@
+package bg.sofia.uni.fmi.mjt.food.client;
+
+import bg.sofia.uni.fmi.mjt.food.client.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.client.parsing.message.MessageParser;
+import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeParsingException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.InvalidClientMessageException;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Programmatic client for the pipelined protocol, any number of commands may be in flight on the one connection and
+// each future completes with the lines of its own answer, in whatever order the server finishes them
+public class PipelinedFoodClient implements Closeable {
+    private static final String PIPELINE_COMMAND = "pipeline";
+    private static final String EXIT_MESSAGE = "exit";
+    private static final String END_MARKER = "END";
+    private static final String TAGGED_END_PREFIX = END_MARKER + " ";
+    private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+    private static final Logger LOGGER = Logger.getInstance();
+    private final Socket socket;
+    private final PrintWriter writer;
+    private final BufferedReader reader;
+    private final Map<String, CompletableFuture<List<String>>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Thread readerThread;
+    private volatile boolean closed;
+    private volatile boolean disconnected;
+
+    public PipelinedFoodClient(String host, int port) throws IOException {
+        Validator.validateString(host, "Host cannot be null or blank");
+        this.socket = new Socket(host, port);
+        try {
+            this.writer = new PrintWriter(socket.getOutputStream(), true);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            writer.println(PIPELINE_COMMAND);
+            String line;
+            while ((line = reader.readLine()) != null && !line.equals(END_MARKER)) {
+                // Skip the confirmation
+            }
+            if (line == null) {
+                throw new IOException("Server closed the connection before enabling pipelining");
+            }
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        this.readerThread = Thread.ofPlatform().daemon().name("pipelined-client-reader").start(this::readFrames);
+    }
+
+    // The message is parsed like the interactive client's input, so --img= barcodes are decoded here
+    public CompletableFuture<List<String>> send(String message)
+        throws InvalidClientMessageException, BarcodeParsingException {
+        String command = MessageParser.parse(message);
+        String id = Long.toString(nextId.incrementAndGet());
+        CompletableFuture<List<String>> response = new CompletableFuture<>();
+        pending.put(id, response);
+        // Checked after the put, so either this or the reader's failPending sees the request
+        if (closed || disconnected) {
+            pending.remove(id);
+            response.completeExceptionally(new IOException("Connection to the server is closed"));
+            return response;
+        }
+        synchronized (writer) {
+            writer.println(id + " " + command);
+        }
+        return response;
+    }
+
+    public int inFlight() {
+        return pending.size();
+    }
+
+    private void readFrames() {
+        List<String> lines = new ArrayList<>();
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(TAGGED_END_PREFIX)) {
+                    complete(line.substring(TAGGED_END_PREFIX.length()), lines);
+                    lines = new ArrayList<>();
+                } else if (line.equals(END_MARKER)) {
+                    // An untagged answer cannot be matched to a request
+                    LOGGER.log("Untagged response from the server: " + lines, null);
+                    lines = new ArrayList<>();
+                } else {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                LOGGER.log("Error while reading pipelined responses", e);
+            }
+        } finally {
+            disconnected = true;
+            failPending();
+        }
+    }
+
+    private void complete(String id, List<String> lines) {
+        CompletableFuture<List<String>> response = pending.remove(id);
+        if (response != null) {
+            response.complete(List.copyOf(lines));
+        }
+    }
+
+    private void failPending() {
+        IOException error = new IOException("Connection to the server was closed");
+        for (String id : pending.keySet()) {
+            CompletableFuture<List<String>> response = pending.remove(id);
+            if (response != null) {
+                response.completeExceptionally(error);
+            }
+        }
+    }
+
+    // The server answers the commands already sent before it closes the connection
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (writer) {
+            writer.println(EXIT_MESSAGE);
+        }
+        try {
+            readerThread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -9,10 +9,12 @@ public class MessageParser {
     private static final String BARCODE_PREFIX = "--code=";
     private static final String IMG_PREFIX = "--img=";
     private static final String GET_FOOD_BY_BARCODE = "get-food-by-barcode";
+    private static final String GET_FOOD_BY_BARCODE_BATCH = "get-food-by-barcode-batch";
 
     public static String parse(String message) throws BarcodeParsingException, InvalidClientMessageException {
         Validator.validateMessageNotBlankOrEmpty(message);
-        if (!message.startsWith(GET_FOOD_BY_BARCODE)) {
+        // Batches take only --code= barcodes, the server checks them
+        if (!message.startsWith(GET_FOOD_BY_BARCODE) || message.startsWith(GET_FOOD_BY_BARCODE_BATCH)) {
             return message;
         }
         String[] parts = message.split("\\s+");
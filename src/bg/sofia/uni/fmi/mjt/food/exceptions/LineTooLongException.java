@@ -0,0 +1,7 @@
+package bg.sofia.uni.fmi.mjt.food.exceptions;
+
+public class LineTooLongException extends Exception {
+    public LineTooLongException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,14 @@
+package bg.sofia.uni.fmi.mjt.food.exceptions;
+
+public class RateLimitExceededException extends FoodRetrievalException {
+    private final long retryAfterMillis;
+
+    public RateLimitExceededException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -1,134 +1,146 @@
 package bg.sofia.uni.fmi.mjt.food.server;
 
-import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeNotFoundException;
-import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
-import bg.sofia.uni.fmi.mjt.food.exceptions.InvalidClientMessageException;
-import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
 import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
-import bg.sofia.uni.fmi.mjt.food.server.command.CommandParser;
-import bg.sofia.uni.fmi.mjt.food.server.command.model.Command;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
-import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
-import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.LaneScheduler;
 import bg.sofia.uni.fmi.mjt.food.validation.Validator;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.io.OutputStream;
 import java.net.Socket;
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientRequestHandler implements Runnable {
-    private static final String EXIT_COMMAND = "exit";
+    static final String EXIT_COMMAND = "exit";
+    static final String EXIT_RESPONSE = "Connection closed";
+    private static final byte[] EXIT_FRAME = (EXIT_RESPONSE + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
     private final Socket socket;
-    private final FoodDataRetriever retriever;
+    private final RequestProcessor processor;
+    private final LaneScheduler scheduler;
     private final Logger logger = Logger.getInstance();
+    // A lock rather than synchronized, so a virtual thread waiting for its turn to write is not pinned to its carrier
+    private final ReentrantLock writeLock = new ReentrantLock();
 
     public ClientRequestHandler(Socket socket, FoodDataRetriever retriever) {
-        Validator.validateNotNull(socket, "Socket cannot be null");
-        Validator.validateNotNull(retriever, "FoodDataRetriever cannot be null");
-        this.socket = socket;
-        this.retriever = retriever;
-    }
-
-    private String getClientInfo() {
-        return "Client: " + socket.getRemoteSocketAddress();
-    }
-
-    private void handleGetFoodCommand(Command command, PrintWriter out) {
-        try {
-            List<FoodDetails> foods = retriever.getFoodByKeywords(command.keywords());
-            if (foods == null || foods.isEmpty()) {
-                out.println("No foods found for the given keywords");
-            } else {
-                for (FoodDetails food : foods) {
-                    out.println(food);
-                }
-            }
-        } catch (NoResultsFoundException e) {
-            out.println("No foods found for keywords: " + String.join(" ", command.keywords()));
-        } catch (FoodRetrievalException e) {
-            String additionalInfo = getClientInfo() + ", Keywords: " + String.join(" ", command.keywords());
-            System.err.println("Error while retrieving food data: " + e.getMessage());
-            logger.log("Unable to retrieve food data", e, additionalInfo);
-            out.println("Error while retrieving food. Try again later or contact administrator");
-        }
+        this(socket, new RequestProcessor(retriever));
     }
 
-    private void handleGetFoodReportCommand(Command command, PrintWriter out) {
-        try {
-            FoodReport foodReport = retriever.getFoodReport(command.id());
-            if (foodReport == null) {
-                out.println("No food found for the given ID");
-            } else {
-                out.println(foodReport);
-            }
-        } catch (NoResultsFoundException e) {
-            out.println("No food found with ID " + command.id());
-        } catch (FoodRetrievalException e) {
-            String additionalInfo = getClientInfo() + ", Food ID: " + command.id();
-            logger.log("Unable to retrieve food report", e, additionalInfo);
-            out.println("Error while retrieving food report. Try again later or contact administrator");
-        }
+    // Commands run on the handler's own thread
+    public ClientRequestHandler(Socket socket, RequestProcessor processor) {
+        Validator.validateNotNull(socket, "Socket cannot be null");
+        Validator.validateNotNull(processor, "RequestProcessor cannot be null");
+        this.socket = socket;
+        this.processor = processor;
+        this.scheduler = null;
     }
 
-    private void handleGetFoodByBarcodeCommand(Command command, PrintWriter out) {
-        try {
-            FoodDetails foodDetails = retriever.getFoodByBarcode(command.barcode());
-            if (foodDetails == null) {
-                out.println("No food found for the given barcode in cache");
-            } else {
-                out.println(foodDetails);
-            }
-        } catch (BarcodeNotFoundException e) {
-            out.println("Product with barcode " + command.barcode() + " not found in cache");
-        } catch (FoodRetrievalException e) {
-            String additionalInfo = getClientInfo() + ", Barcode: " + command.barcode();
-            logger.log("Unable to retrieve food by barcode", e, additionalInfo);
-            out.println("Error while retrieving food by barcode. Try again later or contact administrator");
-        }
+    // Commands run in the scheduler's lanes and the handler's thread only waits for the answer
+    public ClientRequestHandler(Socket socket, LaneScheduler scheduler) {
+        Validator.validateNotNull(socket, "Socket cannot be null");
+        Validator.validateNotNull(scheduler, "LaneScheduler cannot be null");
+        this.socket = socket;
+        this.processor = null;
+        this.scheduler = scheduler;
     }
 
-    private void processRequest(String line, PrintWriter out) {
-        Command command;
-        try {
-            command = CommandParser.parse(line);
-        } catch (InvalidClientMessageException e) {
-            out.println("Invalid command: " + e.getMessage());
-            out.println("END");
-            return;
-        }
-
-        switch (command.type()) {
-            case GET_FOOD -> handleGetFoodCommand(command, out);
-            case GET_FOOD_REPORT -> handleGetFoodReportCommand(command, out);
-            case GET_FOOD_BY_BARCODE -> handleGetFoodByBarcodeCommand(command, out);
-        }
-        out.println("END");
+    private String getClientInfo() {
+        return "Client: " + socket.getRemoteSocketAddress();
     }
 
     @Override
     public void run() {
         Thread.currentThread().setName("Client Handler: " + socket.getRemoteSocketAddress());
-
-        try (PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        Metrics.getInstance().connectionOpened();
+        // Every response is written whole with a single flush, Nagle would only hold back its last segment
+        try (OutputStream out = socket.getOutputStream();
              BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
              socket) {
 
+            socket.setTcpNoDelay(true);
             String inputLine;
             while ((inputLine = in.readLine()) != null) {
                 if (inputLine.equalsIgnoreCase(EXIT_COMMAND)) {
-                    out.println("Connection closed");
+                    writeFrame(out, EXIT_FRAME);
+                    break;
+                }
+                if (inputLine.equalsIgnoreCase(PipelineProtocol.PIPELINE_COMMAND)) {
+                    writeFrame(out, PipelineProtocol.enabledResponse().getBytes(StandardCharsets.UTF_8));
+                    servePipelined(in, out);
                     break;
                 }
-                processRequest(inputLine, out);
+                if (scheduler == null) {
+                    writeFrame(out, processor.process(inputLine, getClientInfo()));
+                } else {
+                    // Items of a batch are streamed as they complete, the returned part closes the response
+                    writeFrame(out, scheduler.submit(inputLine, getClientInfo(), item -> writeFrame(out, item)).join());
+                }
             }
         } catch (IOException e) {
             String errorMessage = "Error handling client connection";
             String additionalInfo = getClientInfo();
             System.err.println(errorMessage + ": " + e.getMessage());
             logger.log(errorMessage, e, additionalInfo);
+        } finally {
+            Metrics.getInstance().connectionClosed();
+        }
+    }
+
+    // Tagged commands run concurrently and each answer is written as one frame as soon as it is ready
+    private void servePipelined(BufferedReader in, OutputStream out) throws IOException {
+        Semaphore inFlight = new Semaphore(PipelineProtocol.MAX_IN_FLIGHT);
+        boolean exit = false;
+        String inputLine;
+        while (!exit && (inputLine = in.readLine()) != null) {
+            if (inputLine.equalsIgnoreCase(EXIT_COMMAND)) {
+                exit = true;
+                continue;
+            }
+            PipelineProtocol.TaggedLine tagged = PipelineProtocol.parse(inputLine);
+            if (tagged == null) {
+                writeFrame(out, PipelineProtocol.invalidTagResponse().getBytes(StandardCharsets.UTF_8));
+                continue;
+            }
+            inFlight.acquireUninterruptibly();
+            submit(tagged.command()).whenComplete((response, error) -> {
+                if (error != null) {
+                    logger.log("Unexpected error while processing client request", error, getClientInfo());
+                    writeFrame(out, PipelineProtocol.errorResponse(tagged.id()));
+                } else {
+                    writeFrame(out, PipelineProtocol.tag(response, tagged.id()));
+                }
+                inFlight.release();
+            });
+        }
+        // Every answer goes out before the connection is closed
+        inFlight.acquireUninterruptibly(PipelineProtocol.MAX_IN_FLIGHT);
+        if (exit) {
+            writeFrame(out, EXIT_FRAME);
+        }
+    }
+
+    private CompletableFuture<byte[]> submit(String line) {
+        if (scheduler != null) {
+            return scheduler.submit(line, getClientInfo());
+        }
+        return CompletableFuture.completedFuture(processor.process(line, getClientInfo()));
+    }
+
+    // One write and one flush per frame, the frames of concurrent answers never interleave
+    private void writeFrame(OutputStream out, byte[] frame) {
+        writeLock.lock();
+        try {
+            out.write(frame);
+            out.flush();
+        } catch (IOException e) {
+            // The client is gone, the read loop sees the closed connection and ends the handler
+        } finally {
+            writeLock.unlock();
         }
     }
-}
\ No newline at end of file
+}
@@ -1,62 +1,206 @@
 package bg.sofia.uni.fmi.mjt.food.server;
 
+import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerConfig;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerConfigParser;
 import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
 import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.RenderedResponseCache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.LogStructuredCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.WriteBehindCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.nio.SelectorServer;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.search.FoodIndex;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.AdaptiveConcurrencyLimit;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.LaneScheduler;
 import bg.sofia.uni.fmi.mjt.food.validation.Validator;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FoodAnalyzerServer {
-    private static final int MAX_THREADS = 5;
-    public static final int SERVER_PORT = 5000;
+    public static final int SERVER_PORT = ServerConfig.DEFAULT_PORT;
+    // Null in selector mode, where the selector thread serves every connection
     private final ExecutorService executor;
-    private final FoodDataRetriever retriever;
+    private final ExecutorService fastLane;
+    private final ExecutorService upstreamLane;
+    private final LaneScheduler scheduler;
+    private final ServerConfig config;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private volatile boolean running;
+    private volatile ServerSocket serverSocket;
+    private volatile SelectorServer selectorServer;
     private static final Logger LOGGER = Logger.getInstance();
 
     public FoodAnalyzerServer(FoodDataRetriever retriever) {
+        this(retriever, ServerConfig.defaults());
+    }
+
+    public FoodAnalyzerServer(FoodDataRetriever retriever, ServerConfig config) {
         Validator.validateNotNull(retriever, "FoodDataRetriever cannot be null");
-        this.executor = Executors.newFixedThreadPool(MAX_THREADS);
-        this.retriever = retriever;
+        Validator.validateNotNull(config, "Server config cannot be null");
+        this.executor = createExecutor(config);
+        this.fastLane = boundedPool(config.workerThreads(), config.maxPendingRequests());
+        this.upstreamLane = boundedPool(config.upstreamThreads(), config.upstreamQueueCapacity());
+        RequestProcessor processor = new RequestProcessor(retriever, Metrics.getInstance(),
+            config.renderedCacheEntries() == 0
+                ? null
+                : new RenderedResponseCache(config.renderedCacheEntries(), RenderedResponseCache.DEFAULT_MAX_AGE));
+        this.scheduler = new LaneScheduler(processor, fastLane, upstreamLane, createUpstreamLimit(config),
+            Metrics.getInstance());
+        this.config = config;
+    }
+
+    // Starts at twice the upstream threads and adapts between the threads alone and threads plus a full queue
+    private static AdaptiveConcurrencyLimit createUpstreamLimit(ServerConfig config) {
+        int minLimit = config.upstreamThreads();
+        int maxLimit = config.upstreamThreads() + config.upstreamQueueCapacity();
+        return new AdaptiveConcurrencyLimit(Math.min(maxLimit, 2 * minLimit), minLimit, maxLimit,
+            Duration.ofMillis(config.latencyTargetMillis()));
+    }
+
+    // Connection threads only read lines and write answers, the commands run in the lanes. A connection keeps its
+    // thread until it closes, so the blocking mode is bounded by --max-connections instead of a pool that would leave
+    // clients past its size waiting unanswered
+    private static ExecutorService createExecutor(ServerConfig config) {
+        return switch (config.mode()) {
+            case BLOCKING -> Executors.newThreadPerTaskExecutor(Thread.ofPlatform().factory());
+            case VIRTUAL_THREADS -> Executors.newVirtualThreadPerTaskExecutor();
+            case SELECTOR -> null;
+        };
+    }
+
+    // Unlike Executors.newFixedThreadPool the queue is bounded, a full pool rejects instead of piling work up
+    private static ExecutorService boundedPool(int threads, int queueCapacity) {
+        BlockingQueue<Runnable> queue = queueCapacity == 0
+            ? new SynchronousQueue<>()
+            : new ArrayBlockingQueue<>(queueCapacity);
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(SERVER_PORT)) {
-            System.out.println("Server is listening on port " + SERVER_PORT);
-            while (true) {
+        running = true;
+        try {
+            switch (config.mode()) {
+                case BLOCKING, VIRTUAL_THREADS -> startBlocking();
+                case SELECTOR -> {
+                    selectorServer = new SelectorServer(config.port(), scheduler, config.maxConnections());
+                    selectorServer.start();
+                }
+            }
+        } catch (IOException e) {
+            String errorMessage = "Server failed to start on port " + config.port();
+            System.err.println(errorMessage);
+            LOGGER.log(errorMessage, e);
+            throw new RuntimeException("Server opening problem occurred", e);
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+            fastLane.shutdown();
+            upstreamLane.shutdown();
+        }
+    }
+
+    private void startBlocking() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(config.port(), ServerConfig.ACCEPT_BACKLOG)) {
+            this.serverSocket = serverSocket;
+            System.out.println("Server is listening on port " + config.port() + " (" + config.mode().getValue()
+                + " mode)");
+            while (running) {
                 try {
                     Socket socket = serverSocket.accept();
+                    if (openConnections.incrementAndGet() > config.maxConnections()) {
+                        openConnections.decrementAndGet();
+                        rejectConnection(socket);
+                        continue;
+                    }
                     System.out.println("Client connected: " + socket.getRemoteSocketAddress());
-                    ClientRequestHandler handler = new ClientRequestHandler(socket, retriever);
-                    executor.execute(handler);
+                    ClientRequestHandler handler = new ClientRequestHandler(socket, scheduler);
+                    executor.execute(() -> {
+                        try {
+                            handler.run();
+                        } finally {
+                            openConnections.decrementAndGet();
+                        }
+                    });
                 } catch (IOException e) {
+                    if (!running) {
+                        break;
+                    }
                     String errorMessage = "Error accepting client connection";
                     System.err.println(errorMessage);
                     LOGGER.log(errorMessage, e);
                 }
             }
+        }
+    }
+
+    // The answer fits in the socket's send buffer, so writing it never blocks the accepting thread
+    private void rejectConnection(Socket socket) {
+        try (socket; OutputStream out = socket.getOutputStream()) {
+            out.write(RequestProcessor.busyResponse(scheduler.retryAfterMillis()).getBytes(StandardCharsets.UTF_8));
         } catch (IOException e) {
-            String errorMessage = "Server failed to start on port " + SERVER_PORT;
-            System.err.println(errorMessage);
-            LOGGER.log(errorMessage, e);
-            throw new RuntimeException("Server opening problem occurred", e);
-        } finally {
-            executor.shutdown();
+            LOGGER.log("Error while turning away a connection over the limit", e);
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (selectorServer != null) {
+            selectorServer.stop();
+        }
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                System.err.println("Error while closing server socket: " + e.getMessage());
+            }
         }
     }
 
+    private static Cache createCache(ServerConfig config) throws IOException {
+        CacheStore store = switch (config.cacheStore()) {
+            case FILES -> new FileCacheStore(Path.of("cache"));
+            case LOG -> new LogStructuredCacheStore(Path.of("cache", "log"));
+        };
+        return Cache.withStore(withWriteBehind(store, config));
+    }
+
+    // Cache writes leave the request path unless write-behind is turned off
+    public static CacheStore withWriteBehind(CacheStore store, ServerConfig config) {
+        if (config.writeBehindMillis() == 0) {
+            return store;
+        }
+        return new WriteBehindCacheStore(store, Duration.ofMillis(config.writeBehindMillis()),
+            WriteBehindCacheStore.DEFAULT_MAX_PENDING);
+    }
+
     public static String readKeyFromFile(Path filePath) throws IOException {
         return Files.readString(filePath).strip();
     }
 
     public static void main(String[] args) throws IOException {
+        ServerConfig config = ServerConfigParser.parse(args);
+        LOGGER.setOverflowPolicy(config.logOverflowPolicy());
         String key;
         try {
             key = readKeyFromFile(Path.of("D:/IntelliJ/java/Food Analyzer/FoodAnalzerKey.txt"));
@@ -66,9 +210,35 @@ public class FoodAnalyzerServer {
             System.err.println("Error reading API key from file");
             throw e;
         }
-        FoodDataRetriever retriever = new FoodDataRetriever(key, HttpClient.newHttpClient(), Cache.getInstance());
-        FoodAnalyzerServer server = new FoodAnalyzerServer(retriever);
+        Cache cache = createCache(config);
+        Duration upstreamTimeout = Duration.ofMillis(config.upstreamTimeoutMillis());
+        HttpClient client = HttpClient.newBuilder().connectTimeout(upstreamTimeout).build();
+        FoodDataRetriever.RetrieverBuilder retrieverBuilder = FoodDataRetriever.builder(key, client, cache)
+            .setNegativeCache(Duration.ofMillis(config.negativeTtlMillis()),
+                FoodDataRetriever.DEFAULT_NEGATIVE_CACHE_CAPACITY)
+            .setRequestTimeout(upstreamTimeout)
+            .setCacheTtl(Duration.ofSeconds(config.cacheTtlSeconds()))
+            .setFoodIndex(new FoodIndex(), config.localSearchMinMatches());
+        if (config.reportBatchWindowMillis() > 0) {
+            retrieverBuilder.setReportBatching(Duration.ofMillis(config.reportBatchWindowMillis()),
+                FoodDataRetriever.MAX_REPORT_BATCH_SIZE);
+        }
+        FoodDataRetriever retriever = retrieverBuilder.build();
+        try {
+            System.out.println("Indexed " + retriever.indexCachedFoods() + " cached foods");
+        } catch (FoodRetrievalException e) {
+            LOGGER.log("Couldn`t index cached foods", e);
+            System.err.println("Error indexing cached foods, keyword searches need USDA until they are saved again");
+        }
+        FoodAnalyzerServer server = new FoodAnalyzerServer(retriever, config);
+        // Queued cache writes are persisted, and a cleanly closed log store maps its index on the next start
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                System.err.println("Error while closing cache: " + e.getMessage());
+            }
+        }));
         server.start();
-
     }
 }
@@ -0,0 +1,67 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+// Opt-in framing for clients that keep several commands in flight on one connection. After the pipeline command
+// every line is "<id> <command>" and every answer ends with "END <id>", answers are written in completion order.
+public final class PipelineProtocol {
+    public static final String PIPELINE_COMMAND = "pipeline";
+    public static final String PIPELINE_ENABLED = "Pipelining enabled";
+    public static final int MAX_IN_FLIGHT = 32;
+    private static final Pattern REQUEST_ID = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+    private static final String END_LINE = RequestProcessor.END_MARKER + System.lineSeparator();
+
+    public record TaggedLine(String id, String command) {
+    }
+
+    private PipelineProtocol() {
+    }
+
+    // Returns null when the line does not start with a valid request id followed by a command
+    public static TaggedLine parse(String line) {
+        if (line == null) {
+            return null;
+        }
+        String trimmed = line.strip();
+        int separator = trimmed.indexOf(' ');
+        if (separator <= 0) {
+            return null;
+        }
+        String id = trimmed.substring(0, separator);
+        String command = trimmed.substring(separator + 1).strip();
+        if (!REQUEST_ID.matcher(id).matches() || command.isEmpty()) {
+            return null;
+        }
+        return new TaggedLine(id, command);
+    }
+
+    public static String enabledResponse() {
+        return PIPELINE_ENABLED + System.lineSeparator() + END_LINE;
+    }
+
+    // Untagged, the client cannot tell which of its requests the line belonged to
+    public static String invalidTagResponse() {
+        return "Invalid command: pipelined commands should start with a request id" + System.lineSeparator()
+            + END_LINE;
+    }
+
+    public static byte[] errorResponse(String id) {
+        return tag(("Error while processing the command" + System.lineSeparator() + END_LINE)
+            .getBytes(StandardCharsets.UTF_8), id);
+    }
+
+    // Replaces the END that closes a complete response with END <id>, the response itself is left as it is since
+    // it may be shared by the rendered response cache
+    public static byte[] tag(byte[] response, String id) {
+        if (response == null || !RequestProcessor.endsWithEnd(response)) {
+            throw new IllegalArgumentException("Response should end with " + RequestProcessor.END_MARKER);
+        }
+        byte[] end = (RequestProcessor.END_MARKER + " " + id + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        int bodyLength = response.length - END_LINE.length();
+        byte[] tagged = Arrays.copyOf(response, bodyLength + end.length);
+        System.arraycopy(end, 0, tagged, bodyLength, end.length);
+        return tagged;
+    }
+}
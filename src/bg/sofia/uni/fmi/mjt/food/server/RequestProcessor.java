@@ -0,0 +1,412 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeNotFoundException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.InvalidClientMessageException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.UpstreamUnavailableException;
+import bg.sofia.uni.fmi.mjt.food.server.barcode.Gtin;
+import bg.sofia.uni.fmi.mjt.food.server.cache.CacheStats;
+import bg.sofia.uni.fmi.mjt.food.server.cache.RenderedResponseCache;
+import bg.sofia.uni.fmi.mjt.food.server.command.CommandParser;
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Command;
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.RequestSource;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// Transport independent command handling, shared by the blocking and the selector based servers
+public class RequestProcessor {
+    public static final String END_MARKER = "END";
+    public static final String BUSY_PREFIX = "BUSY retry-after=";
+    public static final String ITEM_PREFIX = "ITEM ";
+    private static final String BATCH_SUFFIX = "-batch";
+    private static final byte[] END_BYTES = (END_MARKER + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    private final FoodDataRetriever retriever;
+    private final Metrics metrics;
+    // Null when responses are rendered for every request
+    private final RenderedResponseCache renderedCache;
+    private final Logger logger = Logger.getInstance();
+
+    // One item of a batch command, the key heads its part of the response and the line is the single command
+    public record BatchItem(String key, String line) {
+    }
+
+    // Rendering goes to memory and is encoded once, the transports write the bytes in a single call
+    private static final class Response {
+        private final StringWriter buffer = new StringWriter();
+        private final PrintWriter out = new PrintWriter(buffer);
+
+        PrintWriter out() {
+            return out;
+        }
+
+        byte[] bytes() {
+            out.flush();
+            return buffer.toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public RequestProcessor(FoodDataRetriever retriever) {
+        this(retriever, Metrics.getInstance());
+    }
+
+    public RequestProcessor(FoodDataRetriever retriever, Metrics metrics) {
+        this(retriever, metrics, null);
+    }
+
+    public RequestProcessor(FoodDataRetriever retriever, Metrics metrics, RenderedResponseCache renderedCache) {
+        Validator.validateNotNull(retriever, "FoodDataRetriever cannot be null");
+        Validator.validateNotNull(metrics, "Metrics cannot be null");
+        this.retriever = retriever;
+        this.metrics = metrics;
+        this.renderedCache = renderedCache;
+    }
+
+    // The whole answer to a request the server turned away, the client may send it again after the given time
+    public static String busyResponse(long retryAfterMillis) {
+        return BUSY_PREFIX + retryAfterMillis + System.lineSeparator() + END_MARKER + System.lineSeparator();
+    }
+
+    // The single commands a batch fans out to, null when the line is not a valid batch command
+    public static List<BatchItem> batchItems(String line) {
+        if (line == null || !line.contains(BATCH_SUFFIX)) {
+            return null;
+        }
+        Command command;
+        try {
+            command = CommandParser.parse(line);
+        } catch (InvalidClientMessageException e) {
+            return null;
+        }
+        return switch (command.type()) {
+            case GET_FOOD_REPORT_BATCH -> command.ids().stream()
+                .map(id -> new BatchItem(String.valueOf(id), Type.GET_FOOD_REPORT.getValue() + " " + id))
+                .toList();
+            case GET_FOOD_BY_BARCODE_BATCH -> command.barcodes().stream()
+                .map(barcode -> new BatchItem(barcode,
+                    Type.GET_FOOD_BY_BARCODE.getValue() + " " + CommandParser.BARCODE_PREFIX + barcode))
+                .toList();
+            default -> null;
+        };
+    }
+
+    // The part of a batch response for one item: its header and the item's own response without the END
+    public static byte[] itemResponse(String key, byte[] response) {
+        byte[] header = (ITEM_PREFIX + key + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        int bodyLength = endsWithEnd(response) ? response.length - END_BYTES.length : response.length;
+        byte[] item = Arrays.copyOf(header, header.length + bodyLength);
+        System.arraycopy(response, 0, item, header.length, bodyLength);
+        return item;
+    }
+
+    public static byte[] itemErrorResponse(String key) {
+        return (ITEM_PREFIX + key + System.lineSeparator() + "Error while processing the item"
+            + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static boolean endsWithEnd(byte[] response) {
+        return response.length >= END_BYTES.length && Arrays.equals(response, response.length - END_BYTES.length,
+            response.length, END_BYTES, 0, END_BYTES.length);
+    }
+
+    private static long retryAfterSeconds(long retryAfterMillis) {
+        return Math.max(1, (retryAfterMillis + 999) / 1000);
+    }
+
+    private static void printRateLimited(RateLimitExceededException e, PrintWriter out) {
+        out.println("Too many requests to the food database. Try again in "
+            + retryAfterSeconds(e.getRetryAfterMillis()) + " seconds");
+    }
+
+    // The circuit is open, USDA already failed repeatedly and there is nothing new to log
+    private static void printUnavailable(UpstreamUnavailableException e, PrintWriter out) {
+        out.println("The food database is unavailable. Try again in "
+            + retryAfterSeconds(e.getRetryAfterMillis()) + " seconds");
+    }
+
+    // The print and handle methods return whether they found the food, only such responses are kept rendered
+    private static boolean printFoods(List<FoodDetails> foods, PrintWriter out) {
+        if (foods == null || foods.isEmpty()) {
+            out.println("No foods found for the given keywords");
+            return false;
+        }
+        for (FoodDetails food : foods) {
+            out.println(food);
+        }
+        return true;
+    }
+
+    private static boolean printReport(FoodReport foodReport, PrintWriter out) {
+        if (foodReport == null) {
+            out.println("No food found for the given ID");
+            return false;
+        }
+        out.println(foodReport);
+        return true;
+    }
+
+    private static void printNoFoods(Command command, PrintWriter out) {
+        out.println("No foods found for keywords: " + String.join(" ", command.keywords()));
+    }
+
+    private static void printNoReport(Command command, PrintWriter out) {
+        out.println("No food found with ID " + command.id());
+    }
+
+    private static boolean printBarcodeFood(FoodDetails foodDetails, PrintWriter out) {
+        if (foodDetails == null) {
+            out.println("No food found for the given barcode");
+            return false;
+        }
+        out.println(foodDetails);
+        return true;
+    }
+
+    private static void printNoBarcode(Command command, PrintWriter out) {
+        out.println("Product with barcode " + command.barcode() + " not found");
+    }
+
+    private boolean handleGetFoodCommand(Command command, PrintWriter out, String clientInfo) {
+        try {
+            return printFoods(retriever.getFoodByKeywords(command.keywords()), out);
+        } catch (NoResultsFoundException e) {
+            printNoFoods(command, out);
+        } catch (RateLimitExceededException e) {
+            printRateLimited(e, out);
+        } catch (UpstreamUnavailableException e) {
+            printUnavailable(e, out);
+        } catch (FoodRetrievalException e) {
+            metrics.recordError(command.type());
+            String additionalInfo = clientInfo + ", Keywords: " + String.join(" ", command.keywords());
+            System.err.println("Error while retrieving food data: " + e.getMessage());
+            logger.log("Unable to retrieve food data", e, additionalInfo);
+            out.println("Error while retrieving food. Try again later or contact administrator");
+        }
+        return false;
+    }
+
+    private boolean handleGetFoodReportCommand(Command command, PrintWriter out, String clientInfo) {
+        try {
+            return printReport(retriever.getFoodReport(command.id()), out);
+        } catch (NoResultsFoundException e) {
+            printNoReport(command, out);
+        } catch (RateLimitExceededException e) {
+            printRateLimited(e, out);
+        } catch (UpstreamUnavailableException e) {
+            printUnavailable(e, out);
+        } catch (FoodRetrievalException e) {
+            metrics.recordError(command.type());
+            String additionalInfo = clientInfo + ", Food ID: " + command.id();
+            logger.log("Unable to retrieve food report", e, additionalInfo);
+            out.println("Error while retrieving food report. Try again later or contact administrator");
+        }
+        return false;
+    }
+
+    private boolean handleGetFoodByBarcodeCommand(Command command, PrintWriter out, String clientInfo) {
+        try {
+            return printBarcodeFood(retriever.getFoodByBarcode(command.barcode()), out);
+        } catch (BarcodeNotFoundException e) {
+            printNoBarcode(command, out);
+        } catch (RateLimitExceededException e) {
+            printRateLimited(e, out);
+        } catch (UpstreamUnavailableException e) {
+            printUnavailable(e, out);
+        } catch (FoodRetrievalException e) {
+            metrics.recordError(command.type());
+            String additionalInfo = clientInfo + ", Barcode: " + command.barcode();
+            logger.log("Unable to retrieve food by barcode", e, additionalInfo);
+            out.println("Error while retrieving food by barcode. Try again later or contact administrator");
+        }
+        return false;
+    }
+
+    // Without a scheduler the items of a batch run one after another on the caller's thread
+    private void handleBatchCommand(Command command, PrintWriter out, String clientInfo) {
+        if (command.type() == Type.GET_FOOD_REPORT_BATCH) {
+            for (int id : command.ids()) {
+                out.println(ITEM_PREFIX + id);
+                handleGetFoodReportCommand(Command.builder(Type.GET_FOOD_REPORT).setId(id).build(), out, clientInfo);
+            }
+        } else {
+            for (String barcode : command.barcodes()) {
+                out.println(ITEM_PREFIX + barcode);
+                handleGetFoodByBarcodeCommand(Command.builder(Type.GET_FOOD_BY_BARCODE).setBarcode(barcode).build(),
+                    out, clientInfo);
+            }
+        }
+    }
+
+    private void handleStatsCommand(PrintWriter out) {
+        for (String line : metrics.report()) {
+            out.println(line);
+        }
+        out.println("rate-limiter " + retriever.rateLimiterStats());
+        out.println("circuit " + retriever.circuitState().getValue());
+        for (Map.Entry<String, CacheStats> entry : retriever.memoryCacheStats().entrySet()) {
+            out.println("memory-cache " + entry.getKey() + " " + entry.getValue());
+        }
+        if (renderedCache != null) {
+            out.println("rendered-cache " + renderedCache.stats());
+        }
+    }
+
+    private static Command parse(String line, PrintWriter out) {
+        try {
+            return CommandParser.parse(line);
+        } catch (InvalidClientMessageException e) {
+            out.println("Invalid command: " + e.getMessage());
+            out.println(END_MARKER);
+            return null;
+        }
+    }
+
+    // Batches and stats are never kept rendered, a batch is answered item by item and stats change all the time
+    private static String renderedKey(Command command) {
+        return switch (command.type()) {
+            case GET_FOOD -> command.type().getValue() + " " + String.join(" ", command.keywords());
+            case GET_FOOD_REPORT -> command.type().getValue() + " " + command.id();
+            case GET_FOOD_BY_BARCODE -> command.type().getValue() + " " + barcodeKey(command.barcode());
+            case GET_FOOD_REPORT_BATCH, GET_FOOD_BY_BARCODE_BATCH, STATS -> null;
+        };
+    }
+
+    // Every zero padding of a barcode shares one rendered response
+    private static String barcodeKey(String barcode) {
+        String gtin = Gtin.canonical(barcode);
+        return gtin != null ? gtin : barcode;
+    }
+
+    private byte[] findRendered(String key, Command command, long version, long start) {
+        if (renderedCache == null || key == null) {
+            return null;
+        }
+        byte[] response = renderedCache.get(key, version);
+        if (response != null) {
+            metrics.recordLatency(command.type(), RequestSource.CACHE, System.nanoTime() - start);
+        }
+        return response;
+    }
+
+    private boolean execute(Command command, PrintWriter out, String clientInfo) {
+        return switch (command.type()) {
+            case GET_FOOD -> handleGetFoodCommand(command, out, clientInfo);
+            case GET_FOOD_REPORT -> handleGetFoodReportCommand(command, out, clientInfo);
+            case GET_FOOD_BY_BARCODE -> handleGetFoodByBarcodeCommand(command, out, clientInfo);
+            case GET_FOOD_REPORT_BATCH, GET_FOOD_BY_BARCODE_BATCH -> {
+                handleBatchCommand(command, out, clientInfo);
+                yield false;
+            }
+            case STATS -> {
+                handleStatsCommand(out);
+                yield false;
+            }
+        };
+    }
+
+    // The version is read before the food, so a refresh that lands while rendering makes the response miss later
+    private byte[] finish(Command command, String key, boolean found, long version, long start, Response response) {
+        metrics.recordLatency(command.type(), Metrics.currentSource(), System.nanoTime() - start);
+        response.out().println(END_MARKER);
+        byte[] bytes = response.bytes();
+        if (found && key != null && renderedCache != null) {
+            renderedCache.put(key, bytes, version);
+        }
+        return bytes;
+    }
+
+    // The whole response as UTF-8 bytes, END marker included
+    public byte[] process(String line, String clientInfo) {
+        Response response = new Response();
+        Command command = parse(line, response.out());
+        if (command == null) {
+            return response.bytes();
+        }
+        long start = System.nanoTime();
+        String key = renderedKey(command);
+        long version = retriever.dataVersion();
+        byte[] rendered = findRendered(key, command, version, start);
+        if (rendered != null) {
+            return rendered;
+        }
+        Metrics.clearUpstreamMark();
+        boolean found = execute(command, response.out(), clientInfo);
+        return finish(command, key, found, version, start, response);
+    }
+
+    // Answers the command only if no USDA call is needed and returns null otherwise. A cache read that fails is
+    // left to process, which reports it.
+    public byte[] processFromCache(String line, String clientInfo) {
+        Response response = new Response();
+        PrintWriter out = response.out();
+        Command command = parse(line, out);
+        if (command == null) {
+            return response.bytes();
+        }
+        long start = System.nanoTime();
+        String key = renderedKey(command);
+        long version = retriever.dataVersion();
+        byte[] rendered = findRendered(key, command, version, start);
+        if (rendered != null) {
+            return rendered;
+        }
+        Metrics.clearUpstreamMark();
+        boolean found = false;
+        try {
+            switch (command.type()) {
+                case GET_FOOD -> {
+                    List<FoodDetails> foods = retriever.findCachedFoodByKeywords(command.keywords());
+                    if (foods != null) {
+                        found = printFoods(foods, out);
+                    } else if (retriever.isKnownMissingKeywords(command.keywords())) {
+                        printNoFoods(command, out);
+                    } else {
+                        return null;
+                    }
+                }
+                case GET_FOOD_REPORT -> {
+                    FoodReport foodReport = retriever.findCachedFoodReport(command.id());
+                    if (foodReport != null) {
+                        found = printReport(foodReport, out);
+                    } else if (retriever.isKnownMissingReport(command.id())) {
+                        printNoReport(command, out);
+                    } else {
+                        return null;
+                    }
+                }
+                case GET_FOOD_BY_BARCODE -> {
+                    FoodDetails foodDetails = retriever.findCachedFoodByBarcode(command.barcode());
+                    if (foodDetails != null) {
+                        found = printBarcodeFood(foodDetails, out);
+                    } else if (retriever.isKnownMissingBarcode(command.barcode())) {
+                        printNoBarcode(command, out);
+                    } else {
+                        return null;
+                    }
+                }
+                // LaneScheduler fans batches out, a batch that still gets here may need USDA
+                case GET_FOOD_REPORT_BATCH, GET_FOOD_BY_BARCODE_BATCH -> {
+                    return null;
+                }
+                // Stats need no data at all
+                case STATS -> found = execute(command, out, clientInfo);
+            }
+        } catch (FoodRetrievalException e) {
+            return null;
+        }
+        return finish(command, key, found, version, start, response);
+    }
+}
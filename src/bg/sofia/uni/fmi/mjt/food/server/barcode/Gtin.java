@@ -0,0 +1,67 @@
+package bg.sofia.uni.fmi.mjt.food.server.barcode;
+
+// GTIN-8, UPC-A, EAN-13 and GTIN-14 are the same number with a different count of leading zeros, so every barcode
+// is padded to the 14 digits of GTIN-14 and kept as a long. The last digit is the GS1 check digit, a barcode whose
+// check digit does not match is a bad scan or a typo and is rejected before any lookup.
+public final class Gtin {
+    public static final int LENGTH = 14;
+    public static final long INVALID = -1;
+    private static final int RADIX = 10;
+    private static final int ODD_WEIGHT = 3;
+    private static final int UPC_A_LENGTH = 12;
+
+    private Gtin() {
+    }
+
+    // INVALID unless the barcode is 1 to 14 digits ending with the right check digit
+    public static long parse(String barcode) {
+        if (barcode == null || barcode.isEmpty() || barcode.length() > LENGTH) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < barcode.length(); i++) {
+            char digit = barcode.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return INVALID;
+            }
+            value = value * RADIX + (digit - '0');
+        }
+        return checkDigit(value / RADIX) == value % RADIX ? value : INVALID;
+    }
+
+    // Weights alternate 3, 1, 3, ... starting from the digit next to the check digit
+    private static long checkDigit(long payload) {
+        long sum = 0;
+        boolean odd = true;
+        for (long rest = payload; rest > 0; rest /= RADIX) {
+            sum += odd ? ODD_WEIGHT * (rest % RADIX) : rest % RADIX;
+            odd = !odd;
+        }
+        return (RADIX - sum % RADIX) % RADIX;
+    }
+
+    public static boolean isValid(String barcode) {
+        return parse(barcode) != INVALID;
+    }
+
+    public static String format(long gtin) {
+        if (gtin < 0) {
+            throw new IllegalArgumentException("GTIN cannot be negative");
+        }
+        String digits = Long.toString(gtin);
+        return "0".repeat(Math.max(0, LENGTH - digits.length())) + digits;
+    }
+
+    // The 12 digit UPC-A form when the product has one and the shortest of EAN-13 and GTIN-14 otherwise, the way
+    // USDA usually writes gtinUpc
+    public static String formatRetail(long gtin) {
+        String digits = format(gtin).replaceFirst("^0+", "");
+        return "0".repeat(Math.max(0, UPC_A_LENGTH - digits.length())) + digits;
+    }
+
+    // The 14 digit form every variant of the barcode shares, null for an invalid barcode
+    public static String canonical(String barcode) {
+        long gtin = parse(barcode);
+        return gtin == INVALID ? null : format(gtin);
+    }
+}
@@ -1,88 +1,175 @@
 package bg.sofia.uni.fmi.mjt.food.server.cache;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import bg.sofia.uni.fmi.mjt.food.server.barcode.Gtin;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheNamespace;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
 
-public class Cache {
-    private final Path root;
-    private final Path reportsDir;
-    private final Path barcodesDir;
-    private final Path keywordsDir;
-    private static final String JSON_EXTENSION = ".json";
+// Values are stored as {"savedAt":<millis>,"value":<json>}. Entries written before the time was kept have no
+// envelope and count as saved when the cache was loaded, so an old cache is not fetched again all at once.
+// Barcodes are stored under their 14 digit GTIN and found through a GtinIndex built from the stored keys at startup,
+// so UPC-A, EAN-13 and GTIN-14 spellings of one product share an entry and a miss needs no store read. Entries saved
+// under another spelling before are indexed too, barcodes that are not valid GTINs keep their own key.
+public class Cache implements Closeable {
+    private static final String SAVED_AT_PREFIX = "{\"savedAt\":";
+    private static final String VALUE_FIELD = ",\"value\":";
     private static Cache instance;
+    private final CacheStore store;
+    private final Clock clock;
+    private final GtinIndex barcodeIndex;
+    private final long loadedAtMillis;
 
-    private Cache(Path rootPath) throws IOException {
-        this.root = rootPath;
-        this.reportsDir = root.resolve("reports");
-        this.barcodesDir = root.resolve("barcodes");
-        this.keywordsDir = root.resolve("keywords");
-        Files.createDirectories(root);
-        Files.createDirectories(reportsDir);
-        Files.createDirectories(barcodesDir);
-        Files.createDirectories(keywordsDir);
+    private Cache(CacheStore store) throws IOException {
+        this(store, Clock.systemUTC());
+    }
 
+    private Cache(CacheStore store, Clock clock) throws IOException {
+        this.store = store;
+        this.clock = clock;
+        this.loadedAtMillis = clock.millis();
+        this.barcodeIndex = indexBarcodes(store.keys(CacheNamespace.BARCODES));
+    }
+
+    // When a product is stored under several spellings the canonical one wins, otherwise the first one listed
+    private static GtinIndex indexBarcodes(List<String> keys) {
+        GtinIndex index = new GtinIndex(keys.size());
+        for (String key : keys) {
+            long gtin = Gtin.parse(key);
+            if (gtin != Gtin.INVALID && (index.get(gtin) == null || key.equals(Gtin.format(gtin)))) {
+                index.put(gtin, key);
+            }
+        }
+        return index;
     }
 
     public static synchronized Cache getInstance() throws IOException {
         if (instance == null) {
-            instance = new Cache(Path.of("cache"));
+            instance = new Cache(new FileCacheStore(Path.of("cache")));
         }
         return instance;
     }
 
+    public static Cache withStore(CacheStore store) throws IOException {
+        return withStore(store, Clock.systemUTC());
+    }
+
+    public static Cache withStore(CacheStore store, Clock clock) throws IOException {
+        Validator.validateNotNull(store, "Cache store cannot be null");
+        Validator.validateNotNull(clock, "Clock cannot be null");
+        return new Cache(store, clock);
+    }
+
     // Using this method only for testing purposes
     static Cache createWithCustomPath(Path rootPath) throws IOException {
-        return new Cache(rootPath);
+        return new Cache(new FileCacheStore(rootPath));
     }
 
-    public synchronized void saveReport(int id, String json) throws IOException {
-        Path reportPath = reportsDir.resolve(id + JSON_EXTENSION);
-        try (Writer writer = new BufferedWriter(new FileWriter(reportPath.toFile()))) {
-            writer.write(json);
-        }
+    private void write(CacheNamespace namespace, String key, String json) throws IOException {
+        store.write(namespace, key, SAVED_AT_PREFIX + clock.millis() + VALUE_FIELD + json + "}");
     }
 
-    public synchronized String loadReport(int id) throws IOException {
-        Path reportPath = reportsDir.resolve(id + JSON_EXTENSION);
-        if (!Files.exists(reportPath)) {
+    // The value is cut out of the envelope as it is, without parsing it
+    private CacheEntry<String> read(CacheNamespace namespace, String key) throws IOException {
+        String stored = store.read(namespace, key);
+        if (stored == null) {
             return null;
         }
-        return Files.readString(reportPath);
+        int valueStart = stored.indexOf(VALUE_FIELD);
+        if (!stored.startsWith(SAVED_AT_PREFIX) || valueStart < 0 || !stored.endsWith("}")) {
+            return new CacheEntry<>(stored, loadedAtMillis);
+        }
+        try {
+            long savedAt = Long.parseLong(stored.substring(SAVED_AT_PREFIX.length(), valueStart));
+            return new CacheEntry<>(stored.substring(valueStart + VALUE_FIELD.length(), stored.length() - 1),
+                savedAt);
+        } catch (NumberFormatException e) {
+            return new CacheEntry<>(stored, loadedAtMillis);
+        }
     }
 
-    public synchronized void saveByBarcode(String barcode, String json) throws IOException {
-        Path barcodePath = barcodesDir.resolve(barcode + JSON_EXTENSION);
-        try (Writer writer = new BufferedWriter(new FileWriter(barcodePath.toFile()))) {
-            writer.write(json);
-        }
+    private static String json(CacheEntry<String> entry) {
+        return entry == null ? null : entry.value();
     }
 
-    public synchronized String loadBarcode(String barcode) throws IOException {
-        Path barcodePath = barcodesDir.resolve(barcode + JSON_EXTENSION);
-        if (!Files.exists(barcodePath)) {
-            return null;
+    private static String keywordsKey(String keywords) {
+        return keywords.replace(" ", "_");
+    }
+
+    public void saveReport(int id, String json) throws IOException {
+        write(CacheNamespace.REPORTS, String.valueOf(id), json);
+    }
+
+    public String loadReport(int id) throws IOException {
+        return json(loadReportEntry(id));
+    }
+
+    public CacheEntry<String> loadReportEntry(int id) throws IOException {
+        return read(CacheNamespace.REPORTS, String.valueOf(id));
+    }
+
+    public void saveByBarcode(String barcode, String json) throws IOException {
+        long gtin = Gtin.parse(barcode);
+        if (gtin == Gtin.INVALID) {
+            write(CacheNamespace.BARCODES, barcode, json);
+            return;
         }
-        return Files.readString(barcodePath);
+        String key = Gtin.format(gtin);
+        write(CacheNamespace.BARCODES, key, json);
+        barcodeIndex.put(gtin, key);
     }
 
-    public synchronized void saveByKeywords(String keywords, String json) throws IOException {
-        String key = keywords.replace(" ", "_");
-        Path keywordsPath = keywordsDir.resolve(key + JSON_EXTENSION);
-        try (Writer writer = new BufferedWriter(new FileWriter(keywordsPath.toFile()))) {
-            writer.write(json);
+    public String loadBarcode(String barcode) throws IOException {
+        return json(loadBarcodeEntry(barcode));
+    }
+
+    public CacheEntry<String> loadBarcodeEntry(String barcode) throws IOException {
+        long gtin = Gtin.parse(barcode);
+        if (gtin == Gtin.INVALID) {
+            return read(CacheNamespace.BARCODES, barcode);
         }
+        String key = barcodeIndex.get(gtin);
+        return key == null ? null : read(CacheNamespace.BARCODES, key);
     }
 
-    public synchronized String loadByKeywords(String keywords) throws IOException {
-        String sanitizedKey = keywords.replace(" ", "_");
-        Path keywordsPath = keywordsDir.resolve(sanitizedKey + JSON_EXTENSION);
-        if (!Files.exists(keywordsPath)) {
-            return null;
+    public int indexedBarcodeCount() {
+        return barcodeIndex.size();
+    }
+
+    public void saveByKeywords(String keywords, String json) throws IOException {
+        write(CacheNamespace.KEYWORDS, keywordsKey(keywords), json);
+    }
+
+    public String loadByKeywords(String keywords) throws IOException {
+        return json(loadByKeywordsEntry(keywords));
+    }
+
+    public CacheEntry<String> loadByKeywordsEntry(String keywords) throws IOException {
+        return read(CacheNamespace.KEYWORDS, keywordsKey(keywords));
+    }
+
+    // Every stored value of the namespace, so in-memory indexes can be rebuilt when the server starts
+    public List<String> loadAll(CacheNamespace namespace) throws IOException {
+        Validator.validateNotNull(namespace, "Namespace cannot be null");
+        List<String> values = new ArrayList<>();
+        for (String key : store.keys(namespace)) {
+            CacheEntry<String> entry = read(namespace, key);
+            if (entry != null) {
+                values.add(entry.value());
+            }
         }
-        return Files.readString(keywordsPath);
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
     }
 }
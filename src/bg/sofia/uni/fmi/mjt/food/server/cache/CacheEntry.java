@@ -0,0 +1,13 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import java.time.Duration;
+
+// A cached value and the wall clock time it was fetched from USDA. A stale value is still served while it is
+// fetched again in the background.
+public record CacheEntry<T>(T value, long savedAtMillis) {
+
+    // A zero time to live keeps values fresh forever
+    public boolean isStale(Duration ttl, long nowMillis) {
+        return !ttl.isZero() && nowMillis - savedAtMillis >= ttl.toMillis();
+    }
+}
@@ -0,0 +1,15 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+public record CacheStats(long hits, long misses, long evictions, int size) {
+
+    public double hitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.2f",
+            hits, misses, evictions, size, hitRate());
+    }
+}
@@ -0,0 +1,112 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Open-addressing table from a GTIN, as a primitive long, to the key its food is stored under. Lookups need no
+// boxing and no probe of the store, a GTIN that is not in the table is not cached. Linear probing, the table
+// doubles when it gets half full.
+public class GtinIndex {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.5;
+    private static final long EMPTY = -1;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long[] gtins;
+    private String[] keys;
+    private int size;
+
+    public GtinIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public GtinIndex(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("Expected size cannot be negative");
+        }
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    private static int tableSizeFor(int entries) {
+        int needed = (int) Math.ceil(Math.max(1, entries) / MAX_LOAD_FACTOR);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        gtins = new long[capacity];
+        keys = new String[capacity];
+        Arrays.fill(gtins, EMPTY);
+    }
+
+    // Spreads the low digits, which differ the least between products of one manufacturer
+    private static int slotFor(long gtin, int mask) {
+        long hash = gtin * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // Returns the slot holding the GTIN or the empty slot where it belongs
+    private int findSlot(long gtin) {
+        int mask = gtins.length - 1;
+        int slot = slotFor(gtin, mask);
+        while (gtins[slot] != EMPTY && gtins[slot] != gtin) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public String get(long gtin) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(gtin);
+            return gtins[slot] == EMPTY ? null : keys[slot];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(long gtin, String key) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        if (gtin < 0) {
+            throw new IllegalArgumentException("GTIN cannot be negative");
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(gtin);
+            if (gtins[slot] == EMPTY) {
+                if (size + 1 > gtins.length * MAX_LOAD_FACTOR) {
+                    grow();
+                    slot = findSlot(gtin);
+                }
+                size++;
+                gtins[slot] = gtin;
+            }
+            keys[slot] = key;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void grow() {
+        long[] oldGtins = gtins;
+        String[] oldKeys = keys;
+        allocate(oldGtins.length * 2);
+        for (int i = 0; i < oldGtins.length; i++) {
+            if (oldGtins[i] != EMPTY) {
+                int slot = findSlot(oldGtins[i]);
+                gtins[slot] = oldGtins[i];
+                keys[slot] = oldKeys[i];
+            }
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Size-bounded segmented LRU: new entries enter a probation segment and move to the protected one on their
+// second hit, so a burst of one-off lookups cannot flush the hot entries. Keys are spread over independently
+// locked shards.
+public class MemoryCache<K, V> {
+    private static final int MAX_SHARDS = 16;
+    private static final int MIN_ENTRIES_PER_SHARD = 64;
+    private static final double PROTECTED_RATIO = 0.8;
+    private final Shard<K, V>[] shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public MemoryCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity should be positive");
+        }
+        int shardCount = Math.max(1, Math.min(MAX_SHARDS, capacity / MIN_ENTRIES_PER_SHARD));
+        this.shards = (Shard<K, V>[]) new Shard<?, ?>[shardCount];
+        int perShard = capacity / shardCount;
+        for (int i = 0; i < shardCount; i++) {
+            int shardCapacity = i < capacity % shardCount ? perShard + 1 : perShard;
+            shards[i] = new Shard<>(shardCapacity, evictions);
+        }
+    }
+
+    private Shard<K, V> shardFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return shards[Math.floorMod(hash, shards.length)];
+    }
+
+    public V get(K key) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        V value = shardFor(key).get(key);
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    // Returns the value the key had before, without counting a hit or a miss or promoting the entry
+    public V put(K key, V value) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        Validator.validateNotNull(value, "Value cannot be null");
+        return shardFor(key).put(key, value);
+    }
+
+    public void invalidate(K key) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        shardFor(key).remove(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard<K, V> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), size());
+    }
+
+    private static class Shard<K, V> {
+        private final int capacity;
+        private final int protectedCapacity;
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private final Lock lock = new ReentrantLock();
+        private final LongAdder evictions;
+
+        Shard(int capacity, LongAdder evictions) {
+            this.capacity = capacity;
+            this.evictions = evictions;
+            this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+        }
+
+        V get(K key) {
+            lock.lock();
+            try {
+                V value = protectedSegment.get(key);
+                if (value != null) {
+                    return value;
+                }
+                value = probation.remove(key);
+                if (value != null) {
+                    promote(key, value);
+                }
+                return value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void promote(K key, V value) {
+            protectedSegment.put(key, value);
+            if (protectedSegment.size() > protectedCapacity) {
+                Iterator<Map.Entry<K, V>> eldest = protectedSegment.entrySet().iterator();
+                Map.Entry<K, V> demoted = eldest.next();
+                eldest.remove();
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+        }
+
+        V put(K key, V value) {
+            lock.lock();
+            try {
+                if (protectedSegment.containsKey(key)) {
+                    return protectedSegment.put(key, value);
+                }
+                V previous = probation.put(key, value);
+                while (probation.size() + protectedSegment.size() > capacity) {
+                    LinkedHashMap<K, V> victims = probation.isEmpty() ? protectedSegment : probation;
+                    Iterator<K> eldest = victims.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                    evictions.increment();
+                }
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            lock.lock();
+            try {
+                probation.remove(key);
+                protectedSegment.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return probation.size() + protectedSegment.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+// Keys that are known to have no food, remembered for a short time so that repeated misses are answered without
+// asking USDA or the cache store again. Bounded like MemoryCache, an expired key is dropped on its next lookup.
+// A zero time to live turns it off.
+public class NegativeCache<K> {
+    private final MemoryCache<K, Long> expiries;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    public NegativeCache(int capacity, Duration ttl) {
+        this(capacity, ttl, System::nanoTime);
+    }
+
+    NegativeCache(int capacity, Duration ttl, LongSupplier nanoClock) {
+        Validator.validateNotNull(ttl, "Time to live cannot be null");
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("Time to live cannot be negative");
+        }
+        this.expiries = new MemoryCache<>(capacity);
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public boolean contains(K key) {
+        Long expiresAt = expiries.get(key);
+        if (expiresAt == null) {
+            return false;
+        }
+        if (nanoClock.getAsLong() - expiresAt >= 0) {
+            expiries.invalidate(key);
+            return false;
+        }
+        return true;
+    }
+
+    public void put(K key) {
+        if (ttlNanos > 0) {
+            expiries.put(key, nanoClock.getAsLong() + ttlNanos);
+        }
+    }
+
+    // Called when food for the key shows up, so it is served before the miss expires
+    public void invalidate(K key) {
+        expiries.invalidate(key);
+    }
+
+    public CacheStats stats() {
+        return expiries.stats();
+    }
+}
@@ -0,0 +1,66 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+// The final UTF-8 bytes of found results, END included, keyed by the command that asked for them. A hit goes to
+// the socket as it is, without loading, filtering or formatting the food again. The arrays are shared between
+// requests and never modified. Each response keeps the data version it was rendered from and is dropped once the
+// data changes or it gets older than the max age, so stale food still goes back to the retriever to be refreshed.
+public class RenderedResponseCache {
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int MAX_RESPONSE_BYTES = 64 * 1024;
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofSeconds(60);
+    private final MemoryCache<String, Rendered> responses;
+    private final long maxAgeNanos;
+    private final LongSupplier nanoClock;
+
+    private record Rendered(byte[] bytes, long version, long renderedAtNanos) {
+    }
+
+    public RenderedResponseCache(int capacity) {
+        this(capacity, Duration.ZERO);
+    }
+
+    // A zero max age keeps responses until the data version changes
+    public RenderedResponseCache(int capacity, Duration maxAge) {
+        this(capacity, maxAge, System::nanoTime);
+    }
+
+    RenderedResponseCache(int capacity, Duration maxAge, LongSupplier nanoClock) {
+        Validator.validateNotNull(maxAge, "Max age cannot be null");
+        if (maxAge.isNegative()) {
+            throw new IllegalArgumentException("Max age cannot be negative");
+        }
+        this.responses = new MemoryCache<>(capacity);
+        this.maxAgeNanos = maxAge.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public byte[] get(String key, long currentVersion) {
+        Rendered rendered = responses.get(key);
+        if (rendered == null) {
+            return null;
+        }
+        if (rendered.version() != currentVersion
+            || (maxAgeNanos > 0 && nanoClock.getAsLong() - rendered.renderedAtNanos() >= maxAgeNanos)) {
+            responses.invalidate(key);
+            return null;
+        }
+        return rendered.bytes();
+    }
+
+    // Huge search results are rendered again instead of filling the cache
+    public void put(String key, byte[] response, long version) {
+        Validator.validateNotNull(response, "Response cannot be null");
+        if (response.length <= MAX_RESPONSE_BYTES) {
+            responses.put(key, new Rendered(response, version, nanoClock.getAsLong()));
+        }
+    }
+
+    public CacheStats stats() {
+        return responses.stats();
+    }
+}
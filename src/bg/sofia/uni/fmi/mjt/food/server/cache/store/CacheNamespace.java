@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+public enum CacheNamespace {
+    REPORTS("reports"),
+    BARCODES("barcodes"),
+    KEYWORDS("keywords");
+    private final String value;
+
+    CacheNamespace(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
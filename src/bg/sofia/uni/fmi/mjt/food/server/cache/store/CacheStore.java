@@ -0,0 +1,20 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+public interface CacheStore extends Closeable {
+
+    void write(CacheNamespace namespace, String key, String value) throws IOException;
+
+    // Returns null when nothing is stored under the key
+    String read(CacheNamespace namespace, String key) throws IOException;
+
+    // Every key stored in the namespace, listed once at startup to build the in-memory indexes
+    List<String> keys(CacheNamespace namespace) throws IOException;
+
+    // Forces everything written so far to disk, stores that do not buffer have nothing to do
+    default void sync() throws IOException {
+    }
+}
@@ -0,0 +1,130 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One json file per key under <root>/<namespace>/
+public class FileCacheStore implements CacheStore {
+    private static final String JSON_EXTENSION = ".json";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final int LOCK_STRIPES = 64;
+    private final Map<CacheNamespace, Path> directories = new EnumMap<>(CacheNamespace.class);
+    // Writers of the same file are serialized, readers take no lock because files are replaced atomically
+    private final Lock[] writeLocks = new Lock[LOCK_STRIPES];
+    // Files replaced since the last sync
+    private final Set<Path> unsynced = ConcurrentHashMap.newKeySet();
+
+    public FileCacheStore(Path root) throws IOException {
+        Files.createDirectories(root);
+        for (CacheNamespace namespace : CacheNamespace.values()) {
+            Path directory = root.resolve(namespace.getValue());
+            Files.createDirectories(directory);
+            directories.put(namespace, directory);
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    private Path pathFor(CacheNamespace namespace, String key) {
+        return directories.get(namespace).resolve(key + JSON_EXTENSION);
+    }
+
+    private Lock lockFor(Path path) {
+        return writeLocks[Math.floorMod(path.hashCode(), LOCK_STRIPES)];
+    }
+
+    @Override
+    public void write(CacheNamespace namespace, String key, String value) throws IOException {
+        Path target = pathFor(namespace, key);
+        Lock lock = lockFor(target);
+        lock.lock();
+        try {
+            Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), TEMP_EXTENSION);
+            try {
+                Files.writeString(temp, value);
+                try {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                unsynced.add(target);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String read(CacheNamespace namespace, String key) throws IOException {
+        try {
+            return Files.readString(pathFor(namespace, key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    // Temp files of writes in progress are left out
+    @Override
+    public List<String> keys(CacheNamespace namespace) throws IOException {
+        List<String> keys = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directories.get(namespace), "*" + JSON_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                keys.add(name.substring(0, name.length() - JSON_EXTENSION.length()));
+            }
+        }
+        return keys;
+    }
+
+    // One force per file replaced since the last sync, then one per directory that got new entries
+    @Override
+    public void sync() throws IOException {
+        Set<Path> changedDirectories = new HashSet<>();
+        for (Iterator<Path> iterator = unsynced.iterator(); iterator.hasNext(); ) {
+            Path path = iterator.next();
+            iterator.remove();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            changedDirectories.add(path.getParent());
+        }
+        for (Path directory : changedDirectories) {
+            forceDirectory(directory);
+        }
+    }
+
+    // Not every platform can open a directory, the renames are then as durable as the file system makes them
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nothing more can be done here
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,677 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Appends entries to segment files and keeps key -> (segment, offset, length) in a memory-mapped hash table.
+// Record: crc32 | namespace | key length | value length | stored at | key | value
+// Index: 64 byte header followed by open-addressing slots of hash | offset | segment | length
+public final class LogStructuredCacheStore implements CacheStore {
+    public static final long DEFAULT_SEGMENT_BYTES = 16L * 1024 * 1024;
+    public static final int DEFAULT_INDEX_CAPACITY = 1 << 16;
+    public static final Duration DEFAULT_COMPACTION_INTERVAL = Duration.ofMinutes(1);
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_FILE = "index.bin";
+    private static final int INDEX_MAGIC = 0x46414958;
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_BYTES = 64;
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int CAPACITY_POSITION = 8;
+    private static final int SIZE_POSITION = 12;
+    private static final int CLEAN_POSITION = 16;
+    private static final int SLOT_BYTES = 24;
+    private static final int SLOT_OFFSET_POSITION = 8;
+    private static final int SLOT_SEGMENT_POSITION = 16;
+    private static final int SLOT_LENGTH_POSITION = 20;
+    private static final int RECORD_HEADER_BYTES = 21;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long COMPACTION_SHUTDOWN_SECONDS = 10;
+    private static final Logger LOGGER = Logger.getInstance();
+    private final Path root;
+    private final long maxSegmentBytes;
+    // Reads share the lock, appends, index updates and segment deletion take it exclusively
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> liveBytes = new HashMap<>();
+    private final ScheduledExecutorService compactor;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    private int activeSegment;
+    private long activeSize;
+    private boolean closed;
+
+    private record Record(CacheNamespace namespace, String key, String value, int length) {
+    }
+
+    public LogStructuredCacheStore(Path root) throws IOException {
+        this(root, DEFAULT_SEGMENT_BYTES, DEFAULT_INDEX_CAPACITY, DEFAULT_COMPACTION_INTERVAL);
+    }
+
+    // A zero compaction interval disables background compaction, compact() can still be called directly
+    LogStructuredCacheStore(Path root, long maxSegmentBytes, int initialCapacity, Duration compactionInterval)
+        throws IOException {
+        Validator.validateNotNull(root, "Cache store root cannot be null");
+        Validator.validateNotNull(compactionInterval, "Compaction interval cannot be null");
+        if (maxSegmentBytes <= RECORD_HEADER_BYTES || initialCapacity <= 0) {
+            throw new IllegalArgumentException("Segment size and index capacity should be positive");
+        }
+        this.root = root;
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(root);
+        openSegments();
+        if (!mapExistingIndex()) {
+            rebuildIndex(initialCapacity);
+        }
+        markIndex(false);
+        computeLiveBytes();
+        this.compactor = startCompactor(compactionInterval);
+    }
+
+    private ScheduledExecutorService startCompactor(Duration interval) {
+        if (interval.isZero()) {
+            return null;
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.log("Cache compaction failed", e);
+            }
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        return executor;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private static long hash(CacheNamespace namespace, byte[] key) {
+        long hash = FNV_OFFSET_BASIS ^ namespace.ordinal();
+        hash *= FNV_PRIME;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        // Zero marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    private Path segmentPath(int id) {
+        return root.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static int segmentId(String name) {
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private void openSegments() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(root)) {
+            files.map(Path::getFileName)
+                .map(Path::toString)
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .forEach(name -> ids.add(segmentId(name)));
+        }
+        for (int id : ids) {
+            segments.put(id, FileChannel.open(segmentPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        activeSegment = ids.stream().mapToInt(Integer::intValue).max().orElse(1);
+        if (!segments.containsKey(activeSegment)) {
+            segments.put(activeSegment, openNewSegment(activeSegment));
+        }
+        activeSize = segments.get(activeSegment).size();
+    }
+
+    private FileChannel openNewSegment(int id) throws IOException {
+        return FileChannel.open(segmentPath(id), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    }
+
+    // The index is trusted only when the previous process closed it cleanly, otherwise it is rebuilt from segments
+    private boolean mapExistingIndex() throws IOException {
+        Path indexPath = root.resolve(INDEX_FILE);
+        if (!Files.exists(indexPath) || Files.size(indexPath) < INDEX_HEADER_BYTES) {
+            return false;
+        }
+        FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Read rather than mapped, a rejected index is rebuilt in the same file and must not stay mapped
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_BYTES);
+        readFully(channel, header, 0);
+        int storedCapacity = header.getInt(CAPACITY_POSITION);
+        boolean valid = header.getInt(MAGIC_POSITION) == INDEX_MAGIC
+            && header.getInt(VERSION_POSITION) == INDEX_VERSION
+            && header.getInt(CLEAN_POSITION) == 1
+            && storedCapacity > 0 && Integer.bitCount(storedCapacity) == 1
+            && channel.size() == INDEX_HEADER_BYTES + (long) storedCapacity * SLOT_BYTES;
+        if (!valid) {
+            channel.close();
+            return false;
+        }
+        indexChannel = channel;
+        index = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        capacity = storedCapacity;
+        size = index.getInt(SIZE_POSITION);
+        return true;
+    }
+
+    // Replays the segments in order, the last record of a key wins and a torn tail of the active segment is cut off
+    // The index is rebuilt in index.bin itself, its clean flag stays unset until close, so a crash rebuilds it again
+    private void rebuildIndex(int initialCapacity) throws IOException {
+        indexChannel = FileChannel.open(root.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        indexChannel.truncate(0);
+        capacity = nextPowerOfTwo(initialCapacity);
+        size = 0;
+        index = mapIndex(capacity);
+        index.putInt(MAGIC_POSITION, INDEX_MAGIC);
+        index.putInt(VERSION_POSITION, INDEX_VERSION);
+        int[] ids = segments.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        for (int id : ids) {
+            FileChannel channel = segments.get(id);
+            long offset = 0;
+            long end = channel.size();
+            while (offset < end) {
+                Record record = readRecord(channel, offset);
+                if (record == null) {
+                    break;
+                }
+                byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+                long keyHash = hash(record.namespace(), key);
+                putSlot(findSlot(record.namespace(), key, keyHash), keyHash, id, offset, record.length());
+                offset += record.length();
+                if (size > capacity * MAX_LOAD_FACTOR) {
+                    grow();
+                }
+            }
+            if (offset < end && id == activeSegment) {
+                channel.truncate(offset);
+                activeSize = offset;
+            }
+        }
+        index.putInt(SIZE_POSITION, size);
+    }
+
+    private MappedByteBuffer mapIndex(int slots) throws IOException {
+        return indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + (long) slots * SLOT_BYTES);
+    }
+
+    // Grows index.bin in place: the slots are copied out, the file is mapped twice as large and they are put back.
+    // The file is never replaced or truncated while a mapping of it is alive, which Windows would refuse.
+    private void grow() throws IOException {
+        int oldCapacity = capacity;
+        ByteBuffer old = ByteBuffer.allocate(oldCapacity * SLOT_BYTES);
+        old.put(0, index, INDEX_HEADER_BYTES, old.capacity());
+        capacity = oldCapacity * 2;
+        index = mapIndex(capacity);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            index.putLong(INDEX_HEADER_BYTES + slot * SLOT_BYTES, 0);
+        }
+        int mask = capacity - 1;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int position = slot * SLOT_BYTES;
+            long slotHash = old.getLong(position);
+            if (slotHash == 0) {
+                continue;
+            }
+            int target = (int) (slotHash & mask);
+            while (index.getLong(INDEX_HEADER_BYTES + target * SLOT_BYTES) != 0) {
+                target = (target + 1) & mask;
+            }
+            int targetPosition = INDEX_HEADER_BYTES + target * SLOT_BYTES;
+            index.putLong(targetPosition + SLOT_OFFSET_POSITION, old.getLong(position + SLOT_OFFSET_POSITION));
+            index.putInt(targetPosition + SLOT_SEGMENT_POSITION, old.getInt(position + SLOT_SEGMENT_POSITION));
+            index.putInt(targetPosition + SLOT_LENGTH_POSITION, old.getInt(position + SLOT_LENGTH_POSITION));
+            index.putLong(targetPosition, slotHash);
+        }
+        index.putInt(CAPACITY_POSITION, capacity);
+    }
+
+    private void markIndex(boolean clean) {
+        index.putInt(CLEAN_POSITION, clean ? 1 : 0);
+        index.force();
+    }
+
+    private void computeLiveBytes() {
+        for (int id : segments.keySet()) {
+            liveBytes.put(id, 0L);
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+            if (index.getLong(position) != 0) {
+                liveBytes.merge(index.getInt(position + SLOT_SEGMENT_POSITION),
+                    (long) index.getInt(position + SLOT_LENGTH_POSITION), Long::sum);
+            }
+        }
+    }
+
+    // Returns the slot holding the key or the empty slot where it should be inserted
+    private int findSlot(CacheNamespace namespace, byte[] key, long keyHash) throws IOException {
+        int mask = capacity - 1;
+        int slot = (int) (keyHash & mask);
+        while (true) {
+            int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+            long slotHash = index.getLong(position);
+            if (slotHash == 0 || slotHash == keyHash && keyMatches(position, namespace, key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean keyMatches(int position, CacheNamespace namespace, byte[] key) throws IOException {
+        FileChannel channel = segmentChannel(index.getInt(position + SLOT_SEGMENT_POSITION));
+        long offset = index.getLong(position + SLOT_OFFSET_POSITION);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES + key.length);
+        readFully(channel, header, offset);
+        if (header.get(4) != namespace.ordinal() || header.getInt(5) != key.length) {
+            return false;
+        }
+        byte[] stored = new byte[key.length];
+        header.get(RECORD_HEADER_BYTES, stored);
+        return Arrays.equals(stored, key);
+    }
+
+    private void putSlot(int slot, long keyHash, int segment, long offset, int length) {
+        int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+        if (index.getLong(position) == 0) {
+            size++;
+        }
+        index.putLong(position + SLOT_OFFSET_POSITION, offset);
+        index.putInt(position + SLOT_SEGMENT_POSITION, segment);
+        index.putInt(position + SLOT_LENGTH_POSITION, length);
+        index.putLong(position, keyHash);
+    }
+
+    // An interrupted reader closes the shared channel, so it is reopened for everybody else
+    private FileChannel segmentChannel(int id) throws IOException {
+        FileChannel channel = segments.get(id);
+        if (channel.isOpen()) {
+            return channel;
+        }
+        try {
+            return segments.compute(id, (segment, current) -> {
+                if (current.isOpen()) {
+                    return current;
+                }
+                try {
+                    return FileChannel.open(segmentPath(segment), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer encode(CacheNamespace namespace, byte[] key, byte[] value) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_BYTES + key.length + value.length);
+        buffer.putInt(0);
+        buffer.put((byte) namespace.ordinal());
+        buffer.putInt(key.length);
+        buffer.putInt(value.length);
+        buffer.putLong(System.currentTimeMillis());
+        buffer.put(key);
+        buffer.put(value);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), Integer.BYTES, buffer.capacity() - Integer.BYTES);
+        buffer.putInt(0, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    // Returns null for a truncated or corrupted record
+    private static Record readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        readFully(channel, header, offset);
+        if (header.hasRemaining()) {
+            return null;
+        }
+        byte namespace = header.get(4);
+        int keyLength = header.getInt(5);
+        int valueLength = header.getInt(9);
+        if (namespace < 0 || namespace >= CacheNamespace.values().length || keyLength < 0 || valueLength < 0
+            || offset + RECORD_HEADER_BYTES + keyLength + valueLength > channel.size()) {
+            return null;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + keyLength + valueLength);
+        readFully(channel, record, offset);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), Integer.BYTES, record.capacity() - Integer.BYTES);
+        if (record.getInt(0) != (int) crc.getValue()) {
+            return null;
+        }
+        byte[] bytes = record.array();
+        return new Record(CacheNamespace.values()[namespace],
+            new String(bytes, RECORD_HEADER_BYTES, keyLength, StandardCharsets.UTF_8),
+            new String(bytes, RECORD_HEADER_BYTES + keyLength, valueLength, StandardCharsets.UTF_8),
+            record.capacity());
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Cache store is closed");
+        }
+    }
+
+    private long append(ByteBuffer record) throws IOException {
+        int length = record.remaining();
+        if (activeSize > 0 && activeSize + length > maxSegmentBytes) {
+            activeSegment++;
+            segments.put(activeSegment, openNewSegment(activeSegment));
+            liveBytes.put(activeSegment, 0L);
+            activeSize = 0;
+        }
+        long offset = activeSize;
+        writeFully(segmentChannel(activeSegment), record, offset);
+        activeSize += length;
+        return offset;
+    }
+
+    private void updateIndex(CacheNamespace namespace, byte[] key, long offset, int length) throws IOException {
+        long keyHash = hash(namespace, key);
+        int slot = findSlot(namespace, key, keyHash);
+        int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+        if (index.getLong(position) != 0) {
+            liveBytes.merge(index.getInt(position + SLOT_SEGMENT_POSITION),
+                (long) -index.getInt(position + SLOT_LENGTH_POSITION), Long::sum);
+        }
+        putSlot(slot, keyHash, activeSegment, offset, length);
+        liveBytes.merge(activeSegment, (long) length, Long::sum);
+        if (size > capacity * MAX_LOAD_FACTOR) {
+            grow();
+        }
+    }
+
+    @Override
+    public void write(CacheNamespace namespace, String key, String value) throws IOException {
+        Validator.validateNotNull(namespace, "Namespace cannot be null");
+        Validator.validateNotNull(key, "Key cannot be null");
+        Validator.validateNotNull(value, "Value cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = encode(namespace, keyBytes, value.getBytes(StandardCharsets.UTF_8));
+        int length = record.remaining();
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            long offset = append(record);
+            updateIndex(namespace, keyBytes, offset, length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String read(CacheNamespace namespace, String key) throws IOException {
+        Validator.validateNotNull(namespace, "Namespace cannot be null");
+        Validator.validateNotNull(key, "Key cannot be null");
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long keyHash = hash(namespace, keyBytes);
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            int mask = capacity - 1;
+            int slot = (int) (keyHash & mask);
+            while (true) {
+                int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+                long slotHash = index.getLong(position);
+                if (slotHash == 0) {
+                    return null;
+                }
+                if (slotHash == keyHash) {
+                    Record record = readRecord(segmentChannel(index.getInt(position + SLOT_SEGMENT_POSITION)),
+                        index.getLong(position + SLOT_OFFSET_POSITION));
+                    if (record != null && record.namespace() == namespace && record.key().equals(key)) {
+                        return record.value();
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Only the record headers and keys are read, not the values
+    @Override
+    public List<String> keys(CacheNamespace namespace) throws IOException {
+        Validator.validateNotNull(namespace, "Namespace cannot be null");
+        List<String> keys = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+                if (index.getLong(position) != 0) {
+                    String key = readKey(position, namespace);
+                    if (key != null) {
+                        keys.add(key);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return keys;
+    }
+
+    // The key of the record the slot points to, null when the record is in another namespace
+    private String readKey(int position, CacheNamespace namespace) throws IOException {
+        FileChannel channel = segmentChannel(index.getInt(position + SLOT_SEGMENT_POSITION));
+        long offset = index.getLong(position + SLOT_OFFSET_POSITION);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        readFully(channel, header, offset);
+        int keyLength = header.getInt(5);
+        if (header.get(4) != namespace.ordinal() || keyLength < 0) {
+            return null;
+        }
+        ByteBuffer key = ByteBuffer.allocate(keyLength);
+        readFully(channel, key, offset + RECORD_HEADER_BYTES);
+        return new String(key.array(), StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int segmentCount() {
+        lock.readLock().lock();
+        try {
+            return segments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rewrites the live records of sealed segments that are mostly garbage and deletes those segments.
+    // Sealed segments are immutable, so they are scanned without the lock and only relocations take it.
+    public void compact() throws IOException {
+        List<Integer> candidates = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+                int id = segment.getKey();
+                long total = segment.getValue().size();
+                if (id != activeSegment && liveBytes.getOrDefault(id, 0L) < total * COMPACTION_LIVE_RATIO) {
+                    candidates.add(id);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int id : candidates) {
+            compactSegment(id);
+        }
+    }
+
+    private void compactSegment(int id) throws IOException {
+        FileChannel channel;
+        lock.readLock().lock();
+        try {
+            channel = segmentChannel(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+        long offset = 0;
+        long end = channel.size();
+        while (offset < end) {
+            Record record = readRecord(channel, offset);
+            if (record == null) {
+                break;
+            }
+            relocateIfLive(record, id, offset);
+            offset += record.length();
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            // The copies and the slots pointing at them reach the disk before the only other copy is deleted
+            for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+                if (segment.getKey() != id) {
+                    segmentChannel(segment.getKey()).force(false);
+                }
+            }
+            index.force();
+            segments.remove(id);
+            liveBytes.remove(id);
+            channel.close();
+            Files.deleteIfExists(segmentPath(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void relocateIfLive(Record record, int segment, long offset) throws IOException {
+        byte[] key = record.key().getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            int slot = findSlot(record.namespace(), key, hash(record.namespace(), key));
+            int position = INDEX_HEADER_BYTES + slot * SLOT_BYTES;
+            boolean live = index.getLong(position) != 0
+                && index.getInt(position + SLOT_SEGMENT_POSITION) == segment
+                && index.getLong(position + SLOT_OFFSET_POSITION) == offset;
+            if (!live) {
+                return;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(record.length());
+            readFully(segmentChannel(segment), copy, offset);
+            copy.flip();
+            long newOffset = append(copy);
+            liveBytes.merge(segment, (long) -record.length(), Long::sum);
+            putSlot(slot, index.getLong(position), activeSegment, newOffset, record.length());
+            liveBytes.merge(activeSegment, (long) record.length(), Long::sum);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The read lock keeps compaction from closing a segment while it is forced
+    @Override
+    public void sync() throws IOException {
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            for (FileChannel channel : segments.values()) {
+                channel.force(false);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            // Not shutdownNow, interrupting a thread inside FileChannel I/O closes the channel
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(COMPACTION_SHUTDOWN_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (FileChannel channel : segments.values()) {
+                channel.force(false);
+                channel.close();
+            }
+            index.putInt(SIZE_POSITION, size);
+            markIndex(true);
+            indexChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
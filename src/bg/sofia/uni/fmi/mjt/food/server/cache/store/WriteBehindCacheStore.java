@@ -0,0 +1,255 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Writes return as soon as the value is queued, a single writer thread persists the queue in batches and syncs the
+// delegate once per batch. Repeated writes of a key that is still queued only replace the queued value, and reads see
+// queued values before the delegate's. A value the delegate failed to write stays queued and is tried again after a
+// backoff that doubles up to a few seconds, only a store that is closing gives it up.
+// Unchanged values are written too, every save carries a new savedAt and that time is what keeps the entry fresh.
+public class WriteBehindCacheStore implements CacheStore {
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(50);
+    public static final int DEFAULT_MAX_PENDING = 10_000;
+    public static final int MAX_BATCH_SIZE = 512;
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_RETRY_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final Logger LOGGER = Logger.getInstance();
+    private final CacheStore delegate;
+    private final long flushIntervalNanos;
+    private final int maxPending;
+    private final Map<Entry, String> pending = new ConcurrentHashMap<>();
+    // One element per queued key, in the order the keys were first queued
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong syncs = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    // Only used by the writer thread
+    private long retryBackoffNanos;
+
+    private record Entry(CacheNamespace namespace, String key) {
+    }
+
+    public WriteBehindCacheStore(CacheStore delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAX_PENDING);
+    }
+
+    public WriteBehindCacheStore(CacheStore delegate, Duration flushInterval, int maxPending) {
+        Validator.validateNotNull(delegate, "Delegate store cannot be null");
+        Validator.validateNotNull(flushInterval, "Flush interval cannot be null");
+        if (flushInterval.isNegative() || flushInterval.isZero() || maxPending <= 0) {
+            throw new IllegalArgumentException("Flush interval and max pending should be positive");
+        }
+        this.delegate = delegate;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.maxPending = maxPending;
+        this.writer = Thread.ofPlatform().daemon().name("cache-write-behind").start(this::runWriter);
+    }
+
+    // A full queue or a closed store makes the caller write through, so memory stays bounded
+    @Override
+    public void write(CacheNamespace namespace, String key, String value) throws IOException {
+        Validator.validateNotNull(namespace, "Namespace cannot be null");
+        Validator.validateNotNull(key, "Key cannot be null");
+        Validator.validateNotNull(value, "Value cannot be null");
+        Entry entry = new Entry(namespace, key);
+        if (closed) {
+            writeWhileClosing(entry, value);
+            return;
+        }
+        if (pending.size() >= maxPending && !pending.containsKey(entry)) {
+            writeThrough(entry, value);
+            return;
+        }
+        if (pending.put(entry, value) == null) {
+            enqueue(entry);
+        } else {
+            coalesced.incrementAndGet();
+        }
+    }
+
+    @Override
+    public String read(CacheNamespace namespace, String key) throws IOException {
+        String value = pending.get(new Entry(namespace, key));
+        return value != null ? value : delegate.read(namespace, key);
+    }
+
+    @Override
+    public List<String> keys(CacheNamespace namespace) throws IOException {
+        Set<String> keys = new LinkedHashSet<>(delegate.keys(namespace));
+        for (Entry entry : pending.keySet()) {
+            if (entry.namespace() == namespace) {
+                keys.add(entry.key());
+            }
+        }
+        return new ArrayList<>(keys);
+    }
+
+    @Override
+    public void sync() throws IOException {
+        flush();
+        delegate.sync();
+    }
+
+    // Waits until everything queued before the call has been handed to the delegate
+    public void flush() {
+        long target = queued.get();
+        while (processed.get() < target && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long writtenCount() {
+        return written.get();
+    }
+
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+
+    public long retryCount() {
+        return retries.get();
+    }
+
+    public long syncCount() {
+        return syncs.get();
+    }
+
+    private void enqueue(Entry entry) {
+        queued.incrementAndGet();
+        queue.add(entry);
+    }
+
+    // An older value of the key may still be draining. Replacing it in pending makes the writer persist this one after
+    // it, writing through would let the drain overwrite it with the older value.
+    private void writeWhileClosing(Entry entry, String value) throws IOException {
+        if (writer.isAlive() && pending.replace(entry, value) != null) {
+            coalesced.incrementAndGet();
+            return;
+        }
+        pending.remove(entry);
+        writeThrough(entry, value);
+    }
+
+    private void writeThrough(Entry entry, String value) throws IOException {
+        delegate.write(entry.namespace(), entry.key(), value);
+        written.incrementAndGet();
+    }
+
+    private void runWriter() {
+        List<Entry> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            boolean failed = false;
+            try {
+                Entry first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null) {
+                    continue;
+                }
+                // Give the writes that follow a burst a moment to join the batch, so it ends with one sync
+                if (!closed && queue.size() < MAX_BATCH_SIZE) {
+                    LockSupport.parkNanos(flushIntervalNanos);
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                failed = writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                processed.addAndGet(batch.size());
+                batch.clear();
+            }
+            backOff(failed);
+        }
+    }
+
+    private void backOff(boolean failed) {
+        if (!failed) {
+            retryBackoffNanos = 0;
+            return;
+        }
+        retryBackoffNanos = retryBackoffNanos == 0 ? flushIntervalNanos
+            : Math.min(retryBackoffNanos * 2, MAX_RETRY_BACKOFF_NANOS);
+        LockSupport.parkNanos(retryBackoffNanos);
+    }
+
+    // Returns whether an entry failed and was queued again
+    private boolean writeBatch(List<Entry> batch) {
+        boolean dirty = false;
+        boolean failed = false;
+        for (Entry entry : batch) {
+            String value = pending.get(entry);
+            try {
+                delegate.write(entry.namespace(), entry.key(), value);
+                written.incrementAndGet();
+                dirty = true;
+            } catch (IOException e) {
+                LOGGER.log("Unable to persist cache entry", e, entry.namespace().getValue() + "/" + entry.key());
+                if (!closed) {
+                    retries.incrementAndGet();
+                    enqueue(entry);
+                    failed = true;
+                    continue;
+                }
+            }
+            // A value replaced while it was written is queued again
+            if (!pending.remove(entry, value)) {
+                enqueue(entry);
+            }
+        }
+        if (dirty) {
+            syncBatch(batch.size());
+        }
+        return failed;
+    }
+
+    private void syncBatch(int batchSize) {
+        try {
+            delegate.sync();
+            syncs.incrementAndGet();
+        } catch (IOException e) {
+            LOGGER.log("Unable to sync the cache store", e, "Batch of " + batchSize + " entries");
+        }
+    }
+
+    // Everything queued is written and synced before the delegate is closed
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        delegate.close();
+    }
+}
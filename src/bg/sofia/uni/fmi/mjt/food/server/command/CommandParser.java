@@ -6,10 +6,13 @@ import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
 import bg.sofia.uni.fmi.mjt.food.validation.Validator;
 
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 public class CommandParser {
-    private static final String BARCODE_PREFIX = "--code=";
+    public static final int MAX_BATCH_SIZE = 64;
+    public static final String BARCODE_PREFIX = "--code=";
 
     private static Type parseType(String command) throws InvalidClientMessageException {
         for (Type type : Type.values()) {
@@ -21,6 +24,7 @@ public class CommandParser {
     }
 
     private static Command parseGetFoodCommand(String... parts) throws InvalidClientMessageException {
+        Validator.validateArgumentsLength(parts);
         List<String> keywords = Arrays.stream(parts)
             .map(String::strip)
             .skip(1)
@@ -33,22 +37,44 @@ public class CommandParser {
             .build();
     }
 
-    private static Command parseGetFoodReportCommand(String... parts) throws InvalidClientMessageException {
-        Validator.validateArgumentsLength(parts);
-
-        int id;
+    private static int parseId(String part) throws InvalidClientMessageException {
         try {
-            id = Integer.parseInt(parts[1]);
+            return Integer.parseInt(part);
         } catch (NumberFormatException e) {
             throw new InvalidClientMessageException("The id should be a valid integer", e);
         }
+    }
+
+    private static Command parseGetFoodReportCommand(String... parts) throws InvalidClientMessageException {
+        Validator.validateArgumentsLength(parts);
 
         return Command.builder(Type.GET_FOOD_REPORT)
-            .setId(id)
+            .setId(parseId(parts[1]))
+            .build();
+    }
+
+    private static void validateBatchSize(int size) throws InvalidClientMessageException {
+        if (size > MAX_BATCH_SIZE) {
+            throw new InvalidClientMessageException("A batch can contain at most " + MAX_BATCH_SIZE + " items");
+        }
+    }
+
+    // Repeated ids are looked up once, the order of the first occurrences is kept
+    private static Command parseGetFoodReportBatchCommand(String... parts) throws InvalidClientMessageException {
+        Validator.validateArgumentsLength(parts);
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (int i = 1; i < parts.length; i++) {
+            ids.add(parseId(parts[i]));
+        }
+        validateBatchSize(ids.size());
+
+        return Command.builder(Type.GET_FOOD_REPORT_BATCH)
+            .setIds(List.copyOf(ids))
             .build();
     }
 
     private static Command parseGetFoodByBarcodeCommand(String... parts) throws InvalidClientMessageException {
+        Validator.validateArgumentsLength(parts);
         String barcode;
         for (int i = 1; i < parts.length; i++) {
             if (parts[i].startsWith(BARCODE_PREFIX)) {
@@ -64,18 +90,46 @@ public class CommandParser {
         throw new InvalidClientMessageException("Barcode argument is missing");
     }
 
+    private static Command parseGetFoodByBarcodeBatchCommand(String... parts) throws InvalidClientMessageException {
+        Validator.validateArgumentsLength(parts);
+        Set<String> barcodes = new LinkedHashSet<>();
+        for (int i = 1; i < parts.length; i++) {
+            if (!parts[i].startsWith(BARCODE_PREFIX)) {
+                throw new InvalidClientMessageException("Every barcode in a batch should be given with --code=");
+            }
+            String barcode = parts[i].substring(BARCODE_PREFIX.length()).strip();
+            if (barcode.isBlank()) {
+                throw new InvalidClientMessageException("barcode should not be blank");
+            }
+            barcodes.add(barcode);
+        }
+        validateBatchSize(barcodes.size());
+
+        return Command.builder(Type.GET_FOOD_BY_BARCODE_BATCH)
+            .setBarcodes(List.copyOf(barcodes))
+            .build();
+    }
+
+    private static Command parseStatsCommand(String... parts) throws InvalidClientMessageException {
+        if (parts.length > 1) {
+            throw new InvalidClientMessageException("stats does not take arguments");
+        }
+        return Command.builder(Type.STATS).build();
+    }
+
     public static Command parse(String clientMessage) throws InvalidClientMessageException {
         Validator.validateMessageNotBlankOrEmpty(clientMessage);
 
         String[] parts = clientMessage.split("\\s+");
 
-        Validator.validateArgumentsLength(parts);
-
         Type commandType = parseType(parts[0]);
         return switch (commandType) {
             case GET_FOOD -> parseGetFoodCommand(parts);
             case GET_FOOD_REPORT -> parseGetFoodReportCommand(parts);
             case GET_FOOD_BY_BARCODE -> parseGetFoodByBarcodeCommand(parts);
+            case GET_FOOD_REPORT_BATCH -> parseGetFoodReportBatchCommand(parts);
+            case GET_FOOD_BY_BARCODE_BATCH -> parseGetFoodByBarcodeBatchCommand(parts);
+            case STATS -> parseStatsCommand(parts);
         };
     }
 }
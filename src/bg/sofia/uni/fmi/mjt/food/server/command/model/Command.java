@@ -7,12 +7,16 @@ public class Command {
     private final List<String> keywords;
     private final int id;
     private final String barcode;
+    private final List<Integer> ids;
+    private final List<String> barcodes;
 
     public Command(CommandBuilder builder) {
         this.type = builder.commandType;
         this.keywords = builder.keywords;
         this.id = builder.id;
         this.barcode = builder.barcode;
+        this.ids = builder.ids;
+        this.barcodes = builder.barcodes;
     }
 
     public static CommandBuilder builder(Type type) {
@@ -35,11 +39,23 @@ public class Command {
         return barcode;
     }
 
+    // Report ids of a get-food-report-batch command
+    public List<Integer> ids() {
+        return ids;
+    }
+
+    // Barcodes of a get-food-by-barcode-batch command
+    public List<String> barcodes() {
+        return barcodes;
+    }
+
     public static class CommandBuilder {
         private final Type commandType;
         private List<String> keywords;
         private int id;
         private String barcode;
+        private List<Integer> ids;
+        private List<String> barcodes;
 
         public CommandBuilder(Type commandType) {
             this.commandType = commandType;
@@ -60,6 +76,16 @@ public class Command {
             return this;
         }
 
+        public CommandBuilder setIds(List<Integer> ids) {
+            this.ids = ids;
+            return this;
+        }
+
+        public CommandBuilder setBarcodes(List<String> barcodes) {
+            this.barcodes = barcodes;
+            return this;
+        }
+
         public Command build() {
             return new Command(this);
         }
@@ -3,7 +3,10 @@ package bg.sofia.uni.fmi.mjt.food.server.command.model;
 public enum Type {
     GET_FOOD("get-food"),
     GET_FOOD_REPORT("get-food-report"),
-    GET_FOOD_BY_BARCODE("get-food-by-barcode");
+    GET_FOOD_BY_BARCODE("get-food-by-barcode"),
+    GET_FOOD_REPORT_BATCH("get-food-report-batch"),
+    GET_FOOD_BY_BARCODE_BATCH("get-food-by-barcode-batch"),
+    STATS("stats");
     private final String value;
 
     Type(String value) {
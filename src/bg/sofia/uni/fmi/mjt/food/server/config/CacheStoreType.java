@@ -0,0 +1,24 @@
+package bg.sofia.uni.fmi.mjt.food.server.config;
+
+public enum CacheStoreType {
+    FILES("files"),
+    LOG("log");
+    private final String value;
+
+    CacheStoreType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static CacheStoreType fromValue(String value) {
+        for (CacheStoreType type : values()) {
+            if (type.value.equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache store: " + value);
+    }
+}
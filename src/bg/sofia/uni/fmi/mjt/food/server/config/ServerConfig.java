@@ -0,0 +1,303 @@
+package bg.sofia.uni.fmi.mjt.food.server.config;
+
+import bg.sofia.uni.fmi.mjt.food.server.logging.OverflowPolicy;
+
+public class ServerConfig {
+    public static final int DEFAULT_PORT = 5000;
+    public static final int DEFAULT_WORKER_THREADS = 5;
+    public static final int DEFAULT_UPSTREAM_THREADS = 5;
+    public static final int DEFAULT_UPSTREAM_QUEUE_CAPACITY = 64;
+    public static final int DEFAULT_MAX_CONNECTIONS = 1024;
+    public static final int DEFAULT_MAX_PENDING_REQUESTS = 256;
+    public static final int DEFAULT_LATENCY_TARGET_MILLIS = 1000;
+    public static final int DEFAULT_WRITE_BEHIND_MILLIS = 50;
+    public static final int DEFAULT_RENDERED_CACHE_ENTRIES = 4096;
+    public static final int DEFAULT_NEGATIVE_TTL_MILLIS = 60_000;
+    public static final int DEFAULT_UPSTREAM_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_CACHE_TTL_SECONDS = 24 * 60 * 60;
+    public static final int ACCEPT_BACKLOG = 1024;
+    private final int port;
+    private final ServerMode mode;
+    private final int workerThreads;
+    private final int upstreamThreads;
+    private final int upstreamQueueCapacity;
+    private final int maxConnections;
+    private final int maxPendingRequests;
+    private final int latencyTargetMillis;
+    private final CacheStoreType cacheStore;
+    private final int reportBatchWindowMillis;
+    private final int writeBehindMillis;
+    private final int renderedCacheEntries;
+    private final int negativeTtlMillis;
+    private final int upstreamTimeoutMillis;
+    private final int cacheTtlSeconds;
+    private final int localSearchMinMatches;
+    private final OverflowPolicy logOverflowPolicy;
+
+    public ServerConfig(ServerConfigBuilder builder) {
+        this.port = builder.port;
+        this.mode = builder.mode;
+        this.workerThreads = builder.workerThreads;
+        this.upstreamThreads = builder.upstreamThreads;
+        this.upstreamQueueCapacity = builder.upstreamQueueCapacity;
+        this.maxConnections = builder.maxConnections;
+        this.maxPendingRequests = builder.maxPendingRequests;
+        this.latencyTargetMillis = builder.latencyTargetMillis;
+        this.cacheStore = builder.cacheStore;
+        this.reportBatchWindowMillis = builder.reportBatchWindowMillis;
+        this.writeBehindMillis = builder.writeBehindMillis;
+        this.renderedCacheEntries = builder.renderedCacheEntries;
+        this.negativeTtlMillis = builder.negativeTtlMillis;
+        this.upstreamTimeoutMillis = builder.upstreamTimeoutMillis;
+        this.cacheTtlSeconds = builder.cacheTtlSeconds;
+        this.localSearchMinMatches = builder.localSearchMinMatches;
+        this.logOverflowPolicy = builder.logOverflowPolicy;
+    }
+
+    public static ServerConfigBuilder builder() {
+        return new ServerConfigBuilder();
+    }
+
+    public static ServerConfig defaults() {
+        return builder().build();
+    }
+
+    public int port() {
+        return port;
+    }
+
+    public ServerMode mode() {
+        return mode;
+    }
+
+    // Threads of the fast lane, which answers from the cache
+    public int workerThreads() {
+        return workerThreads;
+    }
+
+    // Threads of the upstream lane, which handles the requests that need USDA
+    public int upstreamThreads() {
+        return upstreamThreads;
+    }
+
+    // Upper bound for the adaptive limit of requests that may wait for an upstream thread
+    public int upstreamQueueCapacity() {
+        return upstreamQueueCapacity;
+    }
+
+    // Connections above this are answered with BUSY and closed
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    // Requests that may wait for a fast lane thread
+    public int maxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    // Upstream requests slower than this shrink the upstream lane's limit
+    public int latencyTargetMillis() {
+        return latencyTargetMillis;
+    }
+
+    public CacheStoreType cacheStore() {
+        return cacheStore;
+    }
+
+    // Zero means report misses are fetched one by one
+    public int reportBatchWindowMillis() {
+        return reportBatchWindowMillis;
+    }
+
+    // How long the cache writer waits for more writes before it persists and syncs a batch, zero means cache
+    // files are written on the request path
+    public int writeBehindMillis() {
+        return writeBehindMillis;
+    }
+
+    // How many found responses are kept as the bytes sent to the client, zero renders every response again
+    public int renderedCacheEntries() {
+        return renderedCacheEntries;
+    }
+
+    // How long a report id, keyword set or barcode without food is answered as missing without a lookup, zero
+    // looks it up every time
+    public int negativeTtlMillis() {
+        return negativeTtlMillis;
+    }
+
+    // How long a single USDA call may take before it counts as a failure for the circuit breaker
+    public int upstreamTimeoutMillis() {
+        return upstreamTimeoutMillis;
+    }
+
+    // Cached food older than this is served while it is fetched again in the background, zero never refreshes it
+    public int cacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    // Cached foods matching every keyword that are enough to answer get-food without USDA, zero asks USDA first and
+    // uses them only when USDA fails
+    public int localSearchMinMatches() {
+        return localSearchMinMatches;
+    }
+
+    public OverflowPolicy logOverflowPolicy() {
+        return logOverflowPolicy;
+    }
+
+    public static class ServerConfigBuilder {
+        private int port = DEFAULT_PORT;
+        private ServerMode mode = ServerMode.BLOCKING;
+        private int workerThreads = DEFAULT_WORKER_THREADS;
+        private int upstreamThreads = DEFAULT_UPSTREAM_THREADS;
+        private int upstreamQueueCapacity = DEFAULT_UPSTREAM_QUEUE_CAPACITY;
+        private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+        private int maxPendingRequests = DEFAULT_MAX_PENDING_REQUESTS;
+        private int latencyTargetMillis = DEFAULT_LATENCY_TARGET_MILLIS;
+        private CacheStoreType cacheStore = CacheStoreType.FILES;
+        private int reportBatchWindowMillis;
+        private int writeBehindMillis = DEFAULT_WRITE_BEHIND_MILLIS;
+        private int renderedCacheEntries = DEFAULT_RENDERED_CACHE_ENTRIES;
+        private int negativeTtlMillis = DEFAULT_NEGATIVE_TTL_MILLIS;
+        private int upstreamTimeoutMillis = DEFAULT_UPSTREAM_TIMEOUT_MILLIS;
+        private int cacheTtlSeconds = DEFAULT_CACHE_TTL_SECONDS;
+        private int localSearchMinMatches;
+        private OverflowPolicy logOverflowPolicy = OverflowPolicy.BLOCK;
+
+        public ServerConfigBuilder setPort(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public ServerConfigBuilder setMode(ServerMode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        public ServerConfigBuilder setWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+            return this;
+        }
+
+        public ServerConfigBuilder setUpstreamThreads(int upstreamThreads) {
+            this.upstreamThreads = upstreamThreads;
+            return this;
+        }
+
+        public ServerConfigBuilder setUpstreamQueueCapacity(int upstreamQueueCapacity) {
+            this.upstreamQueueCapacity = upstreamQueueCapacity;
+            return this;
+        }
+
+        public ServerConfigBuilder setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        public ServerConfigBuilder setMaxPendingRequests(int maxPendingRequests) {
+            this.maxPendingRequests = maxPendingRequests;
+            return this;
+        }
+
+        public ServerConfigBuilder setLatencyTargetMillis(int latencyTargetMillis) {
+            this.latencyTargetMillis = latencyTargetMillis;
+            return this;
+        }
+
+        public ServerConfigBuilder setCacheStore(CacheStoreType cacheStore) {
+            this.cacheStore = cacheStore;
+            return this;
+        }
+
+        public ServerConfigBuilder setReportBatchWindowMillis(int reportBatchWindowMillis) {
+            this.reportBatchWindowMillis = reportBatchWindowMillis;
+            return this;
+        }
+
+        public ServerConfigBuilder setWriteBehindMillis(int writeBehindMillis) {
+            this.writeBehindMillis = writeBehindMillis;
+            return this;
+        }
+
+        public ServerConfigBuilder setRenderedCacheEntries(int renderedCacheEntries) {
+            this.renderedCacheEntries = renderedCacheEntries;
+            return this;
+        }
+
+        public ServerConfigBuilder setNegativeTtlMillis(int negativeTtlMillis) {
+            this.negativeTtlMillis = negativeTtlMillis;
+            return this;
+        }
+
+        public ServerConfigBuilder setUpstreamTimeoutMillis(int upstreamTimeoutMillis) {
+            this.upstreamTimeoutMillis = upstreamTimeoutMillis;
+            return this;
+        }
+
+        public ServerConfigBuilder setCacheTtlSeconds(int cacheTtlSeconds) {
+            this.cacheTtlSeconds = cacheTtlSeconds;
+            return this;
+        }
+
+        public ServerConfigBuilder setLocalSearchMinMatches(int localSearchMinMatches) {
+            this.localSearchMinMatches = localSearchMinMatches;
+            return this;
+        }
+
+        public ServerConfigBuilder setLogOverflowPolicy(OverflowPolicy logOverflowPolicy) {
+            this.logOverflowPolicy = logOverflowPolicy;
+            return this;
+        }
+
+        public ServerConfig build() {
+            if (mode == null) {
+                throw new IllegalArgumentException("Server mode cannot be null");
+            }
+            if (cacheStore == null) {
+                throw new IllegalArgumentException("Cache store cannot be null");
+            }
+            if (logOverflowPolicy == null) {
+                throw new IllegalArgumentException("Log overflow policy cannot be null");
+            }
+            if (port < 0) {
+                throw new IllegalArgumentException("Port cannot be negative");
+            }
+            if (workerThreads <= 0) {
+                throw new IllegalArgumentException("Worker threads should be positive");
+            }
+            if (upstreamThreads <= 0) {
+                throw new IllegalArgumentException("Upstream threads should be positive");
+            }
+            if (upstreamQueueCapacity < 0) {
+                throw new IllegalArgumentException("Upstream queue capacity cannot be negative");
+            }
+            if (maxConnections <= 0 || maxPendingRequests <= 0 || latencyTargetMillis <= 0) {
+                throw new IllegalArgumentException("Max connections, max pending requests and latency target "
+                    + "should be positive");
+            }
+            if (reportBatchWindowMillis < 0) {
+                throw new IllegalArgumentException("Report batch window cannot be negative");
+            }
+            if (writeBehindMillis < 0) {
+                throw new IllegalArgumentException("Write-behind interval cannot be negative");
+            }
+            if (renderedCacheEntries < 0) {
+                throw new IllegalArgumentException("Rendered cache entries cannot be negative");
+            }
+            if (negativeTtlMillis < 0) {
+                throw new IllegalArgumentException("Negative cache time to live cannot be negative");
+            }
+            if (upstreamTimeoutMillis <= 0) {
+                throw new IllegalArgumentException("Upstream timeout should be positive");
+            }
+            if (cacheTtlSeconds < 0) {
+                throw new IllegalArgumentException("Cache time to live cannot be negative");
+            }
+            if (localSearchMinMatches < 0) {
+                throw new IllegalArgumentException("Local search min matches cannot be negative");
+            }
+            return new ServerConfig(this);
+        }
+    }
+}
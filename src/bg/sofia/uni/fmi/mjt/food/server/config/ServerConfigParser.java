@@ -0,0 +1,86 @@
+package bg.sofia.uni.fmi.mjt.food.server.config;
+
+import bg.sofia.uni.fmi.mjt.food.server.logging.OverflowPolicy;
+
+public class ServerConfigParser {
+    private static final String MODE_PREFIX = "--mode=";
+    private static final String PORT_PREFIX = "--port=";
+    private static final String WORKERS_PREFIX = "--workers=";
+    private static final String UPSTREAM_THREADS_PREFIX = "--upstream-threads=";
+    private static final String UPSTREAM_QUEUE_PREFIX = "--upstream-queue=";
+    private static final String MAX_CONNECTIONS_PREFIX = "--max-connections=";
+    private static final String MAX_PENDING_PREFIX = "--max-pending=";
+    private static final String LATENCY_TARGET_PREFIX = "--latency-target=";
+    private static final String CACHE_PREFIX = "--cache=";
+    private static final String BATCH_WINDOW_PREFIX = "--batch-window=";
+    private static final String WRITE_BEHIND_PREFIX = "--write-behind=";
+    private static final String RENDERED_CACHE_PREFIX = "--rendered-cache=";
+    private static final String NEGATIVE_TTL_PREFIX = "--negative-ttl=";
+    private static final String UPSTREAM_TIMEOUT_PREFIX = "--upstream-timeout=";
+    private static final String CACHE_TTL_PREFIX = "--cache-ttl=";
+    private static final String LOCAL_SEARCH_PREFIX = "--local-search=";
+    private static final String LOG_OVERFLOW_PREFIX = "--log-overflow=";
+
+    private static int parseInt(String value, String name) {
+        try {
+            return Integer.parseInt(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " should be a valid integer: " + value, e);
+        }
+    }
+
+    public static ServerConfig parse(String... args) {
+        ServerConfig.ServerConfigBuilder builder = ServerConfig.builder();
+        if (args == null) {
+            return builder.build();
+        }
+        for (String arg : args) {
+            if (arg.startsWith(MODE_PREFIX)) {
+                builder.setMode(ServerMode.fromValue(arg.substring(MODE_PREFIX.length())));
+            } else if (arg.startsWith(PORT_PREFIX)) {
+                builder.setPort(parseInt(arg.substring(PORT_PREFIX.length()), "Port"));
+            } else if (arg.startsWith(WORKERS_PREFIX)) {
+                builder.setWorkerThreads(parseInt(arg.substring(WORKERS_PREFIX.length()), "Worker threads"));
+            } else if (arg.startsWith(UPSTREAM_THREADS_PREFIX)) {
+                builder.setUpstreamThreads(
+                    parseInt(arg.substring(UPSTREAM_THREADS_PREFIX.length()), "Upstream threads"));
+            } else if (arg.startsWith(UPSTREAM_QUEUE_PREFIX)) {
+                builder.setUpstreamQueueCapacity(
+                    parseInt(arg.substring(UPSTREAM_QUEUE_PREFIX.length()), "Upstream queue capacity"));
+            } else if (arg.startsWith(MAX_CONNECTIONS_PREFIX)) {
+                builder.setMaxConnections(parseInt(arg.substring(MAX_CONNECTIONS_PREFIX.length()), "Max connections"));
+            } else if (arg.startsWith(MAX_PENDING_PREFIX)) {
+                builder.setMaxPendingRequests(
+                    parseInt(arg.substring(MAX_PENDING_PREFIX.length()), "Max pending requests"));
+            } else if (arg.startsWith(LATENCY_TARGET_PREFIX)) {
+                builder.setLatencyTargetMillis(
+                    parseInt(arg.substring(LATENCY_TARGET_PREFIX.length()), "Latency target"));
+            } else if (arg.startsWith(CACHE_PREFIX)) {
+                builder.setCacheStore(CacheStoreType.fromValue(arg.substring(CACHE_PREFIX.length())));
+            } else if (arg.startsWith(BATCH_WINDOW_PREFIX)) {
+                builder.setReportBatchWindowMillis(
+                    parseInt(arg.substring(BATCH_WINDOW_PREFIX.length()), "Report batch window"));
+            } else if (arg.startsWith(WRITE_BEHIND_PREFIX)) {
+                builder.setWriteBehindMillis(parseInt(arg.substring(WRITE_BEHIND_PREFIX.length()), "Write-behind"));
+            } else if (arg.startsWith(RENDERED_CACHE_PREFIX)) {
+                builder.setRenderedCacheEntries(
+                    parseInt(arg.substring(RENDERED_CACHE_PREFIX.length()), "Rendered cache entries"));
+            } else if (arg.startsWith(NEGATIVE_TTL_PREFIX)) {
+                builder.setNegativeTtlMillis(parseInt(arg.substring(NEGATIVE_TTL_PREFIX.length()), "Negative TTL"));
+            } else if (arg.startsWith(UPSTREAM_TIMEOUT_PREFIX)) {
+                builder.setUpstreamTimeoutMillis(
+                    parseInt(arg.substring(UPSTREAM_TIMEOUT_PREFIX.length()), "Upstream timeout"));
+            } else if (arg.startsWith(CACHE_TTL_PREFIX)) {
+                builder.setCacheTtlSeconds(parseInt(arg.substring(CACHE_TTL_PREFIX.length()), "Cache TTL"));
+            } else if (arg.startsWith(LOCAL_SEARCH_PREFIX)) {
+                builder.setLocalSearchMinMatches(
+                    parseInt(arg.substring(LOCAL_SEARCH_PREFIX.length()), "Local search min matches"));
+            } else if (arg.startsWith(LOG_OVERFLOW_PREFIX)) {
+                builder.setLogOverflowPolicy(OverflowPolicy.fromValue(arg.substring(LOG_OVERFLOW_PREFIX.length())));
+            } else {
+                throw new IllegalArgumentException("Unknown server argument: " + arg);
+            }
+        }
+        return builder.build();
+    }
+}
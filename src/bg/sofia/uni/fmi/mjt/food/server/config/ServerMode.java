@@ -0,0 +1,25 @@
+package bg.sofia.uni.fmi.mjt.food.server.config;
+
+public enum ServerMode {
+    BLOCKING("blocking"),
+    SELECTOR("selector"),
+    VIRTUAL_THREADS("virtual");
+    private final String value;
+
+    ServerMode(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static ServerMode fromValue(String value) {
+        for (ServerMode mode : values()) {
+            if (mode.value.equalsIgnoreCase(value)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown server mode: " + value);
+    }
+}
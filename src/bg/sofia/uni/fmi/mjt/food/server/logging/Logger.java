@@ -1,81 +1,411 @@
 package bg.sofia.uni.fmi.mjt.food.server.logging;
 
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+// Request threads only put entries into a lock-free ring buffer, a single writer thread formats them and appends
+// them in batches to a FileChannel it keeps open
 public class Logger {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final long DEFAULT_MAX_FILE_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_MAX_BACKUP_FILES = 5;
+    public static final int SAMPLE_RATE = 10;
     private static final Path LOG_DIR = Path.of("logs");
-    private static Logger instance = new Logger("serverLogs.txt");
+    private static final int MAX_BATCH_ENTRIES = 512;
+    private static final int BLOCK_SPINS = 100;
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FLUSH_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long MIN_REOPEN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long MAX_REOPEN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static Logger instance = createDefault();
     private final Path logFile;
+    private final long maxFileBytes;
+    private final int maxBackupFiles;
+    private final LogRingBuffer<LogEntry> buffer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong overflowed = new AtomicLong();
+    private final Thread writer;
+    private volatile OverflowPolicy overflowPolicy;
+    private volatile boolean idle;
+    private volatile boolean closed;
+    private volatile boolean writerStopped;
+    private long reportedDropped;
+    private FileChannel channel;
+    private long fileSize;
+    private long reopenBackoffNanos = MIN_REOPEN_BACKOFF_NANOS;
+    private long nextOpenAttempt = System.nanoTime();
+
+    private record LogEntry(LocalDateTime time, String message, Throwable throwable, String additionalInfo) {
+    }
 
-    private Logger(String fileName) {
+    private Logger(LoggerBuilder builder) {
         try {
             Files.createDirectories(LOG_DIR);
         } catch (IOException e) {
             System.err.println("Could not create log directory: " + e.getMessage());
         }
-        this.logFile = LOG_DIR.resolve(fileName);
+        this.logFile = LOG_DIR.resolve(builder.fileName);
+        this.maxFileBytes = builder.maxFileBytes;
+        this.maxBackupFiles = builder.maxBackupFiles;
+        this.overflowPolicy = builder.overflowPolicy;
+        this.buffer = new LogRingBuffer<>(builder.capacity);
+        this.writer = Thread.ofPlatform().daemon().name("log-writer-" + builder.fileName).unstarted(this::runWriter);
+        if (builder.startWriter) {
+            writer.start();
+        }
+    }
+
+    private static Logger createDefault() {
+        Logger logger = builder("serverLogs.txt").build();
+        Runtime.getRuntime().addShutdownHook(new Thread(logger::close, "log-flush"));
+        return logger;
     }
 
     public static Logger getInstance() {
         return instance;
     }
 
+    public static LoggerBuilder builder(String fileName) {
+        return new LoggerBuilder(fileName);
+    }
+
     static Logger createWithCustomFileName(String fileName) {
-        return new Logger(fileName);
+        return builder(fileName).build();
     }
 
-    private String stackTraceToString(Throwable t) {
-        try (StringWriter stringWriter = new StringWriter();
-             PrintWriter printWriter = new PrintWriter(stringWriter)) {
-            t.printStackTrace(printWriter);
-            return stringWriter.toString();
+    public void log(String message, Throwable throwable) {
+        log(message, throwable, null);
+    }
+
+    public void log(String message, Throwable throwable, String additionalInfo) {
+        LogEntry entry = new LogEntry(LocalDateTime.now(), message, throwable, additionalInfo);
+        if (closed) {
+            System.err.print(format(entry));
+            return;
+        }
+        if (!buffer.offer(entry)) {
+            handleOverflow(entry);
+        }
+        if (idle) {
+            idle = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        Validator.validateNotNull(overflowPolicy, "Overflow policy cannot be null");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public int pendingCount() {
+        return buffer.size();
+    }
+
+    // Waits until everything logged before the call has been handed to the file system
+    public void flush() {
+        long target = buffer.claimed();
+        long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+        while (written.get() < target && writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(FLUSH_POLL_NANOS);
+        }
+    }
+
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        if (!writer.isAlive()) {
+            return;
+        }
+        try {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(FLUSH_TIMEOUT_NANOS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Used only by tests that need the buffer to fill up before anything is written
+    void startWriter() {
+        writer.start();
+    }
+
+    private void handleOverflow(LogEntry entry) {
+        switch (overflowPolicy) {
+            case BLOCK -> offerBlocking(entry);
+            case DROP -> dropped.incrementAndGet();
+            case SAMPLE -> {
+                if (overflowed.incrementAndGet() % SAMPLE_RATE == 0) {
+                    offerBlocking(entry);
+                } else {
+                    dropped.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    // Without a writer the buffer never drains, so the entry goes to stderr instead of blocking the caller forever
+    private void offerBlocking(LogEntry entry) {
+        int spins = 0;
+        while (!buffer.offer(entry)) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (writerStopped) {
+                System.err.print(format(entry));
+                return;
+            }
+            LockSupport.unpark(writer);
+            if (spins++ < BLOCK_SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        }
+    }
+
+    private void runWriter() {
+        StringBuilder batch = new StringBuilder();
+        try {
+            while (true) {
+                int entries = drain(batch);
+                if (entries > 0 || dropped.get() > reportedDropped) {
+                    appendDroppedNotice(batch);
+                    writeBatch(batch);
+                    batch.setLength(0);
+                    written.addAndGet(entries);
+                } else if (closed && buffer.size() == 0) {
+                    break;
+                } else if (buffer.size() > 0) {
+                    // An entry is claimed but not published yet
+                    Thread.onSpinWait();
+                } else {
+                    park();
+                }
+            }
+        } finally {
+            // Only an unexpected error gets here, callers stop waiting for a writer that is gone
+            writerStopped = true;
+            closeChannel();
+        }
+    }
+
+    private int drain(StringBuilder batch) {
+        int entries = 0;
+        LogEntry entry;
+        while (entries < MAX_BATCH_ENTRIES && (entry = buffer.poll()) != null) {
+            batch.append(format(entry));
+            entries++;
+        }
+        return entries;
+    }
+
+    private void park() {
+        idle = true;
+        if (buffer.size() == 0 && !closed) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+        idle = false;
+    }
+
+    private void appendDroppedNotice(StringBuilder batch) {
+        long total = dropped.get();
+        if (total > reportedDropped) {
+            batch.append("--").append(LocalDateTime.now()).append("--").append(System.lineSeparator())
+                .append(total - reportedDropped).append(" log entries dropped because the log buffer was full")
+                .append(System.lineSeparator()).append(System.lineSeparator());
+            reportedDropped = total;
+        }
+    }
+
+    // A batch that cannot reach the file goes to stderr, so the buffer keeps draining while the file is unavailable
+    private void writeBatch(StringBuilder batch) {
+        if (!ensureChannel()) {
+            System.err.print(batch);
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(batch.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (bytes.hasRemaining()) {
+                fileSize += channel.write(bytes);
+            }
         } catch (IOException e) {
-            System.err.println("Error while converting stack trace " + e.getMessage());
-            return "Error while converting stack trace: " + e.getMessage();
+            System.err.println("Error while logging " + e.getMessage());
+            System.err.print(batch);
+            closeChannel();
+            return;
+        }
+        if (fileSize >= maxFileBytes) {
+            try {
+                rotate();
+            } catch (IOException e) {
+                System.err.println("Error while rotating log file " + e.getMessage());
+                closeChannel();
+            }
         }
     }
 
-    public synchronized void log(String message, Throwable throwable) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("--").append(LocalDateTime.now()).append("--")
-            .append(System.lineSeparator())
-            .append(message)
-            .append(System.lineSeparator());
-        if (throwable != null) {
-            sb.append(stackTraceToString(throwable)).append(System.lineSeparator());
+    // A failed open is tried again after a pause that doubles up to five seconds
+    private boolean ensureChannel() {
+        if (channel != null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - nextOpenAttempt < 0) {
+            return false;
+        }
+        try {
+            openChannel();
+            reopenBackoffNanos = MIN_REOPEN_BACKOFF_NANOS;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not open log file: " + e.getMessage());
+            nextOpenAttempt = now + reopenBackoffNanos;
+            reopenBackoffNanos = Math.min(reopenBackoffNanos * 2, MAX_REOPEN_BACKOFF_NANOS);
+            return false;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
         }
-        sb.append(System.lineSeparator());
         try {
-            Files.writeString(logFile, sb.toString(),
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            channel.close();
         } catch (IOException e) {
-            System.err.println("Error while logging" + e.getMessage());
+            System.err.println("Error while closing log file " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    // serverLogs.txt becomes serverLogs.txt.1, the older backups move one number up and the oldest is deleted
+    private void rotate() throws IOException {
+        closeChannel();
+        if (maxBackupFiles == 0) {
+            Files.deleteIfExists(logFile);
+        } else {
+            Files.deleteIfExists(backupFile(maxBackupFiles));
+            for (int i = maxBackupFiles - 1; i >= 1; i--) {
+                if (Files.exists(backupFile(i))) {
+                    Files.move(backupFile(i), backupFile(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(logFile, backupFile(1), StandardCopyOption.REPLACE_EXISTING);
         }
+        openChannel();
     }
 
-    public synchronized void log(String message, Throwable throwable, String additionalInfo) {
+    private Path backupFile(int number) {
+        return logFile.resolveSibling(logFile.getFileName() + "." + number);
+    }
+
+    private static String stackTraceToString(Throwable t) {
+        StringWriter stringWriter = new StringWriter();
+        try (PrintWriter printWriter = new PrintWriter(stringWriter)) {
+            t.printStackTrace(printWriter);
+        }
+        return stringWriter.toString();
+    }
+
+    private static String format(LogEntry entry) {
         StringBuilder sb = new StringBuilder();
-        sb.append("--").append(LocalDateTime.now()).append("--")
+        sb.append("--").append(entry.time()).append("--")
             .append(System.lineSeparator())
-            .append(message).append(System.lineSeparator());
-        if (additionalInfo != null && !additionalInfo.isBlank()) {
-            sb.append("Additional Info: ").append(additionalInfo).append(System.lineSeparator());
+            .append(entry.message()).append(System.lineSeparator());
+        if (entry.additionalInfo() != null && !entry.additionalInfo().isBlank()) {
+            sb.append("Additional Info: ").append(entry.additionalInfo()).append(System.lineSeparator());
         }
-        if (throwable != null) {
-            sb.append(stackTraceToString(throwable)).append(System.lineSeparator());
+        if (entry.throwable() != null) {
+            sb.append(stackTraceToString(entry.throwable())).append(System.lineSeparator());
         }
         sb.append(System.lineSeparator());
-        try {
-            Files.writeString(logFile, sb.toString(),
-                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
-        } catch (IOException e) {
-            System.err.println("Error while logging" + e.getMessage());
+        return sb.toString();
+    }
+
+    public static class LoggerBuilder {
+        private final String fileName;
+        private int capacity = DEFAULT_CAPACITY;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private long maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+        private int maxBackupFiles = DEFAULT_MAX_BACKUP_FILES;
+        private boolean startWriter = true;
+
+        private LoggerBuilder(String fileName) {
+            Validator.validateString(fileName, "Log file name cannot be null or blank");
+            this.fileName = fileName;
+        }
+
+        public LoggerBuilder setCapacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        public LoggerBuilder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public LoggerBuilder setMaxFileBytes(long maxFileBytes) {
+            this.maxFileBytes = maxFileBytes;
+            return this;
+        }
+
+        public LoggerBuilder setMaxBackupFiles(int maxBackupFiles) {
+            this.maxBackupFiles = maxBackupFiles;
+            return this;
+        }
+
+        LoggerBuilder setStartWriter(boolean startWriter) {
+            this.startWriter = startWriter;
+            return this;
+        }
+
+        public Logger build() {
+            Validator.validateNotNull(overflowPolicy, "Overflow policy cannot be null");
+            if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+                throw new IllegalArgumentException("Log buffer capacity should be a positive power of two");
+            }
+            if (maxFileBytes <= 0) {
+                throw new IllegalArgumentException("Max log file size should be positive");
+            }
+            if (maxBackupFiles < 0) {
+                throw new IllegalArgumentException("Max backup files cannot be negative");
+            }
+            return new Logger(this);
         }
     }
-}
\ No newline at end of file
+}
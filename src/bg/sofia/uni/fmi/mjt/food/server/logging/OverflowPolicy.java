@@ -0,0 +1,26 @@
+package bg.sofia.uni.fmi.mjt.food.server.logging;
+
+// What a request thread does when the log buffer is full
+public enum OverflowPolicy {
+    BLOCK("block"),
+    DROP("drop"),
+    SAMPLE("sample");
+    private final String value;
+
+    OverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static OverflowPolicy fromValue(String value) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.value.equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Unknown log overflow policy: " + value);
+    }
+}
@@ -0,0 +1,5 @@
+package bg.sofia.uni.fmi.mjt.food.server.metrics;
+
+// All latencies are in microseconds
+public record HistogramSnapshot(long count, long p50, long p95, long p99, long max, double mean) {
+}
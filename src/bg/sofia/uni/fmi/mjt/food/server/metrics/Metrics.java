@@ -0,0 +1,214 @@
+package bg.sofia.uni.fmi.mjt.food.server.metrics;
+
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.Lane;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+// Request latencies per command type and source, lane waits, connection and queue gauges. Everything on the request
+// path is a lock-free counter, the maps are filled once in the constructor and only read afterwards.
+public class Metrics {
+    public static final List<Type> MEASURED_TYPES = List.of(Type.GET_FOOD, Type.GET_FOOD_REPORT,
+        Type.GET_FOOD_BY_BARCODE);
+    private static final Metrics INSTANCE = new Metrics();
+    private static final ThreadLocal<boolean[]> UPSTREAM_MARK = ThreadLocal.withInitial(() -> new boolean[1]);
+    private static final double MICROS_IN_MILLI = 1_000.0;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+    private final Map<Type, Map<RequestSource, LatencyHistogram>> latencies = new EnumMap<>(Type.class);
+    private final Map<Type, LongAdder> errors = new EnumMap<>(Type.class);
+    private final Map<Lane, LatencyHistogram> laneWaits = new EnumMap<>(Lane.class);
+    private final Map<Lane, LongAdder> laneRejections = new EnumMap<>(Lane.class);
+    private final Map<Lane, AtomicReference<IntSupplier>> laneDepthGauges = new EnumMap<>(Lane.class);
+    private final Map<Lane, AtomicReference<IntSupplier>> laneLimitGauges = new EnumMap<>(Lane.class);
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder completedRequests = new LongAdder();
+    private final LongSupplier nanoClock;
+    private final long startedAt;
+    private final AtomicReference<Mark> lastReport;
+
+    // Request count at the time of the previous report, used for the recent throughput
+    private record Mark(long nanos, long requests) {
+    }
+
+    public Metrics() {
+        this(System::nanoTime);
+    }
+
+    Metrics(LongSupplier nanoClock) {
+        this.nanoClock = nanoClock;
+        this.startedAt = nanoClock.getAsLong();
+        this.lastReport = new AtomicReference<>(new Mark(startedAt, 0));
+        for (Type type : MEASURED_TYPES) {
+            Map<RequestSource, LatencyHistogram> bySource = new EnumMap<>(RequestSource.class);
+            for (RequestSource source : RequestSource.values()) {
+                bySource.put(source, new LatencyHistogram());
+            }
+            latencies.put(type, bySource);
+            errors.put(type, new LongAdder());
+        }
+        for (Lane lane : Lane.values()) {
+            laneWaits.put(lane, new LatencyHistogram());
+            laneRejections.put(lane, new LongAdder());
+            laneDepthGauges.put(lane, new AtomicReference<>(() -> 0));
+            laneLimitGauges.put(lane, new AtomicReference<>());
+        }
+    }
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    // The retriever marks the current thread when it calls USDA or waits for another caller's load
+    public static void markUpstream() {
+        UPSTREAM_MARK.get()[0] = true;
+    }
+
+    public static void clearUpstreamMark() {
+        UPSTREAM_MARK.get()[0] = false;
+    }
+
+    public static RequestSource currentSource() {
+        return UPSTREAM_MARK.get()[0] ? RequestSource.UPSTREAM : RequestSource.CACHE;
+    }
+
+    public void recordLatency(Type type, RequestSource source, long nanos) {
+        Map<RequestSource, LatencyHistogram> bySource = latencies.get(type);
+        if (bySource == null) {
+            return;
+        }
+        bySource.get(source).record(nanos);
+        completedRequests.increment();
+    }
+
+    public void recordError(Type type) {
+        LongAdder counter = errors.get(type);
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    public void connectionOpened() {
+        activeConnections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        activeConnections.decrementAndGet();
+    }
+
+    public int activeConnections() {
+        return activeConnections.get();
+    }
+
+    // Requests waiting for a worker in either lane, connections get a thread of their own and never queue
+    public int queueDepth() {
+        int depth = 0;
+        for (Lane lane : Lane.values()) {
+            depth += laneDepth(lane);
+        }
+        return depth;
+    }
+
+    public void setLaneDepthGauge(Lane lane, IntSupplier depthGauge) {
+        Validator.validateNotNull(lane, "Lane cannot be null");
+        Validator.validateNotNull(depthGauge, "Lane depth gauge cannot be null");
+        laneDepthGauges.get(lane).set(depthGauge);
+    }
+
+    public int laneDepth(Lane lane) {
+        return laneDepthGauges.get(lane).get().getAsInt();
+    }
+
+    // Lanes without a limit gauge are bounded only by their executor
+    public void setLaneLimitGauge(Lane lane, IntSupplier limitGauge) {
+        Validator.validateNotNull(lane, "Lane cannot be null");
+        Validator.validateNotNull(limitGauge, "Lane limit gauge cannot be null");
+        laneLimitGauges.get(lane).set(limitGauge);
+    }
+
+    public OptionalInt laneLimit(Lane lane) {
+        IntSupplier gauge = laneLimitGauges.get(lane).get();
+        return gauge == null ? OptionalInt.empty() : OptionalInt.of(gauge.getAsInt());
+    }
+
+    // Time between a request entering the lane and a worker picking it up
+    public void recordLaneWait(Lane lane, long nanos) {
+        laneWaits.get(lane).record(nanos);
+    }
+
+    public void recordLaneRejection(Lane lane) {
+        laneRejections.get(lane).increment();
+    }
+
+    public HistogramSnapshot laneWaitSnapshot(Lane lane) {
+        return laneWaits.get(lane).snapshot();
+    }
+
+    public long laneRejections(Lane lane) {
+        return laneRejections.get(lane).sum();
+    }
+
+    public HistogramSnapshot snapshot(Type type, RequestSource source) {
+        Map<RequestSource, LatencyHistogram> bySource = latencies.get(type);
+        Validator.validateNotNull(bySource, "No latencies are measured for " + type);
+        return bySource.get(source).snapshot();
+    }
+
+    public long errorCount(Type type) {
+        LongAdder counter = errors.get(type);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long completedRequests() {
+        return completedRequests.sum();
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.2fms", micros / MICROS_IN_MILLI);
+    }
+
+    private static double perSecond(long requests, long nanos) {
+        return nanos <= 0 ? 0 : requests * NANOS_IN_SECOND / nanos;
+    }
+
+    // One line per measured type and source, the recent throughput covers the time since the previous report
+    public List<String> report() {
+        long now = nanoClock.getAsLong();
+        long requests = completedRequests();
+        Mark previous = lastReport.getAndSet(new Mark(now, requests));
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format(Locale.ROOT,
+            "uptime=%ds active-connections=%d queue-depth=%d requests=%d throughput=%.1f/s recent=%.1f/s",
+            TimeUnit.NANOSECONDS.toSeconds(now - startedAt), activeConnections(), queueDepth(), requests,
+            perSecond(requests, now - startedAt), perSecond(requests - previous.requests(), now - previous.nanos())));
+        for (Type type : MEASURED_TYPES) {
+            for (RequestSource source : RequestSource.values()) {
+                HistogramSnapshot snapshot = snapshot(type, source);
+                lines.add(type.getValue() + " " + source.getValue() + " count=" + snapshot.count()
+                    + " p50=" + millis(snapshot.p50()) + " p95=" + millis(snapshot.p95())
+                    + " p99=" + millis(snapshot.p99()) + " max=" + millis(snapshot.max()));
+            }
+            lines.add(type.getValue() + " errors=" + errorCount(type));
+        }
+        for (Lane lane : Lane.values()) {
+            HistogramSnapshot waits = laneWaitSnapshot(lane);
+            OptionalInt limit = laneLimit(lane);
+            lines.add("lane " + lane.getValue() + " queue-depth=" + laneDepth(lane)
+                + (limit.isPresent() ? " limit=" + limit.getAsInt() : "") + " waits=" + waits.count()
+                + " wait-p50=" + millis(waits.p50()) + " wait-p99=" + millis(waits.p99())
+                + " wait-max=" + millis(waits.max()) + " rejected=" + laneRejections(lane));
+        }
+        return lines;
+    }
+}
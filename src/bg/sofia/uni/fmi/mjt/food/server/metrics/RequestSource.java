@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.food.server.metrics;
+
+// Where the data for a request came from, memory or file cache versus a USDA call it made or waited for
+public enum RequestSource {
+    CACHE("cache"),
+    UPSTREAM("upstream");
+    private final String value;
+
+    RequestSource(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,160 @@
+package bg.sofia.uni.fmi.mjt.food.server.nio;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.LineTooLongException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// All methods except enqueueResponse are called only from the selector thread
+public class ClientConnection {
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int MAX_PENDING_LINES = 64;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private final LineFramer framer = new LineFramer(MAX_LINE_LENGTH);
+    private final Deque<String> pendingLines = new ArrayDeque<>();
+    private final Queue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+    private int inFlight;
+    private boolean pipelined;
+    private boolean exitRequested;
+    private boolean inputClosed;
+    private volatile boolean closeAfterWrite;
+
+    public ClientConnection(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    public String getClientInfo() {
+        try {
+            return "Client: " + channel.getRemoteAddress();
+        } catch (IOException e) {
+            return "Client: unknown";
+        }
+    }
+
+    // Returns false when the peer has closed its side of the connection
+    boolean readLines() throws IOException, LineTooLongException {
+        readBuffer.clear();
+        int read = channel.read(readBuffer);
+        if (read == -1) {
+            inputClosed = true;
+            if (framer.hasPartialLine()) {
+                pendingLines.add(framer.remaining());
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            return false;
+        }
+        readBuffer.flip();
+        pendingLines.addAll(framer.frame(readBuffer));
+        if (pendingLines.size() >= MAX_PENDING_LINES) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+        return true;
+    }
+
+    String nextLine() {
+        String line = pendingLines.poll();
+        if (!inputClosed && pendingLines.size() < MAX_PENDING_LINES) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        return line;
+    }
+
+    boolean hasPendingLines() {
+        return !pendingLines.isEmpty();
+    }
+
+    void clearPendingLines() {
+        pendingLines.clear();
+    }
+
+    // A plain connection runs one command at a time, a pipelined one up to its in-flight limit
+    boolean canDispatch(int maxInFlight) {
+        return pipelined ? inFlight < maxInFlight : inFlight == 0;
+    }
+
+    int inFlight() {
+        return inFlight;
+    }
+
+    void requestStarted() {
+        inFlight++;
+    }
+
+    void requestFinished() {
+        inFlight--;
+    }
+
+    boolean isPipelined() {
+        return pipelined;
+    }
+
+    void enablePipelining() {
+        this.pipelined = true;
+    }
+
+    // The exit answer of a pipelined connection waits for the commands still in flight
+    void requestExit() {
+        this.exitRequested = true;
+    }
+
+    boolean isExitRequested() {
+        return exitRequested;
+    }
+
+    void closeAfterWrite() {
+        this.closeAfterWrite = true;
+    }
+
+    boolean shouldClose() {
+        return outgoing.isEmpty() && inFlight == 0
+            && (closeAfterWrite || (inputClosed && pendingLines.isEmpty()));
+    }
+
+    public void enqueueResponse(ByteBuffer response) {
+        outgoing.add(response);
+    }
+
+    void enableWrite() {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+    }
+
+    // Returns true when everything queued so far has been written to the socket
+    boolean writePending() throws IOException {
+        ByteBuffer buffer;
+        while ((buffer = outgoing.peek()) != null) {
+            channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                return false;
+            }
+            outgoing.poll();
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        return true;
+    }
+
+    // Returns false when the connection was already closed
+    boolean close() {
+        key.cancel();
+        if (!channel.isOpen()) {
+            return false;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing client channel: " + e.getMessage());
+        }
+        return true;
+    }
+}
@@ -0,0 +1,59 @@
+package bg.sofia.uni.fmi.mjt.food.server.nio;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.LineTooLongException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LineFramer {
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private final int maxLineLength;
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+    public LineFramer(int maxLineLength) {
+        if (maxLineLength <= 0) {
+            throw new IllegalArgumentException("Max line length should be positive");
+        }
+        this.maxLineLength = maxLineLength;
+    }
+
+    private String toLine() {
+        byte[] bytes = partialLine.toByteArray();
+        partialLine.reset();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == CARRIAGE_RETURN) {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Consumes all readable bytes and returns the lines completed by them, the rest is kept for the next call
+    public List<String> frame(ByteBuffer buffer) throws LineTooLongException {
+        List<String> lines = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            byte current = buffer.get();
+            if (current == NEW_LINE) {
+                lines.add(toLine());
+            } else {
+                if (partialLine.size() >= maxLineLength) {
+                    partialLine.reset();
+                    throw new LineTooLongException("Line exceeds " + maxLineLength + " bytes");
+                }
+                partialLine.write(current);
+            }
+        }
+        return lines;
+    }
+
+    public boolean hasPartialLine() {
+        return partialLine.size() > 0;
+    }
+
+    public String remaining() {
+        return toLine();
+    }
+}
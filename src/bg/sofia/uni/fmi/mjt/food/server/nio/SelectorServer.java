@@ -0,0 +1,281 @@
+package bg.sofia.uni.fmi.mjt.food.server.nio;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.LineTooLongException;
+import bg.sofia.uni.fmi.mjt.food.server.PipelineProtocol;
+import bg.sofia.uni.fmi.mjt.food.server.RequestProcessor;
+import bg.sofia.uni.fmi.mjt.food.server.config.ServerConfig;
+import bg.sofia.uni.fmi.mjt.food.server.logging.Logger;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.LaneScheduler;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+public class SelectorServer {
+    private static final String EXIT_COMMAND = "exit";
+    private static final String EXIT_RESPONSE = "Connection closed";
+    private static final Logger LOGGER = Logger.getInstance();
+    private static final Metrics METRICS = Metrics.getInstance();
+    private final int port;
+    private final LaneScheduler scheduler;
+    private final int maxConnections;
+    private final Queue<ClientConnection> completed = new ConcurrentLinkedQueue<>();
+    // Connections that got a batch item while the rest of the batch is still running
+    private final Queue<ClientConnection> streamed = new ConcurrentLinkedQueue<>();
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private volatile boolean running;
+    // Only the selector thread opens and closes connections
+    private int openConnections;
+
+    // Both lanes share the workers
+    public SelectorServer(int port, RequestProcessor processor, Executor workers) {
+        this(port, new LaneScheduler(processor, workers, workers));
+    }
+
+    public SelectorServer(int port, LaneScheduler scheduler) {
+        this(port, scheduler, ServerConfig.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public SelectorServer(int port, LaneScheduler scheduler, int maxConnections) {
+        Validator.validateNotNull(scheduler, "LaneScheduler cannot be null");
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections should be positive");
+        }
+        this.port = port;
+        this.scheduler = scheduler;
+        this.maxConnections = maxConnections;
+    }
+
+    public void bind() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ServerConfig.ACCEPT_BACKLOG);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+    }
+
+    public int getLocalPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void start() throws IOException {
+        bind();
+        System.out.println("Server is listening on port " + getLocalPort() + " (selector mode)");
+        serve();
+    }
+
+    public void serve() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+                drainCompleted();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handleKey(key);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            running = false;
+        } finally {
+            closeAll();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void handleKey(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        ClientConnection connection = (ClientConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.readLines();
+                dispatchNext(connection);
+            }
+            if (key.isValid() && key.isWritable() && connection.writePending()) {
+                dispatchNext(connection);
+            }
+            if (connection.shouldClose()) {
+                closeConnection(connection);
+            }
+        } catch (LineTooLongException e) {
+            LOGGER.log("Client sent a line that is too long", e, connection.getClientInfo());
+            closeConnection(connection);
+        } catch (IOException e) {
+            String errorMessage = "Error handling client connection";
+            System.err.println(errorMessage + ": " + e.getMessage());
+            LOGGER.log(errorMessage, e, connection.getClientInfo());
+            closeConnection(connection);
+        }
+    }
+
+    private void accept() {
+        try {
+            SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            if (openConnections >= maxConnections) {
+                rejectConnection(channel);
+                return;
+            }
+            channel.configureBlocking(false);
+            // Responses are queued whole, Nagle would only hold back their last segment
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey clientKey = channel.register(selector, SelectionKey.OP_READ);
+            clientKey.attach(new ClientConnection(channel, clientKey));
+            openConnections++;
+            METRICS.connectionOpened();
+            System.out.println("Client connected: " + channel.getRemoteAddress());
+        } catch (IOException e) {
+            String errorMessage = "Error accepting client connection";
+            System.err.println(errorMessage);
+            LOGGER.log(errorMessage, e);
+        }
+    }
+
+    // Commands of a plain connection are processed one at a time so that responses keep the request order, a
+    // pipelined connection has up to PipelineProtocol.MAX_IN_FLIGHT tagged commands running at once
+    private void dispatchNext(ClientConnection connection) {
+        while (!connection.isExitRequested() && connection.hasPendingLines()
+            && connection.canDispatch(PipelineProtocol.MAX_IN_FLIGHT)) {
+            String line = connection.nextLine();
+            if (line.equalsIgnoreCase(EXIT_COMMAND)) {
+                connection.clearPendingLines();
+                connection.requestExit();
+                answerExitWhenIdle(connection);
+            } else if (connection.isPipelined()) {
+                dispatchTagged(connection, line);
+            } else if (line.equalsIgnoreCase(PipelineProtocol.PIPELINE_COMMAND)) {
+                connection.enablePipelining();
+                connection.enqueueResponse(encode(PipelineProtocol.enabledResponse()));
+                connection.enableWrite();
+            } else {
+                dispatch(connection, line, null);
+            }
+        }
+    }
+
+    private void dispatchTagged(ClientConnection connection, String line) {
+        PipelineProtocol.TaggedLine tagged = PipelineProtocol.parse(line);
+        if (tagged == null) {
+            connection.enqueueResponse(encode(PipelineProtocol.invalidTagResponse()));
+            connection.enableWrite();
+        } else {
+            dispatch(connection, tagged.command(), tagged.id());
+        }
+    }
+
+    // A null id means the response goes out untagged and the items of a batch are streamed as they complete, a
+    // tagged batch is sent as one frame so that it does not interleave with other responses
+    private void dispatch(ClientConnection connection, String command, String id) {
+        connection.requestStarted();
+        Consumer<byte[]> itemSink = id != null ? null : item -> {
+            connection.enqueueResponse(ByteBuffer.wrap(item));
+            streamed.add(connection);
+            selector.wakeup();
+        };
+        scheduler.submit(command, connection.getClientInfo(), itemSink).whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.log("Unexpected error while processing client request", error, connection.getClientInfo());
+                if (id == null) {
+                    connection.closeAfterWrite();
+                } else {
+                    connection.enqueueResponse(ByteBuffer.wrap(PipelineProtocol.errorResponse(id)));
+                }
+            } else {
+                // Wrapping does not copy, a rendered response goes from the cache to the channel as it is
+                connection.enqueueResponse(ByteBuffer.wrap(id == null ? response : PipelineProtocol.tag(response, id)));
+            }
+            completed.add(connection);
+            selector.wakeup();
+        });
+    }
+
+    private void answerExitWhenIdle(ClientConnection connection) {
+        if (connection.inFlight() == 0) {
+            connection.closeAfterWrite();
+            connection.enqueueResponse(encode(EXIT_RESPONSE + System.lineSeparator()));
+            connection.enableWrite();
+        }
+    }
+
+    private void drainCompleted() {
+        ClientConnection connection;
+        while ((connection = streamed.poll()) != null) {
+            connection.enableWrite();
+        }
+        while ((connection = completed.poll()) != null) {
+            connection.requestFinished();
+            if (connection.isExitRequested()) {
+                answerExitWhenIdle(connection);
+            }
+            connection.enableWrite();
+        }
+    }
+
+    // Still blocking, the short answer goes out in one write before the channel is closed
+    private void rejectConnection(SocketChannel channel) {
+        try (channel) {
+            ByteBuffer response = encode(RequestProcessor.busyResponse(scheduler.retryAfterMillis()));
+            while (response.hasRemaining()) {
+                channel.write(response);
+            }
+        } catch (IOException e) {
+            LOGGER.log("Error while turning away a connection over the limit", e);
+        }
+    }
+
+    private void closeConnection(ClientConnection connection) {
+        if (connection.close()) {
+            openConnections--;
+            METRICS.connectionClosed();
+        }
+    }
+
+    private static ByteBuffer encode(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void closeAll() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof ClientConnection connection) {
+                    closeConnection(connection);
+                }
+            }
+            selector.close();
+            serverChannel.close();
+        } catch (IOException | ClosedSelectorException e) {
+            System.err.println("Error while closing selector server: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Adapts code throwing checked exceptions to CompletableFuture stages, the original exception becomes the cause
+public class AsyncStages {
+
+    @FunctionalInterface
+    public interface CheckedSupplier<T> {
+        T get() throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface CheckedFunction<T, R> {
+        R apply(T value) throws Exception;
+    }
+
+    private AsyncStages() {
+    }
+
+    private static CompletionException wrap(Exception e) {
+        return e instanceof CompletionException completionException
+            ? completionException
+            : new CompletionException(e);
+    }
+
+    public static <T> Supplier<T> supplier(CheckedSupplier<T> supplier) {
+        return () -> {
+            try {
+                return supplier.get();
+            } catch (Exception e) {
+                throw wrap(e);
+            }
+        };
+    }
+
+    public static <T, R> Function<T, R> function(CheckedFunction<T, R> function) {
+        return value -> {
+            try {
+                return function.apply(value);
+            } catch (Exception e) {
+                throw wrap(e);
+            }
+        };
+    }
+
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable current = throwable;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+            && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
@@ -3,103 +3,592 @@ package bg.sofia.uni.fmi.mjt.food.server.retriever;
 import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeNotFoundException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import bg.sofia.uni.fmi.mjt.food.server.barcode.Gtin;
 import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.CacheEntry;
+import bg.sofia.uni.fmi.mjt.food.server.cache.CacheStats;
+import bg.sofia.uni.fmi.mjt.food.server.cache.MemoryCache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.NegativeCache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheNamespace;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.circuit.CircuitBreaker;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.circuit.CircuitState;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit.RateLimiterStats;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit.TokenBucketRateLimiter;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.search.FoodIndex;
 import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.json.FoodJson;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class FoodDataRetriever {
     private final Gson gson;
     private final String apiKey;
     private final HttpClient client;
     private final Cache cache;
-    private static final String SEARCH_ENDPOINT = "https://api.nal.usda.gov/fdc/v1/foods/search?";
-    private static final String REPORT_ENDPOINT = "https://api.nal.usda.gov/fdc/v1/food/";
+    private final Executor ioExecutor;
+    private final TokenBucketRateLimiter rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final Duration requestTimeout;
+    private final Duration cacheTtl;
+    private final Clock clock;
+    private final String baseUri;
+    private final MicroBatcher<Integer, FoodReport> reportBatcher;
+    private final MemoryCache<Integer, CacheEntry<FoodReport>> reportMemoryCache;
+    private final MemoryCache<String, CacheEntry<List<FoodDetails>>> keywordMemoryCache;
+    private final MemoryCache<String, CacheEntry<FoodDetails>> barcodeMemoryCache;
+    private final NegativeCache<Integer> missingReports;
+    private final NegativeCache<String> missingKeywords;
+    private final NegativeCache<String> missingBarcodes;
+    private final FoodIndex foodIndex;
+    private final int minLocalMatches;
+    private final SingleFlight<String, FoodReport> reportFlights = new SingleFlight<>();
+    private final SingleFlight<String, List<FoodDetails>> keywordFlights = new SingleFlight<>();
+    private final SingleFlight<String, FoodDetails> barcodeFlights = new SingleFlight<>();
+    // Keys of the stale entries that are being fetched again
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong dataVersion = new AtomicLong();
+    private final AtomicLong localSearches = new AtomicLong();
+    public static final String DEFAULT_BASE_URI = "https://api.nal.usda.gov/fdc/v1/";
+    // USDA accepts at most 20 ids in one multi-ID request
+    public static final int MAX_REPORT_BATCH_SIZE = 20;
+    private static final String SEARCH_ENDPOINT = "foods/search?";
+    private static final String REPORT_ENDPOINT = "food/";
+    private static final String REPORTS_ENDPOINT = "foods?fdcIds=";
+    private static final String ID_SEPARATOR = ",";
     private static final String KEYWORD_SEPARATOR = "%20";
     private static final String API_KEY_STR = "api_key=";
     private static final int GOOD_STATUS_CODE = 200;
     private static final int NO_RESULTS_FOUND_CODE = 404;
+    private static final int SERVER_ERROR_CODE = 500;
+    private static final String REPORT_FLIGHT_PREFIX = "report:";
+    private static final String KEYWORDS_FLIGHT_PREFIX = "keywords:";
+    private static final String BARCODE_FLIGHT_PREFIX = "barcode:";
+    // Cache file I/O of the asynchronous API runs here, so it never blocks HttpClient's own threads
+    private static final ExecutorService DEFAULT_IO_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+    public static final int DEFAULT_MEMORY_CACHE_CAPACITY = 2048;
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(60);
+    public static final int DEFAULT_NEGATIVE_CACHE_CAPACITY = 4096;
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    public static final Duration DEFAULT_CACHE_TTL = Duration.ofDays(1);
 
     public FoodDataRetriever(String apiKey, HttpClient client, Cache cache) {
-        Validator.validateString(apiKey, "API key cannot be null or blank");
-        Validator.validateNotNull(client, "Http client cannot be null");
-        Validator.validateNotNull(cache, "Cache cannot be null");
-        this.gson = new Gson();
-        this.apiKey = apiKey;
-        this.client = client;
-        this.cache = cache;
+        this(builder(apiKey, client, cache));
+    }
+
+    public FoodDataRetriever(String apiKey, HttpClient client, Cache cache, Executor ioExecutor) {
+        this(builder(apiKey, client, cache).setIoExecutor(ioExecutor));
+    }
+
+    public FoodDataRetriever(RetrieverBuilder builder) {
+        Validator.validateString(builder.apiKey, "API key cannot be null or blank");
+        Validator.validateNotNull(builder.client, "Http client cannot be null");
+        Validator.validateNotNull(builder.cache, "Cache cannot be null");
+        Validator.validateNotNull(builder.ioExecutor, "IO executor cannot be null");
+        Validator.validateNotNull(builder.rateLimiter, "Rate limiter cannot be null");
+        Validator.validateNotNull(builder.circuitBreaker, "Circuit breaker cannot be null");
+        Validator.validateNotNull(builder.requestTimeout, "Request timeout cannot be null");
+        Validator.validateNotNull(builder.cacheTtl, "Cache time to live cannot be null");
+        Validator.validateNotNull(builder.clock, "Clock cannot be null");
+        Validator.validateString(builder.baseUri, "Base URI cannot be null or blank");
+        if (builder.requestTimeout.isNegative() || builder.requestTimeout.isZero() || builder.cacheTtl.isNegative()) {
+            throw new IllegalArgumentException("Request timeout should be positive and time to live non-negative");
+        }
+        if (builder.minLocalMatches < 0) {
+            throw new IllegalArgumentException("Min local matches cannot be negative");
+        }
+        this.gson = FoodJson.create();
+        this.apiKey = builder.apiKey;
+        this.client = builder.client;
+        this.cache = builder.cache;
+        this.ioExecutor = builder.ioExecutor;
+        this.rateLimiter = builder.rateLimiter;
+        this.circuitBreaker = builder.circuitBreaker;
+        this.requestTimeout = builder.requestTimeout;
+        this.cacheTtl = builder.cacheTtl;
+        this.clock = builder.clock;
+        this.baseUri = builder.baseUri.endsWith("/") ? builder.baseUri : builder.baseUri + "/";
+        this.reportBatcher = builder.reportBatchWindow == null
+            ? null
+            : new MicroBatcher<>(builder.reportBatchWindow, builder.reportBatchSize, this::fetchReports, ioExecutor);
+        this.reportMemoryCache = new MemoryCache<>(builder.memoryCacheCapacity);
+        this.keywordMemoryCache = new MemoryCache<>(builder.memoryCacheCapacity);
+        this.barcodeMemoryCache = new MemoryCache<>(builder.memoryCacheCapacity);
+        this.missingReports = new NegativeCache<>(builder.negativeCacheCapacity, builder.negativeTtl);
+        this.missingKeywords = new NegativeCache<>(builder.negativeCacheCapacity, builder.negativeTtl);
+        this.missingBarcodes = new NegativeCache<>(builder.negativeCacheCapacity, builder.negativeTtl);
+        this.foodIndex = builder.foodIndex;
+        this.minLocalMatches = builder.minLocalMatches;
+    }
+
+    public static RetrieverBuilder builder(String apiKey, HttpClient client, Cache cache) {
+        return new RetrieverBuilder(apiKey, client, cache);
+    }
+
+    public Map<String, CacheStats> memoryCacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("reports", reportMemoryCache.stats());
+        stats.put("keywords", keywordMemoryCache.stats());
+        stats.put("barcodes", barcodeMemoryCache.stats());
+        return stats;
+    }
+
+    public Map<String, CacheStats> negativeCacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        stats.put("reports", missingReports.stats());
+        stats.put("keywords", missingKeywords.stats());
+        stats.put("barcodes", missingBarcodes.stats());
+        return stats;
+    }
+
+    // True while an earlier lookup found nothing, the get methods then fail without leaving memory
+    public boolean isKnownMissingReport(int id) {
+        return missingReports.contains(id);
+    }
+
+    public boolean isKnownMissingKeywords(List<String> keywords) {
+        Validator.validateNotNull(keywords, "Keywords cannot be null");
+        return missingKeywords.contains(normalizeKeywords(keywords));
+    }
+
+    public RateLimiterStats rateLimiterStats() {
+        return rateLimiter.stats();
+    }
+
+    public CircuitState circuitState() {
+        return circuitBreaker.state();
+    }
+
+    public long revalidationCount() {
+        return revalidations.get();
+    }
+
+    // Grows whenever a refresh brings data that differs from what was served, so anything rendered from an older
+    // version can be thrown away
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    // Keyword searches answered by the food index instead of USDA, as enough matches or as a fallback
+    public long localSearchCount() {
+        return localSearches.get();
+    }
+
+    // Adds every food of the cached keyword searches and barcodes to the index, returns how many foods it holds
+    public int indexCachedFoods() throws FoodRetrievalException {
+        if (foodIndex == null) {
+            return 0;
+        }
+        try {
+            for (String json : cache.loadAll(CacheNamespace.KEYWORDS)) {
+                SearchResponse response = parseCached(json, SearchResponse.class);
+                if (response != null && response.foods() != null) {
+                    foodIndex.addAll(response.foods());
+                }
+            }
+            for (String json : cache.loadAll(CacheNamespace.BARCODES)) {
+                FoodDetails food = parseCached(json, FoodDetails.class);
+                if (food != null) {
+                    foodIndex.add(food);
+                }
+            }
+        } catch (IOException e) {
+            throw new FoodRetrievalException("Error while indexing cached foods", e);
+        }
+        return foodIndex.size();
+    }
+
+    // A damaged file is left out of the index instead of failing the whole build
+    private <T> T parseCached(String json, Class<T> type) {
+        try {
+            return gson.fromJson(json, type);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void indexFoods(List<FoodDetails> foods) {
+        if (foodIndex != null && foods != null) {
+            foodIndex.addAll(foods);
+        }
+    }
+
+    // Null unless the index has at least the given number of foods with every keyword
+    private List<FoodDetails> searchLocally(List<String> keywords, int minMatches) {
+        if (foodIndex == null || minMatches <= 0) {
+            return null;
+        }
+        List<FoodDetails> found = foodIndex.search(keywords);
+        if (found.size() < minMatches) {
+            return null;
+        }
+        localSearches.incrementAndGet();
+        return found;
+    }
+
+    // The index answers a search before USDA only when the minimum number of local matches is set and reached
+    private List<FoodDetails> searchLocallyFirst(List<String> keywords) {
+        return searchLocally(keywords, minLocalMatches);
+    }
+
+    // When USDA cannot answer, any local match is better than an error
+    private List<FoodDetails> searchLocallyInstead(List<String> keywords, FoodRetrievalException error)
+        throws FoodRetrievalException {
+        List<FoodDetails> found = searchLocally(keywords, 1);
+        if (found == null) {
+            throw error;
+        }
+        return found;
+    }
+
+    private HttpRequest request(URI uri) {
+        return HttpRequest.newBuilder().uri(uri).timeout(requestTimeout).build();
     }
 
     private URI createUriForFoodId(int id) {
-        String uri = REPORT_ENDPOINT + id + "?" + API_KEY_STR + apiKey;
+        String uri = baseUri + REPORT_ENDPOINT + id + "?" + API_KEY_STR + apiKey;
         return URI.create(uri);
     }
 
     private URI createUriForKeywords(List<String> keywords) {
-        String uri = SEARCH_ENDPOINT + API_KEY_STR + apiKey + "&query=" + String.join(KEYWORD_SEPARATOR, keywords);
+        String uri = baseUri + SEARCH_ENDPOINT + API_KEY_STR + apiKey
+            + "&query=" + String.join(KEYWORD_SEPARATOR, keywords);
         return URI.create(uri);
     }
 
+    private URI createUriForBarcode(String gtin) {
+        return createUriForKeywords(List.of(Gtin.formatRetail(Gtin.parse(gtin))));
+    }
+
+    private URI createUriForFoodIds(List<Integer> ids) {
+        String joined = String.join(ID_SEPARATOR, ids.stream().map(String::valueOf).toList());
+        return URI.create(baseUri + REPORTS_ENDPOINT + joined + "&" + API_KEY_STR + apiKey);
+    }
+
+    private static String normalizeKeywords(List<String> keywords) {
+        return keywords.stream()
+            .map(keyword -> keyword.toLowerCase(Locale.ROOT))
+            .distinct()
+            .sorted()
+            .reduce((first, second) -> first + " " + second)
+            .orElse("");
+    }
+
+    private static <T, E extends Exception> T await(CompletableFuture<T> flight, Class<E> expected)
+        throws FoodRetrievalException, E {
+        if (!flight.isDone()) {
+            Metrics.markUpstream();
+        }
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof FoodRetrievalException retrievalException) {
+                throw retrievalException;
+            }
+            if (expected.isInstance(cause)) {
+                throw expected.cast(cause);
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new FoodRetrievalException("Unexpected error while waiting for food data", cause);
+        }
+    }
+
+    // Entries older than the time to live are still served, one background refresh per key fetches them again and
+    // a refresh that fails leaves the stale value in place for the next one
+    private void revalidate(String key, Supplier<CompletableFuture<?>> refresh) {
+        if (!revalidating.add(key)) {
+            return;
+        }
+        revalidations.incrementAndGet();
+        refresh.get().whenComplete((value, error) -> revalidating.remove(key));
+    }
+
+    private boolean isStale(CacheEntry<?> entry) {
+        return entry.isStale(cacheTtl, clock.millis());
+    }
+
+    private FoodReport serveReport(int id, CacheEntry<FoodReport> entry) {
+        if (isStale(entry)) {
+            revalidate(REPORT_FLIGHT_PREFIX + id, () -> fetchFoodReportAsync(id));
+        }
+        return entry.value();
+    }
+
+    private List<FoodDetails> serveFoods(List<String> keywords, CacheEntry<List<FoodDetails>> entry) {
+        if (isStale(entry)) {
+            revalidate(KEYWORDS_FLIGHT_PREFIX + normalizeKeywords(keywords), () -> fetchFoodByKeywordsAsync(keywords));
+        }
+        return entry.value();
+    }
+
+    private FoodDetails serveBarcode(String gtin, CacheEntry<FoodDetails> entry) {
+        if (isStale(entry)) {
+            revalidate(BARCODE_FLIGHT_PREFIX + gtin, () -> fetchFoodByBarcodeAsync(gtin));
+        }
+        return entry.value();
+    }
+
+    private void rememberReport(int id, CacheEntry<FoodReport> entry) {
+        trackChange(reportMemoryCache.put(id, entry), entry);
+    }
+
+    private void rememberFoods(String keywords, CacheEntry<List<FoodDetails>> entry) {
+        trackChange(keywordMemoryCache.put(keywords, entry), entry);
+    }
+
+    private void rememberBarcode(String barcode, CacheEntry<FoodDetails> entry) {
+        trackChange(barcodeMemoryCache.put(barcode, entry), entry);
+    }
+
+    private void trackChange(CacheEntry<?> previous, CacheEntry<?> next) {
+        if (previous != null && !previous.value().equals(next.value())) {
+            dataVersion.incrementAndGet();
+        }
+    }
+
+    private <T> CacheEntry<T> fresh(T value) {
+        return new CacheEntry<>(value, clock.millis());
+    }
+
     private FoodReport getCachedReport(int id) throws FoodRetrievalException {
-        String json;
+        CacheEntry<String> stored;
         try {
-            json = cache.loadReport(id);
+            stored = cache.loadReportEntry(id);
         } catch (IOException e) {
             throw new FoodRetrievalException("Error while loading report from cache for id: " + id, e);
         }
-        if (json != null) {
-            FoodReport report = gson.fromJson(json, FoodReport.class);
-            report.filterNutrients();
-            return report;
+        if (stored != null) {
+            CacheEntry<FoodReport> entry =
+                new CacheEntry<>(gson.fromJson(stored.value(), FoodReport.class), stored.savedAtMillis());
+            rememberReport(id, entry);
+            return serveReport(id, entry);
         }
         return null;
     }
 
+    // Memory and cache store only, null when answering would need USDA
+    public FoodReport findCachedFoodReport(int id) throws FoodRetrievalException {
+        Validator.validateNumberNonNegative(id, "Food ID cannot be negative");
+        CacheEntry<FoodReport> inMemory = reportMemoryCache.get(id);
+        return inMemory != null ? serveReport(id, inMemory) : getCachedReport(id);
+    }
+
     public FoodReport getFoodReport(int id)
         throws FoodRetrievalException, NoResultsFoundException {
         Validator.validateNumberNonNegative(id, "Food ID cannot be negative");
+        CacheEntry<FoodReport> inMemory = reportMemoryCache.get(id);
+        if (inMemory != null) {
+            return serveReport(id, inMemory);
+        }
+        if (missingReports.contains(id)) {
+            throw noReport(id);
+        }
+        return await(reportFlights.execute(REPORT_FLIGHT_PREFIX + id, () -> loadFoodReport(id)),
+            NoResultsFoundException.class);
+    }
+
+    private FoodReport loadFoodReport(int id) throws FoodRetrievalException, NoResultsFoundException {
         FoodReport cachedReport = getCachedReport(id);
         if (cachedReport != null) {
             return cachedReport;
         }
-        URI uri = createUriForFoodId(id);
-        HttpRequest request = HttpRequest.newBuilder().uri(uri).build();
-        HttpResponse<String> response;
+        if (reportBatcher != null) {
+            return await(reportBatcher.submit(id).thenApply(AsyncStages.function(report -> requireReport(id, report))),
+                NoResultsFoundException.class);
+        }
+        HttpResponse<InputStream> response = send(request(createUriForFoodId(id)),
+            "Error while retrieving food with id: " + id);
+        return handleReportResponse(id, response);
+    }
+
+    // Every upstream call passes the circuit breaker and takes a token first, then reports the response headers
+    // back to the limiter and the outcome back to the breaker. Timeouts and 5xx statuses count as failures.
+    private HttpResponse<InputStream> send(HttpRequest request, String errorMessage) throws FoodRetrievalException {
+        HttpResponse<InputStream> response;
+        Metrics.markUpstream();
+        long permit = circuitBreaker.acquire();
+        takeToken(permit);
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            circuitBreaker.onFailure(permit);
+            throw new FoodRetrievalException(errorMessage, e);
+        } catch (InterruptedException e) {
+            circuitBreaker.onAbandoned(permit);
+            Thread.currentThread().interrupt();
+            throw new FoodRetrievalException(errorMessage, e);
+        }
+        recordOutcome(permit, response, null);
+        return checkThrottled(response);
+    }
+
+    // Runs after the breaker let the call through, a call turned away here never reached USDA and is reported as
+    // abandoned, so a half-open probe is not lost
+    private void takeToken(long permit) throws FoodRetrievalException {
+        try {
+            rateLimiter.acquire();
+        } catch (RateLimitExceededException e) {
+            circuitBreaker.onAbandoned(permit);
+            throw e;
+        } catch (InterruptedException e) {
+            circuitBreaker.onAbandoned(permit);
+            Thread.currentThread().interrupt();
+            throw new FoodRetrievalException("Interrupted while waiting to call USDA", e);
+        }
+    }
+
+    private void recordOutcome(long permit, HttpResponse<InputStream> response, Throwable error) {
+        if (error != null || response.statusCode() >= SERVER_ERROR_CODE) {
+            circuitBreaker.onFailure(permit);
+        } else {
+            circuitBreaker.onSuccess(permit);
+        }
+    }
+
+    private HttpResponse<InputStream> checkThrottled(HttpResponse<InputStream> response)
+        throws RateLimitExceededException {
+        rateLimiter.onResponse(response);
+        if (response.statusCode() == TokenBucketRateLimiter.TOO_MANY_REQUESTS_CODE) {
+            discardBody(response);
+            throw new RateLimitExceededException("USDA rate limit exceeded", rateLimiter.retryAfterMillis());
+        }
+        return response;
+    }
+
+    // The body is parsed while it streams in and closed unread for error statuses
+    private <T> T readBody(HttpResponse<InputStream> response, Class<T> type, String errorMessage)
+        throws FoodRetrievalException {
+        try (InputStream body = response.body()) {
+            return FoodJson.read(gson, body, type);
+        } catch (IOException | JsonParseException e) {
+            throw new FoodRetrievalException(errorMessage, e);
+        }
+    }
+
+    private static void discardBody(HttpResponse<InputStream> response) {
+        InputStream body = response.body();
+        if (body == null) {
+            return;
+        }
         try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new FoodRetrievalException("Error while retrieving food with id: " + id, e);
+            body.close();
+        } catch (IOException e) {
+            // the status code is already known, a body that fails to close changes nothing
+        }
+    }
+
+    private FoodReport handleReportResponse(int id, HttpResponse<InputStream> response)
+        throws FoodRetrievalException, NoResultsFoundException {
+        if (response.statusCode() != GOOD_STATUS_CODE) {
+            discardBody(response);
         }
         switch (response.statusCode()) {
             case GOOD_STATUS_CODE -> {
-                FoodReport report = gson.fromJson(response.body(), FoodReport.class);
+                FoodReport report = readBody(response, FoodReport.class,
+                    "Error while reading food report with id: " + id);
                 try {
                     cache.saveReport(id, gson.toJson(report));
                 } catch (IOException e) {
                     throw new FoodRetrievalException("Error while saving report to cache for id: " + id, e);
                 }
-                report.filterNutrients();
+                rememberReport(id, fresh(report));
+                missingReports.invalidate(id);
                 return report;
             }
-            case NO_RESULTS_FOUND_CODE -> throw new NoResultsFoundException("No food found with id: " + id);
+            case NO_RESULTS_FOUND_CODE -> {
+                missingReports.put(id);
+                throw noReport(id);
+            }
             default -> throw new FoodRetrievalException(
                 "Couldnt retrieve food with id: " + id + " status code: " + response.statusCode());
         }
     }
 
+    private static NoResultsFoundException noReport(int id) {
+        return new NoResultsFoundException("No food found with id: " + id);
+    }
+
+    private static FoodReport requireReport(int id, FoodReport report) throws NoResultsFoundException {
+        if (report == null) {
+            throw noReport(id);
+        }
+        return report;
+    }
+
+    // Loads a whole batch of report misses with one multi-ID request, ids USDA does not know are left out
+    private Map<Integer, FoodReport> fetchReports(List<Integer> ids) throws FoodRetrievalException {
+        HttpResponse<InputStream> response = send(request(createUriForFoodIds(ids)),
+            "Error while retrieving foods with ids: " + ids);
+        if (response.statusCode() == NO_RESULTS_FOUND_CODE) {
+            discardBody(response);
+            ids.forEach(missingReports::put);
+            return Map.of();
+        }
+        if (response.statusCode() != GOOD_STATUS_CODE) {
+            discardBody(response);
+            throw new FoodRetrievalException(
+                "Couldnt retrieve foods with ids: " + ids + " status code: " + response.statusCode());
+        }
+        List<FoodReport> reports;
+        try (InputStream body = response.body()) {
+            reports = FoodJson.readList(gson, body, FoodReport.class);
+        } catch (IOException | JsonParseException e) {
+            throw new FoodRetrievalException("Error while reading foods with ids: " + ids, e);
+        }
+        Map<Integer, FoodReport> loaded = new LinkedHashMap<>();
+        for (FoodReport report : reports) {
+            try {
+                cache.saveReport(report.fdcId(), gson.toJson(report));
+            } catch (IOException e) {
+                throw new FoodRetrievalException("Error while saving report to cache for id: " + report.fdcId(), e);
+            }
+            rememberReport(report.fdcId(), fresh(report));
+            missingReports.invalidate(report.fdcId());
+            loaded.put(report.fdcId(), report);
+        }
+        for (int id : ids) {
+            if (!loaded.containsKey(id)) {
+                missingReports.put(id);
+            }
+        }
+        return loaded;
+    }
+
     private void handleStatusCode(int statusCode, List<String> keywords)
         throws FoodRetrievalException, NoResultsFoundException {
         if (statusCode == NO_RESULTS_FOUND_CODE) {
-            throw new NoResultsFoundException("No food found with keywords: " + String.join(" ", keywords));
+            missingKeywords.put(normalizeKeywords(keywords));
+            throw noFoods(keywords);
         }
         if (statusCode != GOOD_STATUS_CODE) {
             throw new FoodRetrievalException(
@@ -108,15 +597,18 @@ public class FoodDataRetriever {
         }
     }
 
-    private List<FoodDetails> getCachedKeywordSearch(String keywords) throws FoodRetrievalException {
+    private List<FoodDetails> getCachedKeywordSearch(List<String> keywords) throws FoodRetrievalException {
+        String keywordKey = String.join(" ", keywords);
         try {
-            String cachedJson = cache.loadByKeywords(keywords);
-            if (cachedJson != null) {
-                SearchResponse cached = gson.fromJson(cachedJson, SearchResponse.class);
-                return cached.foods();
+            CacheEntry<String> stored = cache.loadByKeywordsEntry(keywordKey);
+            if (stored != null) {
+                SearchResponse cached = gson.fromJson(stored.value(), SearchResponse.class);
+                CacheEntry<List<FoodDetails>> entry = new CacheEntry<>(cached.foods(), stored.savedAtMillis());
+                rememberFoods(keywordKey, entry);
+                return serveFoods(keywords, entry);
             }
         } catch (IOException e) {
-            throw new FoodRetrievalException("Error loading keywords from cache: " + keywords, e);
+            throw new FoodRetrievalException("Error loading keywords from cache: " + keywordKey, e);
         }
         return null;
     }
@@ -126,9 +618,16 @@ public class FoodDataRetriever {
         try {
             String responseJSON = gson.toJson(response);
             cache.saveByKeywords(keywords, responseJSON);
+            rememberFoods(keywords, fresh(response.foods()));
+            indexFoods(response.foods());
             for (FoodDetails food : response.foods()) {
                 if (food.gtinUpc() != null) {
                     cache.saveByBarcode(food.gtinUpc(), gson.toJson(food));
+                    String gtin = Gtin.canonical(food.gtinUpc());
+                    if (gtin != null) {
+                        rememberBarcode(gtin, fresh(food));
+                        missingBarcodes.invalidate(gtin);
+                    }
                 }
             }
         } catch (IOException e) {
@@ -136,43 +635,402 @@ public class FoodDataRetriever {
         }
     }
 
+    // Memory and cache store only, null when answering would need USDA
+    public List<FoodDetails> findCachedFoodByKeywords(List<String> keywords) throws FoodRetrievalException {
+        Validator.validateNotNull(keywords, "Keywords cannot be null");
+        CacheEntry<List<FoodDetails>> inMemory = keywordMemoryCache.get(String.join(" ", keywords));
+        if (inMemory != null) {
+            return serveFoods(keywords, inMemory);
+        }
+        List<FoodDetails> cached = getCachedKeywordSearch(keywords);
+        return cached != null ? cached : searchLocallyFirst(keywords);
+    }
+
     public List<FoodDetails> getFoodByKeywords(List<String> keywords)
         throws FoodRetrievalException, NoResultsFoundException {
         Validator.validateNotNull(keywords, "Keywords cannot be null");
-        String keywordKey = String.join(" ", keywords);
+        CacheEntry<List<FoodDetails>> inMemory = keywordMemoryCache.get(String.join(" ", keywords));
+        if (inMemory != null) {
+            return serveFoods(keywords, inMemory);
+        }
+        if (isKnownMissingKeywords(keywords)) {
+            throw noFoods(keywords);
+        }
+        return await(keywordFlights.execute(KEYWORDS_FLIGHT_PREFIX + normalizeKeywords(keywords),
+            () -> loadFoodByKeywords(keywords)), NoResultsFoundException.class);
+    }
 
-        List<FoodDetails> cached = getCachedKeywordSearch(keywordKey);
+    private List<FoodDetails> loadFoodByKeywords(List<String> keywords)
+        throws FoodRetrievalException, NoResultsFoundException {
+        List<FoodDetails> cached = getCachedKeywordSearch(keywords);
         if (cached != null) {
             return cached;
         }
-
-        URI uri = createUriForKeywords(keywords);
-        HttpRequest request = HttpRequest.newBuilder().uri(uri).build();
-        HttpResponse<String> response;
+        List<FoodDetails> local = searchLocallyFirst(keywords);
+        if (local != null) {
+            return local;
+        }
         try {
-            response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (IOException | InterruptedException e) {
-            throw new FoodRetrievalException("Error retrieving food with keywords: " + keywordKey, e);
+            return fetchFoodByKeywords(keywords);
+        } catch (FoodRetrievalException e) {
+            return searchLocallyInstead(keywords, e);
+        }
+    }
+
+    private List<FoodDetails> fetchFoodByKeywords(List<String> keywords)
+        throws FoodRetrievalException, NoResultsFoundException {
+        HttpResponse<InputStream> response = send(request(createUriForKeywords(keywords)),
+            "Error retrieving food with keywords: " + String.join(" ", keywords));
+        return handleKeywordsResponse(keywords, response);
+    }
+
+    private List<FoodDetails> handleKeywordsResponse(List<String> keywords, HttpResponse<InputStream> response)
+        throws FoodRetrievalException, NoResultsFoundException {
+        String keywordKey = String.join(" ", keywords);
+        if (response.statusCode() != GOOD_STATUS_CODE) {
+            discardBody(response);
         }
         handleStatusCode(response.statusCode(), keywords);
 
-        SearchResponse searchResponse = gson.fromJson(response.body(), SearchResponse.class);
+        SearchResponse searchResponse = readBody(response, SearchResponse.class,
+            "Error while reading foods with keywords: " + keywordKey);
+        // An empty search is a miss like a 404, it is not saved so that it is asked again once it expires
+        if (searchResponse.foods() == null || searchResponse.foods().isEmpty()) {
+            missingKeywords.put(normalizeKeywords(keywords));
+            throw noFoods(keywords);
+        }
         saveFoodsToCache(keywordKey, searchResponse);
         return searchResponse.foods();
     }
 
+    private static NoResultsFoundException noFoods(List<String> keywords) {
+        return new NoResultsFoundException("No food found with keywords: " + String.join(" ", keywords));
+    }
+
+    // Barcodes are looked up by their 14 digit GTIN, so every zero padding of one product shares the memory entry
+    private static String canonicalBarcode(String barcode) throws BarcodeNotFoundException {
+        String gtin = Gtin.canonical(barcode);
+        if (gtin == null) {
+            throw new BarcodeNotFoundException("Not a valid barcode: " + barcode);
+        }
+        return gtin;
+    }
+
+    // Memory and cache store only, null for an invalid barcode or when answering would need USDA
+    public FoodDetails findCachedFoodByBarcode(String barcode) throws FoodRetrievalException {
+        Validator.validateString(barcode, "Barcode cannot be null or blank");
+        String gtin = Gtin.canonical(barcode);
+        if (gtin == null) {
+            return null;
+        }
+        CacheEntry<FoodDetails> inMemory = barcodeMemoryCache.get(gtin);
+        return inMemory != null ? serveBarcode(gtin, inMemory) : getCachedBarcode(gtin);
+    }
+
+    public boolean isKnownMissingBarcode(String barcode) {
+        Validator.validateString(barcode, "Barcode cannot be null or blank");
+        String gtin = Gtin.canonical(barcode);
+        return gtin == null || missingBarcodes.contains(gtin);
+    }
+
     public FoodDetails getFoodByBarcode(String barcode) throws BarcodeNotFoundException, FoodRetrievalException {
         Validator.validateString(barcode, "Barcode cannot be null or blank");
+        String gtin = canonicalBarcode(barcode);
+        CacheEntry<FoodDetails> inMemory = barcodeMemoryCache.get(gtin);
+        if (inMemory != null) {
+            return serveBarcode(gtin, inMemory);
+        }
+        if (missingBarcodes.contains(gtin)) {
+            throw noBarcode(barcode);
+        }
+        return await(barcodeFlights.execute(BARCODE_FLIGHT_PREFIX + gtin, () -> loadFoodByBarcode(gtin)),
+            BarcodeNotFoundException.class);
+    }
+
+    private FoodDetails loadFoodByBarcode(String gtin) throws BarcodeNotFoundException, FoodRetrievalException {
+        FoodDetails cached = getCachedBarcode(gtin);
+        if (cached != null) {
+            return cached;
+        }
+        HttpResponse<InputStream> response = send(request(createUriForBarcode(gtin)),
+            "Error while searching USDA for barcode: " + gtin);
+        return handleBarcodeResponse(gtin, response);
+    }
+
+    private FoodDetails getCachedBarcode(String gtin) throws FoodRetrievalException {
         try {
-            String json;
-            json = cache.loadBarcode(barcode);
-            if (json == null) {
-                throw new BarcodeNotFoundException("Barcode not found in cache" + barcode);
+            CacheEntry<String> stored = cache.loadBarcodeEntry(gtin);
+            if (stored == null) {
+                return null;
             }
-            return gson.fromJson(json, FoodDetails.class);
+            FoodDetails food = gson.fromJson(stored.value(), FoodDetails.class);
+            CacheEntry<FoodDetails> entry = new CacheEntry<>(food, stored.savedAtMillis());
+            rememberBarcode(gtin, entry);
+            return serveBarcode(gtin, entry);
         } catch (IOException e) {
-            throw new FoodRetrievalException("Error loading barcode from cache: " + barcode, e);
+            throw new FoodRetrievalException("Error loading barcode from cache: " + gtin, e);
         }
     }
-}
 
+    // USDA has no barcode endpoint, a miss is searched for by GTIN and answered by the result whose gtinUpc is the
+    // same product. Only that food is saved, under its barcode, the search itself is not kept as a keyword result.
+    private FoodDetails handleBarcodeResponse(String gtin, HttpResponse<InputStream> response)
+        throws BarcodeNotFoundException, FoodRetrievalException {
+        if (response.statusCode() != GOOD_STATUS_CODE) {
+            discardBody(response);
+        }
+        if (response.statusCode() == NO_RESULTS_FOUND_CODE) {
+            missingBarcodes.put(gtin);
+            throw noBarcode(gtin);
+        }
+        if (response.statusCode() != GOOD_STATUS_CODE) {
+            throw new FoodRetrievalException(
+                "Couldnt search USDA for barcode: " + gtin + " status code: " + response.statusCode());
+        }
+        SearchResponse searchResponse = readBody(response, SearchResponse.class,
+            "Error while reading foods for barcode: " + gtin);
+        FoodDetails match = findByGtin(gtin, searchResponse.foods());
+        if (match == null) {
+            missingBarcodes.put(gtin);
+            throw noBarcode(gtin);
+        }
+        try {
+            cache.saveByBarcode(match.gtinUpc(), gson.toJson(match));
+        } catch (IOException e) {
+            throw new FoodRetrievalException("Error while saving barcode to cache: " + gtin, e);
+        }
+        rememberBarcode(gtin, fresh(match));
+        missingBarcodes.invalidate(gtin);
+        indexFoods(List.of(match));
+        return match;
+    }
+
+    // A search by GTIN also matches foods that only mention the digits, so the barcode has to be the same product
+    private static FoodDetails findByGtin(String gtin, List<FoodDetails> foods) {
+        if (foods == null) {
+            return null;
+        }
+        for (FoodDetails food : foods) {
+            if (food.gtinUpc() != null && gtin.equals(Gtin.canonical(food.gtinUpc()))) {
+                return food;
+            }
+        }
+        return null;
+    }
+
+    private static BarcodeNotFoundException noBarcode(String barcode) {
+        return new BarcodeNotFoundException("Barcode not found: " + barcode);
+    }
+
+    // Waiting for a token blocks, so it happens on the I/O executor before the request is handed to HttpClient
+    private CompletableFuture<HttpResponse<InputStream>> sendAsync(HttpRequest request, String errorMessage) {
+        return CompletableFuture.supplyAsync(AsyncStages.supplier(() -> {
+            long permit = circuitBreaker.acquire();
+            takeToken(permit);
+            return permit;
+        }), ioExecutor)
+            .thenCompose(permit -> client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((response, error) -> recordOutcome(permit, response, error)))
+            .handle((response, error) -> {
+                if (error != null) {
+                    Throwable cause = AsyncStages.unwrap(error);
+                    throw new CompletionException(cause instanceof FoodRetrievalException
+                        ? cause
+                        : new FoodRetrievalException(errorMessage, cause));
+                }
+                return response;
+            })
+            .thenApply(AsyncStages.function(this::checkThrottled));
+    }
+
+    public CompletableFuture<FoodReport> getFoodReportAsync(int id) {
+        Validator.validateNumberNonNegative(id, "Food ID cannot be negative");
+        CacheEntry<FoodReport> inMemory = reportMemoryCache.get(id);
+        if (inMemory != null) {
+            return CompletableFuture.completedFuture(serveReport(id, inMemory));
+        }
+        if (missingReports.contains(id)) {
+            return CompletableFuture.failedFuture(noReport(id));
+        }
+        return reportFlights.executeAsync(REPORT_FLIGHT_PREFIX + id, () -> loadFoodReportAsync(id));
+    }
+
+    private CompletableFuture<FoodReport> loadFoodReportAsync(int id) {
+        return CompletableFuture.supplyAsync(AsyncStages.supplier(() -> getCachedReport(id)), ioExecutor)
+            .thenCompose(cached -> cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : fetchFoodReportAsync(id));
+    }
+
+    private CompletableFuture<FoodReport> fetchFoodReportAsync(int id) {
+        if (reportBatcher != null) {
+            return reportBatcher.submit(id).thenApply(AsyncStages.function(report -> requireReport(id, report)));
+        }
+        String errorMessage = "Error while retrieving food with id: " + id;
+        return sendAsync(request(createUriForFoodId(id)), errorMessage)
+            .thenApplyAsync(AsyncStages.function(response -> handleReportResponse(id, response)), ioExecutor);
+    }
+
+    public CompletableFuture<List<FoodDetails>> getFoodByKeywordsAsync(List<String> keywords) {
+        Validator.validateNotNull(keywords, "Keywords cannot be null");
+        CacheEntry<List<FoodDetails>> inMemory = keywordMemoryCache.get(String.join(" ", keywords));
+        if (inMemory != null) {
+            return CompletableFuture.completedFuture(serveFoods(keywords, inMemory));
+        }
+        if (isKnownMissingKeywords(keywords)) {
+            return CompletableFuture.failedFuture(noFoods(keywords));
+        }
+        return keywordFlights.executeAsync(KEYWORDS_FLIGHT_PREFIX + normalizeKeywords(keywords),
+            () -> loadFoodByKeywordsAsync(keywords));
+    }
+
+    private CompletableFuture<List<FoodDetails>> loadFoodByKeywordsAsync(List<String> keywords) {
+        return CompletableFuture.supplyAsync(AsyncStages.supplier(() -> findCachedFoodByKeywords(keywords)), ioExecutor)
+            .thenCompose(cached -> cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : fetchFoodByKeywordsAsync(keywords)
+                    .exceptionallyCompose(error -> searchLocallyInstead(keywords, error)));
+    }
+
+    private CompletableFuture<List<FoodDetails>> searchLocallyInstead(List<String> keywords, Throwable error) {
+        Throwable cause = AsyncStages.unwrap(error);
+        if (!(cause instanceof FoodRetrievalException retrievalException)) {
+            return CompletableFuture.failedFuture(cause);
+        }
+        return CompletableFuture.supplyAsync(
+            AsyncStages.supplier(() -> searchLocallyInstead(keywords, retrievalException)), ioExecutor);
+    }
+
+    private CompletableFuture<List<FoodDetails>> fetchFoodByKeywordsAsync(List<String> keywords) {
+        String errorMessage = "Error retrieving food with keywords: " + String.join(" ", keywords);
+        return sendAsync(request(createUriForKeywords(keywords)), errorMessage)
+            .thenApplyAsync(AsyncStages.function(response -> handleKeywordsResponse(keywords, response)), ioExecutor);
+    }
+
+    public CompletableFuture<FoodDetails> getFoodByBarcodeAsync(String barcode) {
+        Validator.validateString(barcode, "Barcode cannot be null or blank");
+        String gtin;
+        try {
+            gtin = canonicalBarcode(barcode);
+        } catch (BarcodeNotFoundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CacheEntry<FoodDetails> inMemory = barcodeMemoryCache.get(gtin);
+        if (inMemory != null) {
+            return CompletableFuture.completedFuture(serveBarcode(gtin, inMemory));
+        }
+        if (missingBarcodes.contains(gtin)) {
+            return CompletableFuture.failedFuture(noBarcode(barcode));
+        }
+        return barcodeFlights.executeAsync(BARCODE_FLIGHT_PREFIX + gtin, () -> loadFoodByBarcodeAsync(gtin));
+    }
+
+    private CompletableFuture<FoodDetails> loadFoodByBarcodeAsync(String gtin) {
+        return CompletableFuture.supplyAsync(AsyncStages.supplier(() -> getCachedBarcode(gtin)), ioExecutor)
+            .thenCompose(cached -> cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : fetchFoodByBarcodeAsync(gtin));
+    }
+
+    private CompletableFuture<FoodDetails> fetchFoodByBarcodeAsync(String gtin) {
+        return sendAsync(request(createUriForBarcode(gtin)), "Error while searching USDA for barcode: " + gtin)
+            .thenApplyAsync(AsyncStages.function(response -> handleBarcodeResponse(gtin, response)), ioExecutor);
+    }
+
+    public static class RetrieverBuilder {
+        private final String apiKey;
+        private final HttpClient client;
+        private final Cache cache;
+        private Executor ioExecutor = DEFAULT_IO_EXECUTOR;
+        private int memoryCacheCapacity = DEFAULT_MEMORY_CACHE_CAPACITY;
+        private TokenBucketRateLimiter rateLimiter = TokenBucketRateLimiter.usdaDefault();
+        private CircuitBreaker circuitBreaker = CircuitBreaker.usdaDefault();
+        private Duration requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+        private Duration cacheTtl = DEFAULT_CACHE_TTL;
+        private Clock clock = Clock.systemUTC();
+        private String baseUri = DEFAULT_BASE_URI;
+        private Duration reportBatchWindow;
+        private int reportBatchSize = MAX_REPORT_BATCH_SIZE;
+        private Duration negativeTtl = DEFAULT_NEGATIVE_TTL;
+        private int negativeCacheCapacity = DEFAULT_NEGATIVE_CACHE_CAPACITY;
+        private FoodIndex foodIndex;
+        private int minLocalMatches;
+
+        public RetrieverBuilder(String apiKey, HttpClient client, Cache cache) {
+            this.apiKey = apiKey;
+            this.client = client;
+            this.cache = cache;
+        }
+
+        public RetrieverBuilder setIoExecutor(Executor ioExecutor) {
+            this.ioExecutor = ioExecutor;
+            return this;
+        }
+
+        public RetrieverBuilder setMemoryCacheCapacity(int memoryCacheCapacity) {
+            this.memoryCacheCapacity = memoryCacheCapacity;
+            return this;
+        }
+
+        public RetrieverBuilder setRateLimiter(TokenBucketRateLimiter rateLimiter) {
+            this.rateLimiter = rateLimiter;
+            return this;
+        }
+
+        public RetrieverBuilder setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+            return this;
+        }
+
+        public RetrieverBuilder setRequestTimeout(Duration requestTimeout) {
+            this.requestTimeout = requestTimeout;
+            return this;
+        }
+
+        // Cached food older than this is served stale while it is fetched again, zero never treats it as stale
+        public RetrieverBuilder setCacheTtl(Duration cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        public RetrieverBuilder setClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RetrieverBuilder setBaseUri(String baseUri) {
+            this.baseUri = baseUri;
+            return this;
+        }
+
+        // Report misses arriving within the window are fetched together, batching is off until this is called
+        public RetrieverBuilder setReportBatching(Duration window, int maxBatchSize) {
+            if (maxBatchSize > MAX_REPORT_BATCH_SIZE) {
+                throw new IllegalArgumentException(
+                    "USDA accepts at most " + MAX_REPORT_BATCH_SIZE + " ids per request");
+            }
+            this.reportBatchWindow = window;
+            this.reportBatchSize = maxBatchSize;
+            return this;
+        }
+
+        // Misses are remembered for the time to live, zero asks again every time
+        public RetrieverBuilder setNegativeCache(Duration ttl, int capacity) {
+            this.negativeTtl = ttl;
+            this.negativeCacheCapacity = capacity;
+            return this;
+        }
+
+        // Saved foods are indexed by the words of their description. The index answers a keyword search before USDA
+        // once it has at least minLocalMatches foods for it, zero keeps it as a fallback for when USDA fails only
+        public RetrieverBuilder setFoodIndex(FoodIndex foodIndex, int minLocalMatches) {
+            this.foodIndex = foodIndex;
+            this.minLocalMatches = minLocalMatches;
+            return this;
+        }
+
+        public FoodDataRetriever build() {
+            return new FoodDataRetriever(this);
+        }
+    }
+}
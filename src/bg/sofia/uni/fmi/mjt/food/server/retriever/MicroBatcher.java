@@ -0,0 +1,126 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Collects keys submitted within a time window and loads them with one call. A batch is sent when the window
+// of its first key ends or when it reaches the max size. Keys missing from the loaded map complete with null.
+public class MicroBatcher<K, V> {
+
+    @FunctionalInterface
+    public interface BatchLoader<K, V> {
+        Map<K, V> load(List<K> keys) throws Exception;
+    }
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "micro-batcher-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BatchLoader<K, V> loader;
+    private final Executor executor;
+    private final Lock lock = new ReentrantLock();
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private long batchesSent;
+
+    public MicroBatcher(Duration window, int maxBatchSize, BatchLoader<K, V> loader, Executor executor) {
+        Validator.validateNotNull(window, "Batch window cannot be null");
+        Validator.validateNotNull(loader, "Batch loader cannot be null");
+        Validator.validateNotNull(executor, "Batch executor cannot be null");
+        if (window.isNegative() || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch window cannot be negative and batch size should be positive");
+        }
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.loader = loader;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<V> submit(K key) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        Map<K, CompletableFuture<V>> full = null;
+        CompletableFuture<V> result;
+        lock.lock();
+        try {
+            result = pending.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                pending.put(key, result);
+                if (pending.size() >= maxBatchSize) {
+                    full = takePending();
+                } else if (pending.size() == 1) {
+                    Map<K, CompletableFuture<V>> batch = pending;
+                    TIMER.schedule(() -> flush(batch), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) {
+            dispatch(full);
+        }
+        return result;
+    }
+
+    private Map<K, CompletableFuture<V>> takePending() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        batchesSent++;
+        return batch;
+    }
+
+    // The timer only flushes the batch it was scheduled for, a batch that already filled up was sent by submit
+    private void flush(Map<K, CompletableFuture<V>> batch) {
+        lock.lock();
+        try {
+            if (pending != batch) {
+                return;
+            }
+            takePending();
+        } finally {
+            lock.unlock();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<K, CompletableFuture<V>> batch) {
+        try {
+            executor.execute(() -> load(batch));
+        } catch (RejectedExecutionException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private void load(Map<K, CompletableFuture<V>> batch) {
+        try {
+            Map<K, V> loaded = loader.load(new ArrayList<>(batch.keySet()));
+            batch.forEach((key, future) -> future.complete(loaded.get(key)));
+        } catch (Throwable e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    public long batchesSent() {
+        lock.lock();
+        try {
+            return batchesSent;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
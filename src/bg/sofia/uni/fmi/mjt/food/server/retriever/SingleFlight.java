@@ -0,0 +1,60 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+// Lets only one caller per key run the loader, the others wait for and share its result or exception
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    public CompletableFuture<V> execute(K key, Callable<V> loader) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        Validator.validateNotNull(loader, "Loader cannot be null");
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            call.complete(loader.call());
+        } catch (Throwable e) {
+            call.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, call);
+        }
+        return call;
+    }
+
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        Validator.validateNotNull(key, "Key cannot be null");
+        Validator.validateNotNull(loader, "Loader cannot be null");
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            loader.get().whenComplete((value, error) -> {
+                inFlight.remove(key, call);
+                if (error != null) {
+                    call.completeExceptionally(AsyncStages.unwrap(error));
+                } else {
+                    call.complete(value);
+                }
+            });
+        } catch (Throwable e) {
+            inFlight.remove(key, call);
+            call.completeExceptionally(e);
+        }
+        return call;
+    }
+
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,136 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.circuit;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.UpstreamUnavailableException;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Trips after a run of failed upstream calls, so that while USDA is down callers fail at once instead of each
+// waiting for its own timeout. Once the open period is over a single probe call is let through, its success
+// closes the circuit and its failure opens it again. A probe that never reports is replaced after another period.
+// Every change of state starts a new generation and acquire hands out the current one, so an outcome reported by a
+// call let through before the change is ignored: a slow call from before the trip cannot close the circuit, and a
+// late failure cannot override the probe's result.
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(10);
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private CircuitState state = CircuitState.CLOSED;
+    private int consecutiveFailures;
+    // When the circuit opened, or when the current probe was let through
+    private long changedAtNanos;
+    private long generation;
+    private long rejected;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, System::nanoTime);
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, LongSupplier nanoClock) {
+        Validator.validateNotNull(openDuration, "Open duration cannot be null");
+        Validator.validateNotNull(nanoClock, "Clock cannot be null");
+        if (failureThreshold <= 0 || openDuration.isNegative() || openDuration.isZero()) {
+            throw new IllegalArgumentException("Failure threshold and open duration should be positive");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public static CircuitBreaker usdaDefault() {
+        return new CircuitBreaker(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    // Every call that is let through should pass the returned permit to onSuccess, onFailure or onAbandoned
+    public long acquire() throws UpstreamUnavailableException {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            if (state == CircuitState.CLOSED) {
+                return generation;
+            }
+            long waited = now - changedAtNanos;
+            if (waited >= openNanos) {
+                moveTo(CircuitState.HALF_OPEN, now);
+                return generation;
+            }
+            rejected++;
+            throw new UpstreamUnavailableException("USDA is unavailable, circuit is " + state.getValue(),
+                TimeUnit.NANOSECONDS.toMillis(openNanos - waited));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void moveTo(CircuitState next, long changedAt) {
+        state = next;
+        changedAtNanos = changedAt;
+        generation++;
+    }
+
+    public void onSuccess(long permit) {
+        lock.lock();
+        try {
+            if (permit != generation) {
+                return;
+            }
+            consecutiveFailures = 0;
+            if (state != CircuitState.CLOSED) {
+                moveTo(CircuitState.CLOSED, nanoClock.getAsLong());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // A call that was let through but never reached USDA, a probe gives its turn back so the next call can probe
+    public void onAbandoned(long permit) {
+        lock.lock();
+        try {
+            if (permit == generation && state == CircuitState.HALF_OPEN) {
+                moveTo(CircuitState.OPEN, nanoClock.getAsLong() - openNanos);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void onFailure(long permit) {
+        lock.lock();
+        try {
+            if (permit != generation) {
+                return;
+            }
+            consecutiveFailures++;
+            if (state == CircuitState.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                moveTo(CircuitState.OPEN, nanoClock.getAsLong());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public CircuitState state() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long rejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.circuit;
+
+public enum CircuitState {
+    CLOSED("closed"),
+    OPEN("open"),
+    HALF_OPEN("half-open");
+    private final String value;
+
+    CircuitState(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,49 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+// Reads only fdcId, description and gtinUpc, everything else in a search result (nutrients included) is skipped
+public class FoodDetailsAdapter extends TypeAdapter<FoodDetails> {
+    private static final String FDC_ID = "fdcId";
+    private static final String DESCRIPTION = "description";
+    private static final String GTIN_UPC = "gtinUpc";
+
+    @Override
+    public void write(JsonWriter out, FoodDetails food) throws IOException {
+        if (food == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(FDC_ID).value(food.fdcId());
+        out.name(DESCRIPTION).value(food.description());
+        out.name(GTIN_UPC).value(food.gtinUpc());
+        out.endObject();
+    }
+
+    @Override
+    public FoodDetails read(JsonReader in) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return null;
+        }
+        int fdcId = 0;
+        String description = null;
+        String gtinUpc = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case FDC_ID -> fdcId = JsonReaders.nextInt(in, 0);
+                case DESCRIPTION -> description = JsonReaders.nextNullableString(in);
+                case GTIN_UPC -> gtinUpc = JsonReaders.nextNullableString(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new FoodDetails(fdcId, description, gtinUpc);
+    }
+}
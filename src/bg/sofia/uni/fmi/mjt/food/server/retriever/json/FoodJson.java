@@ -0,0 +1,60 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Gson wired with the hand-written adapters, so the model classes are never parsed through reflection
+public class FoodJson {
+
+    private FoodJson() {
+    }
+
+    public static Gson create() {
+        FoodDetailsAdapter foodDetailsAdapter = new FoodDetailsAdapter();
+        return new GsonBuilder()
+            .registerTypeAdapter(FoodReport.class, new FoodReportAdapter())
+            .registerTypeAdapter(FoodDetails.class, foodDetailsAdapter)
+            .registerTypeAdapter(SearchResponse.class, new SearchResponseAdapter(foodDetailsAdapter))
+            .create();
+    }
+
+    public static <T> List<T> readList(Gson gson, InputStream body, Class<T> type) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            TypeAdapter<T> adapter = gson.getAdapter(type);
+            List<T> values = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                T value = adapter.read(reader);
+                if (value != null) {
+                    values.add(value);
+                }
+            }
+            reader.endArray();
+            return values;
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException("Unexpected JSON structure for a list of " + type.getSimpleName(), e);
+        }
+    }
+
+    public static <T> T read(Gson gson, InputStream body, Class<T> type) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(body, StandardCharsets.UTF_8))) {
+            TypeAdapter<T> adapter = gson.getAdapter(type);
+            return adapter.read(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new JsonSyntaxException("Unexpected JSON structure for " + type.getSimpleName(), e);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.Nutrient;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.NutrientDetails;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Unwanted nutrients are dropped while parsing, so the returned report is already filtered
+public class FoodReportAdapter extends TypeAdapter<FoodReport> {
+    private static final String FDC_ID = "fdcId";
+    private static final String DESCRIPTION = "description";
+    private static final String INGREDIENTS = "ingredients";
+    private static final String GTIN_UPC = "gtinUpc";
+    private static final String FOOD_NUTRIENTS = "foodNutrients";
+    private static final String NUTRIENT = "nutrient";
+    private static final String AMOUNT = "amount";
+    private static final String NAME = "name";
+    private static final String UNIT_NAME = "unitName";
+
+    @Override
+    public void write(JsonWriter out, FoodReport report) throws IOException {
+        if (report == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(FDC_ID).value(report.fdcId());
+        out.name(DESCRIPTION).value(report.description());
+        out.name(INGREDIENTS).value(report.ingredients());
+        out.name(GTIN_UPC).value(report.gtinUpc());
+        out.name(FOOD_NUTRIENTS).beginArray();
+        for (NutrientDetails details : report.foodNutrients()) {
+            out.beginObject();
+            out.name(NUTRIENT).beginObject();
+            out.name(NAME).value(details.nutrient().name());
+            out.name(UNIT_NAME).value(details.nutrient().unitName());
+            out.endObject();
+            out.name(AMOUNT).value(details.amount());
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public FoodReport read(JsonReader in) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return null;
+        }
+        int fdcId = 0;
+        String description = null;
+        String ingredients = null;
+        String gtinUpc = null;
+        List<NutrientDetails> nutrients = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case FDC_ID -> fdcId = JsonReaders.nextInt(in, 0);
+                case DESCRIPTION -> description = JsonReaders.nextNullableString(in);
+                case INGREDIENTS -> ingredients = JsonReaders.nextNullableString(in);
+                case GTIN_UPC -> gtinUpc = JsonReaders.nextNullableString(in);
+                case FOOD_NUTRIENTS -> readNutrients(in, nutrients);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new FoodReport(fdcId, description, ingredients, gtinUpc, nutrients);
+    }
+
+    private void readNutrients(JsonReader in, List<NutrientDetails> nutrients) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            NutrientDetails details = readNutrientDetails(in);
+            if (details != null) {
+                nutrients.add(details);
+            }
+        }
+        in.endArray();
+    }
+
+    private NutrientDetails readNutrientDetails(JsonReader in) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return null;
+        }
+        Nutrient nutrient = null;
+        double amount = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case NUTRIENT -> nutrient = readNutrient(in);
+                case AMOUNT -> amount = JsonReaders.nextDouble(in, 0);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return nutrient != null && FoodReport.isWantedNutrientName(nutrient.name())
+            ? new NutrientDetails(nutrient, amount)
+            : null;
+    }
+
+    private Nutrient readNutrient(JsonReader in) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return null;
+        }
+        String name = null;
+        String unitName = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case NAME -> name = JsonReaders.nextNullableString(in);
+                case UNIT_NAME -> unitName = JsonReaders.nextNullableString(in);
+                default -> in.skipValue();
+            }
+        }
+        in.endObject();
+        return new Nutrient(name, unitName);
+    }
+}
@@ -0,0 +1,32 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+
+class JsonReaders {
+
+    private JsonReaders() {
+    }
+
+    static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    static String nextNullableString(JsonReader in) throws IOException {
+        return skipNull(in) ? null : in.nextString();
+    }
+
+    static double nextDouble(JsonReader in, double defaultValue) throws IOException {
+        return skipNull(in) ? defaultValue : in.nextDouble();
+    }
+
+    static int nextInt(JsonReader in, int defaultValue) throws IOException {
+        return skipNull(in) ? defaultValue : in.nextInt();
+    }
+}
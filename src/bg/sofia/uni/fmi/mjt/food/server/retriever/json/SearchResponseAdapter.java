@@ -0,0 +1,67 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps only the foods array, paging info and aggregations of a USDA search page are skipped
+public class SearchResponseAdapter extends TypeAdapter<SearchResponse> {
+    private static final String FOODS = "foods";
+    private final FoodDetailsAdapter foodAdapter;
+
+    public SearchResponseAdapter(FoodDetailsAdapter foodAdapter) {
+        this.foodAdapter = foodAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, SearchResponse response) throws IOException {
+        if (response == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name(FOODS).beginArray();
+        for (FoodDetails food : response.foods()) {
+            foodAdapter.write(out, food);
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public SearchResponse read(JsonReader in) throws IOException {
+        if (JsonReaders.skipNull(in)) {
+            return null;
+        }
+        List<FoodDetails> foods = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            if (FOODS.equals(in.nextName())) {
+                if (!JsonReaders.skipNull(in)) {
+                    readFoods(in, foods);
+                }
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return new SearchResponse(foods);
+    }
+
+    private void readFoods(JsonReader in, List<FoodDetails> foods) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            FoodDetails food = foodAdapter.read(in);
+            if (food != null) {
+                foods.add(food);
+            }
+        }
+        in.endArray();
+    }
+}
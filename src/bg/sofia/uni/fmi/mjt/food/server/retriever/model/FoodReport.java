@@ -1,6 +1,7 @@
 package bg.sofia.uni.fmi.mjt.food.server.retriever.model;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 public class FoodReport {
@@ -19,6 +20,15 @@ public class FoodReport {
     public FoodReport() {
     }
 
+    public FoodReport(int fdcId, String description, String ingredients, String gtinUpc,
+                      List<NutrientDetails> foodNutrients) {
+        this.fdcId = fdcId;
+        this.description = description;
+        this.ingredients = ingredients;
+        this.gtinUpc = gtinUpc;
+        this.foodNutrients = foodNutrients;
+    }
+
     public int fdcId() {
         return fdcId;
     }
@@ -39,23 +49,47 @@ public class FoodReport {
         return foodNutrients;
     }
 
-    private boolean isWantedNutrient(NutrientDetails nutrientDetails) {
-        if (nutrientDetails == null || nutrientDetails.nutrient().name() == null) {
+    public static boolean isWantedNutrientName(String name) {
+        if (name == null) {
             return false;
         }
 
-        String nutrientName = nutrientDetails.nutrient().name().toLowerCase();
+        String nutrientName = name.toLowerCase();
         return WANTED_NUTRIENTS
             .stream()
             .anyMatch(wantedNutrient -> nutrientName.contains(wantedNutrient));
     }
 
+    private boolean isWantedNutrient(NutrientDetails nutrientDetails) {
+        return nutrientDetails != null && nutrientDetails.nutrient() != null
+            && isWantedNutrientName(nutrientDetails.nutrient().name());
+    }
+
     public void filterNutrients() {
         this.foodNutrients = foodNutrients.stream()
             .filter(this::isWantedNutrient)
             .toList();
     }
 
+    // Compared by value, so a refresh that brings the same report is not counted as a change
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FoodReport other)) {
+            return false;
+        }
+        return fdcId == other.fdcId && Objects.equals(description, other.description)
+            && Objects.equals(ingredients, other.ingredients) && Objects.equals(gtinUpc, other.gtinUpc)
+            && Objects.equals(foodNutrients, other.foodNutrients);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fdcId, description, ingredients, gtinUpc, foodNutrients);
+    }
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,11 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit;
+
+public record RateLimiterStats(double availableTokens, int queueDepth, long granted, long rejected,
+                               long throttledResponses, long pausedForMillis) {
+
+    @Override
+    public String toString() {
+        return String.format("tokens=%.1f, queued=%d, granted=%d, rejected=%d, throttled=%d, paused=%dms",
+            availableTokens, queueDepth, granted, rejected, throttledResponses, pausedForMillis);
+    }
+}
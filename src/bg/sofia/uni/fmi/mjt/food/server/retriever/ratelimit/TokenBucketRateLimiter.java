@@ -0,0 +1,210 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// Callers that find no token wait in FIFO order, a caller that would wait longer than maxWait or finds
+// the queue full is rejected immediately. Upstream rate limit headers can only lower the local budget.
+public class TokenBucketRateLimiter {
+    public static final int USDA_HOURLY_LIMIT = 1000;
+    public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(5);
+    public static final int DEFAULT_MAX_QUEUE_LENGTH = 256;
+    public static final Duration DEFAULT_THROTTLE_PAUSE = Duration.ofMinutes(1);
+    public static final String RETRY_AFTER_HEADER = "Retry-After";
+    public static final String REMAINING_HEADER = "X-RateLimit-Remaining";
+    public static final int TOO_MANY_REQUESTS_CODE = 429;
+    private static final int SERVICE_UNAVAILABLE_CODE = 503;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long maxWaitNanos;
+    private final int maxQueueLength;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<Object> waiters = new ArrayDeque<>();
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long granted;
+    private long rejected;
+    private long throttledResponses;
+
+    public TokenBucketRateLimiter(int permits, Duration period) {
+        this(permits, period, DEFAULT_MAX_WAIT, DEFAULT_MAX_QUEUE_LENGTH);
+    }
+
+    public TokenBucketRateLimiter(int permits, Duration period, Duration maxWait, int maxQueueLength) {
+        this(permits, period, maxWait, maxQueueLength, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(int permits, Duration period, Duration maxWait, int maxQueueLength, LongSupplier nanoClock) {
+        Validator.validateNotNull(period, "Period cannot be null");
+        Validator.validateNotNull(maxWait, "Max wait cannot be null");
+        Validator.validateNotNull(nanoClock, "Clock cannot be null");
+        if (permits <= 0 || period.isZero() || period.isNegative() || maxWait.isNegative() || maxQueueLength < 0) {
+            throw new IllegalArgumentException("Permits, period and queue length should be positive");
+        }
+        this.capacity = permits;
+        this.tokensPerNano = (double) permits / period.toNanos();
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxQueueLength = maxQueueLength;
+        this.nanoClock = nanoClock;
+        this.tokens = permits;
+        this.lastRefillNanos = nanoClock.getAsLong();
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    public static TokenBucketRateLimiter usdaDefault() {
+        return new TokenBucketRateLimiter(USDA_HOURLY_LIMIT, Duration.ofHours(1));
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * tokensPerNano);
+        lastRefillNanos = now;
+    }
+
+    // Time until the caller at the given queue position could get a token
+    private long estimatedWaitNanos(long now, int position) {
+        double missing = position + 1 - tokens;
+        long refillNanos = missing <= 0 ? 0 : (long) Math.ceil(missing / tokensPerNano);
+        return Math.max(0, pausedUntilNanos - now) + refillNanos;
+    }
+
+    private RateLimitExceededException reject(String message, long waitNanos) {
+        rejected++;
+        return new RateLimitExceededException(message, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    private boolean canTake(long now) {
+        return now >= pausedUntilNanos && tokens >= 1;
+    }
+
+    public void acquire() throws RateLimitExceededException, InterruptedException {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            refill(now);
+            if (waiters.isEmpty() && canTake(now)) {
+                tokens -= 1;
+                granted++;
+                return;
+            }
+            if (waiters.size() >= maxQueueLength) {
+                throw reject("Upstream request queue is full", estimatedWaitNanos(now, waiters.size()));
+            }
+            long expectedWait = estimatedWaitNanos(now, waiters.size());
+            if (expectedWait > maxWaitNanos) {
+                throw reject("Upstream rate limit reached", expectedWait);
+            }
+            awaitTurn(now + maxWaitNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitTurn(long deadline) throws RateLimitExceededException, InterruptedException {
+        Object waiter = new Object();
+        waiters.addLast(waiter);
+        try {
+            while (true) {
+                long now = nanoClock.getAsLong();
+                refill(now);
+                boolean first = waiters.peekFirst() == waiter;
+                if (first && canTake(now)) {
+                    tokens -= 1;
+                    granted++;
+                    return;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    throw reject("Timed out waiting for the upstream rate limit", estimatedWaitNanos(now, 0));
+                }
+                long wait = first ? Math.max(1, estimatedWaitNanos(now, 0)) : remaining;
+                changed.awaitNanos(Math.min(wait, remaining));
+            }
+        } finally {
+            waiters.remove(waiter);
+            changed.signalAll();
+        }
+    }
+
+    private static Optional<Long> parseRetryAfterNanos(String value) {
+        try {
+            return Optional.of(TimeUnit.SECONDS.toNanos(Long.parseLong(value.strip())));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(value.strip(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Optional.of(Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toNanos()));
+            } catch (DateTimeParseException ignored) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    // Feeds the upstream view of the quota back into the bucket
+    public void onResponse(HttpResponse<?> response) {
+        HttpHeaders headers = response.headers() == null ? HttpHeaders.of(Map.of(), (name, value) -> true)
+            : response.headers();
+        Optional<String> remaining = headers.firstValue(REMAINING_HEADER);
+        Optional<Long> retryAfter = headers.firstValue(RETRY_AFTER_HEADER)
+            .flatMap(TokenBucketRateLimiter::parseRetryAfterNanos);
+        int status = response.statusCode();
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            refill(now);
+            remaining.ifPresent(value -> {
+                try {
+                    tokens = Math.min(tokens, Math.max(0, Long.parseLong(value.strip())));
+                } catch (NumberFormatException e) {
+                    // a malformed header carries no information
+                }
+            });
+            if (status == TOO_MANY_REQUESTS_CODE || status == SERVICE_UNAVAILABLE_CODE && retryAfter.isPresent()) {
+                throttledResponses++;
+                tokens = 0;
+                long pause = retryAfter.orElse(DEFAULT_THROTTLE_PAUSE.toNanos());
+                pausedUntilNanos = Math.max(pausedUntilNanos, now + pause);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long retryAfterMillis() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(estimatedWaitNanos(nanoClock.getAsLong(), 0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RateLimiterStats stats() {
+        lock.lock();
+        try {
+            long now = nanoClock.getAsLong();
+            refill(now);
+            return new RateLimiterStats(tokens, waiters.size(), granted, rejected, throttledResponses,
+                TimeUnit.NANOSECONDS.toMillis(Math.max(0, pausedUntilNanos - now)));
+        } finally {
+            lock.unlock();
+        }
+    }
+}
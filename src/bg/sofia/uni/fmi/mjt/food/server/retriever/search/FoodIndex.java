@@ -0,0 +1,119 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.search;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Inverted index from the words of cached food descriptions to the fdcIds of the foods, so keyword searches that
+// were never asked for can be answered from foods already seen in other searches and barcode lookups. Every word
+// maps to a PostingList, a search intersects the lists of its keywords starting with the shortest.
+// Readers never lock: a food is stored before its ids are added, and each posting list is replaced as a whole, so a
+// search running next to an update sees the food either everywhere or not yet in some of its words.
+public class FoodIndex {
+    public static final int DEFAULT_MAX_RESULTS = 50;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+    private final Map<Integer, FoodDetails> foods = new ConcurrentHashMap<>();
+    private final int maxResults;
+
+    public FoodIndex() {
+        this(DEFAULT_MAX_RESULTS);
+    }
+
+    public FoodIndex(int maxResults) {
+        if (maxResults <= 0) {
+            throw new IllegalArgumentException("Max results should be positive");
+        }
+        this.maxResults = maxResults;
+    }
+
+    // Lower case words of the text, underscores of saved keyword keys split like spaces
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // A food seen again with the same description changes nothing, a new description only adds words. Words it
+    // lost stay in their lists and are filtered out when searched.
+    public void add(FoodDetails food) {
+        Validator.validateNotNull(food, "Food cannot be null");
+        if (food.description() == null || food.fdcId() < 0) {
+            return;
+        }
+        FoodDetails previous = foods.put(food.fdcId(), food);
+        if (previous != null && food.description().equals(previous.description())) {
+            return;
+        }
+        for (String token : tokenize(food.description())) {
+            postings.compute(token, (word, list) -> (list == null ? PostingList.empty() : list).with(food.fdcId()));
+        }
+    }
+
+    public void addAll(List<FoodDetails> foods) {
+        Validator.validateNotNull(foods, "Foods cannot be null");
+        foods.forEach(this::add);
+    }
+
+    // Foods whose description has every keyword, by increasing fdcId and at most the max results
+    public List<FoodDetails> search(List<String> keywords) {
+        Validator.validateNotNull(keywords, "Keywords cannot be null");
+        Set<String> tokens = tokenize(String.join(" ", keywords));
+        if (tokens.isEmpty()) {
+            return List.of();
+        }
+        List<PostingList> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            PostingList list = postings.get(token);
+            if (list == null) {
+                return List.of();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        int[] ids = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && ids.length > 0; i++) {
+            ids = lists.get(i).retainAll(ids);
+        }
+        return collect(ids, tokens);
+    }
+
+    private List<FoodDetails> collect(int[] ids, Set<String> tokens) {
+        List<FoodDetails> found = new ArrayList<>(Math.min(ids.length, maxResults));
+        for (int id : ids) {
+            FoodDetails food = foods.get(id);
+            if (food != null && tokenize(food.description()).containsAll(tokens)) {
+                found.add(food);
+                if (found.size() == maxResults) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    public int size() {
+        return foods.size();
+    }
+
+    public int wordCount() {
+        return postings.size();
+    }
+
+    public long postingBytes() {
+        return postings.values().stream().mapToLong(PostingList::encodedBytes).sum();
+    }
+}
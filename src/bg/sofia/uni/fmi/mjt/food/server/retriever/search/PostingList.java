@@ -0,0 +1,138 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.search;
+
+import java.util.Arrays;
+
+// Sorted fdcIds of the foods that contain a token, stored as the gaps between them in variable-length bytes, seven
+// bits per byte with the high bit set on every byte but the last. Neighbouring ids of USDA foods are close, so most
+// gaps take one or two bytes instead of four. Instances never change, adding an id returns a new list, so readers
+// can decode a list while another thread replaces it.
+public final class PostingList {
+    private static final int PAYLOAD_BITS = 7;
+    private static final int PAYLOAD_MASK = 0x7F;
+    private static final int CONTINUATION_BIT = 0x80;
+    private static final int MAX_VARINT_BYTES = 5;
+    private static final PostingList EMPTY = new PostingList(new byte[0], 0, -1);
+    private final byte[] gaps;
+    private final int size;
+    private final int last;
+
+    private PostingList(byte[] gaps, int size, int last) {
+        this.gaps = gaps;
+        this.size = size;
+        this.last = last;
+    }
+
+    public static PostingList empty() {
+        return EMPTY;
+    }
+
+    public static PostingList of(int... ids) {
+        int[] sorted = Arrays.stream(ids).sorted().distinct().toArray();
+        if (sorted.length > 0 && sorted[0] < 0) {
+            throw new IllegalArgumentException("Food ID cannot be negative");
+        }
+        return encode(sorted);
+    }
+
+    private static PostingList encode(int[] sorted) {
+        if (sorted.length == 0) {
+            return EMPTY;
+        }
+        byte[] buffer = new byte[sorted.length * MAX_VARINT_BYTES];
+        int length = 0;
+        int previous = 0;
+        for (int id : sorted) {
+            length = writeGap(buffer, length, id - previous);
+            previous = id;
+        }
+        return new PostingList(Arrays.copyOf(buffer, length), sorted.length, previous);
+    }
+
+    private static int writeGap(byte[] buffer, int offset, int gap) {
+        while ((gap & ~PAYLOAD_MASK) != 0) {
+            buffer[offset++] = (byte) ((gap & PAYLOAD_MASK) | CONTINUATION_BIT);
+            gap >>>= PAYLOAD_BITS;
+        }
+        buffer[offset++] = (byte) gap;
+        return offset;
+    }
+
+    // Ids are mostly added in increasing order, those only append their gap. Anything else is encoded again
+    public PostingList with(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Food ID cannot be negative");
+        }
+        if (id > last) {
+            byte[] buffer = Arrays.copyOf(gaps, gaps.length + MAX_VARINT_BYTES);
+            int length = writeGap(buffer, gaps.length, size == 0 ? id : id - last);
+            return new PostingList(Arrays.copyOf(buffer, length), size + 1, id);
+        }
+        int[] ids = toArray();
+        int position = Arrays.binarySearch(ids, id);
+        if (position >= 0) {
+            return this;
+        }
+        int insertAt = -position - 1;
+        int[] merged = new int[ids.length + 1];
+        System.arraycopy(ids, 0, merged, 0, insertAt);
+        merged[insertAt] = id;
+        System.arraycopy(ids, insertAt, merged, insertAt + 1, ids.length - insertAt);
+        return encode(merged);
+    }
+
+    public int[] toArray() {
+        int[] ids = new int[size];
+        Cursor cursor = new Cursor();
+        for (int i = 0; i < size; i++) {
+            ids[i] = cursor.next();
+        }
+        return ids;
+    }
+
+    // Keeps the ids of the sorted array that are also in this list, decoding the list once while walking both
+    public int[] retainAll(int[] sortedIds) {
+        int[] kept = new int[Math.min(sortedIds.length, size)];
+        int count = 0;
+        Cursor cursor = new Cursor();
+        int decoded = 0;
+        int current = -1;
+        for (int id : sortedIds) {
+            while (current < id && decoded < size) {
+                current = cursor.next();
+                decoded++;
+            }
+            if (current == id) {
+                kept[count++] = id;
+            } else if (current < id) {
+                break;
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int encodedBytes() {
+        return gaps.length;
+    }
+
+    private final class Cursor {
+        private int offset;
+        private int previous;
+
+        private int next() {
+            int gap = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = gaps[offset++];
+                gap |= (current & PAYLOAD_MASK) << shift;
+                shift += PAYLOAD_BITS;
+            } while ((current & CONTINUATION_BIT) != 0);
+            previous += gap;
+            return previous;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package bg.sofia.uni.fmi.mjt.food.server.scheduling;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// AIMD limit on how many requests may be inside a lane at once, waiting or running. A request answered within the
+// latency target raises the limit by 1/limit, so it grows by about one per full round of requests, while a slower
+// one cuts it by a tenth. The limit follows what USDA currently sustains instead of a fixed queue size, and the
+// smoothed latency tells rejected clients when to come back. Lock-free, the limit is a double kept in its bits.
+public class AdaptiveConcurrencyLimit {
+    public static final long MIN_RETRY_AFTER_MILLIS = 100;
+    public static final long MAX_RETRY_AFTER_MILLIS = 10_000;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong limitBits;
+    private final AtomicLong smoothedLatencyNanos = new AtomicLong();
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, Duration latencyTarget) {
+        if (minLimit <= 0 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits should satisfy 0 < min <= initial <= max");
+        }
+        if (latencyTarget == null || latencyTarget.isZero() || latencyTarget.isNegative()) {
+            throw new IllegalArgumentException("Latency target should be positive");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.limitBits = new AtomicLong(Double.doubleToLongBits(initialLimit));
+    }
+
+    // Never adapts, for lanes that are not limited
+    public static AdaptiveConcurrencyLimit fixed(int limit) {
+        return new AdaptiveConcurrencyLimit(limit, limit, limit, Duration.ofDays(1));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // Latency of an admitted request, from admission to answer
+    public void release(long latencyNanos) {
+        int busy = inFlight.getAndDecrement();
+        smoothedLatencyNanos.accumulateAndGet(latencyNanos, (smoothed, sample) -> smoothed == 0
+            ? sample
+            : (long) (smoothed + LATENCY_SMOOTHING * (sample - smoothed)));
+        boolean congested = latencyNanos > latencyTargetNanos;
+        long currentBits;
+        long nextBits;
+        do {
+            currentBits = limitBits.get();
+            double current = Double.longBitsToDouble(currentBits);
+            double next;
+            if (congested) {
+                next = Math.max(minLimit, current * BACKOFF_RATIO);
+            } else if (busy * 2 >= current) {
+                next = Math.min(maxLimit, current + 1 / current);
+            } else {
+                // A limit that is far from used proves nothing, so it does not grow
+                return;
+            }
+            nextBits = Double.doubleToLongBits(next);
+        } while (!limitBits.compareAndSet(currentBits, nextBits));
+    }
+
+    public int limit() {
+        return (int) Double.longBitsToDouble(limitBits.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    // About the time one admitted request takes, which is when the next slot is expected to free up
+    public long retryAfterMillis() {
+        long millis = TimeUnit.NANOSECONDS.toMillis(smoothedLatencyNanos.get());
+        return Math.min(MAX_RETRY_AFTER_MILLIS, Math.max(MIN_RETRY_AFTER_MILLIS, millis));
+    }
+}
@@ -0,0 +1,16 @@
+package bg.sofia.uni.fmi.mjt.food.server.scheduling;
+
+// Every command starts in the fast lane, only the ones the cache cannot answer move to the upstream lane
+public enum Lane {
+    FAST("fast"),
+    UPSTREAM("upstream");
+    private final String value;
+
+    Lane(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,142 @@
+package bg.sofia.uni.fmi.mjt.food.server.scheduling;
+
+import bg.sofia.uni.fmi.mjt.food.server.RequestProcessor;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.validation.Validator;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+// Two stage scheduling: the fast lane answers everything the memory and file caches can, and hands the rest to
+// the upstream lane. The upstream lane is sized and bounded on its own, so callers waiting on USDA never hold the
+// threads that cache hits are served on. A request that finds its lane full, or the upstream lane over its adaptive
+// limit, is answered at once with BUSY and a retry-after hint. The items of a batch command go through the lanes
+// independently, so the cached ones are answered while the others wait for USDA.
+public class LaneScheduler {
+    private static final byte[] END_LINE = (RequestProcessor.END_MARKER + System.lineSeparator())
+        .getBytes(StandardCharsets.UTF_8);
+    private final RequestProcessor processor;
+    private final Executor fastLane;
+    private final Executor upstreamLane;
+    private final AdaptiveConcurrencyLimit upstreamLimit;
+    private final Metrics metrics;
+
+    // Only the executors bound the lanes
+    public LaneScheduler(RequestProcessor processor, Executor fastLane, Executor upstreamLane) {
+        this(processor, fastLane, upstreamLane, AdaptiveConcurrencyLimit.fixed(Integer.MAX_VALUE),
+            Metrics.getInstance());
+    }
+
+    public LaneScheduler(RequestProcessor processor, Executor fastLane, Executor upstreamLane,
+                         AdaptiveConcurrencyLimit upstreamLimit, Metrics metrics) {
+        Validator.validateNotNull(processor, "RequestProcessor cannot be null");
+        Validator.validateNotNull(fastLane, "Fast lane executor cannot be null");
+        Validator.validateNotNull(upstreamLane, "Upstream lane executor cannot be null");
+        Validator.validateNotNull(upstreamLimit, "Upstream limit cannot be null");
+        Validator.validateNotNull(metrics, "Metrics cannot be null");
+        this.processor = processor;
+        this.fastLane = fastLane;
+        this.upstreamLane = upstreamLane;
+        this.upstreamLimit = upstreamLimit;
+        this.metrics = metrics;
+        metrics.setLaneDepthGauge(Lane.FAST, queueDepth(fastLane));
+        metrics.setLaneDepthGauge(Lane.UPSTREAM, queueDepth(upstreamLane));
+        metrics.setLaneLimitGauge(Lane.UPSTREAM, upstreamLimit::limit);
+    }
+
+    public long retryAfterMillis() {
+        return upstreamLimit.retryAfterMillis();
+    }
+
+    // Executors without a queue, like virtual threads, start every task right away
+    private static IntSupplier queueDepth(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor pool) {
+            return () -> pool.getQueue().size();
+        }
+        return () -> 0;
+    }
+
+    // Completes with the whole response as UTF-8 bytes, END marker included. The array may be shared with the
+    // rendered response cache and should not be modified.
+    public CompletableFuture<byte[]> submit(String line, String clientInfo) {
+        return submit(line, clientInfo, null);
+    }
+
+    // The items of a batch are handed to the sink in completion order as soon as each is ready, from whichever
+    // thread finished it, and the returned future completes with the closing END once all of them are out.
+    // Without a sink they are collected into the returned response.
+    public CompletableFuture<byte[]> submit(String line, String clientInfo, Consumer<byte[]> itemSink) {
+        List<RequestProcessor.BatchItem> items = RequestProcessor.batchItems(line);
+        if (items == null) {
+            return submitSingle(line, clientInfo);
+        }
+        ByteArrayOutputStream collected = new ByteArrayOutputStream();
+        Consumer<byte[]> sink = itemSink == null ? collected::writeBytes : itemSink;
+        CompletableFuture<?>[] answered = new CompletableFuture<?>[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            RequestProcessor.BatchItem item = items.get(i);
+            answered[i] = submitSingle(item.line(), clientInfo)
+                .handle((response, error) -> error == null ? RequestProcessor.itemResponse(item.key(), response)
+                    : RequestProcessor.itemErrorResponse(item.key()))
+                .thenAccept(sink);
+        }
+        return CompletableFuture.allOf(answered).thenApply(ignored -> {
+            collected.writeBytes(END_LINE);
+            return collected.toByteArray();
+        });
+    }
+
+    private CompletableFuture<byte[]> submitSingle(String line, String clientInfo) {
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        long queuedAt = System.nanoTime();
+        dispatch(Lane.FAST, fastLane, response, () -> runFast(line, clientInfo, response, queuedAt));
+        return response;
+    }
+
+    private void runFast(String line, String clientInfo, CompletableFuture<byte[]> response, long queuedAt) {
+        metrics.recordLaneWait(Lane.FAST, System.nanoTime() - queuedAt);
+        byte[] cached = processor.processFromCache(line, clientInfo);
+        if (cached != null) {
+            response.complete(cached);
+            return;
+        }
+        if (!upstreamLimit.tryAcquire()) {
+            rejectBusy(Lane.UPSTREAM, response);
+            return;
+        }
+        long movedAt = System.nanoTime();
+        response.whenComplete((answer, error) -> upstreamLimit.release(System.nanoTime() - movedAt));
+        dispatch(Lane.UPSTREAM, upstreamLane, response, () -> runUpstream(line, clientInfo, response, movedAt));
+    }
+
+    private void runUpstream(String line, String clientInfo, CompletableFuture<byte[]> response, long queuedAt) {
+        metrics.recordLaneWait(Lane.UPSTREAM, System.nanoTime() - queuedAt);
+        response.complete(processor.process(line, clientInfo));
+    }
+
+    private void rejectBusy(Lane lane, CompletableFuture<byte[]> response) {
+        metrics.recordLaneRejection(lane);
+        response.complete(RequestProcessor.busyResponse(retryAfterMillis()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void dispatch(Lane lane, Executor executor, CompletableFuture<byte[]> response, Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    response.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectBusy(lane, response);
+        }
+    }
+}
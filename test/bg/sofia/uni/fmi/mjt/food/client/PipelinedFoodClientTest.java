@@ -0,0 +1,91 @@
+package bg.sofia.uni.fmi.mjt.food.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PipelinedFoodClientTest {
+    private ServerSocket serverSocket;
+    private Thread serverThread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverSocket = new ServerSocket(0);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException, InterruptedException {
+        serverSocket.close();
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    // Confirms pipelining, waits for the given number of tagged commands and answers them in reverse order
+    private void startServer(int commands, boolean answerExit) {
+        serverThread = Thread.ofPlatform().start(() -> {
+            try (Socket socket = serverSocket.accept();
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+                in.readLine();
+                out.print("Pipelining enabled\nEND\n");
+                out.flush();
+                String[] ids = new String[commands];
+                for (int i = 0; i < commands; i++) {
+                    String line = in.readLine();
+                    ids[i] = line.substring(0, line.indexOf(' '));
+                }
+                for (int i = commands - 1; i >= 0; i--) {
+                    out.print("answer " + ids[i] + "\nEND " + ids[i] + "\n");
+                }
+                out.flush();
+                if (answerExit && "exit".equals(in.readLine())) {
+                    out.println("Connection closed");
+                }
+            } catch (IOException e) {
+                // The test fails on the client side
+            }
+        });
+    }
+
+    @Test
+    void testResponsesAreMatchedById() throws Exception {
+        startServer(2, true);
+        try (PipelinedFoodClient client = new PipelinedFoodClient("localhost", serverSocket.getLocalPort())) {
+            CompletableFuture<List<String>> first = client.send("get-food apple");
+            CompletableFuture<List<String>> second = client.send("stats");
+
+            assertEquals(List.of("answer 1"), first.get(5, TimeUnit.SECONDS),
+                "The first command should get the answer tagged with its id");
+            assertEquals(List.of("answer 2"), second.get(5, TimeUnit.SECONDS),
+                "The second command should get its answer although it arrived first");
+            assertEquals(0, client.inFlight(), "No command should be left in flight");
+        }
+    }
+
+    @Test
+    void testPendingRequestsFailWhenServerCloses() throws Exception {
+        startServer(0, false);
+        PipelinedFoodClient client = new PipelinedFoodClient("localhost", serverSocket.getLocalPort());
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+        CompletableFuture<List<String>> response = client.send("get-food apple");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> response.get(5, TimeUnit.SECONDS),
+            "A command without an answer should fail once the connection is gone");
+        assertTrue(error.getCause() instanceof IOException, "The failure should be an IOException");
+        client.close();
+    }
+}
@@ -3,7 +3,11 @@ package bg.sofia.uni.fmi.mjt.food.server;
 import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeNotFoundException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import bg.sofia.uni.fmi.mjt.food.server.cache.CacheStats;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.circuit.CircuitState;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
 import com.google.gson.Gson;
@@ -15,7 +19,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.Socket;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
@@ -107,6 +114,22 @@ public class ClientRequestHandlerTest {
 
     }
 
+    @Test
+    void testRunReportCommandRateLimited() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        InputStream inputStream = new ByteArrayInputStream("get-food-report 1".getBytes());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        when(socket.getInputStream()).thenReturn(inputStream);
+        when(socket.getOutputStream()).thenReturn(outputStream);
+
+        when(retriever.getFoodReport(1)).thenThrow(new RateLimitExceededException("limited", 1500));
+        ClientRequestHandler handler = new ClientRequestHandler(socket, retriever);
+        handler.run();
+
+        String response = outputStream.toString();
+        assertTrue(response.contains("Try again in 2 seconds"), "Client should be told when to retry");
+    }
+
     @Test
     void testRunBarcodeCommandValid()
         throws IOException, FoodRetrievalException, BarcodeNotFoundException {
@@ -126,4 +149,84 @@ public class ClientRequestHandlerTest {
         assertTrue(response.contains("FoodDetails : fdcId=1,description=1"), "Server response should contain food details");
 
     }
+
+    @Test
+    void testStatsCommandReportsMeasuredRequests() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        String input = "get-food apple\nstats\n";
+        InputStream inputStream = new ByteArrayInputStream(input.getBytes());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        when(socket.getInputStream()).thenReturn(inputStream);
+        when(socket.getOutputStream()).thenReturn(outputStream);
+        when(retriever.getFoodByKeywords(any())).thenReturn(List.of());
+        when(retriever.circuitState()).thenReturn(CircuitState.HALF_OPEN);
+        when(retriever.memoryCacheStats()).thenReturn(Map.of("reports", new CacheStats(3, 1, 0, 2)));
+
+        RequestProcessor processor = new RequestProcessor(retriever, new Metrics());
+        new ClientRequestHandler(socket, processor).run();
+
+        String response = outputStream.toString();
+        assertTrue(response.contains("get-food cache count=1"), "Stats should count the cached get-food request");
+        assertTrue(response.contains("get-food-report upstream count=0"), "Stats should list every type and source");
+        assertTrue(response.contains("circuit half-open"), "Stats should show the circuit state");
+        assertTrue(response.contains("memory-cache reports hits=3, misses=1"), "Stats should show the memory caches");
+        assertTrue(response.contains("rate-limiter "), "Stats should show the rate limiter");
+        assertTrue(response.strip().endsWith("END"), "Stats response should end with END");
+    }
+
+    @Test
+    void testPipelinedCommandsAreTagged() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        String input = "pipeline\na get-food apple\nstats\nb stats\nexit\n";
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream(input.getBytes()));
+        when(socket.getOutputStream()).thenReturn(outputStream);
+        when(retriever.getFoodByKeywords(any())).thenReturn(List.of());
+        when(retriever.circuitState()).thenReturn(CircuitState.CLOSED);
+        new ClientRequestHandler(socket, new RequestProcessor(retriever, new Metrics())).run();
+
+        List<String> lines = outputStream.toString().lines().toList();
+        assertTrue(lines.get(0).equals(PipelineProtocol.PIPELINE_ENABLED), "Server should confirm pipelining");
+        assertTrue(lines.contains("END a") && lines.contains("END b"), "Every answer should end with its id");
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("Invalid command: pipelined")),
+            "A line without an id should be rejected");
+        assertTrue(lines.get(lines.size() - 1).equals("Connection closed"), "Exit should be answered last");
+    }
+
+    @Test
+    void testReportBatchAnswersEveryItem() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream("get-food-report-batch 1 2\n".getBytes()));
+        when(socket.getOutputStream()).thenReturn(outputStream);
+        when(retriever.getFoodReport(1)).thenReturn(gson.fromJson(reportJSON, FoodReport.class));
+        when(retriever.getFoodReport(2)).thenThrow(new NoResultsFoundException("No report found"));
+        new ClientRequestHandler(socket, retriever).run();
+
+        List<String> lines = outputStream.toString().lines().toList();
+        assertTrue(lines.contains("ITEM 1") && lines.contains("Name: COLA"), "The found report should be returned");
+        assertTrue(lines.contains("ITEM 2") && lines.contains("No food found with ID 2"),
+            "A missing report should not fail the whole batch");
+        assertTrue(lines.get(lines.size() - 1).equals("END"), "The batch should end with a single END");
+    }
+
+    @Test
+    void testEachResponseIsFlushedOnce() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        AtomicInteger flushes = new AtomicInteger();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes.incrementAndGet();
+            }
+        };
+
+        when(socket.getInputStream()).thenReturn(new ByteArrayInputStream("get-food-report 1\nstats\n".getBytes()));
+        when(socket.getOutputStream()).thenReturn(outputStream);
+        when(retriever.getFoodReport(1)).thenReturn(gson.fromJson(reportJSON, FoodReport.class));
+        when(retriever.circuitState()).thenReturn(CircuitState.CLOSED);
+        new ClientRequestHandler(socket, retriever).run();
+
+        assertTrue(outputStream.toString().contains("Name: COLA"), "The report should be returned");
+        assertEquals(2, flushes.get(), "Every response should be flushed once, not once per line");
+    }
 }
@@ -0,0 +1,44 @@
+package bg.sofia.uni.fmi.mjt.food.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PipelineProtocolTest {
+    private static final String NL = System.lineSeparator();
+
+    @Test
+    void testParseSplitsIdAndCommand() {
+        PipelineProtocol.TaggedLine tagged = PipelineProtocol.parse("a-7 get-food raw apple");
+        assertEquals("a-7", tagged.id(), "The first word should be the request id");
+        assertEquals("get-food raw apple", tagged.command(), "The rest of the line should be the command");
+    }
+
+    @Test
+    void testParseRejectsLinesWithoutValidId() {
+        assertNull(PipelineProtocol.parse("get-food"), "A line without a command after the id should be rejected");
+        assertNull(PipelineProtocol.parse("a.b get-food apple"), "Ids with other characters should be rejected");
+        assertNull(PipelineProtocol.parse("x".repeat(33) + " stats"), "Ids longer than 32 should be rejected");
+    }
+
+    @Test
+    void testTagReplacesClosingEnd() {
+        byte[] response = ("line" + NL + "END" + NL).getBytes(StandardCharsets.UTF_8);
+        assertEquals("line" + NL + "END 42" + NL,
+            new String(PipelineProtocol.tag(response, "42"), StandardCharsets.UTF_8),
+            "Only the closing END should carry the id");
+        assertEquals("line" + NL + "END" + NL, new String(response, StandardCharsets.UTF_8),
+            "The tagged response should be a copy");
+    }
+
+    @Test
+    void testTagRejectsIncompleteResponse() {
+        byte[] response = ("line" + NL).getBytes(StandardCharsets.UTF_8);
+        assertThrows(IllegalArgumentException.class, () -> PipelineProtocol.tag(response, "1"),
+            "A response without END cannot be tagged");
+    }
+}
@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.food.server.barcode;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GtinTest {
+
+    @Test
+    void testPaddingVariantsShareGtin() {
+        long gtin = Gtin.parse("855019000349");
+        assertEquals(gtin, Gtin.parse("0855019000349"), "EAN-13 should match UPC-A");
+        assertEquals(gtin, Gtin.parse("00855019000349"), "GTIN-14 should match UPC-A");
+        assertEquals("00855019000349", Gtin.format(gtin), "The canonical form should have 14 digits");
+    }
+
+    @Test
+    void testValidCheckDigits() {
+        assertTrue(Gtin.isValid("012000338960"), "UPC-A with a correct check digit should be valid");
+        assertTrue(Gtin.isValid("4006381333931"), "EAN-13 with a correct check digit should be valid");
+        assertTrue(Gtin.isValid("96385074"), "GTIN-8 with a correct check digit should be valid");
+    }
+
+    @Test
+    void testWrongCheckDigitIsInvalid() {
+        assertEquals(Gtin.INVALID, Gtin.parse("012000338961"), "A wrong check digit should be rejected");
+        assertNull(Gtin.canonical("4006381333932"), "A wrong check digit should have no canonical form");
+    }
+
+    @Test
+    void testMalformedBarcodesAreInvalid() {
+        assertFalse(Gtin.isValid(null), "Null should be invalid");
+        assertFalse(Gtin.isValid(""), "Empty should be invalid");
+        assertFalse(Gtin.isValid("01200033896a"), "Letters should be invalid");
+        assertFalse(Gtin.isValid("000012000338960"), "More than 14 digits should be invalid");
+    }
+
+    @Test
+    void testFormatRetail() {
+        assertEquals("009800146130", Gtin.formatRetail(Gtin.parse("00009800146130")),
+            "A UPC-A product should get 12 digits");
+        assertEquals("4006381333931", Gtin.formatRetail(Gtin.parse("04006381333931")),
+            "An EAN-13 product should keep 13 digits");
+    }
+
+    @Test
+    void testFormatNegativeThrows() {
+        assertThrows(IllegalArgumentException.class, () -> Gtin.format(Gtin.INVALID),
+            "Formatting an invalid GTIN should throw");
+    }
+}
@@ -0,0 +1,105 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheConcurrencyTest {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+    private static final int KEYS = 32;
+    private static final int WRITE_PERCENT = 20;
+    private static final long RUN_MILLIS = 300;
+    private static final String LARGE_PAYLOAD = "x".repeat(64 * 1024);
+
+    @TempDir
+    Path tempDir;
+
+    private static String payload(int key, int version) {
+        return "{\"fdcId\":" + key + ",\"version\":" + version + ",\"data\":\"" + LARGE_PAYLOAD + "\"}";
+    }
+
+    private static boolean isComplete(String json, int key) {
+        return json.startsWith("{\"fdcId\":" + key + ",") && json.endsWith(LARGE_PAYLOAD + "\"}");
+    }
+
+    private long runMixedWorkload(Cache cache, int threads) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            results.add(executor.submit(() -> {
+                long operations = 0;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int key = random.nextInt(KEYS);
+                    if (random.nextInt(100) < WRITE_PERCENT) {
+                        cache.saveReport(key, payload(key, random.nextInt()));
+                    } else {
+                        String json = cache.loadReport(key);
+                        if (json != null && !isComplete(json, key)) {
+                            throw new IllegalStateException("Reader saw a partially written entry for " + key);
+                        }
+                    }
+                    operations++;
+                }
+                return operations;
+            }));
+        }
+        Thread.sleep(RUN_MILLIS);
+        running.set(false);
+        long total = 0;
+        for (Future<Long> result : results) {
+            total += result.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        return total;
+    }
+
+    @Test
+    void testMixedReadWriteNeverExposesPartialEntries() throws Exception {
+        Cache cache = Cache.createWithCustomPath(tempDir);
+        for (int key = 0; key < KEYS; key++) {
+            cache.saveReport(key, payload(key, 0));
+        }
+
+        for (int threads : THREAD_COUNTS) {
+            long operations = runMixedWorkload(cache, threads);
+            System.out.printf("Cache mixed read/write: threads=%d throughput=%.0f ops/s%n",
+                threads, operations * 1000.0 / RUN_MILLIS);
+            assertTrue(operations > 0, "Workers should make progress with " + threads + " threads");
+        }
+    }
+
+    @Test
+    void testWritesLeaveNoTemporaryFiles() throws Exception {
+        Cache cache = Cache.createWithCustomPath(tempDir);
+        runMixedWorkload(cache, 4);
+
+        try (Stream<Path> files = Files.list(tempDir.resolve("reports"))) {
+            assertTrue(files.allMatch(path -> path.toString().endsWith(".json")),
+                "Only complete json files should remain after writes");
+        }
+    }
+
+    @Test
+    void testSaveOverwritesExistingEntry() throws IOException {
+        Cache cache = Cache.createWithCustomPath(tempDir);
+        cache.saveByBarcode("111", "{\"old\":true}");
+        cache.saveByBarcode("111", "{\"old\":false}");
+        assertEquals("{\"old\":false}", cache.loadBarcode("111"), "Latest write should win");
+    }
+}
@@ -1,5 +1,7 @@
 package bg.sofia.uni.fmi.mjt.food.server.cache;
 
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheNamespace;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -7,6 +9,11 @@ import org.junit.jupiter.api.io.TempDir;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -76,8 +83,55 @@ class CacheTest {
 
         cache.saveByBarcode(barcode, json);
 
-        Path barcodePath = tempDir.resolve("barcodes").resolve(barcode + ".json");
-        assertTrue(Files.exists(barcodePath), "Barcode file should be created");
+        Path barcodePath = tempDir.resolve("barcodes").resolve("00000000000123.json");
+        assertTrue(Files.exists(barcodePath), "Barcode file should be created under its 14 digit GTIN");
+    }
+
+    @Test
+    void testBarcodeVariantsShareEntry() throws IOException {
+        String json = """
+            {"gtinUpc":"855019000349"}""";
+
+        cache.saveByBarcode("855019000349", json);
+
+        assertEquals(json, cache.loadBarcode("0855019000349"), "EAN-13 lookup should find the UPC-A entry");
+        assertEquals(json, cache.loadBarcode("00855019000349"), "GTIN-14 lookup should find the UPC-A entry");
+        assertEquals(1, cache.indexedBarcodeCount(), "One product should have one index entry");
+    }
+
+    @Test
+    void testLoadAllReturnsUnwrappedValues() throws IOException {
+        cache.saveByKeywords("raw apple", "{\"foods\":[]}");
+        Files.writeString(tempDir.resolve("keywords").resolve("old_search.json"), "{\"old\":true}");
+
+        List<String> values = cache.loadAll(CacheNamespace.KEYWORDS).stream().sorted().toList();
+
+        assertEquals(List.of("{\"foods\":[]}", "{\"old\":true}"), values,
+            "Saved and legacy values should be listed without their envelope");
+        assertEquals(List.of(), cache.loadAll(CacheNamespace.REPORTS), "An empty namespace should have no values");
+    }
+
+    @Test
+    void testExistingBarcodeFilesAreIndexedAtStartup() throws IOException {
+        Path barcodes = tempDir.resolve("barcodes");
+        Files.writeString(barcodes.resolve("0855019000349.json"), "{\"old\":true}");
+        Files.writeString(barcodes.resolve("00012000338960.json"), "{\"cola\":true}");
+        Files.writeString(barcodes.resolve("012000338960.json"), "{\"cola\":false}");
+
+        Cache reopened = Cache.createWithCustomPath(tempDir);
+
+        assertEquals(2, reopened.indexedBarcodeCount(), "Duplicate spellings should share an index entry");
+        assertEquals("{\"old\":true}", reopened.loadBarcode("855019000349"), "A padded file should be found");
+        assertEquals("{\"cola\":true}", reopened.loadBarcode("012000338960"),
+            "The canonical file should win over other spellings");
+    }
+
+    @Test
+    void testUnknownValidBarcodeIsMissWithoutRead() throws IOException {
+        Path barcodes = tempDir.resolve("barcodes");
+        Files.writeString(barcodes.resolve("012000338960.json"), "{}");
+
+        assertNull(cache.loadBarcode("012000338960"), "A file added after startup should not be probed");
     }
 
     @Test
@@ -120,6 +174,40 @@ class CacheTest {
         assertNull(loaded, "Non-existent keywords should return null");
     }
 
+    @Test
+    void testEntryKeepsSaveTime() throws IOException {
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(1_000_000), ZoneOffset.UTC);
+        Cache timed = Cache.withStore(new FileCacheStore(tempDir), clock);
+        String json = """
+            {"fdcId":7}""";
+
+        timed.saveReport(7, json);
+        CacheEntry<String> entry = timed.loadReportEntry(7);
+
+        assertEquals(json, entry.value(), "The value should come out of the envelope unchanged");
+        assertEquals(1_000_000, entry.savedAtMillis(), "The save time should be kept");
+        assertFalse(entry.isStale(Duration.ofSeconds(1), 1_000_999), "An entry within the TTL should be fresh");
+        assertTrue(entry.isStale(Duration.ofSeconds(1), 1_001_000), "An entry past the TTL should be stale");
+        assertFalse(entry.isStale(Duration.ZERO, Long.MAX_VALUE), "A zero TTL should never be stale");
+    }
+
+    @Test
+    void testEntryWithoutEnvelopeCountsAsSavedAtLoad() throws IOException {
+        String json = """
+            {"fdcId":8}""";
+        Files.createDirectories(tempDir.resolve("reports"));
+        Files.writeString(tempDir.resolve("reports").resolve("8.json"), json);
+        Clock clock = Clock.fixed(Instant.ofEpochMilli(1_000_000), ZoneOffset.UTC);
+        Cache timed = Cache.withStore(new FileCacheStore(tempDir), clock);
+
+        CacheEntry<String> entry = timed.loadReportEntry(8);
+
+        assertEquals(json, entry.value(), "An old entry should be read as it is");
+        assertEquals(1_000_000, entry.savedAtMillis(), "An entry without a save time should count as saved at load");
+        assertFalse(entry.isStale(Duration.ofSeconds(1), 1_000_999), "An old entry should be fresh right after load");
+        assertTrue(entry.isStale(Duration.ofSeconds(1), 1_001_000), "An old entry should go stale after the TTL");
+    }
+
     @Test
     void testGetInstanceOnlyOneInstance() throws IOException {
         Cache instance1 = Cache.getInstance();
@@ -0,0 +1,45 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GtinIndexTest {
+
+    @Test
+    void testPutAndGet() {
+        GtinIndex index = new GtinIndex();
+        index.put(855019000349L, "855019000349");
+        assertEquals("855019000349", index.get(855019000349L), "Stored key should be returned");
+        assertNull(index.get(12000338960L), "Missing GTIN should return null");
+    }
+
+    @Test
+    void testPutReplacesKey() {
+        GtinIndex index = new GtinIndex();
+        index.put(0, "0");
+        index.put(0, "00000000000000");
+        assertEquals("00000000000000", index.get(0), "The latest key should win");
+        assertEquals(1, index.size(), "Replacing should not add an entry");
+    }
+
+    @Test
+    void testGrowsPastInitialCapacity() {
+        GtinIndex index = new GtinIndex(1);
+        for (long gtin = 0; gtin < 10_000; gtin++) {
+            index.put(gtin * 10, Long.toString(gtin));
+        }
+        assertEquals(10_000, index.size(), "Every GTIN should be indexed");
+        for (long gtin = 0; gtin < 10_000; gtin++) {
+            assertEquals(Long.toString(gtin), index.get(gtin * 10), "GTIN " + gtin + " should survive growth");
+        }
+    }
+
+    @Test
+    void testInvalidArgumentsThrow() {
+        GtinIndex index = new GtinIndex();
+        assertThrows(IllegalArgumentException.class, () -> index.put(-1, "key"), "Negative GTIN should throw");
+        assertThrows(IllegalArgumentException.class, () -> index.put(1, null), "Null key should throw");
+        assertThrows(IllegalArgumentException.class, () -> new GtinIndex(-1), "Negative size should throw");
+    }
+}
@@ -0,0 +1,77 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryCacheTest {
+
+    @Test
+    void testConstructorNonPositiveCapacityThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new MemoryCache<String, String>(0),
+            "Capacity should be positive");
+    }
+
+    @Test
+    void testGetReturnsPutValue() {
+        MemoryCache<Integer, String> cache = new MemoryCache<>(10);
+        cache.put(1, "report");
+        assertEquals("report", cache.get(1), "Value should be returned from memory");
+        assertNull(cache.get(2), "Missing key should return null");
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        MemoryCache<Integer, Integer> cache = new MemoryCache<>(5);
+        for (int i = 0; i < 20; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(5, cache.size(), "Cache should not grow over its capacity");
+        assertEquals(15, cache.stats().evictions(), "Every entry over capacity should be evicted");
+    }
+
+    @Test
+    void testFrequentlyUsedEntrySurvivesScan() {
+        MemoryCache<Integer, Integer> cache = new MemoryCache<>(5);
+        cache.put(-1, -1);
+        cache.get(-1);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(-1, cache.get(-1), "Entry hit twice should be protected from one-off entries");
+    }
+
+    @Test
+    void testStatsCountHitsAndMisses() {
+        MemoryCache<String, String> cache = new MemoryCache<>(10);
+        cache.put("a", "1");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.hits(), "Two lookups should hit");
+        assertEquals(1, stats.misses(), "One lookup should miss");
+        assertEquals(1, stats.size(), "One entry should be stored");
+    }
+
+    @Test
+    void testPutReturnsPreviousValueWithoutCountingOrPromoting() {
+        MemoryCache<Integer, Integer> cache = new MemoryCache<>(5);
+        assertNull(cache.put(-1, -1), "A new key should have no previous value");
+        assertEquals(-1, cache.put(-1, -2), "The replaced value should be returned");
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, i);
+        }
+        assertNull(cache.get(-1), "Writes alone should not protect an entry from a scan");
+        assertEquals(0, cache.stats().hits(), "Writes should not count hits");
+        assertEquals(1, cache.stats().misses(), "Only the lookup should count a miss");
+    }
+
+    @Test
+    void testInvalidateRemovesEntry() {
+        MemoryCache<String, String> cache = new MemoryCache<>(10);
+        cache.put("a", "1");
+        cache.invalidate("a");
+        assertNull(cache.get("a"), "Invalidated entry should not be returned");
+    }
+}
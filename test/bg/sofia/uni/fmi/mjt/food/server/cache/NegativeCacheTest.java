@@ -0,0 +1,51 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NegativeCacheTest {
+    private final AtomicLong now = new AtomicLong();
+    private final NegativeCache<Integer> cache = new NegativeCache<>(10, Duration.ofSeconds(5), now::get);
+
+    @Test
+    void testMissIsRememberedUntilItExpires() {
+        cache.put(404);
+        now.addAndGet(Duration.ofSeconds(4).toNanos());
+        assertTrue(cache.contains(404), "The miss should be remembered within the time to live");
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertFalse(cache.contains(404), "The miss should expire after the time to live");
+        assertFalse(cache.contains(404), "The expired miss should stay gone");
+    }
+
+    @Test
+    void testInvalidateForgetsMiss() {
+        cache.put(404);
+        cache.invalidate(404);
+        assertFalse(cache.contains(404), "A key with food should no longer be missing");
+    }
+
+    @Test
+    void testZeroTimeToLiveRemembersNothing() {
+        NegativeCache<Integer> disabled = new NegativeCache<>(10, Duration.ZERO, now::get);
+        disabled.put(404);
+        assertFalse(disabled.contains(404), "Zero time to live should turn the cache off");
+    }
+
+    @Test
+    void testSizeIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            cache.put(i);
+        }
+        assertEquals(90, cache.stats().evictions(), "Misses over the capacity should be evicted");
+    }
+
+    @Test
+    void testNegativeTimeToLiveThrows() {
+        assertThrows(IllegalArgumentException.class, () -> new NegativeCache<Integer>(10, Duration.ofSeconds(-1)),
+            "Negative time to live should throw");
+    }
+}
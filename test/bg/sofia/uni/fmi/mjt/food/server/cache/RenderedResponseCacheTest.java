@@ -0,0 +1,53 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderedResponseCacheTest {
+
+    @Test
+    void testGetReturnsSameBytes() {
+        RenderedResponseCache cache = new RenderedResponseCache(10);
+        byte[] response = {'E', 'N', 'D', '\n'};
+        cache.put("get-food-report 1", response, 0);
+        assertSame(response, cache.get("get-food-report 1", 0), "The stored bytes should be returned without a copy");
+        assertNull(cache.get("get-food-report 2", 0), "Missing key should return null");
+    }
+
+    @Test
+    void testOversizedResponseIsNotKept() {
+        RenderedResponseCache cache = new RenderedResponseCache(10);
+        cache.put("get-food apple", new byte[RenderedResponseCache.MAX_RESPONSE_BYTES + 1], 0);
+        assertNull(cache.get("get-food apple", 0), "Responses over the limit should be rendered again");
+    }
+
+    @Test
+    void testNewerDataVersionMisses() {
+        RenderedResponseCache cache = new RenderedResponseCache(10);
+        cache.put("get-food-report 1", new byte[]{'E'}, 3);
+        assertNull(cache.get("get-food-report 1", 4), "A response rendered from older data should be dropped");
+        assertNull(cache.get("get-food-report 1", 3), "The dropped response should not come back");
+    }
+
+    @Test
+    void testResponseOlderThanMaxAgeMisses() {
+        AtomicLong now = new AtomicLong();
+        RenderedResponseCache cache = new RenderedResponseCache(10, Duration.ofSeconds(1), now::get);
+        cache.put("get-food-report 1", new byte[]{'E'}, 0);
+        now.set(Duration.ofMillis(999).toNanos());
+        assertNotNull(cache.get("get-food-report 1", 0), "A response within the max age should be served");
+        now.set(Duration.ofSeconds(1).toNanos());
+        assertNull(cache.get("get-food-report 1", 0), "A response past the max age should be rendered again");
+    }
+
+    @Test
+    void testPutNullResponseThrows() {
+        RenderedResponseCache cache = new RenderedResponseCache(10);
+        assertThrows(IllegalArgumentException.class, () -> cache.put("stats", null, 0),
+            "Null response should throw");
+    }
+}
@@ -0,0 +1,241 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredCacheStoreTest {
+    private static final long SMALL_SEGMENT_BYTES = 4 * 1024;
+    private static final int SMALL_INDEX_CAPACITY = 8;
+
+    @TempDir
+    Path tempDir;
+
+    private LogStructuredCacheStore openStore() throws IOException {
+        return new LogStructuredCacheStore(tempDir, SMALL_SEGMENT_BYTES, SMALL_INDEX_CAPACITY, Duration.ZERO);
+    }
+
+    private static long segmentFiles(Path root) throws IOException {
+        try (Stream<Path> files = Files.list(root)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            store.write(CacheNamespace.REPORTS, "12345", "{\"fdcId\":12345}");
+            assertEquals("{\"fdcId\":12345}", store.read(CacheNamespace.REPORTS, "12345"),
+                "Stored value should be read back");
+            assertNull(store.read(CacheNamespace.REPORTS, "54321"), "Missing key should return null");
+        }
+    }
+
+    @Test
+    void testNamespacesAreSeparate() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            store.write(CacheNamespace.REPORTS, "111", "report");
+            store.write(CacheNamespace.BARCODES, "111", "barcode");
+            assertEquals("report", store.read(CacheNamespace.REPORTS, "111"), "Report should keep its value");
+            assertEquals("barcode", store.read(CacheNamespace.BARCODES, "111"), "Barcode should keep its value");
+            assertNull(store.read(CacheNamespace.KEYWORDS, "111"), "Other namespaces should not see the key");
+        }
+    }
+
+    @Test
+    void testKeysListsOneNamespace() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            store.write(CacheNamespace.BARCODES, "00009800146130", "old");
+            store.write(CacheNamespace.BARCODES, "00009800146130", "new");
+            store.write(CacheNamespace.BARCODES, "012000338960", "cola");
+            store.write(CacheNamespace.REPORTS, "111", "report");
+            assertEquals(List.of("00009800146130", "012000338960"),
+                store.keys(CacheNamespace.BARCODES).stream().sorted().toList(),
+                "Each barcode key should be listed once");
+        }
+    }
+
+    @Test
+    void testOverwriteReturnsLatestValue() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            store.write(CacheNamespace.KEYWORDS, "raw_milk", "old");
+            store.write(CacheNamespace.KEYWORDS, "raw_milk", "new");
+            assertEquals("new", store.read(CacheNamespace.KEYWORDS, "raw_milk"), "Latest write should win");
+            assertEquals(1, store.size(), "Overwrite should not add an index entry");
+        }
+    }
+
+    @Test
+    void testIndexGrowsPastInitialCapacity() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            for (int i = 0; i < 1000; i++) {
+                store.write(CacheNamespace.REPORTS, String.valueOf(i), "value-" + i);
+            }
+            assertEquals(1000, store.size(), "All keys should be indexed");
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value-" + i, store.read(CacheNamespace.REPORTS, String.valueOf(i)),
+                    "Key " + i + " should survive index growth");
+            }
+        }
+    }
+
+    @Test
+    void testGrownIndexIsReopenedFromTheSameFile() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            for (int i = 0; i < 1000; i++) {
+                store.write(CacheNamespace.REPORTS, String.valueOf(i), "value-" + i);
+            }
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of("index.bin"), files.map(path -> path.getFileName().toString())
+                .filter(name -> !name.endsWith(".log")).toList(), "Growth should leave no other index files");
+        }
+        assertTrue(Files.size(tempDir.resolve("index.bin")) > 64 + SMALL_INDEX_CAPACITY * 24,
+            "The index file should have grown in place");
+
+        try (LogStructuredCacheStore store = openStore()) {
+            assertEquals(1000, store.size(), "Reopened store should keep every key of the grown index");
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("value-" + i, store.read(CacheNamespace.REPORTS, String.valueOf(i)),
+                    "Key " + i + " should be found after reopening");
+            }
+        }
+    }
+
+    @Test
+    void testReopenMapsPersistedIndex() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            for (int i = 0; i < 100; i++) {
+                store.write(CacheNamespace.BARCODES, "barcode-" + i, "value-" + i);
+            }
+        }
+        try (LogStructuredCacheStore store = openStore()) {
+            assertEquals(100, store.size(), "Reopened store should keep all keys");
+            assertEquals("value-42", store.read(CacheNamespace.BARCODES, "barcode-42"),
+                "Reopened store should read existing entries");
+        }
+    }
+
+    @Test
+    void testMissingIndexIsRebuiltFromSegments() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            store.write(CacheNamespace.REPORTS, "1", "first");
+            store.write(CacheNamespace.REPORTS, "1", "second");
+            store.write(CacheNamespace.REPORTS, "2", "other");
+        }
+        Files.delete(tempDir.resolve("index.bin"));
+
+        try (LogStructuredCacheStore store = openStore()) {
+            assertEquals("second", store.read(CacheNamespace.REPORTS, "1"), "Rebuild should keep the latest record");
+            assertEquals("other", store.read(CacheNamespace.REPORTS, "2"), "Rebuild should index every key");
+        }
+    }
+
+    @Test
+    void testTornTailIsDiscardedOnRecovery() throws IOException {
+        LogStructuredCacheStore crashed = openStore();
+        crashed.write(CacheNamespace.REPORTS, "1", "complete");
+        Path segment;
+        try (Stream<Path> files = Files.list(tempDir)) {
+            segment = files.filter(path -> path.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] {1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        // The first store was never closed, so its index is not trusted
+        try (LogStructuredCacheStore store = openStore()) {
+            assertEquals("complete", store.read(CacheNamespace.REPORTS, "1"), "Complete records should survive");
+            store.write(CacheNamespace.REPORTS, "2", "after recovery");
+            assertEquals("after recovery", store.read(CacheNamespace.REPORTS, "2"),
+                "Writes after recovery should be readable");
+        }
+    }
+
+    @Test
+    void testCompactionReclaimsOverwrittenSegments() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            String payload = "x".repeat(512);
+            for (int round = 0; round < 10; round++) {
+                for (int key = 0; key < 4; key++) {
+                    store.write(CacheNamespace.REPORTS, String.valueOf(key), payload + round);
+                }
+            }
+            long before = segmentFiles(tempDir);
+            store.compact();
+
+            assertTrue(segmentFiles(tempDir) < before, "Compaction should delete mostly dead segments");
+            assertEquals(store.segmentCount(), segmentFiles(tempDir), "Deleted segments should leave the store");
+            for (int key = 0; key < 4; key++) {
+                assertEquals(payload + 9, store.read(CacheNamespace.REPORTS, String.valueOf(key)),
+                    "Compaction should keep the latest value of key " + key);
+            }
+        }
+    }
+
+    @Test
+    void testCompactedStoreSurvivesRebuild() throws IOException {
+        try (LogStructuredCacheStore store = openStore()) {
+            String payload = "y".repeat(512);
+            for (int round = 0; round < 10; round++) {
+                store.write(CacheNamespace.BARCODES, "kept", payload + round);
+                store.write(CacheNamespace.BARCODES, "churn", payload + round);
+            }
+            store.compact();
+        }
+        Files.delete(tempDir.resolve("index.bin"));
+
+        try (LogStructuredCacheStore store = openStore()) {
+            assertEquals("y".repeat(512) + 9, store.read(CacheNamespace.BARCODES, "kept"),
+                "Relocated records should be found after a rebuild");
+        }
+    }
+
+    @Test
+    void testConcurrentWritersAndReaders() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (LogStructuredCacheStore store = openStore()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        String key = thread + "-" + i;
+                        store.write(CacheNamespace.KEYWORDS, key, "value-" + key);
+                        assertEquals("value-" + key, store.read(CacheNamespace.KEYWORDS, key),
+                            "Writer should read its own entry");
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            store.compact();
+            assertEquals(800, store.size(), "Every concurrent write should be indexed");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testClosedStoreRejectsOperations() throws IOException {
+        LogStructuredCacheStore store = openStore();
+        store.close();
+        assertThrows(IOException.class, () -> store.read(CacheNamespace.REPORTS, "1"),
+            "Reading a closed store should throw");
+        assertThrows(IOException.class, () -> store.write(CacheNamespace.REPORTS, "1", "value"),
+            "Writing a closed store should throw");
+    }
+}
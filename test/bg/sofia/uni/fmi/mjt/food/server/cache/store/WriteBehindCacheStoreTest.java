@@ -0,0 +1,216 @@
+package bg.sofia.uni.fmi.mjt.food.server.cache.store;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindCacheStoreTest {
+    // Long enough that everything a test writes is queued before the writer wakes up, flush cuts the wait short
+    private static final Duration FLUSH_INTERVAL = Duration.ofSeconds(1);
+    private final RecordingStore delegate = new RecordingStore();
+    private WriteBehindCacheStore store;
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        delegate.release.countDown();
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    private static class RecordingStore implements CacheStore {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final AtomicInteger writes = new AtomicInteger();
+        private final AtomicInteger syncs = new AtomicInteger();
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile boolean blocking;
+        private volatile boolean closed;
+
+        @Override
+        public void write(CacheNamespace namespace, String key, String value) throws IOException {
+            if (blocking) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+            if (failures.getAndUpdate(left -> Math.max(left - 1, 0)) > 0) {
+                throw new IOException("Disk full");
+            }
+            values.put(namespace.getValue() + "/" + key, value);
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public String read(CacheNamespace namespace, String key) {
+            return values.get(namespace.getValue() + "/" + key);
+        }
+
+        @Override
+        public List<String> keys(CacheNamespace namespace) {
+            String prefix = namespace.getValue() + "/";
+            return values.keySet().stream()
+                .filter(key -> key.startsWith(prefix))
+                .map(key -> key.substring(prefix.length()))
+                .toList();
+        }
+
+        @Override
+        public void sync() {
+            syncs.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void testWriteReturnsBeforeDelegateIsWritten() throws Exception {
+        delegate.blocking = true;
+        store = new WriteBehindCacheStore(delegate, Duration.ofMillis(1), 100);
+
+        store.write(CacheNamespace.REPORTS, "1", "report");
+
+        assertEquals("report", store.read(CacheNamespace.REPORTS, "1"), "Queued value should be read back");
+        assertNull(delegate.read(CacheNamespace.REPORTS, "1"), "The delegate should not have the value yet");
+        delegate.release.countDown();
+        store.flush();
+        assertEquals("report", delegate.read(CacheNamespace.REPORTS, "1"), "Flush should persist the value");
+    }
+
+    @Test
+    void testRepeatedWritesOfKeyAreCoalesced() throws IOException {
+        store = new WriteBehindCacheStore(delegate, FLUSH_INTERVAL, 100);
+
+        store.write(CacheNamespace.KEYWORDS, "apple", "v1");
+        store.write(CacheNamespace.KEYWORDS, "apple", "v2");
+        store.write(CacheNamespace.KEYWORDS, "apple", "v3");
+        store.flush();
+
+        assertEquals(1, delegate.writes.get(), "Only the last value should be written");
+        assertEquals("v3", delegate.read(CacheNamespace.KEYWORDS, "apple"), "The last value should win");
+        assertEquals(2, store.coalescedCount(), "The replaced values should be counted");
+    }
+
+    @Test
+    void testFailedWriteIsRetried() throws IOException {
+        delegate.failures.set(2);
+        store = new WriteBehindCacheStore(delegate, Duration.ofMillis(1), 100);
+
+        store.write(CacheNamespace.BARCODES, "123", "food");
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while (store.pendingCount() > 0) {
+                store.flush();
+            }
+        }, "The value should leave the queue once the delegate recovers");
+        assertEquals("food", delegate.read(CacheNamespace.BARCODES, "123"), "The value should be written");
+        assertEquals(2, store.retryCount(), "Every failed attempt should be retried");
+    }
+
+    @Test
+    void testBatchIsSyncedOnce() throws IOException {
+        store = new WriteBehindCacheStore(delegate, FLUSH_INTERVAL, 100);
+
+        for (int i = 0; i < 20; i++) {
+            store.write(CacheNamespace.BARCODES, String.valueOf(i), "food " + i);
+        }
+        store.flush();
+
+        assertEquals(20, delegate.writes.get(), "Every key should be written");
+        assertEquals(1, delegate.syncs.get(), "The whole batch should need a single sync");
+    }
+
+    @Test
+    void testFullQueueWritesThrough() throws IOException {
+        store = new WriteBehindCacheStore(delegate, FLUSH_INTERVAL, 1);
+
+        store.write(CacheNamespace.REPORTS, "1", "first");
+        store.write(CacheNamespace.REPORTS, "2", "second");
+
+        assertEquals("second", delegate.read(CacheNamespace.REPORTS, "2"),
+            "A write over the limit should reach the delegate at once");
+        assertEquals(1, store.pendingCount(), "Only the first write should be queued");
+    }
+
+    @Test
+    void testCloseDrainsQueue() throws IOException {
+        store = new WriteBehindCacheStore(delegate, FLUSH_INTERVAL, 100);
+        store.write(CacheNamespace.REPORTS, "1", "report");
+
+        store.close();
+
+        assertEquals("report", delegate.read(CacheNamespace.REPORTS, "1"), "Close should persist queued writes");
+        assertTrue(delegate.closed, "Close should close the delegate after draining");
+    }
+
+    @Test
+    void testWriteWhileClosingIsNotOverwrittenByTheDrain() throws Exception {
+        delegate.blocking = true;
+        store = new WriteBehindCacheStore(delegate, Duration.ofMillis(1), 100);
+        store.write(CacheNamespace.REPORTS, "1", "old");
+        delegate.entered.await();
+        Thread closer = Thread.ofPlatform().start(() -> {
+            try {
+                store.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        while (closer.getState() != Thread.State.TIMED_WAITING) {
+            Thread.onSpinWait();
+        }
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> store.write(CacheNamespace.REPORTS, "1", "new"),
+            "A key still draining should be replaced in the queue, not written through");
+        delegate.release.countDown();
+        closer.join();
+
+        assertEquals("new", delegate.read(CacheNamespace.REPORTS, "1"), "The newer value should be persisted last");
+    }
+
+    @Test
+    void testKeysIncludeQueuedWrites() throws IOException {
+        delegate.write(CacheNamespace.BARCODES, "1", "stored");
+        delegate.blocking = true;
+        store = new WriteBehindCacheStore(delegate, FLUSH_INTERVAL, 100);
+
+        store.write(CacheNamespace.BARCODES, "2", "queued");
+        store.write(CacheNamespace.REPORTS, "3", "other namespace");
+
+        assertEquals(List.of("1", "2"), store.keys(CacheNamespace.BARCODES).stream().sorted().toList(),
+            "Stored and queued keys of the namespace should be listed");
+    }
+
+    @Test
+    void testFileStoreSurvivesReopen() throws IOException {
+        store = new WriteBehindCacheStore(new FileCacheStore(tempDir), Duration.ofMillis(1), 100);
+        store.write(CacheNamespace.KEYWORDS, "raw_apple", "{}");
+        store.close();
+
+        assertEquals("{}", new FileCacheStore(tempDir).read(CacheNamespace.KEYWORDS, "raw_apple"),
+            "The synced file should be there for the next store");
+    }
+}
@@ -134,4 +134,50 @@ class CommandParserTest {
             "Command type should be GET_FOOD_BY_BARCODE");
         assertEquals("1505", commmand.barcode(), "barcode should be 1505");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testParseStatsCommand() throws InvalidClientMessageException {
+        Command command = CommandParser.parse("stats");
+        assertEquals(Type.STATS, command.type(), "Command type should be STATS");
+    }
+
+    @Test
+    void testParseStatsCommandWithArgumentsThrows() {
+        assertThrows(InvalidClientMessageException.class, () -> CommandParser.parse("stats now"),
+            "Should throw when stats gets arguments");
+    }
+
+    @Test
+    void testParseGetFoodReportBatchKeepsFirstOccurrences() throws InvalidClientMessageException {
+        Command command = CommandParser.parse("get-food-report-batch 415269 1457700 415269");
+
+        assertEquals(Type.GET_FOOD_REPORT_BATCH, command.type(), "Command type should be GET_FOOD_REPORT_BATCH");
+        assertIterableEquals(List.of(415269, 1457700), command.ids(), "Repeated ids should be looked up once");
+    }
+
+    @Test
+    void testParseGetFoodByBarcodeBatchValid() throws InvalidClientMessageException {
+        Command command = CommandParser.parse("get-food-by-barcode-batch --code=111 --code=222");
+
+        assertEquals(Type.GET_FOOD_BY_BARCODE_BATCH, command.type(),
+            "Command type should be GET_FOOD_BY_BARCODE_BATCH");
+        assertIterableEquals(List.of("111", "222"), command.barcodes(), "Barcodes should be kept in order");
+    }
+
+    @Test
+    void testParseGetFoodByBarcodeBatchWithoutCodePrefixThrows() {
+        assertThrows(InvalidClientMessageException.class,
+            () -> CommandParser.parse("get-food-by-barcode-batch --code=111 222"),
+            "Every barcode of a batch should have the --code= prefix");
+    }
+
+    @Test
+    void testParseBatchOverLimitThrows() {
+        StringBuilder input = new StringBuilder("get-food-report-batch");
+        for (int i = 0; i <= CommandParser.MAX_BATCH_SIZE; i++) {
+            input.append(' ').append(i);
+        }
+        assertThrows(InvalidClientMessageException.class, () -> CommandParser.parse(input.toString()),
+            "Batches over the limit should be rejected");
+    }
+}
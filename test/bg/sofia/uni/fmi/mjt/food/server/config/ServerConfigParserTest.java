@@ -0,0 +1,154 @@
+package bg.sofia.uni.fmi.mjt.food.server.config;
+
+import bg.sofia.uni.fmi.mjt.food.server.logging.OverflowPolicy;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerConfigParserTest {
+
+    @Test
+    void testParseNoArgumentsReturnsDefaults() {
+        ServerConfig config = ServerConfigParser.parse();
+        assertEquals(ServerMode.BLOCKING, config.mode(), "Default mode should be blocking");
+        assertEquals(ServerConfig.DEFAULT_PORT, config.port(), "Default port should be used");
+        assertEquals(ServerConfig.DEFAULT_WORKER_THREADS, config.workerThreads(), "Default workers should be used");
+    }
+
+    @Test
+    void testParseSelectorModeAndWorkers() {
+        ServerConfig config = ServerConfigParser.parse("--mode=selector", "--workers=8", "--port=6000");
+        assertEquals(ServerMode.SELECTOR, config.mode(), "Mode should be selector");
+        assertEquals(8, config.workerThreads(), "Workers should be 8");
+        assertEquals(6000, config.port(), "Port should be 6000");
+    }
+
+    @Test
+    void testParseVirtualThreadsMode() {
+        ServerConfig config = ServerConfigParser.parse("--mode=virtual");
+        assertEquals(ServerMode.VIRTUAL_THREADS, config.mode(), "Mode should be virtual threads");
+    }
+
+    @Test
+    void testParseUpstreamLane() {
+        ServerConfig config = ServerConfigParser.parse("--upstream-threads=3", "--upstream-queue=10");
+        assertEquals(3, config.upstreamThreads(), "Upstream threads should be 3");
+        assertEquals(10, config.upstreamQueueCapacity(), "Upstream queue capacity should be 10");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--upstream-threads=0"),
+            "The upstream lane needs at least one thread");
+    }
+
+    @Test
+    void testParseAdmissionLimits() {
+        ServerConfig config = ServerConfigParser.parse("--max-connections=100", "--max-pending=20",
+            "--latency-target=250");
+        assertEquals(100, config.maxConnections(), "Max connections should be 100");
+        assertEquals(20, config.maxPendingRequests(), "Max pending requests should be 20");
+        assertEquals(250, config.latencyTargetMillis(), "Latency target should be 250 ms");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--max-pending=0"),
+            "Pending requests must be bounded by a positive number");
+    }
+
+    @Test
+    void testParseWriteBehind() {
+        assertEquals(ServerConfig.DEFAULT_WRITE_BEHIND_MILLIS, ServerConfigParser.parse().writeBehindMillis(),
+            "Cache writes should be queued by default");
+        assertEquals(0, ServerConfigParser.parse("--write-behind=0").writeBehindMillis(),
+            "Zero should turn write-behind off");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--write-behind=-1"),
+            "Negative write-behind interval should throw");
+    }
+
+    @Test
+    void testParseRenderedCache() {
+        assertEquals(ServerConfig.DEFAULT_RENDERED_CACHE_ENTRIES, ServerConfigParser.parse().renderedCacheEntries(),
+            "Rendered responses should be kept by default");
+        assertEquals(0, ServerConfigParser.parse("--rendered-cache=0").renderedCacheEntries(),
+            "Zero should turn the rendered cache off");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--rendered-cache=-1"),
+            "Negative rendered cache size should throw");
+    }
+
+    @Test
+    void testParseNegativeTtl() {
+        assertEquals(ServerConfig.DEFAULT_NEGATIVE_TTL_MILLIS, ServerConfigParser.parse().negativeTtlMillis(),
+            "Misses should be remembered by default");
+        assertEquals(5000, ServerConfigParser.parse("--negative-ttl=5000").negativeTtlMillis(),
+            "Negative TTL should be 5000 ms");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--negative-ttl=-1"),
+            "Negative TTL below zero should throw");
+    }
+
+    @Test
+    void testParseCacheStore() {
+        assertEquals(CacheStoreType.FILES, ServerConfigParser.parse().cacheStore(),
+            "File per key store should be the default");
+        assertEquals(CacheStoreType.LOG, ServerConfigParser.parse("--cache=log").cacheStore(),
+            "Cache store should be log structured");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--cache=redis"),
+            "Unknown cache store should throw");
+    }
+
+    @Test
+    void testParseReportBatchWindow() {
+        assertEquals(0, ServerConfigParser.parse().reportBatchWindowMillis(), "Batching should be off by default");
+        assertEquals(15, ServerConfigParser.parse("--batch-window=15").reportBatchWindowMillis(),
+            "Batch window should be 15 ms");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--batch-window=-1"),
+            "Negative batch window should throw");
+    }
+
+    @Test
+    void testParseLogOverflowPolicy() {
+        assertEquals(OverflowPolicy.BLOCK, ServerConfigParser.parse().logOverflowPolicy(),
+            "Blocking should be the default overflow policy");
+        assertEquals(OverflowPolicy.SAMPLE, ServerConfigParser.parse("--log-overflow=sample").logOverflowPolicy(),
+            "Overflow policy should be sample");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--log-overflow=ignore"),
+            "Unknown overflow policy should throw");
+    }
+
+    @Test
+    void testParseUnknownModeThrows() {
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--mode=fast"),
+            "Unknown mode should throw");
+    }
+
+    @Test
+    void testParseInvalidWorkersThrows() {
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--workers=0"),
+            "Non positive worker count should throw");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--workers=many"),
+            "Non numeric worker count should throw");
+    }
+
+    @Test
+    void testParseUnknownArgumentThrows() {
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--verbose"),
+            "Unknown argument should throw");
+    }
+
+    @Test
+    void testParseUpstreamTimeoutAndCacheTtl() {
+        ServerConfig config = ServerConfigParser.parse("--upstream-timeout=1500", "--cache-ttl=0");
+        assertEquals(1500, config.upstreamTimeoutMillis(), "Upstream timeout should be parsed");
+        assertEquals(0, config.cacheTtlSeconds(), "A zero cache TTL should be accepted");
+        assertEquals(ServerConfig.DEFAULT_CACHE_TTL_SECONDS, ServerConfigParser.parse().cacheTtlSeconds(),
+            "Cache TTL should default to a day");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--upstream-timeout=0"),
+            "Zero upstream timeout should throw");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--cache-ttl=-1"),
+            "Negative cache TTL should throw");
+    }
+
+    @Test
+    void testParseLocalSearch() {
+        assertEquals(10, ServerConfigParser.parse("--local-search=10").localSearchMinMatches(),
+            "Local search min matches should be parsed");
+        assertEquals(0, ServerConfigParser.parse().localSearchMinMatches(),
+            "The index should only be a fallback by default");
+        assertThrows(IllegalArgumentException.class, () -> ServerConfigParser.parse("--local-search=-1"),
+            "Negative min matches should throw");
+    }
+}
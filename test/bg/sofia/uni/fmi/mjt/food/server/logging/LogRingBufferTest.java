@@ -0,0 +1,73 @@
+package bg.sofia.uni.fmi.mjt.food.server.logging;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRingBufferTest {
+
+    @Test
+    void testOfferFailsWhenFull() {
+        LogRingBuffer<Integer> buffer = new LogRingBuffer<>(2);
+        assertTrue(buffer.offer(1), "First offer should succeed");
+        assertTrue(buffer.offer(2), "Second offer should succeed");
+        assertFalse(buffer.offer(3), "Offer into a full buffer should fail");
+        assertEquals(1, buffer.poll(), "Entries should be polled in order");
+        assertTrue(buffer.offer(3), "Offer should succeed after a slot is freed");
+        assertEquals(2, buffer.poll(), "Entries should be polled in order");
+        assertEquals(3, buffer.poll(), "Entries should be polled in order");
+        assertNull(buffer.poll(), "Empty buffer should return null");
+    }
+
+    @Test
+    void testCapacityShouldBePowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new LogRingBuffer<>(6),
+            "Capacity that is not a power of two should throw");
+    }
+
+    @Test
+    void testConcurrentProducersLoseNoEntries() throws InterruptedException {
+        LogRingBuffer<Integer> buffer = new LogRingBuffer<>(64);
+        int producers = 4;
+        int perProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        Set<Integer> seen = new HashSet<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (seen.size() < producers * perProducer && System.nanoTime() < deadline) {
+            Integer value = buffer.poll();
+            if (value != null) {
+                assertTrue(seen.add(value), "Every entry should be polled once");
+            } else {
+                Thread.yield();
+            }
+        }
+        executor.shutdown();
+        assertEquals(producers * perProducer, seen.size(), "Every offered entry should be polled");
+        assertEquals(0, buffer.size(), "Buffer should be empty");
+    }
+}
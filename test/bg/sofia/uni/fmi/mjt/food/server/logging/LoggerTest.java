@@ -7,7 +7,12 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,11 +31,16 @@ class LoggerTest {
     @Test
     void testLogCreatesFile() {
         logger.log("Test message", null);
+        logger.flush();
         assertTrue(Files.exists(logFile), "Log file should be created");
     }
 
     @AfterEach
     void tearDown() throws IOException {
+        logger.close();
+        for (int i = 1; i <= Logger.DEFAULT_MAX_BACKUP_FILES; i++) {
+            Files.deleteIfExists(Path.of(logFile + "." + i));
+        }
         if (Files.exists(logFile)) {
             Files.delete(logFile);
         }
@@ -43,6 +53,7 @@ class LoggerTest {
         Exception exception = new RuntimeException("test-exception");
 
         logger.log(message, exception);
+        logger.flush();
 
         String content = Files.readString(logFile);
         assertTrue(content.contains(message), "Log should contain the message");
@@ -57,6 +68,7 @@ class LoggerTest {
         Exception exception = new IOException("message");
 
         logger.log(message, exception, additionalInfo);
+        logger.flush();
 
         String content = Files.readString(logFile);
         assertTrue(content.contains(message), "Log should contain the message");
@@ -71,6 +83,7 @@ class LoggerTest {
         logger.log("First message", null);
         logger.log("Second message", null);
         logger.log("Third message", null);
+        logger.flush();
 
         List<String> lines = Files.readAllLines(logFile);
         String content = String.join("\n", lines);
@@ -86,6 +99,7 @@ class LoggerTest {
         Exception exception = new IllegalArgumentException("Invalid argument");
 
         logger.log(message, exception);
+        logger.flush();
 
         String content = Files.readString(logFile);
         assertTrue(content.contains("IllegalArgumentException"), "Log should contain exception class");
@@ -99,5 +113,113 @@ class LoggerTest {
         assertSame(instance1, instance2, "getInstance should return the same instance");
     }
 
+    @Test
+    void testConcurrentLogsAreAllWritten() throws Exception {
+        int threads = 4;
+        int perThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    logger.log("entry-" + thread + "-" + i, null);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Producers should finish");
+        logger.flush();
+
+        long entries = Files.readAllLines(logFile).stream().filter(line -> line.startsWith("entry-")).count();
+        assertEquals(threads * perThread, entries, "Every entry should be written exactly once with blocking policy");
+    }
+
+    @Test
+    void testDropPolicyCountsAndReportsDroppedEntries() throws IOException {
+        logger.close();
+        logger = Logger.builder("test-log.txt").setCapacity(4).setOverflowPolicy(OverflowPolicy.DROP)
+            .setStartWriter(false).build();
+        for (int i = 0; i < 10; i++) {
+            logger.log("message-" + i, null);
+        }
+        assertEquals(6, logger.droppedCount(), "Entries over the buffer capacity should be dropped");
+
+        logger.startWriter();
+        logger.flush();
+        String content = Files.readString(logFile);
+        assertTrue(content.contains("message-3"), "Buffered entries should be written");
+        assertFalse(content.contains("message-4"), "Dropped entries should not be written");
+        assertTrue(content.contains("6 log entries dropped"), "The number of dropped entries should be logged");
+    }
+
+    @Test
+    void testSamplePolicyKeepsEveryTenthOverflowingEntry() {
+        logger.close();
+        logger = Logger.builder("test-log.txt").setCapacity(2).setOverflowPolicy(OverflowPolicy.SAMPLE)
+            .setStartWriter(false).build();
+        logger.log("first", null);
+        logger.log("second", null);
+        for (int i = 0; i < Logger.SAMPLE_RATE - 1; i++) {
+            logger.log("overflow-" + i, null);
+        }
+        assertEquals(Logger.SAMPLE_RATE - 1, logger.droppedCount(), "Overflowing entries should be dropped");
+        assertEquals(2, logger.pendingCount(), "Buffer should still hold the first two entries");
+    }
+
+    @Test
+    void testRotationMovesFullFileToBackup() throws IOException {
+        logger.close();
+        logger = Logger.builder("test-log.txt").setMaxFileBytes(200).setMaxBackupFiles(2).build();
+        for (int i = 0; i < 20; i++) {
+            logger.log("rotation-entry-" + i, null);
+            logger.flush();
+        }
+        logger.close();
+
+        assertTrue(Files.exists(Path.of(logFile + ".1")), "First backup should exist");
+        assertTrue(Files.exists(Path.of(logFile + ".2")), "Second backup should exist");
+        assertFalse(Files.exists(Path.of(logFile + ".3")), "Backups over the limit should be deleted");
+        assertTrue(Files.size(Path.of(logFile + ".1")) >= 200, "Backup should hold a full file");
+        assertTrue(Files.readString(Path.of(logFile + ".1")).contains("rotation-entry-"),
+            "Backup should contain rotated entries");
+    }
+
+    @Test
+    void testUnwritableFileDoesNotBlockCallers() throws Exception {
+        logger.close();
+        Files.createDirectories(logFile);
+        logger = Logger.builder("test-log.txt").setCapacity(4).setOverflowPolicy(OverflowPolicy.BLOCK).build();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 100; i++) {
+                logger.log("unwritable-" + i, null);
+            }
+        }, "Logging should go on while the log file cannot be opened");
+
+        Files.delete(logFile);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!(Files.exists(logFile) && Files.readString(logFile).contains("recovered"))
+            && System.nanoTime() < deadline) {
+            logger.log("recovered", null);
+            logger.flush();
+            Thread.sleep(50);
+        }
+        assertTrue(Files.readString(logFile).contains("recovered"), "The writer should open the file once it can");
+    }
+
+    @Test
+    void testInvalidCapacityThrows() {
+        assertThrows(IllegalArgumentException.class, () -> Logger.builder("test-log.txt").setCapacity(3).build(),
+            "Capacity that is not a power of two should throw");
+    }
+
 
 }
\ No newline at end of file
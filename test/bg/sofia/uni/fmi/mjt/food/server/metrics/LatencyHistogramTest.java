@@ -0,0 +1,68 @@
+package bg.sofia.uni.fmi.mjt.food.server.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testEmptyHistogramReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.percentileMicros(99), "Empty histogram should report zero");
+        assertEquals(0, histogram.snapshot().count(), "Empty histogram should have no samples");
+    }
+
+    @Test
+    void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10_000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(10_000, snapshot.count(), "Every sample should be counted");
+        assertEquals(5_000, snapshot.p50(), 5_000 * 0.04, "p50 should be within bucket precision");
+        assertEquals(9_500, snapshot.p95(), 9_500 * 0.04, "p95 should be within bucket precision");
+        assertEquals(9_900, snapshot.p99(), 9_900 * 0.04, "p99 should be within bucket precision");
+        assertEquals(10_000, snapshot.max(), "Max should be exact");
+        assertEquals(5_000.5, snapshot.mean(), 0.001, "Mean should be exact");
+    }
+
+    @Test
+    void testBucketBoundsCoverEveryValue() {
+        for (long micros : new long[] {0, 1, 31, 32, 33, 63, 64, 1_000, 123_456, 1L << 39}) {
+            int index = LatencyHistogram.bucketIndex(micros);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= micros, "Bucket should contain " + micros);
+            assertTrue(index == 0 || LatencyHistogram.bucketUpperBound(index - 1) < micros,
+                "Previous bucket should end below " + micros);
+        }
+    }
+
+    @Test
+    void testHugeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(1, histogram.count(), "Huge value should still be counted");
+        assertTrue(histogram.percentileMicros(100) > 0, "Huge value should land in the last bucket");
+    }
+
+    @Test
+    void testConcurrentRecordingLosesNoSamples() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(TimeUnit.MICROSECONDS.toNanos(i % 500));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Recording should finish");
+        assertEquals(40_000, histogram.count(), "Every concurrent sample should be counted");
+    }
+}
@@ -0,0 +1,81 @@
+package bg.sofia.uni.fmi.mjt.food.server.metrics;
+
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.scheduling.Lane;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    @Test
+    void testLatenciesAreSplitBySource() {
+        Metrics metrics = new Metrics();
+        metrics.recordLatency(Type.GET_FOOD_REPORT, RequestSource.CACHE, TimeUnit.MICROSECONDS.toNanos(100));
+        metrics.recordLatency(Type.GET_FOOD_REPORT, RequestSource.UPSTREAM, TimeUnit.MILLISECONDS.toNanos(300));
+
+        assertEquals(100, metrics.snapshot(Type.GET_FOOD_REPORT, RequestSource.CACHE).max(),
+            "Cache hit latency should be kept apart");
+        assertEquals(300_000, metrics.snapshot(Type.GET_FOOD_REPORT, RequestSource.UPSTREAM).max(),
+            "Upstream latency should be kept apart");
+        assertEquals(0, metrics.snapshot(Type.GET_FOOD, RequestSource.CACHE).count(),
+            "Other types should be untouched");
+        assertEquals(2, metrics.completedRequests(), "Both requests should be counted");
+    }
+
+    @Test
+    void testStatsCommandIsNotMeasured() {
+        Metrics metrics = new Metrics();
+        metrics.recordLatency(Type.STATS, RequestSource.CACHE, 1_000);
+        metrics.recordError(Type.STATS);
+        assertEquals(0, metrics.completedRequests(), "Stats requests should not be counted");
+        assertThrows(IllegalArgumentException.class, () -> metrics.snapshot(Type.STATS, RequestSource.CACHE),
+            "Stats has no latency histogram");
+    }
+
+    @Test
+    void testUpstreamMarkIsPerThread() throws InterruptedException {
+        Metrics.clearUpstreamMark();
+        Thread other = new Thread(Metrics::markUpstream);
+        other.start();
+        other.join();
+        assertEquals(RequestSource.CACHE, Metrics.currentSource(), "Another thread's mark should not leak");
+        Metrics.markUpstream();
+        assertEquals(RequestSource.UPSTREAM, Metrics.currentSource(), "Marked thread should report upstream");
+        Metrics.clearUpstreamMark();
+        assertEquals(RequestSource.CACHE, Metrics.currentSource(), "Cleared mark should report cache");
+    }
+
+    @Test
+    void testReportContainsGaugesAndThroughput() {
+        AtomicLong clock = new AtomicLong();
+        Metrics metrics = new Metrics(clock::get);
+        metrics.connectionOpened();
+        metrics.connectionOpened();
+        metrics.connectionClosed();
+        metrics.setLaneDepthGauge(Lane.FAST, () -> 5);
+        metrics.setLaneDepthGauge(Lane.UPSTREAM, () -> 2);
+        for (int i = 0; i < 20; i++) {
+            metrics.recordLatency(Type.GET_FOOD, RequestSource.CACHE, TimeUnit.MILLISECONDS.toNanos(2));
+        }
+        metrics.recordError(Type.GET_FOOD);
+        clock.set(TimeUnit.SECONDS.toNanos(10));
+
+        List<String> report = metrics.report();
+        String header = report.getFirst();
+        assertTrue(header.contains("active-connections=1"), "Report should contain active connections");
+        assertTrue(header.contains("queue-depth=7"), "Report should contain the queue depth");
+        assertTrue(header.contains("throughput=2.0/s"), "Report should contain the throughput");
+        assertTrue(report.contains("get-food cache count=20 p50=2.00ms p95=2.00ms p99=2.00ms max=2.00ms"),
+            "Report should contain the percentiles per type and source");
+        assertTrue(report.contains("get-food errors=1"), "Report should contain the error count");
+
+        clock.set(TimeUnit.SECONDS.toNanos(20));
+        assertTrue(metrics.report().getFirst().contains("recent=0.0/s"),
+            "Recent throughput should only cover the time since the previous report");
+    }
+}
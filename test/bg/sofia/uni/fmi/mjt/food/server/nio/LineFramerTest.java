@@ -0,0 +1,56 @@
+package bg.sofia.uni.fmi.mjt.food.server.nio;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.LineTooLongException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LineFramerTest {
+
+    private ByteBuffer bufferOf(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFrameReturnsCompleteLines() throws LineTooLongException {
+        LineFramer framer = new LineFramer(100);
+        List<String> lines = framer.frame(bufferOf("get-food apple\nget-food-report 1\n"));
+        assertIterableEquals(List.of("get-food apple", "get-food-report 1"), lines,
+            "Both complete lines should be returned");
+        assertFalse(framer.hasPartialLine(), "Nothing should be left after complete lines");
+    }
+
+    @Test
+    void testFrameKeepsPartialLineBetweenReads() throws LineTooLongException {
+        LineFramer framer = new LineFramer(100);
+        assertTrue(framer.frame(bufferOf("get-food-rep")).isEmpty(), "Partial line should not be returned");
+        List<String> lines = framer.frame(bufferOf("ort 415269\n"));
+        assertIterableEquals(List.of("get-food-report 415269"), lines, "Line should be joined from both reads");
+    }
+
+    @Test
+    void testFrameStripsCarriageReturn() throws LineTooLongException {
+        LineFramer framer = new LineFramer(100);
+        List<String> lines = framer.frame(bufferOf("exit\r\n"));
+        assertIterableEquals(List.of("exit"), lines, "Carriage return should be removed like BufferedReader does");
+    }
+
+    @Test
+    void testFrameTooLongLineThrows() {
+        LineFramer framer = new LineFramer(4);
+        assertThrows(LineTooLongException.class, () -> framer.frame(bufferOf("get-food")),
+            "Line longer than the limit should throw");
+    }
+
+    @Test
+    void testRemainingReturnsUnterminatedLine() throws LineTooLongException {
+        LineFramer framer = new LineFramer(100);
+        framer.frame(bufferOf("get-food pizza"));
+        assertTrue(framer.hasPartialLine(), "Unterminated line should be kept");
+        assertEquals("get-food pizza", framer.remaining(), "Remaining should return the unterminated line");
+    }
+}
@@ -0,0 +1,145 @@
+package bg.sofia.uni.fmi.mjt.food.server.nio;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.server.RequestProcessor;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SelectorServerTest {
+    private static final int WORKERS = 2;
+    private final FoodDataRetriever retriever = mock(FoodDataRetriever.class);
+    private ExecutorService workers;
+    private SelectorServer server;
+    private Thread serverThread;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workers = Executors.newFixedThreadPool(WORKERS);
+        server = new SelectorServer(0, new RequestProcessor(retriever), workers);
+        server.bind();
+        serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        serverThread.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        server.stop();
+        serverThread.join();
+        workers.shutdownNow();
+    }
+
+    private List<String> readResponse(BufferedReader reader) throws IOException {
+        return readResponse(reader, "END");
+    }
+
+    private List<String> readResponse(BufferedReader reader, String endLine) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null && !line.equals(endLine)) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    void testResponseEndsWithEndMarker() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(retriever.findCachedFoodByKeywords(List.of("apple"))).thenReturn(null);
+        when(retriever.getFoodByKeywords(List.of("apple"))).thenReturn(List.of(new FoodDetails(1, "APPLE", null)));
+        try (Socket socket = new Socket("localhost", server.getLocalPort());
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            out.println("get-food apple");
+            List<String> response = readResponse(in);
+            assertTrue(response.contains("FoodDetails : fdcId=1,description=APPLE"),
+                "Response should contain the food details");
+        }
+    }
+
+    @Test
+    void testPipelinedLinesAreAnsweredInOrder() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort());
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            out.print("invalid-one 1\ninvalid-two 2\nexit\n");
+            out.flush();
+            assertTrue(readResponse(in).get(0).startsWith("Invalid command"), "First response should be answered");
+            assertTrue(readResponse(in).get(0).startsWith("Invalid command"), "Second response should be answered");
+            assertEquals("Connection closed", in.readLine(), "Exit should close the connection");
+            assertNull(in.readLine(), "Server should close the socket after exit");
+        }
+    }
+
+    @Test
+    void testTaggedResponsesArriveInCompletionOrder() throws Exception {
+        CountDownLatch upstreamReleased = new CountDownLatch(1);
+        when(retriever.findCachedFoodByKeywords(List.of("apple"))).thenReturn(null);
+        when(retriever.getFoodByKeywords(List.of("apple"))).thenAnswer(invocation -> {
+            upstreamReleased.await();
+            return List.of(new FoodDetails(1, "APPLE", null));
+        });
+        try (Socket socket = new Socket("localhost", server.getLocalPort());
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+            socket.setSoTimeout(5000);
+            out.println("pipeline");
+            assertEquals(List.of("Pipelining enabled"), readResponse(in), "Server should confirm pipelining");
+            out.print("slow get-food apple\nfast get-food-report abc\nexit\n");
+            out.flush();
+
+            assertTrue(readResponse(in, "END fast").get(0).startsWith("Invalid command"),
+                "The fast command should be answered while the slow one still waits for USDA");
+            upstreamReleased.countDown();
+            assertTrue(readResponse(in, "END slow").contains("FoodDetails : fdcId=1,description=APPLE"),
+                "The slow command should be answered once USDA responds");
+            assertEquals("Connection closed", in.readLine(), "Exit should wait for the commands in flight");
+            assertNull(in.readLine(), "Server should close the socket after exit");
+        }
+    }
+
+    @Test
+    void testIdleConnectionsDoNotBlockWorkers() throws IOException {
+        int idleClients = WORKERS * 10;
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int i = 0; i < idleClients; i++) {
+                idle.add(new Socket("localhost", server.getLocalPort()));
+            }
+            try (Socket socket = new Socket("localhost", server.getLocalPort());
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()))) {
+                socket.setSoTimeout(5000);
+                out.println("get-food-report abc");
+                assertFalse(readResponse(in).isEmpty(), "Active client should be served despite idle connections");
+            }
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
+    }
+}
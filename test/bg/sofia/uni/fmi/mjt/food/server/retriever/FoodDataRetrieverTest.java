@@ -3,17 +3,43 @@ package bg.sofia.uni.fmi.mjt.food.server.retriever;
 import bg.sofia.uni.fmi.mjt.food.exceptions.BarcodeNotFoundException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.FoodRetrievalException;
 import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import bg.sofia.uni.fmi.mjt.food.exceptions.UpstreamUnavailableException;
 import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.CacheEntry;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.CacheNamespace;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.RequestSource;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.circuit.CircuitBreaker;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.circuit.CircuitState;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
 import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit.TokenBucketRateLimiter;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.search.FoodIndex;
 import com.google.gson.Gson;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -43,6 +69,21 @@ class FoodDataRetrieverTest {
                   {"fdcId":123456,"description":"RAFFAELLO, CHOCOLATE TREAT","gtinUpc":"009800146131"}]}
         """;
 
+    // Saved just now, so it is fresh and never revalidated in the background
+    private static CacheEntry<String> stored(String json) {
+        return new CacheEntry<>(json, System.currentTimeMillis());
+    }
+
+    private static HttpResponse<InputStream> emptySearch() {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenAnswer(invocation -> body("{\"foods\":[]}"));
+        return response;
+    }
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
 
     @Test
     void testConstructorNullClientThrows() {
@@ -67,7 +108,7 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetReportRetrievesFromCache() throws IOException, FoodRetrievalException, NoResultsFoundException {
-        when(cache.loadReport(2494378)).thenReturn(reportJSON);
+        when(cache.loadReportEntry(2494378)).thenReturn(stored(reportJSON));
         FoodDataRetriever retriever = new FoodDataRetriever("string", client, cache);
         FoodReport report = retriever.getFoodReport(2494378);
         assertEquals(2494378, report.fdcId(), "FDC ID should match");
@@ -82,10 +123,10 @@ class FoodDataRetrieverTest {
     @Test
     void testGetReportHttpClient()
         throws IOException, InterruptedException, FoodRetrievalException, NoResultsFoundException {
-        when(cache.loadReport(2494378)).thenReturn(null);
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
         HttpResponse response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(200);
-        when(response.body()).thenReturn(reportJSON);
+        when(response.body()).thenReturn(body(reportJSON));
         when(client.send(any(), any())).thenReturn(response);
         FoodDataRetriever retriever = new FoodDataRetriever("string", client, cache);
         FoodReport report = retriever.getFoodReport(2494378);
@@ -98,9 +139,39 @@ class FoodDataRetrieverTest {
             "Food nutrients should be 4, because we only want energy, protein, carbs and fat");
     }
 
+    @Test
+    void testGetReportMarksUpstreamOnlyWhenUSDAIsCalled()
+        throws IOException, InterruptedException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON));
+        when(client.send(any(), any())).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("string", client, cache);
+
+        Metrics.clearUpstreamMark();
+        retriever.getFoodReport(2494378);
+        assertEquals(RequestSource.UPSTREAM, Metrics.currentSource(), "A cache miss should be marked as upstream");
+
+        Metrics.clearUpstreamMark();
+        retriever.getFoodReport(2494378);
+        assertEquals(RequestSource.CACHE, Metrics.currentSource(), "A memory cache hit should not be marked");
+    }
+
+    @Test
+    void testFindCachedReportNeverCallsUpstream() throws IOException, InterruptedException, FoodRetrievalException {
+        when(cache.loadReportEntry(2494378)).thenReturn(stored(reportJSON));
+        when(cache.loadReportEntry(1)).thenReturn(null);
+        FoodDataRetriever retriever = new FoodDataRetriever("string", client, cache);
+
+        assertEquals(2494378, retriever.findCachedFoodReport(2494378).fdcId(), "Cached report should be found");
+        assertNull(retriever.findCachedFoodReport(1), "A miss should return null");
+        verify(client, never()).send(any(), any());
+    }
+
     @Test
     void testGetReportNotFoundThrows() throws IOException, InterruptedException {
-        when(cache.loadReport(2494378)).thenReturn(null);
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
         HttpResponse response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(404);
         when(client.send(any(), any())).thenReturn(response);
@@ -111,7 +182,7 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetReportOtherCodeThrows() throws IOException, InterruptedException {
-        when(cache.loadReport(2494378)).thenReturn(null);
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
         HttpResponse response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(400);
         when(client.send(any(), any())).thenReturn(response);
@@ -120,9 +191,72 @@ class FoodDataRetrieverTest {
             "Should throw FoodRetrievalException when code is other");
     }
 
+    @Test
+    void testGetReportMalformedBodyThrows() throws IOException, InterruptedException {
+        when(cache.loadReportEntry(1)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body("{\"fdcId\":1,\"foodNutrients\":["));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodReport(1),
+            "Truncated upstream body should throw FoodRetrievalException");
+        verify(cache, never()).saveReport(anyInt(), anyString());
+    }
+
+    @Test
+    void testGetReportThrottledThrowsRateLimitExceeded() throws IOException, InterruptedException {
+        when(cache.loadReportEntry(anyInt())).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(429);
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("Retry-After", List.of("3600")), (k, v) -> true));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertThrows(RateLimitExceededException.class, () -> retriever.getFoodReport(1),
+            "429 from USDA should surface as RateLimitExceededException");
+        assertThrows(RateLimitExceededException.class, () -> retriever.getFoodReport(2),
+            "Calls during the Retry-After pause should be rejected locally");
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        assertEquals(1, retriever.rateLimiterStats().throttledResponses(), "Throttled response should be counted");
+    }
+
+    @Test
+    void testGetReportAsyncRejectedByLimiterSkipsUpstream() throws IOException {
+        when(cache.loadReportEntry(anyInt())).thenReturn(null);
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, Duration.ofHours(1), Duration.ZERO, 0);
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache).setRateLimiter(limiter).build();
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(404);
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        assertThrows(CompletionException.class, () -> retriever.getFoodReportAsync(1).join(),
+            "First call should reach USDA and get a 404");
+
+        CompletionException e = assertThrows(CompletionException.class, () -> retriever.getFoodReportAsync(2).join(),
+            "Second call should be rejected by the limiter");
+        assertInstanceOf(RateLimitExceededException.class, e.getCause(), "Cause should be the rate limit");
+        verify(client, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testGetReportCachesOnlyWantedNutrients()
+        throws IOException, InterruptedException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+        retriever.getFoodReport(2494378);
+
+        verify(cache).saveReport(eq(2494378), argThat(json -> json.contains("Protein") && !json.contains("Sodium")));
+    }
+
     @Test
     void testGetReportThrowsWhenInterruptedException() throws IOException, InterruptedException {
-        when(cache.loadReport(1)).thenReturn(null);
+        when(cache.loadReportEntry(1)).thenReturn(null);
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
             .thenThrow(new InterruptedException("interrupt"));
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
@@ -133,7 +267,7 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetReportErrorWithGettingFromCacheThrows() throws IOException {
-        when(cache.loadReport(1)).thenThrow(new IOException("Cache error"));
+        when(cache.loadReportEntry(1)).thenThrow(new IOException("Cache error"));
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
         assertThrows(FoodRetrievalException.class, () -> retriever.getFoodReport(1),
             "Should throw FoodRetrievalException when cache throws IOException");
@@ -141,7 +275,7 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetFoodByKeywordsRetrievesFromCache() throws IOException, FoodRetrievalException, NoResultsFoundException {
-        when(cache.loadByKeywords("raffaello treat")).thenReturn(keywordJson);
+        when(cache.loadByKeywordsEntry("raffaello treat")).thenReturn(stored(keywordJson));
 
         FoodDataRetriever retriever = new FoodDataRetriever("testKey", client, cache);
         List<FoodDetails> foods = retriever.getFoodByKeywords(List.of("raffaello", "treat"));
@@ -152,10 +286,10 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetFoodByKeywordsRetrievesFromAPI() throws IOException, InterruptedException, FoodRetrievalException, NoResultsFoundException {
-        when(cache.loadByKeywords("rafaelo")).thenReturn(null);
-        HttpResponse<String> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("rafaelo")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(200);
-        when(response.body()).thenReturn(keywordJson);
+        when(response.body()).thenReturn(body(keywordJson));
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
@@ -167,8 +301,8 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetFoodByKeywordsThrowsNoResultsFoundException() throws IOException, InterruptedException {
-        when(cache.loadByKeywords("food")).thenReturn(null);
-        HttpResponse<String> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("food")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(404);
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 
@@ -180,8 +314,8 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetFoodByKeywordsThrowsFoodRetrievalExceptionForOtherCode() throws IOException, InterruptedException {
-        when(cache.loadByKeywords("test")).thenReturn(null);
-        HttpResponse<String> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("test")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(500);
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 
@@ -201,10 +335,10 @@ class FoodDataRetrieverTest {
 
     @Test
     void testGetFoodByKeywordsSavesMultipleBarcodes() throws IOException, InterruptedException, FoodRetrievalException, NoResultsFoundException {
-        when(cache.loadByKeywords("test")).thenReturn(null);
-        HttpResponse<String> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("test")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(200);
-        when(response.body()).thenReturn(keywordJson);
+        when(response.body()).thenReturn(body(keywordJson));
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 
         FoodDataRetriever retriever = new FoodDataRetriever("testKey", client, cache);
@@ -219,16 +353,16 @@ class FoodDataRetrieverTest {
         String searchResponse = """
             {"foods":[{"fdcId":1,"description":"Beef Noodle Soup","gtinUpc":"999999"}]}
             """;
-        when(cache.loadByKeywords("beef noodle soup")).thenReturn(null);
-        HttpResponse<String> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("beef noodle soup")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(200);
-        when(response.body()).thenReturn(searchResponse);
+        when(response.body()).thenReturn(body(searchResponse));
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
 
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
         List<FoodDetails> foods = retriever.getFoodByKeywords(List.of("beef", "noodle", "soup"));
 
-        verify(cache).loadByKeywords("beef noodle soup");
+        verify(cache).loadByKeywordsEntry("beef noodle soup");
         verify(cache).saveByKeywords(eq("beef noodle soup"), anyString());
         assertEquals(1, foods.size(), "Should return one food");
     }
@@ -238,7 +372,7 @@ class FoodDataRetrieverTest {
         String barcodeJson = """
             {"fdcId":415269,"description":"RAFFAELLO","gtinUpc":"009800146130"}
             """;
-        when(cache.loadBarcode("009800146130")).thenReturn(barcodeJson);
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(stored(barcodeJson));
 
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
         FoodDetails food = retriever.getFoodByBarcode("009800146130");
@@ -248,11 +382,61 @@ class FoodDataRetrieverTest {
     }
 
     @Test
-    void testGetFoodByBarcodeNotFoundThrows() throws IOException {
-        when(cache.loadBarcode("0")).thenReturn(null);
+    void testGetFoodByBarcodeNotFoundThrows() throws IOException, InterruptedException {
+        when(cache.loadBarcodeEntry("00000000000000")).thenReturn(null);
+        HttpResponse<InputStream> response = emptySearch();
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+        assertThrows(BarcodeNotFoundException.class, () -> retriever.getFoodByBarcode("0"),
+            "Should throw when neither the cache nor USDA knows the barcode");
+    }
+
+    @Test
+    void testBarcodeMissIsFoundByUsdaSearch() throws IOException, InterruptedException, FoodRetrievalException,
+        BarcodeNotFoundException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        FoodDetails food = retriever.getFoodByBarcode("9800146130");
+        FoodDetails again = retriever.getFoodByBarcode("00009800146130");
+
+        assertEquals(415269, food.fdcId(), "The food with the same GTIN should be picked from the search");
+        assertSame(food, again, "The found food should be served from memory next");
+        verify(client, times(1)).send(argThat(request -> request.uri().getQuery().endsWith("query=009800146130")),
+            any(HttpResponse.BodyHandler.class));
+        verify(cache).saveByBarcode(eq("009800146130"), contains("415269"));
+        verify(cache, never()).saveByKeywords(anyString(), anyString());
+    }
+
+    @Test
+    void testBarcodeSearchWithoutSameGtinIsMiss() throws IOException, InterruptedException {
+        when(cache.loadBarcodeEntry("00000000000000")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
         assertThrows(BarcodeNotFoundException.class, () -> retriever.getFoodByBarcode("0"),
-            "Should throw when barcode not in cache");
+            "Foods that only mention the digits should not answer the barcode");
+        assertTrue(retriever.isKnownMissingBarcode("0"), "The miss should be remembered");
+        verify(cache, never()).saveByBarcode(anyString(), anyString());
+    }
+
+    @Test
+    void testFindCachedFoodByBarcodeDoesNotAskUsda() throws IOException, FoodRetrievalException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(null);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertNull(retriever.findCachedFoodByBarcode("009800146130"), "A cache miss should need USDA");
+        assertNull(retriever.findCachedFoodByBarcode("12"), "An invalid barcode should not be looked up");
+        assertFalse(retriever.isKnownMissingBarcode("009800146130"), "A cache miss is not known to be missing");
+        assertTrue(retriever.isKnownMissingBarcode("12"), "An invalid barcode is always missing");
+        verifyNoInteractions(client);
     }
 
     @Test
@@ -273,14 +457,14 @@ class FoodDataRetrieverTest {
     @Test
     void testGetFoodByBarcodeErrorWithGettingFromCacheThrows() throws IOException {
         FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
-        when(cache.loadBarcode("009800146130")).thenThrow(new IOException("Cache error"));
+        when(cache.loadBarcodeEntry("00009800146130")).thenThrow(new IOException("Cache error"));
         assertThrows(FoodRetrievalException.class, () -> retriever.getFoodByBarcode("009800146130"),
             "Should throw FoodRetrievalException when cache throws IOException");
     }
 
     @Test
     void testGetFoodByKeywordsThrowsOnInterruptedException() throws IOException, InterruptedException {
-        when(cache.loadByKeywords("test")).thenReturn(null);
+        when(cache.loadByKeywordsEntry("test")).thenReturn(null);
         when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
             .thenThrow(new InterruptedException("Thread interrupted"));
         FoodDataRetriever retriever = new FoodDataRetriever("testKey", client, cache);
@@ -289,5 +473,451 @@ class FoodDataRetrieverTest {
             "Should throw FoodRetrievalException when interrupted");
     }
 
-}
+    @Test
+    void testConcurrentReportMissesMakeOneUpstreamCall() throws Exception {
+        int clients = 10;
+        CountDownLatch release = new CountDownLatch(1);
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return response;
+        });
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<FoodReport>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(executor.submit(() -> retriever.getFoodReport(2494378)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<FoodReport> result : results) {
+                assertEquals(2494378, result.get(5, TimeUnit.SECONDS).fdcId(), "Every client should get the report");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(cache, times(1)).saveReport(eq(2494378), anyString());
+    }
+
+    @Test
+    void testGetReportAsyncRetrievesFromCache() throws IOException {
+        when(cache.loadReportEntry(2494378)).thenReturn(stored(reportJSON));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        FoodReport report = retriever.getFoodReportAsync(2494378).join();
 
+        assertEquals("COLA", report.description(), "Description should match");
+        assertEquals(4, report.foodNutrients().size(), "Only wanted nutrients should be kept");
+        verify(client, never()).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testGetReportAsyncRetrievesFromApiAndSaves() throws IOException {
+        when(cache.loadReportEntry(2494378)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON));
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        FoodReport report = retriever.getFoodReportAsync(2494378).join();
+
+        assertEquals(2494378, report.fdcId(), "FDC ID should match");
+        verify(cache).saveReport(eq(2494378), anyString());
+    }
+
+    @Test
+    void testGetReportAsyncNotFoundCompletesExceptionally() throws IOException {
+        when(cache.loadReportEntry(1)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(404);
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+            () -> retriever.getFoodReportAsync(1).join(), "404 should complete the future exceptionally");
+        assertInstanceOf(NoResultsFoundException.class, thrown.getCause(), "Cause should be NoResultsFoundException");
+    }
+
+    @Test
+    void testGetReportAsyncConnectionErrorCompletesWithRetrievalException() throws IOException {
+        when(cache.loadReportEntry(1)).thenReturn(null);
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.failedFuture(new IOException("connection reset")));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+            () -> retriever.getFoodReportAsync(1).join(), "Connection error should complete exceptionally");
+        assertInstanceOf(FoodRetrievalException.class, thrown.getCause(), "Cause should be FoodRetrievalException");
+    }
+
+    @Test
+    void testGetFoodByKeywordsAsyncRetrievesFromApi() throws IOException {
+        when(cache.loadByKeywordsEntry("raffaello")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        List<FoodDetails> foods = retriever.getFoodByKeywordsAsync(List.of("raffaello")).join();
+
+        assertEquals(2, foods.size(), "Should return two foods");
+        verify(cache).saveByKeywords(eq("raffaello"), anyString());
+        verify(cache).saveByBarcode(eq("009800146130"), anyString());
+    }
+
+    @Test
+    void testGetFoodByBarcodeAsyncNotFoundCompletesExceptionally() throws IOException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(404);
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        CompletionException thrown = assertThrows(CompletionException.class,
+            () -> retriever.getFoodByBarcodeAsync("009800146130").join(), "Missing barcode should fail");
+        assertInstanceOf(BarcodeNotFoundException.class, thrown.getCause(), "Cause should be BarcodeNotFoundException");
+    }
+
+    @Test
+    void testConcurrentAsyncBarcodeMissesShareOneSearch() throws IOException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        CompletableFuture<HttpResponse<InputStream>> pending = new CompletableFuture<>();
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(pending);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        CompletableFuture<FoodDetails> first = retriever.getFoodByBarcodeAsync("009800146130");
+        CompletableFuture<FoodDetails> second = retriever.getFoodByBarcodeAsync("9800146130");
+        pending.complete(response);
+
+        assertEquals(415269, first.join().fdcId(), "The first lookup should get the searched food");
+        assertEquals(415269, second.join().fdcId(), "The second lookup should share the search");
+        verify(client, times(1)).sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(cache).saveByBarcode(eq("009800146130"), anyString());
+    }
+
+    @Test
+    void testRepeatedReportIsServedFromMemory() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(stored(reportJSON));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        FoodReport first = retriever.getFoodReport(2494378);
+        FoodReport second = retriever.getFoodReport(2494378);
+
+        assertSame(first, second, "Second lookup should return the deserialized report from memory");
+        verify(cache, times(1)).loadReportEntry(2494378);
+        assertEquals(1, retriever.memoryCacheStats().get("reports").hits(), "Second lookup should be a hit");
+    }
+
+    @Test
+    void testKeywordSearchPopulatesBarcodeMemoryCache() throws IOException, InterruptedException,
+        FoodRetrievalException, NoResultsFoundException, BarcodeNotFoundException {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(cache.loadByKeywordsEntry("raffaello treat")).thenReturn(null);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        retriever.getFoodByKeywords(List.of("raffaello", "treat"));
+        FoodDetails food = retriever.getFoodByBarcode("009800146130");
+
+        assertEquals(415269, food.fdcId(), "Barcode should be answered from memory");
+        verify(cache, never()).loadBarcodeEntry("00009800146130");
+    }
+
+    @Test
+    void testRepeatedReportMissCallsUpstreamOnce() throws IOException, InterruptedException {
+        when(cache.loadReportEntry(404)).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(404);
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertThrows(NoResultsFoundException.class, () -> retriever.getFoodReport(404), "First miss should throw");
+        assertThrows(NoResultsFoundException.class, () -> retriever.getFoodReport(404), "Repeated miss should throw");
+
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        assertTrue(retriever.isKnownMissingReport(404), "The miss should be remembered");
+    }
+
+    @Test
+    void testEmptySearchIsRememberedAndNotSaved() throws IOException, InterruptedException {
+        when(cache.loadByKeywordsEntry("rafaello")).thenReturn(null);
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body("{\"foods\":[]}"));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertThrows(NoResultsFoundException.class, () -> retriever.getFoodByKeywords(List.of("rafaello")),
+            "An empty search should be a miss");
+        assertThrows(NoResultsFoundException.class, () -> retriever.getFoodByKeywords(List.of("RAFAELLO")),
+            "The same keyword set should be answered as missing");
+
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+        verify(cache, never()).saveByKeywords(anyString(), anyString());
+    }
+
+    @Test
+    void testKeywordSearchClearsMissingBarcode() throws IOException, InterruptedException,
+        FoodRetrievalException, NoResultsFoundException, BarcodeNotFoundException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(null);
+        when(cache.loadByKeywordsEntry("raffaello")).thenReturn(null);
+        HttpResponse<InputStream> empty = emptySearch();
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(empty, response);
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        assertThrows(BarcodeNotFoundException.class, () -> retriever.getFoodByBarcode("009800146130"),
+            "Unknown barcode should throw");
+        retriever.getFoodByKeywords(List.of("raffaello"));
+
+        assertEquals(415269, retriever.getFoodByBarcode("009800146130").fdcId(),
+            "A barcode found by a search should no longer be missing");
+        verify(cache, times(1)).loadBarcodeEntry("00009800146130");
+    }
+
+    @Test
+    void testDisabledNegativeCacheAsksAgain() throws IOException, InterruptedException {
+        when(cache.loadBarcodeEntry("00000000000000")).thenReturn(null);
+        HttpResponse<InputStream> response = emptySearch();
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setNegativeCache(Duration.ZERO, 10)
+            .build();
+
+        assertThrows(BarcodeNotFoundException.class, () -> retriever.getFoodByBarcode("0"), "First miss");
+        assertThrows(BarcodeNotFoundException.class, () -> retriever.getFoodByBarcode("0"), "Second miss");
+
+        verify(cache, times(2)).loadBarcodeEntry("00000000000000");
+        verify(client, times(2)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testFoodIndexAnswersWithEnoughMatches() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        FoodIndex index = new FoodIndex();
+        index.addAll(gson.fromJson(keywordJson, SearchResponse.class).foods());
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setFoodIndex(index, 2)
+            .build();
+
+        assertEquals(2, retriever.getFoodByKeywords(List.of("treat", "raffaello")).size(),
+            "Two indexed foods should be enough to answer without USDA");
+        assertEquals(2, retriever.findCachedFoodByKeywords(List.of("RAFFAELLO")).size(),
+            "The fast lane should be answered by the index too");
+        assertNull(retriever.findCachedFoodByKeywords(List.of("coconut")), "One match should not be enough");
+        assertEquals(2, retriever.localSearchCount(), "Both local answers should be counted");
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    void testSavedSearchIsFallbackWhenUsdaFails() throws IOException, InterruptedException, FoodRetrievalException,
+        NoResultsFoundException {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(keywordJson));
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(response)
+            .thenThrow(new HttpTimeoutException("timed out"));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setFoodIndex(new FoodIndex(), 0)
+            .build();
+
+        retriever.getFoodByKeywords(List.of("raffaello"));
+        List<FoodDetails> fallback = retriever.getFoodByKeywords(List.of("coconut", "almond"));
+
+        assertEquals(List.of(415269), fallback.stream().map(FoodDetails::fdcId).toList(),
+            "A food indexed by an earlier search should answer while USDA fails");
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodByKeywords(List.of("milk")),
+            "Without a local match the USDA error should be thrown");
+        verify(cache, times(1)).saveByKeywords(anyString(), anyString());
+    }
+
+    @Test
+    void testAsyncSearchFallsBackToFoodIndex() {
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.failedFuture(new HttpTimeoutException("timed out")));
+        FoodIndex index = new FoodIndex();
+        index.addAll(gson.fromJson(keywordJson, SearchResponse.class).foods());
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setIoExecutor(Runnable::run)
+            .setFoodIndex(index, 0)
+            .build();
+
+        assertEquals(2, retriever.getFoodByKeywordsAsync(List.of("raffaello")).join().size(),
+            "The index should answer when USDA times out");
+        CompletionException thrown = assertThrows(CompletionException.class,
+            () -> retriever.getFoodByKeywordsAsync(List.of("milk")).join(), "No local match should fail");
+        assertInstanceOf(FoodRetrievalException.class, thrown.getCause(), "The USDA error should be kept");
+    }
+
+    @Test
+    void testIndexCachedFoods() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadAll(CacheNamespace.KEYWORDS)).thenReturn(List.of(keywordJson));
+        when(cache.loadAll(CacheNamespace.BARCODES)).thenReturn(List.of(
+            "{\"fdcId\":2494378,\"description\":\"COLA\",\"gtinUpc\":\"012000338960\"}", "{broken"));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setFoodIndex(new FoodIndex(), 1)
+            .build();
+
+        assertEquals(3, retriever.indexCachedFoods(), "Foods of searches and barcodes should be indexed");
+        assertEquals("COLA", retriever.getFoodByKeywords(List.of("cola")).get(0).description(),
+            "A cached barcode should answer a search by its description");
+        assertEquals(0, new FoodDataRetriever("key", client, cache).indexCachedFoods(),
+            "Nothing should be indexed without an index");
+    }
+
+    @Test
+    void testUnchangedRefreshKeepsDataVersion() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(new CacheEntry<>(reportJSON, 0));
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON));
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        retriever.getFoodReport(2494378);
+        retriever.getFoodReport(2494378);
+
+        assertEquals(1, retriever.revalidationCount(), "The stale report should be refreshed");
+        assertEquals(0, retriever.dataVersion(), "A refresh with the same report should not bump the version");
+    }
+
+    @Test
+    void testStaleReportIsServedWhileRefreshed() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(new CacheEntry<>(reportJSON, 0));
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(200);
+        when(response.body()).thenReturn(body(reportJSON.replace("\"COLA\"", "\"COLA ZERO\"")));
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.completedFuture(response));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        assertEquals("COLA", retriever.getFoodReport(2494378).description(), "The stale report should be served");
+        assertEquals("COLA ZERO", retriever.getFoodReport(2494378).description(),
+            "The refreshed report should be served next");
+        assertEquals(1, retriever.revalidationCount(), "The fresh report should not be refreshed again");
+        assertEquals(1, retriever.dataVersion(), "Changed data should bump the version");
+        verify(cache).saveReport(eq(2494378), contains("COLA ZERO"));
+    }
+
+    @Test
+    void testFailedRefreshKeepsStaleReport() throws IOException, FoodRetrievalException, NoResultsFoundException {
+        when(cache.loadReportEntry(2494378)).thenReturn(new CacheEntry<>(reportJSON, 0));
+        when(client.sendAsync(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenReturn(CompletableFuture.failedFuture(new HttpTimeoutException("timed out")));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache, Runnable::run);
+
+        retriever.getFoodReport(2494378);
+        FoodReport report = retriever.getFoodReport(2494378);
+
+        assertEquals("COLA", report.description(), "The stale report should still be served");
+        assertEquals(2, retriever.revalidationCount(), "Each stale read after the failure should try again");
+        assertEquals(0, retriever.dataVersion(), "Nothing new should have been served");
+    }
+
+    @Test
+    void testZeroTtlNeverRefreshes() throws IOException, FoodRetrievalException {
+        when(cache.loadReportEntry(2494378)).thenReturn(new CacheEntry<>(reportJSON, 0));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setCacheTtl(Duration.ZERO)
+            .build();
+
+        assertEquals("COLA", retriever.findCachedFoodReport(2494378).description(), "The report should be served");
+        assertEquals(0, retriever.revalidationCount(), "A zero TTL should never refresh");
+        verifyNoInteractions(client);
+    }
+
+    @Test
+    void testOpenCircuitFailsFast() throws IOException, InterruptedException {
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenThrow(new HttpTimeoutException("timed out"));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setCircuitBreaker(new CircuitBreaker(1, Duration.ofMinutes(1)))
+            .build();
+
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodReport(1), "The timeout should fail");
+        assertEquals(CircuitState.OPEN, retriever.circuitState(), "The failure should open the circuit");
+        assertThrows(UpstreamUnavailableException.class, () -> retriever.getFoodReport(2),
+            "An open circuit should fail without calling USDA");
+
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testProbeRejectedByLimiterLetsNextCallProbe() throws IOException, InterruptedException {
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class)))
+            .thenThrow(new HttpTimeoutException("timed out"));
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setCircuitBreaker(new CircuitBreaker(1, Duration.ofMillis(1)))
+            .setRateLimiter(new TokenBucketRateLimiter(1, Duration.ofHours(1), Duration.ZERO, 0))
+            .build();
+
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodReport(1), "The timeout should fail");
+        Thread.sleep(10);
+        assertThrows(RateLimitExceededException.class, () -> retriever.getFoodReport(2),
+            "The probe should be turned away by the limiter");
+        assertThrows(RateLimitExceededException.class, () -> retriever.getFoodReport(3),
+            "The next call should get the probe back instead of failing on the circuit");
+
+        verify(client, times(1)).send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class));
+    }
+
+    @Test
+    void testServerErrorCountsAsFailure()throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(503);
+        when(client.send(any(HttpRequest.class), any(HttpResponse.BodyHandler.class))).thenReturn(response);
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", client, cache)
+            .setCircuitBreaker(new CircuitBreaker(2, Duration.ofMinutes(1)))
+            .build();
+
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodByKeywords(List.of("a")), "First 503");
+        assertThrows(FoodRetrievalException.class, () -> retriever.getFoodByKeywords(List.of("b")), "Second 503");
+
+        assertEquals(CircuitState.OPEN, retriever.circuitState(), "Repeated 5xx statuses should open the circuit");
+    }
+
+    @Test
+    void testInvalidBarcodeIsRejectedWithoutLookup() {
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        BarcodeNotFoundException e = assertThrows(BarcodeNotFoundException.class,
+            () -> retriever.getFoodByBarcode("009800146131"), "A wrong check digit should be rejected");
+
+        assertTrue(e.getMessage().contains("Not a valid barcode"), "The message should name the bad barcode");
+        verifyNoInteractions(cache);
+    }
+
+    @Test
+    void testBarcodePaddingVariantsShareMemoryEntry() throws IOException, FoodRetrievalException,
+        BarcodeNotFoundException {
+        when(cache.loadBarcodeEntry("00009800146130")).thenReturn(stored("""
+            {"fdcId":415269,"description":"RAFFAELLO","gtinUpc":"009800146130"}"""));
+        FoodDataRetriever retriever = new FoodDataRetriever("key", client, cache);
+
+        retriever.getFoodByBarcode("009800146130");
+        FoodDetails food = retriever.getFoodByBarcode("0009800146130");
+
+        assertEquals(415269, food.fdcId(), "The EAN-13 spelling should hit the UPC-A entry");
+        verify(cache, times(1)).loadBarcodeEntry("00009800146130");
+    }
+}
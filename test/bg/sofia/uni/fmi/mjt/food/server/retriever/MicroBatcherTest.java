@@ -0,0 +1,91 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+    private final Executor directExecutor = Runnable::run;
+    private final List<List<Integer>> loadedBatches = new CopyOnWriteArrayList<>();
+
+    private Map<Integer, String> load(List<Integer> keys) {
+        loadedBatches.add(keys);
+        return keys.stream().filter(key -> key >= 0).collect(Collectors.toMap(Function.identity(), key -> "v" + key));
+    }
+
+    @Test
+    void testKeysWithinWindowShareOneLoad() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>(Duration.ofMillis(50), 10, this::load,
+            directExecutor);
+        CompletableFuture<String> first = batcher.submit(1);
+        CompletableFuture<String> second = batcher.submit(2);
+
+        assertEquals("v1", first.get(1, TimeUnit.SECONDS), "First key should get its value");
+        assertEquals("v2", second.get(1, TimeUnit.SECONDS), "Second key should get its value");
+        assertEquals(List.of(List.of(1, 2)), loadedBatches, "Both keys should be loaded in one batch");
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaitingForWindow() throws Exception {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>(Duration.ofHours(1), 3, this::load,
+            directExecutor);
+        CompletableFuture<String> first = batcher.submit(1);
+        batcher.submit(2);
+        batcher.submit(3);
+        CompletableFuture<String> fourth = batcher.submit(4);
+
+        assertEquals("v1", first.get(1, TimeUnit.SECONDS), "Full batch should be loaded immediately");
+        assertFalse(fourth.isDone(), "Key of the next batch should wait for its window");
+        assertEquals(1, batcher.batchesSent(), "Exactly one batch should have been sent");
+    }
+
+    @Test
+    void testDuplicateKeysShareFuture() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>(Duration.ofMillis(20), 10, this::load,
+            directExecutor);
+        assertSame(batcher.submit(5), batcher.submit(5), "Same pending key should share the future");
+        assertEquals("v5", batcher.submit(5).join(), "Shared future should complete");
+        assertEquals(List.of(List.of(5)), loadedBatches, "Duplicate key should be loaded once");
+    }
+
+    @Test
+    void testMissingKeyCompletesWithNull() {
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>(Duration.ZERO, 10, this::load, directExecutor);
+        assertNull(batcher.submit(-1).join(), "Key missing from the loaded map should complete with null");
+    }
+
+    @Test
+    void testLoaderFailureFailsWholeBatch() {
+        IllegalStateException failure = new IllegalStateException("upstream down");
+        MicroBatcher<Integer, String> batcher = new MicroBatcher<>(Duration.ofMillis(20), 10, keys -> {
+            throw failure;
+        }, directExecutor);
+        CompletableFuture<String> first = batcher.submit(1);
+        CompletableFuture<String> second = batcher.submit(2);
+
+        CompletionException e = assertThrows(CompletionException.class, first::join, "First key should fail");
+        assertSame(failure, e.getCause(), "Loader exception should be the cause");
+        assertThrows(CompletionException.class, second::join, "Every key of the batch should fail");
+    }
+
+    @Test
+    void testInvalidArgumentsThrow() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new MicroBatcher<Integer, String>(Duration.ofMillis(1), 0, this::load, directExecutor),
+            "Zero batch size should throw");
+        assertThrows(IllegalArgumentException.class,
+            () -> new MicroBatcher<Integer, String>(Duration.ofMillis(-1), 1, this::load, directExecutor),
+            "Negative window should throw");
+    }
+}
@@ -0,0 +1,168 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.NoResultsFoundException;
+import bg.sofia.uni.fmi.mjt.food.server.cache.Cache;
+import bg.sofia.uni.fmi.mjt.food.server.cache.store.FileCacheStore;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Runs FoodDataRetriever against a local stub of the USDA /foods and /food endpoints
+class ReportBatchingTest {
+    private static final String FDC_IDS_PARAMETER = "fdcIds=";
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+
+    @TempDir
+    Path tempDir;
+
+    private static String report(int id) {
+        return "{\"fdcId\":" + id + ",\"description\":\"FOOD " + id + "\",\"ingredients\":\"WATER\","
+            + "\"foodNutrients\":[{\"nutrient\":{\"name\":\"Protein\",\"unitName\":\"g\"},\"amount\":1.5},"
+            + "{\"nutrient\":{\"name\":\"Sodium, Na\",\"unitName\":\"mg\"},\"amount\":3.0}]}";
+    }
+
+    private void handleFoods(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        requests.add(exchange.getRequestURI().getPath() + "?" + query);
+        String ids = Arrays.stream(query.split("&"))
+            .filter(parameter -> parameter.startsWith(FDC_IDS_PARAMETER))
+            .map(parameter -> parameter.substring(FDC_IDS_PARAMETER.length()))
+            .findFirst().orElse("");
+        // Unknown ids (here only 0) are simply missing from the USDA answer
+        String body = Arrays.stream(ids.split(","))
+            .map(Integer::parseInt)
+            .filter(id -> id > 0)
+            .map(ReportBatchingTest::report)
+            .collect(Collectors.joining(",", "[", "]"));
+        respond(exchange, body);
+    }
+
+    private void handleFood(HttpExchange exchange) throws IOException {
+        requests.add(exchange.getRequestURI().getPath());
+        String path = exchange.getRequestURI().getPath();
+        respond(exchange, report(Integer.parseInt(path.substring(path.lastIndexOf('/') + 1))));
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/fdc/v1/foods", this::handleFoods);
+        server.createContext("/fdc/v1/food/", this::handleFood);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private FoodDataRetriever retriever(Duration window, int batchSize) throws IOException {
+        String baseUri = "http://localhost:" + server.getAddress().getPort() + "/fdc/v1";
+        Cache cache = Cache.withStore(new FileCacheStore(tempDir));
+        return FoodDataRetriever.builder("key", HttpClient.newHttpClient(), cache)
+            .setBaseUri(baseUri)
+            .setReportBatching(window, batchSize)
+            .build();
+    }
+
+    @Test
+    void testConcurrentMissesBecomeOneRequest() throws Exception {
+        FoodDataRetriever retriever = retriever(Duration.ofMillis(200), 20);
+        ExecutorService clients = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<FoodReport>> results = new ArrayList<>();
+            for (int id = 1; id <= 5; id++) {
+                int fdcId = id;
+                results.add(clients.submit(() -> retriever.getFoodReport(fdcId)));
+            }
+            for (int id = 1; id <= 5; id++) {
+                FoodReport report = results.get(id - 1).get(5, TimeUnit.SECONDS);
+                assertEquals(id, report.fdcId(), "Every waiter should get its own report");
+                assertEquals(1, report.foodNutrients().size(), "Batched reports should be filtered");
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+        assertEquals(1, requests.size(), "Five misses within the window should be one upstream request");
+        assertTrue(requests.getFirst().startsWith("/fdc/v1/foods?fdcIds="), "Multi-ID endpoint should be used");
+    }
+
+    @Test
+    void testBatchedReportsAreCachedPerId() throws Exception {
+        FoodDataRetriever first = retriever(Duration.ofMillis(20), 20);
+        CompletableFuture.allOf(first.getFoodReportAsync(7), first.getFoodReportAsync(8)).get(5, TimeUnit.SECONDS);
+
+        FoodDataRetriever second = retriever(Duration.ofMillis(20), 20);
+        assertEquals("FOOD 8", second.getFoodReport(8).description(), "Report should come from the file cache");
+        assertEquals(1, requests.size(), "Cached ids should not be requested again");
+    }
+
+    @Test
+    void testMaxBatchSizeSplitsRequests() throws Exception {
+        FoodDataRetriever retriever = retriever(Duration.ofMillis(200), 2);
+        List<CompletableFuture<FoodReport>> futures = new ArrayList<>();
+        for (int id = 1; id <= 5; id++) {
+            futures.add(retriever.getFoodReportAsync(id));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(3, requests.size(), "Five ids with batches of two should need three requests");
+    }
+
+    @Test
+    void testIdMissingFromBatchThrowsNoResults() throws Exception {
+        FoodDataRetriever retriever = retriever(Duration.ofMillis(50), 20);
+        CompletableFuture<FoodReport> known = retriever.getFoodReportAsync(3);
+        CompletableFuture<FoodReport> unknown = retriever.getFoodReportAsync(0);
+
+        assertEquals(3, known.get(5, TimeUnit.SECONDS).fdcId(), "Known id should complete normally");
+        CompletionException e = assertThrows(CompletionException.class, unknown::join,
+            "Id missing from the answer should fail");
+        assertInstanceOf(NoResultsFoundException.class, e.getCause(), "Missing id should mean no results");
+    }
+
+    @Test
+    void testUnbatchedRetrieverUsesSingleIdEndpoint() throws Exception {
+        String baseUri = "http://localhost:" + server.getAddress().getPort() + "/fdc/v1/";
+        FoodDataRetriever retriever = FoodDataRetriever.builder("key", HttpClient.newHttpClient(),
+            Cache.withStore(new FileCacheStore(tempDir))).setBaseUri(baseUri).build();
+
+        assertEquals(4, retriever.getFoodReport(4).fdcId(), "Single report should be fetched");
+        assertEquals(List.of("/fdc/v1/food/4"), requests, "Without batching the single-ID endpoint should be used");
+    }
+}
@@ -0,0 +1,112 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private static final int CALLERS = 10;
+
+    @Test
+    void testConcurrentCallersShareOneLoad() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            Future<CompletableFuture<String>> leader = executor.submit(() -> flight.execute("report:1", () -> {
+                loads.incrementAndGet();
+                loaderStarted.countDown();
+                release.await();
+                return "report";
+            }));
+            assertTrue(loaderStarted.await(5, TimeUnit.SECONDS), "Leader should start loading");
+
+            List<CompletableFuture<String>> waiters = new ArrayList<>();
+            for (int i = 0; i < CALLERS - 1; i++) {
+                waiters.add(flight.execute("report:1", () -> {
+                    loads.incrementAndGet();
+                    return "duplicate";
+                }));
+            }
+            release.countDown();
+
+            assertEquals("report", leader.get().join(), "Leader should get the loaded value");
+            for (CompletableFuture<String> waiter : waiters) {
+                assertEquals("report", waiter.get(5, TimeUnit.SECONDS), "Waiters should share the leader result");
+            }
+            assertEquals(1, loads.get(), "Loader should run only once");
+            assertEquals(0, flight.inFlightCount(), "Finished flight should be removed");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testExceptionIsSharedWithCaller() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        IOException failure = new IOException("upstream down");
+        CompletableFuture<String> result = flight.execute("barcode:1", () -> {
+            throw failure;
+        });
+        CompletionException thrown = assertThrows(CompletionException.class, result::join,
+            "Failed load should complete exceptionally");
+        assertSame(failure, thrown.getCause(), "Original exception should be preserved");
+    }
+
+    @Test
+    void testSequentialCallsLoadAgain() {
+        SingleFlight<String, Integer> flight = new SingleFlight<>();
+        AtomicInteger loads = new AtomicInteger();
+        flight.execute("keywords:a", loads::incrementAndGet).join();
+        flight.execute("keywords:a", loads::incrementAndGet).join();
+        assertEquals(2, loads.get(), "Only concurrent calls should be coalesced");
+    }
+
+    @Test
+    void testExecuteAsyncSharesPendingFuture() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        CompletableFuture<String> first = flight.executeAsync("report:1", () -> {
+            loads.incrementAndGet();
+            return upstream;
+        });
+        CompletableFuture<String> second = flight.executeAsync("report:1", () -> {
+            loads.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        assertEquals(1, flight.inFlightCount(), "Pending call should be tracked");
+        upstream.complete("report");
+
+        assertEquals("report", first.join(), "Leader should get the value");
+        assertEquals("report", second.join(), "Waiter should get the same value");
+        assertEquals(1, loads.get(), "Loader should run only once");
+        assertEquals(0, flight.inFlightCount(), "Completed call should be removed");
+    }
+
+    @Test
+    void testExecuteAsyncUnwrapsCompletionException() {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        IOException failure = new IOException("timeout");
+        CompletableFuture<String> result = flight.executeAsync("keywords:a",
+            () -> CompletableFuture.failedFuture(new CompletionException(failure)));
+        CompletionException thrown = assertThrows(CompletionException.class, result::join,
+            "Failed async load should complete exceptionally");
+        assertSame(failure, thrown.getCause(), "Cause should be the original exception");
+    }
+}
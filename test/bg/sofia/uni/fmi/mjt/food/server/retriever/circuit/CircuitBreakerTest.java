@@ -0,0 +1,168 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.circuit;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.UpstreamUnavailableException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(10);
+    private final AtomicLong now = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(3, OPEN_DURATION, now::get);
+
+    private void fail(int times) throws UpstreamUnavailableException {
+        for (int i = 0; i < times; i++) {
+            breaker.onFailure(breaker.acquire());
+        }
+    }
+
+    @Test
+    void testInvalidArgumentsThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(0, OPEN_DURATION),
+            "Zero threshold should throw");
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(1, Duration.ZERO),
+            "Zero open duration should throw");
+        assertThrows(IllegalArgumentException.class, () -> new CircuitBreaker(1, null),
+            "Null open duration should throw");
+    }
+
+    @Test
+    void testOpensAfterThresholdFailures() throws UpstreamUnavailableException {
+        fail(2);
+        assertEquals(CircuitState.CLOSED, breaker.state(), "Failures below the threshold should keep it closed");
+
+        fail(1);
+
+        assertEquals(CircuitState.OPEN, breaker.state(), "Reaching the threshold should open the circuit");
+        UpstreamUnavailableException e = assertThrows(UpstreamUnavailableException.class, breaker::acquire,
+            "An open circuit should fail fast");
+        assertEquals(OPEN_DURATION.toMillis(), e.getRetryAfterMillis(), "Retry should wait for the open period");
+        assertEquals(1, breaker.rejectedCount(), "The rejected call should be counted");
+    }
+
+    @Test
+    void testSuccessResetsFailureCount() throws UpstreamUnavailableException {
+        fail(2);
+        breaker.onSuccess(breaker.acquire());
+        fail(2);
+
+        assertEquals(CircuitState.CLOSED, breaker.state(), "Only consecutive failures should open the circuit");
+    }
+
+    @Test
+    void testSingleProbeAfterOpenPeriod() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+
+        breaker.acquire();
+
+        assertEquals(CircuitState.HALF_OPEN, breaker.state(), "The first call after the period should probe");
+        assertThrows(UpstreamUnavailableException.class, breaker::acquire,
+            "Other calls should wait for the probe");
+    }
+
+    @Test
+    void testSuccessfulProbeClosesCircuit() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+
+        breaker.onSuccess(probe);
+
+        assertEquals(CircuitState.CLOSED, breaker.state(), "A successful probe should close the circuit");
+        assertDoesNotThrow(breaker::acquire, "A closed circuit should let calls through");
+    }
+
+    @Test
+    void testFailedProbeOpensCircuitAgain() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+
+        breaker.onFailure(probe);
+
+        assertEquals(CircuitState.OPEN, breaker.state(), "A failed probe should open the circuit again");
+        assertThrows(UpstreamUnavailableException.class, breaker::acquire,
+            "A new open period should start after the failed probe");
+    }
+
+    @Test
+    void testProbeThatNeverReportsIsReplaced() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        breaker.acquire();
+        now.addAndGet(OPEN_DURATION.toNanos());
+
+        assertDoesNotThrow(breaker::acquire, "Another probe should be let through after a further period");
+    }
+
+    @Test
+    void testAbandonedProbeLetsNextCallProbe() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+
+        breaker.onAbandoned(probe);
+
+        assertDoesNotThrow(breaker::acquire, "The next call should probe without waiting for another period");
+        assertEquals(CircuitState.HALF_OPEN, breaker.state(), "The circuit should be probing again");
+    }
+
+    @Test
+    void testAbandonedCallKeepsClosedCircuit() throws UpstreamUnavailableException {
+        fail(2);
+        breaker.onAbandoned(breaker.acquire());
+
+        assertEquals(CircuitState.CLOSED, breaker.state(), "An abandoned call should change nothing when closed");
+    }
+
+    @Test
+    void testLateSuccessFromBeforeTheTripIsIgnored() throws UpstreamUnavailableException {
+        long slow = breaker.acquire();
+        fail(3);
+
+        breaker.onSuccess(slow);
+
+        assertEquals(CircuitState.OPEN, breaker.state(), "A call let through before the trip should not close it");
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+        breaker.onSuccess(slow);
+        assertEquals(CircuitState.HALF_OPEN, breaker.state(), "Only the probe should decide a half-open circuit");
+        breaker.onSuccess(probe);
+        assertEquals(CircuitState.CLOSED, breaker.state(), "The probe's success should close the circuit");
+    }
+
+    @Test
+    void testLateFailureDoesNotOverrideTheProbe() throws UpstreamUnavailableException {
+        long slow = breaker.acquire();
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+
+        breaker.onFailure(slow);
+        assertEquals(CircuitState.HALF_OPEN, breaker.state(), "A late failure should not reopen a probing circuit");
+        breaker.onSuccess(probe);
+        breaker.onFailure(probe);
+
+        assertEquals(CircuitState.CLOSED, breaker.state(), "The probe should decide once, later reports are ignored");
+        assertDoesNotThrow(breaker::acquire, "The closed circuit should let calls through");
+    }
+
+    @Test
+    void testReplacedProbeCannotDecide() throws UpstreamUnavailableException {
+        fail(3);
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long stuck = breaker.acquire();
+        now.addAndGet(OPEN_DURATION.toNanos());
+        long probe = breaker.acquire();
+
+        breaker.onSuccess(stuck);
+        assertEquals(CircuitState.HALF_OPEN, breaker.state(), "The replaced probe should not close the circuit");
+        breaker.onFailure(probe);
+
+        assertEquals(CircuitState.OPEN, breaker.state(), "The current probe's failure should open the circuit");
+    }
+}
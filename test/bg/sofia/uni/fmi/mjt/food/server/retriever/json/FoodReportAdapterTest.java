@@ -0,0 +1,82 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.Nutrient;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.NutrientDetails;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FoodReportAdapterTest {
+    private final Gson gson = FoodJson.create();
+    private final String usdaReport = """
+        {"foodClass":"Branded","description":"COLA","foodAttributes":[{"id":1,"value":"x"}],
+        "foodNutrients":[
+          {"type":"FoodNutrient","id":1,"nutrient":{"id":1003,"number":"203","name":"Protein","rank":600,
+           "unitName":"g"},"foodNutrientDerivation":{"code":"LCCD","description":"Calculated"},"amount":0.5},
+          {"type":"FoodNutrient","amount":17.0,"nutrient":{"id":1093,"name":"Sodium, Na","unitName":"mg"}},
+          {"type":"FoodNutrient","nutrient":{"name":"Energy","unitName":"kcal"},"amount":null},
+          null
+        ],
+        "labelNutrients":{"fat":{"value":0.0}},"fdcId":2494378,"gtinUpc":"012000338960",
+        "ingredients":"CARBONATED WATER","foodPortions":[]}
+        """;
+
+    private static InputStream body(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testReadKeepsOnlyNeededFields() throws IOException {
+        FoodReport report = FoodJson.read(gson, body(usdaReport), FoodReport.class);
+
+        assertEquals(2494378, report.fdcId(), "FDC ID should be read after skipped fields");
+        assertEquals("COLA", report.description(), "Description should match");
+        assertEquals("CARBONATED WATER", report.ingredients(), "Ingredients should match");
+        assertEquals("012000338960", report.gtinUpc(), "Barcode should match");
+        List<String> names = report.foodNutrients().stream().map(details -> details.nutrient().name()).toList();
+        assertEquals(List.of("Protein", "Energy"), names, "Unwanted nutrients should be dropped while parsing");
+        assertEquals(0.5, report.foodNutrients().getFirst().amount(), "Amount should be read after the nutrient");
+        assertEquals(0.0, report.foodNutrients().get(1).amount(), "Null amount should default to zero");
+    }
+
+    @Test
+    void testWriteThenReadRoundTrips() {
+        FoodReport report = gson.fromJson(usdaReport, FoodReport.class);
+        FoodReport copy = gson.fromJson(gson.toJson(report), FoodReport.class);
+
+        assertEquals(report.fdcId(), copy.fdcId(), "FDC ID should survive a round trip");
+        assertEquals(report.ingredients(), copy.ingredients(), "Ingredients should survive a round trip");
+        assertEquals(report.foodNutrients(), copy.foodNutrients(), "Nutrients should survive a round trip");
+    }
+
+    @Test
+    void testReadsReportCachedByReflection() {
+        FoodReport original = new FoodReport(1, "MILK", null, null,
+            List.of(new NutrientDetails(new Nutrient("Protein", "g"), 3.3)));
+        String reflectionJson = new Gson().toJson(original);
+
+        FoodReport report = gson.fromJson(reflectionJson, FoodReport.class);
+        assertEquals("MILK", report.description(), "Entries cached before the adapters should stay readable");
+        assertNull(report.ingredients(), "Missing ingredients should be null");
+        assertEquals(1, report.foodNutrients().size(), "Wanted nutrient should be kept");
+    }
+
+    @Test
+    void testReadMalformedBodyThrows() {
+        assertThrows(JsonParseException.class,
+            () -> FoodJson.read(gson, body("[{\"fdcId\":1}]"), FoodReport.class),
+            "Array instead of object should be reported as a syntax error");
+        assertThrows(IOException.class,
+            () -> FoodJson.read(gson, body("{\"fdcId\":1,"), FoodReport.class),
+            "Truncated body should throw");
+    }
+}
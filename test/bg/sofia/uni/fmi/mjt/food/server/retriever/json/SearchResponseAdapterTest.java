@@ -0,0 +1,52 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.json;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.SearchResponse;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchResponseAdapterTest {
+    private final Gson gson = FoodJson.create();
+
+    @Test
+    void testReadSkipsPagingAndNutrients() throws IOException {
+        String json = """
+            {"totalHits":2,"currentPage":1,"foodSearchCriteria":{"query":"raffaello"},
+            "foods":[{"fdcId":415269,"description":"RAFFAELLO","dataType":"Branded","gtinUpc":"009800146130",
+                      "foodNutrients":[{"nutrientName":"Protein","value":7.5}],"score":812.4},
+                     {"fdcId":123,"description":"RAW","gtinUpc":null}],
+            "aggregations":{"dataType":{"Branded":2}}}
+            """;
+        SearchResponse response = FoodJson.read(gson,
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), SearchResponse.class);
+
+        assertEquals(List.of(new FoodDetails(415269, "RAFFAELLO", "009800146130"), new FoodDetails(123, "RAW", null)),
+            response.foods(), "Only fdcId, description and gtinUpc should be kept");
+    }
+
+    @Test
+    void testReadWithoutFoodsReturnsEmptyList() {
+        SearchResponse response = gson.fromJson("{\"totalHits\":0}", SearchResponse.class);
+        assertTrue(response.foods().isEmpty(), "Missing foods should become an empty list");
+    }
+
+    @Test
+    void testReadNullFoodsFollowedByAnotherField() {
+        SearchResponse response = gson.fromJson("{\"foods\":null,\"totalHits\":0}", SearchResponse.class);
+        assertTrue(response.foods().isEmpty(), "Null foods should become an empty list without desyncing the reader");
+    }
+
+    @Test
+    void testWriteThenReadRoundTrips() {
+        SearchResponse response = new SearchResponse(List.of(new FoodDetails(1, "Soup", "999999")));
+        assertEquals(response, gson.fromJson(gson.toJson(response), SearchResponse.class),
+            "Search response should survive a round trip");
+    }
+}
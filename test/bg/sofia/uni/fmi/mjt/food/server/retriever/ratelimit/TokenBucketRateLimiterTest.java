@@ -0,0 +1,127 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.ratelimit;
+
+import bg.sofia.uni.fmi.mjt.food.exceptions.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenBucketRateLimiterTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private TokenBucketRateLimiter manualClockLimiter(int permits, Duration period, Duration maxWait) {
+        return new TokenBucketRateLimiter(permits, period, maxWait, 8, now::get);
+    }
+
+    private static HttpResponse<?> response(int status, Map<String, List<String>> headers) {
+        HttpResponse<?> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.headers()).thenReturn(HttpHeaders.of(headers, (name, value) -> true));
+        return response;
+    }
+
+    @Test
+    void testAcquireWithinBurstDoesNotWait() throws Exception {
+        TokenBucketRateLimiter limiter = manualClockLimiter(3, Duration.ofSeconds(1), Duration.ZERO);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+
+        RateLimiterStats stats = limiter.stats();
+        assertEquals(0.0, stats.availableTokens(), 1e-9, "Burst should use up the bucket");
+        assertEquals(3, stats.granted(), "Every call within the burst should be granted");
+    }
+
+    @Test
+    void testAcquireFailsFastWhenWaitExceedsMax() throws Exception {
+        TokenBucketRateLimiter limiter = manualClockLimiter(1, Duration.ofHours(1), Duration.ofSeconds(1));
+        limiter.acquire();
+
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, limiter::acquire,
+            "Waiting for an hourly token should be rejected immediately");
+        assertTrue(e.getRetryAfterMillis() > 1000, "Retry hint should reflect the refill time");
+        assertEquals(1, limiter.stats().rejected(), "Rejection should be counted");
+    }
+
+    @Test
+    void testTokensRefillOverTime() throws Exception {
+        TokenBucketRateLimiter limiter = manualClockLimiter(2, Duration.ofSeconds(2), Duration.ZERO);
+        limiter.acquire();
+        limiter.acquire();
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        limiter.acquire();
+        assertThrows(RateLimitExceededException.class, limiter::acquire, "Only one token should have refilled");
+    }
+
+    @Test
+    void testRemainingHeaderLowersTokens() throws Exception {
+        TokenBucketRateLimiter limiter = manualClockLimiter(100, Duration.ofHours(1), Duration.ZERO);
+        limiter.onResponse(response(200, Map.of(TokenBucketRateLimiter.REMAINING_HEADER, List.of("1"))));
+
+        assertEquals(1.0, limiter.stats().availableTokens(), 1e-6, "Upstream remaining quota should cap the bucket");
+        limiter.acquire();
+        assertThrows(RateLimitExceededException.class, limiter::acquire, "Upstream quota should be respected");
+    }
+
+    @Test
+    void testRetryAfterPausesTheBucket() throws Exception {
+        TokenBucketRateLimiter limiter = manualClockLimiter(100, Duration.ofSeconds(1), Duration.ZERO);
+        limiter.onResponse(response(TokenBucketRateLimiter.TOO_MANY_REQUESTS_CODE,
+            Map.of(TokenBucketRateLimiter.RETRY_AFTER_HEADER, List.of("30"))));
+
+        RateLimiterStats stats = limiter.stats();
+        assertEquals(1, stats.throttledResponses(), "429 should be counted");
+        assertEquals(30_000, stats.pausedForMillis(), "Pause should follow Retry-After");
+        assertThrows(RateLimitExceededException.class, limiter::acquire, "Calls should be rejected while paused");
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        limiter.acquire();
+    }
+
+    @Test
+    void testWaitersAreServedInArrivalOrder() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, Duration.ofMillis(500), Duration.ofSeconds(5), 8);
+        limiter.acquire();
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            int id = i;
+            Thread.ofPlatform().start(() -> {
+                try {
+                    limiter.acquire();
+                    order.add(id);
+                } catch (Exception e) {
+                    order.add(-1);
+                } finally {
+                    done.countDown();
+                }
+            });
+            while (limiter.stats().queueDepth() != i + 1) {
+                Thread.yield();
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS), "Queued callers should all get a token");
+        assertEquals(List.of(0, 1, 2), order, "Queued callers should be served first come first served");
+        assertEquals(0, limiter.stats().queueDepth(), "Queue should be empty afterwards");
+    }
+
+    @Test
+    void testFullQueueRejects() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, Duration.ofSeconds(1), Duration.ofSeconds(5), 0);
+        limiter.acquire();
+        assertThrows(RateLimitExceededException.class, limiter::acquire, "No caller may queue when the limit is 0");
+    }
+}
@@ -0,0 +1,97 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.search;
+
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FoodIndexTest {
+    private final FoodDetails raffaello = new FoodDetails(415269, "RAFFAELLO, ALMOND COCONUT TREAT", "009800146130");
+    private final FoodDetails chocolate = new FoodDetails(123456, "RAFFAELLO, CHOCOLATE TREAT", "009800146131");
+    private final FoodDetails cola = new FoodDetails(2494378, "COLA", "012000338960");
+
+    @Test
+    void testTokenize() {
+        assertEquals(List.of("raffaello", "almond", "coconut", "treat"),
+            List.copyOf(FoodIndex.tokenize("RAFFAELLO, Almond_coconut  treat")),
+            "Words should be lower case and split on anything but letters and digits");
+    }
+
+    @Test
+    void testSearchIntersectsKeywords() {
+        FoodIndex index = new FoodIndex();
+        index.addAll(List.of(raffaello, chocolate, cola));
+
+        assertEquals(List.of(chocolate, raffaello), index.search(List.of("Raffaello", "treat")),
+            "Foods with every keyword should be found by increasing id");
+        assertEquals(List.of(raffaello), index.search(List.of("coconut", "raffaello")),
+            "The rarest keyword should narrow the result");
+        assertEquals(List.of(), index.search(List.of("raffaello", "cola")), "No food has both keywords");
+        assertEquals(List.of(), index.search(List.of("milk")), "An unknown word should find nothing");
+    }
+
+    @Test
+    void testSearchIsLimited() {
+        FoodIndex index = new FoodIndex(2);
+        for (int id = 0; id < 10; id++) {
+            index.add(new FoodDetails(id, "APPLE " + id, null));
+        }
+        assertEquals(2, index.search(List.of("apple")).size(), "Results should stop at the max");
+    }
+
+    @Test
+    void testChangedDescriptionIsSearchedByTheNewOne() {
+        FoodIndex index = new FoodIndex();
+        index.add(cola);
+        index.add(new FoodDetails(2494378, "COLA ZERO", "012000338960"));
+
+        assertEquals("COLA ZERO", index.search(List.of("zero")).get(0).description(), "New words should be found");
+        assertEquals(1, index.size(), "The food should be stored once");
+
+        index.add(new FoodDetails(2494378, "DIET SODA", "012000338960"));
+        assertEquals(List.of(), index.search(List.of("cola")), "Words the food lost should not find it");
+    }
+
+    @Test
+    void testFoodsWithoutDescriptionAreSkipped() {
+        FoodIndex index = new FoodIndex();
+        index.add(new FoodDetails(1, null, null));
+        assertEquals(0, index.size(), "A food without words should not be indexed");
+        assertThrows(IllegalArgumentException.class, () -> index.add(null), "Null food should throw");
+    }
+
+    @Test
+    void testSearchesRunWhileFoodsAreAdded() throws Exception {
+        FoodIndex index = new FoodIndex(Integer.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int id = 0; id < 5000; id++) {
+                    index.add(new FoodDetails(id, "GREEN APPLE " + id, null));
+                }
+            });
+            Future<Integer> reader = executor.submit(() -> {
+                int previous = 0;
+                while (!writer.isDone()) {
+                    int found = index.search(List.of("green", "apple")).size();
+                    if (found < previous) {
+                        return -1;
+                    }
+                    previous = found;
+                }
+                return previous;
+            });
+            writer.get(10, TimeUnit.SECONDS);
+            assertNotEquals(-1, reader.get(10, TimeUnit.SECONDS), "Added foods should never disappear from a search");
+            assertEquals(5000, index.search(List.of("apple", "green")).size(), "Every food should be found");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
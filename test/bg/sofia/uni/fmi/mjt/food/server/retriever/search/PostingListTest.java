@@ -0,0 +1,62 @@
+package bg.sofia.uni.fmi.mjt.food.server.retriever.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PostingListTest {
+
+    @Test
+    void testOfSortsAndRemovesDuplicates() {
+        PostingList list = PostingList.of(415269, 7, 2494378, 7);
+        assertArrayEquals(new int[] {7, 415269, 2494378}, list.toArray(), "Ids should be sorted and distinct");
+        assertEquals(3, list.size(), "Duplicates should not be counted");
+    }
+
+    @Test
+    void testWithAppendsAndInserts() {
+        PostingList list = PostingList.empty().with(100).with(300).with(200).with(100);
+        assertArrayEquals(new int[] {100, 200, 300}, list.toArray(), "Ids should stay sorted and distinct");
+    }
+
+    @Test
+    void testWithDoesNotChangeOriginal() {
+        PostingList original = PostingList.of(1, 2);
+        original.with(3);
+        assertArrayEquals(new int[] {1, 2}, original.toArray(), "Adding should return a new list");
+    }
+
+    @Test
+    void testCloseIdsTakeOneBytePerGap() {
+        PostingList list = PostingList.empty();
+        for (int id = 2_000_000; id < 2_001_000; id++) {
+            list = list.with(id);
+        }
+        assertEquals(1000, list.size(), "Every id should be stored");
+        assertTrue(list.encodedBytes() < 1010, "Gaps of one should take a byte each, not four");
+        assertEquals(2_000_999, list.toArray()[999], "The last id should be decoded back");
+    }
+
+    @Test
+    void testLargeIdsRoundTrip() {
+        PostingList list = PostingList.of(0, 127, 128, 16_384, Integer.MAX_VALUE);
+        assertArrayEquals(new int[] {0, 127, 128, 16_384, Integer.MAX_VALUE}, list.toArray(),
+            "Ids on the byte boundaries should survive encoding");
+    }
+
+    @Test
+    void testRetainAll() {
+        PostingList list = PostingList.of(2, 4, 6, 8, 10);
+        assertArrayEquals(new int[] {4, 10}, list.retainAll(new int[] {1, 4, 5, 10, 12}),
+            "Only the ids in both should be kept");
+        assertEquals(0, list.retainAll(new int[] {11, 12}).length, "Ids past the list should be dropped");
+        assertEquals(0, PostingList.empty().retainAll(new int[] {1}).length, "Nothing should match an empty list");
+    }
+
+    @Test
+    void testNegativeIdThrows() {
+        assertThrows(IllegalArgumentException.class, () -> PostingList.of(-1), "Negative ids should throw");
+        assertThrows(IllegalArgumentException.class, () -> PostingList.empty().with(-1),
+            "Negative ids should throw");
+    }
+}
@@ -0,0 +1,101 @@
+package bg.sofia.uni.fmi.mjt.food.server.scheduling;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimitTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static AdaptiveConcurrencyLimit limit(int initial, int min, int max) {
+        return new AdaptiveConcurrencyLimit(initial, min, max, Duration.ofMillis(100));
+    }
+
+    private static int fill(AdaptiveConcurrencyLimit limit) {
+        int acquired = 0;
+        while (limit.tryAcquire()) {
+            acquired++;
+        }
+        return acquired;
+    }
+
+    @Test
+    void testTryAcquireStopsAtLimit() {
+        AdaptiveConcurrencyLimit limit = limit(2, 1, 10);
+        assertTrue(limit.tryAcquire(), "First request should be admitted");
+        assertTrue(limit.tryAcquire(), "Second request should be admitted");
+        assertFalse(limit.tryAcquire(), "Third request should be over the limit");
+        assertEquals(2, limit.inFlight(), "Two requests should be in flight");
+    }
+
+    @Test
+    void testFastAnswersRaiseLimit() {
+        AdaptiveConcurrencyLimit limit = limit(4, 1, 10);
+        for (int round = 0; round < 4; round++) {
+            int acquired = fill(limit);
+            for (int i = 0; i < acquired; i++) {
+                limit.release(FAST);
+            }
+        }
+        assertTrue(limit.limit() > 4, "A fully used limit answered in time should grow");
+    }
+
+    @Test
+    void testSlowAnswersCutLimit() {
+        AdaptiveConcurrencyLimit limit = limit(10, 2, 10);
+        fill(limit);
+        limit.release(SLOW);
+        assertEquals(9, limit.limit(), "One slow answer should cut the limit by a tenth");
+        for (int i = 0; i < 20; i++) {
+            limit.tryAcquire();
+            limit.release(SLOW);
+        }
+        assertEquals(2, limit.limit(), "The limit should not fall below the minimum");
+    }
+
+    @Test
+    void testUnusedLimitDoesNotGrow() {
+        AdaptiveConcurrencyLimit limit = limit(10, 1, 100);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limit.tryAcquire(), "A single request should always be admitted");
+            limit.release(FAST);
+        }
+        assertEquals(10, limit.limit(), "One request at a time says nothing about a limit of 10");
+    }
+
+    @Test
+    void testLimitDoesNotExceedMaximum() {
+        AdaptiveConcurrencyLimit limit = limit(3, 1, 3);
+        fill(limit);
+        limit.release(FAST);
+        limit.release(FAST);
+        limit.release(FAST);
+        assertEquals(3, limit.limit(), "The limit should not grow over the maximum");
+    }
+
+    @Test
+    void testRetryAfterFollowsLatency() {
+        AdaptiveConcurrencyLimit limit = limit(2, 1, 2);
+        assertEquals(AdaptiveConcurrencyLimit.MIN_RETRY_AFTER_MILLIS, limit.retryAfterMillis(),
+            "Without answers the minimal retry-after should be used");
+        limit.tryAcquire();
+        limit.release(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2000, limit.retryAfterMillis(), "Retry-after should follow the observed latency");
+        limit.tryAcquire();
+        limit.release(TimeUnit.MINUTES.toNanos(5));
+        assertEquals(AdaptiveConcurrencyLimit.MAX_RETRY_AFTER_MILLIS, limit.retryAfterMillis(),
+            "Retry-after should be capped");
+    }
+
+    @Test
+    void testInvalidLimitsThrow() {
+        assertThrows(IllegalArgumentException.class, () -> limit(0, 0, 1), "Minimum should be positive");
+        assertThrows(IllegalArgumentException.class, () -> limit(5, 1, 4), "Initial should not exceed maximum");
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimit(1, 1, 1, Duration.ZERO),
+            "Latency target should be positive");
+    }
+}
@@ -0,0 +1,256 @@
+package bg.sofia.uni.fmi.mjt.food.server.scheduling;
+
+import bg.sofia.uni.fmi.mjt.food.server.RequestProcessor;
+import bg.sofia.uni.fmi.mjt.food.server.cache.RenderedResponseCache;
+import bg.sofia.uni.fmi.mjt.food.server.command.model.Type;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.Metrics;
+import bg.sofia.uni.fmi.mjt.food.server.metrics.RequestSource;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.FoodDataRetriever;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodDetails;
+import bg.sofia.uni.fmi.mjt.food.server.retriever.model.FoodReport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class LaneSchedulerTest {
+    private final FoodDataRetriever retriever = mock(FoodDataRetriever.class);
+    private final Metrics metrics = new Metrics();
+    private final ExecutorService fastLane = Executors.newFixedThreadPool(1);
+    private final ThreadPoolExecutor upstreamLane = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+        new SynchronousQueue<>());
+    private final AdaptiveConcurrencyLimit upstreamLimit = AdaptiveConcurrencyLimit.fixed(2);
+    private final LaneScheduler scheduler = new LaneScheduler(new RequestProcessor(retriever, metrics), fastLane,
+        upstreamLane, upstreamLimit, metrics);
+    private final FoodReport report = new FoodReport(7, "COLA", "WATER", null, List.of());
+
+    @AfterEach
+    void tearDown() {
+        fastLane.shutdownNow();
+        upstreamLane.shutdownNow();
+    }
+
+    private CountDownLatch blockUpstreamLane() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        when(retriever.findCachedFoodByKeywords(List.of("slow"))).thenReturn(null);
+        when(retriever.getFoodByKeywords(List.of("slow"))).thenAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return List.of(new FoodDetails(1, "SLOW", null));
+        });
+        scheduler.submit("get-food slow", "test");
+        assertTrue(started.await(5, TimeUnit.SECONDS), "The slow request should reach the upstream lane");
+        return release;
+    }
+
+    @Test
+    void testCacheHitIsAnsweredInFastLane() throws Exception {
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+
+        String response = text(scheduler.submit("get-food-report 7", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.contains("COLA"), "Cached report should be returned");
+        assertTrue(response.endsWith(RequestProcessor.END_MARKER + System.lineSeparator()),
+            "Response should end with the END marker");
+        verify(retriever, never()).getFoodReport(anyInt());
+        assertEquals(0, upstreamLane.getCompletedTaskCount(), "The upstream lane should not be used");
+    }
+
+    @Test
+    void testCacheMissMovesToUpstreamLane() throws Exception {
+        when(retriever.findCachedFoodReport(7)).thenReturn(null);
+        when(retriever.getFoodReport(7)).thenReturn(report);
+
+        String response = text(scheduler.submit("get-food-report 7", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.contains("COLA"), "Report loaded upstream should be returned");
+        assertEquals(1, metrics.laneWaitSnapshot(Lane.UPSTREAM).count(), "The upstream lane wait should be recorded");
+        assertEquals(1, metrics.laneWaitSnapshot(Lane.FAST).count(), "Every request passes the fast lane first");
+    }
+
+    @Test
+    void testCacheHitsAreNotBlockedBySlowUpstream() throws Exception {
+        CountDownLatch release = blockUpstreamLane();
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+
+        String response = text(scheduler.submit("get-food-report 7", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.contains("COLA"), "Cache hit should be answered while USDA is slow");
+        release.countDown();
+    }
+
+    @Test
+    void testFullUpstreamLaneTurnsRequestsAway() throws Exception {
+        CountDownLatch release = blockUpstreamLane();
+
+        String response = text(scheduler.submit("get-food-report 8", "test").get(5, TimeUnit.SECONDS));
+
+        assertEquals(RequestProcessor.busyResponse(AdaptiveConcurrencyLimit.MIN_RETRY_AFTER_MILLIS), response,
+            "A full upstream lane should answer BUSY with a retry-after hint");
+        assertEquals(1, metrics.laneRejections(Lane.UPSTREAM), "The rejection should be counted");
+        assertEquals(1, upstreamLimit.inFlight(), "The rejected request should give its slot back");
+        release.countDown();
+    }
+
+    @Test
+    void testUpstreamLimitTurnsRequestsAway() throws Exception {
+        LaneScheduler limited = new LaneScheduler(new RequestProcessor(retriever, metrics), fastLane, upstreamLane,
+            AdaptiveConcurrencyLimit.fixed(1), metrics);
+        CountDownLatch release = new CountDownLatch(1);
+        when(retriever.findCachedFoodByKeywords(List.of("slow"))).thenReturn(null);
+        when(retriever.getFoodByKeywords(List.of("slow"))).thenAnswer(invocation -> {
+            release.await();
+            return List.of();
+        });
+        CompletableFuture<byte[]> slow = limited.submit("get-food slow", "test");
+
+        String response = text(limited.submit("get-food-report 8", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.startsWith(RequestProcessor.BUSY_PREFIX), "Requests over the limit should get BUSY");
+        verify(retriever, never()).getFoodReport(8);
+        release.countDown();
+        assertTrue(text(slow.get(5, TimeUnit.SECONDS)).endsWith(RequestProcessor.END_MARKER + System.lineSeparator()),
+            "The admitted request should still be answered");
+    }
+
+    @Test
+    void testInvalidCommandIsAnsweredInFastLane() throws Exception {
+        CompletableFuture<byte[]> response = scheduler.submit("unknown", "test");
+
+        assertTrue(text(response.get(5, TimeUnit.SECONDS)).startsWith("Invalid command"),
+            "Invalid commands should be answered without the upstream lane");
+        assertEquals(0, upstreamLane.getCompletedTaskCount(), "The upstream lane should not be used");
+    }
+
+    @Test
+    void testReportShowsLanes() throws Exception {
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+        scheduler.submit("get-food-report 7", "test").get(5, TimeUnit.SECONDS);
+
+        List<String> lines = metrics.report();
+
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("lane fast queue-depth=0 waits=1")),
+            "Fast lane line should show the wait count");
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("lane upstream ") && line.endsWith("rejected=0")),
+            "Upstream lane line should show the rejections");
+    }
+
+    @Test
+    void testBatchItemsAreStreamedInCompletionOrder() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+        when(retriever.findCachedFoodReport(8)).thenReturn(null);
+        when(retriever.getFoodReport(8)).thenAnswer(invocation -> {
+            release.await();
+            return new FoodReport(8, "SODA", "WATER", null, List.of());
+        });
+        List<String> items = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<byte[]> end = scheduler.submit("get-food-report-batch 8 7", "test",
+            item -> items.add(text(item)));
+
+        assertTrue(waitForItems(items, 1), "The cached item should be streamed before the batch ends");
+        assertTrue(items.get(0).startsWith("ITEM 7") && items.get(0).contains("COLA"),
+            "The cached item should be answered while the other waits for USDA");
+        assertFalse(end.isDone(), "The batch should not end while an item is still running");
+        release.countDown();
+        assertEquals(RequestProcessor.END_MARKER + System.lineSeparator(), text(end.get(5, TimeUnit.SECONDS)),
+            "The batch should close with END once every item is out");
+        assertTrue(items.get(1).startsWith("ITEM 8") && items.get(1).contains("SODA"),
+            "The upstream item should follow");
+    }
+
+    @Test
+    void testBatchItemFailureDoesNotFailBatch() throws Exception {
+        CountDownLatch release = blockUpstreamLane();
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+        when(retriever.findCachedFoodReport(8)).thenReturn(null);
+
+        String response = text(scheduler.submit("get-food-report-batch 7 8", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.contains("ITEM 7" + System.lineSeparator() + report),
+            "The cached item should be answered");
+        assertTrue(response.contains("ITEM 8" + System.lineSeparator() + RequestProcessor.BUSY_PREFIX),
+            "The item that found the upstream lane full should get its own BUSY");
+        assertTrue(response.endsWith(RequestProcessor.END_MARKER + System.lineSeparator()),
+            "The batch should end with a single END");
+        release.countDown();
+    }
+
+    @Test
+    void testKnownMissIsAnsweredInFastLane() throws Exception {
+        when(retriever.findCachedFoodReport(9)).thenReturn(null);
+        when(retriever.isKnownMissingReport(9)).thenReturn(true);
+
+        String response = text(scheduler.submit("get-food-report 9", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.startsWith("No food found with ID 9"), "A remembered miss should be answered");
+        verify(retriever, never()).getFoodReport(anyInt());
+        assertEquals(0, upstreamLane.getCompletedTaskCount(), "The upstream lane should not be used");
+    }
+
+    @Test
+    void testRenderedHitSkipsRetriever() throws Exception {
+        LaneScheduler rendered = new LaneScheduler(new RequestProcessor(retriever, metrics,
+            new RenderedResponseCache(10)), fastLane, upstreamLane, upstreamLimit, metrics);
+        when(retriever.findCachedFoodReport(7)).thenReturn(report);
+
+        byte[] first = rendered.submit("get-food-report 7", "test").get(5, TimeUnit.SECONDS);
+        byte[] second = rendered.submit("get-food-report  7", "test").get(5, TimeUnit.SECONDS);
+
+        assertSame(first, second, "The second request should get the rendered bytes of the first");
+        verify(retriever, times(1)).findCachedFoodReport(7);
+        assertEquals(2, metrics.snapshot(Type.GET_FOOD_REPORT, RequestSource.CACHE).count(),
+            "Rendered hits should still be measured");
+    }
+
+    @Test
+    void testMissIsNotRendered() throws Exception {
+        LaneScheduler rendered = new LaneScheduler(new RequestProcessor(retriever, metrics,
+            new RenderedResponseCache(10)), fastLane, upstreamLane, upstreamLimit, metrics);
+        when(retriever.isKnownMissingBarcode("123")).thenReturn(true);
+
+        rendered.submit("get-food-by-barcode --code=123", "test").get(5, TimeUnit.SECONDS);
+        rendered.submit("get-food-by-barcode --code=123", "test").get(5, TimeUnit.SECONDS);
+
+        verify(retriever, times(2)).findCachedFoodByBarcode("123");
+    }
+
+    @Test
+    void testBarcodeCacheMissMovesToUpstreamLane() throws Exception {
+        FoodDetails food = new FoodDetails(415269, "RAFFAELLO", "123");
+        when(retriever.getFoodByBarcode("123")).thenReturn(food);
+
+        String response = text(scheduler.submit("get-food-by-barcode --code=123", "test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(response.startsWith(food.toString()), "USDA should answer a barcode missing from the cache");
+        verify(retriever).findCachedFoodByBarcode("123");
+        verify(retriever).getFoodByBarcode("123");
+    }
+
+    private static String text(byte[] response) {
+        return new String(response, StandardCharsets.UTF_8);
+    }
+
+    private static boolean waitForItems(List<String> items, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (items.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return items.size() >= count;
+    }
+}